@@ -0,0 +1,92 @@
+package main.bench.jmh;
+
+import main.chessboard.BoardEnv;
+import main.chessboard.LegalMoveGenerator;
+import main.chessboard.MakeMoveResult;
+import main.chessboard.Move;
+import main.chessboard.MoveMaker;
+import main.chessboard.ZobristTable;
+import main.engine.Engine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the board representation: making and unmaking moves, move generation, attack detection,
+ * hashing, FEN parsing and copying.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BoardBenchmark {
+
+    /**
+     * Makes and unmakes every legal move of the position as the search does, with the checkmate, stalemate
+     * and draw detection after every move.
+     */
+    @Benchmark
+    public long makeUnmakeMoves(Positions positions) {
+        BoardEnv board = positions.board;
+        long hashes = 0;
+        for (Move move : positions.moves) {
+            MakeMoveResult result = MoveMaker.makeMove(board, move, false);
+            hashes += board.zobristHash;
+            MoveMaker.unmakeMove(board, move, result.undoInfo);
+        }
+        return hashes;
+    }
+
+    /**
+     * Makes and unmakes every legal move of the position without the post move calculations.
+     */
+    @Benchmark
+    public long makeUnmakeMovesWithoutPostMoveCalculations(Positions positions) {
+        BoardEnv board = positions.board;
+        long hashes = 0;
+        for (Move move : positions.moves) {
+            MakeMoveResult result = MoveMaker.makeMove(board, move, true);
+            hashes += board.zobristHash;
+            MoveMaker.unmakeMove(board, move, result.undoInfo);
+        }
+        return hashes;
+    }
+
+    @Benchmark
+    public List<Move> generateAllLegalMoves(Positions positions) {
+        return Engine.generateAllLegalMoves(positions.board);
+    }
+
+    /**
+     * Checks both kings, which is how the move generator reaches {@code isSquareAttacked}.
+     */
+    @Benchmark
+    public void isSquareAttacked(Positions positions, Blackhole blackhole) {
+        blackhole.consume(LegalMoveGenerator.isKingInCheck(positions.board, true));
+        blackhole.consume(LegalMoveGenerator.isKingInCheck(positions.board, false));
+    }
+
+    @Benchmark
+    public long computeHash(Positions positions) {
+        return ZobristTable.computeHash(positions.board);
+    }
+
+    @Benchmark
+    public BoardEnv parseFen(Positions positions) {
+        return new BoardEnv(positions.fen);
+    }
+
+    @Benchmark
+    public BoardEnv deepCopy(Positions positions) {
+        return positions.board.deepCopy();
+    }
+}
@@ -0,0 +1,75 @@
+package main.bench.jmh;
+
+import main.chessboard.Move;
+import main.engine.Engine;
+import main.engine.PawnHashTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the engine hot paths: move ordering, which scores every move, and the static evaluation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class EngineBenchmark {
+
+    private final PawnHashTable pawnTable = new PawnHashTable(1 << 14);
+    private Engine engine;
+
+    @Setup
+    public void setUp() {
+        engine = new Engine(true);
+        engine.setDebugOutput(false);
+    }
+
+    /**
+     * Scores and sorts the legal moves of the position. The copy keeps every invocation sorting the moves
+     * in generation order.
+     */
+    @Benchmark
+    public List<Move> orderMoves(Positions positions) {
+        List<Move> moves = new ArrayList<>(positions.moves);
+        Engine.orderMoves(positions.board, moves);
+        return moves;
+    }
+
+    /**
+     * Evaluates with a pawn structure computed from scratch.
+     */
+    @Benchmark
+    public int evaluateUncached(Positions positions) {
+        return Engine.evaluate(positions.board, null);
+    }
+
+    /**
+     * Evaluates with the pawn hash table, as the search does on an evaluation cache miss.
+     */
+    @Benchmark
+    public int evaluateWithPawnHash(Positions positions) {
+        return Engine.evaluate(positions.board, pawnTable);
+    }
+
+    /**
+     * Evaluates through the evaluation cache of an engine, which hits after the first invocation.
+     */
+    @Benchmark
+    public int evaluateCached(Positions positions) {
+        return engine.evaluate(positions.board);
+    }
+}
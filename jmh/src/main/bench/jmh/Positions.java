@@ -0,0 +1,40 @@
+package main.bench.jmh;
+
+import main.chessboard.BoardEnv;
+import main.chessboard.Move;
+import main.engine.Engine;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * The positions the benchmarks run on: the opening, a middlegame full of captures, checks, castling and
+ * en passant, a quiet middlegame, and an endgame.
+ */
+@State(Scope.Thread)
+public class Positions {
+
+    @Param({"start", "kiwipete", "middlegame", "endgame"})
+    public String position;
+
+    public String fen;
+    public BoardEnv board;
+    /** The legal moves of the position. */
+    public List<Move> moves;
+
+    @Setup
+    public void setUp() {
+        fen = switch (position) {
+            case "start" -> Engine.STARTING_FEN;
+            case "kiwipete" -> "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+            case "middlegame" -> "r1bq1rk1/ppp1nppp/4n3/3p3Q/3P4/1BP1B3/PP1N2PP/R4RK1 w - - 1 16";
+            case "endgame" -> "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1";
+            default -> throw new IllegalArgumentException("Unknown position " + position);
+        };
+        board = new BoardEnv(fen);
+        moves = Engine.generateAllLegalMoves(board);
+    }
+}
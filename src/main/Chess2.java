@@ -3,11 +3,23 @@ package main;
 import main.chessboard.BoardEnv;
 import main.chessboard.Move;
 import main.engine.Engine;
+import main.engine.EngineService;
+import main.engine.SearchLimits;
+import main.engine.PieceValues;
 import main.chessboard.Chessboard;
 import main.chessboard.GameOutcome;
 import processing.core.PApplet;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
 public class Chess2 extends PApplet {
 
@@ -19,13 +31,37 @@ public class Chess2 extends PApplet {
 
 
 
+    static {
+        // Tuned piece-square values must be in place before the first board computes its evaluation
+        if (Files.exists(Paths.get(PieceValues.DEFAULT_PATH))) {
+            try {
+                PieceValues.load(Paths.get(PieceValues.DEFAULT_PATH));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     public static final int BOARD_SIZE = 800;
     public static final int TILE_SIZE = BOARD_SIZE / 8;
     private final Chessboard chessboard = new Chessboard(this, TILE_SIZE, FEN);
-    private final Engine engine = new Engine();
-    private volatile GameOutcome outcome = GameOutcome.ONGOING;
+    /** Runs the searches of the engine, whose caches stay warm between its moves. */
+    private final EngineService engineService = new EngineService(new Engine(!playWhite));
+    /** Loads the engine assets and warms up the engine while the window opens. */
+    private final Startup startup = Startup.begin();
+    /** Changes of the board by other threads, applied on the sketch thread before drawing. */
+    private final Queue<Runnable> pendingUpdates = new ConcurrentLinkedQueue<>();
+    private boolean engineReady = false;
+    private GameOutcome outcome = GameOutcome.ONGOING;
+    /** The number of book lines through the position of the last engine search, read on the engine thread. */
+    private int openingsLeft;
     private int xText; // x-coordinate for displaying text
     private int yText; // y-coordinate for displaying text
+    /** The lines of the move list, extended when moves are played. */
+    private final List<String> moveLines = new ArrayList<>();
+    private int movesInLines = 0;
+    /** The button under the mouse: 0 for FEN, 1 for PGN, or -1. */
+    private int hoveredButton = -1;
 
     /**
      * Initializes the board.
@@ -38,35 +74,85 @@ public class Chess2 extends PApplet {
 
     /**
      * Configures frameRate and loads initial position and piece images.
+     * The sketch only redraws after moves and mouse events, so an idle board uses no CPU.
      * Runs once at startup.
      */
     @Override
     public void setup() {
         frameRate(60);
+        noLoop();
         chessboard.loadImages();
-        chessboard.loadSounds();
-        chessboard.loadOpenings();
+        startup.runAsync("sounds", chessboard::loadSounds);
         // Make first move if it's the engines turn at the beginning
         if (chessboard.board.whiteToMove != playWhite) {
-            new Thread(() -> {
-                chessboard.movePieceForEngine(engine);
-                chessboard.computeAllLegalMoves();
-            }).start();
+            moveForEngine();
         } else {
-            new Thread(chessboard::computeAllLegalMoves).start();
+            chessboard.computeAllLegalMoves();
+        }
+    }
+
+    /**
+     * Starts the search of the engine. Its move is played on the sketch thread when the search completes.
+     * The first time, the engine waits for its assets and the warm-up.
+     */
+    private void moveForEngine() {
+        if (!engineReady) {
+            engineService.submit(e -> {
+                startup.configure(e);
+                startup.awaitWarmUp();
+                return null;
+            });
+            engineReady = true;
         }
+        long start = System.currentTimeMillis();
+        CompletableFuture<Engine.BestMove> search = engineService.search(chessboard.board, SearchLimits.time(Long.MAX_VALUE), null);
+        // Queued behind the search, so it reads the value the search has set
+        CompletableFuture<Integer> openings = engineService.submit(Engine::getOpeningsLeft);
+        search
+                .thenCompose(bestMove -> {
+                    startup.engineMoved(System.currentTimeMillis() - start);
+                    // Book moves are delayed, so the opening moves are not played instantaneously
+                    return bestMove.evaluation != null ? CompletableFuture.completedFuture(bestMove)
+                            : CompletableFuture.supplyAsync(() -> bestMove, CompletableFuture.delayedExecutor(500, TimeUnit.MILLISECONDS));
+                })
+                .thenAcceptBoth(openings, (bestMove, openingsLeft) -> runOnSketch(() -> {
+                    this.openingsLeft = openingsLeft;
+                    outcome = chessboard.movePieceForEngine(bestMove);
+                    chessboard.computeAllLegalMoves(); // Precompute legal moves for the player's next turn
+                }))
+                .exceptionally(e -> {
+                    if (!(e.getCause() instanceof CancellationException)) e.printStackTrace();
+                    return null;
+                });
+    }
+
+    /**
+     * Runs an update of the board on the sketch thread, which also handles the mouse events.
+     *
+     * @param update the update
+     */
+    private void runOnSketch(Runnable update) {
+        pendingUpdates.add(update);
+        redraw();
     }
 
     /**
-     * Draws the board continuously.
+     * Draws the board after a move or a mouse event.
      * Updates the visual.
      */
     @Override
     public void draw() {
+        Runnable update;
+        while ((update = pendingUpdates.poll()) != null) {
+            update.run();
+        }
         resetXText();
         yText = 50;
         background(200);
         chessboard.load();
+        if (!chessboard.isDrawn()) {
+            redraw(); // piece images are still loading
+        }
         fill(0);
         textSize(24);
         textAlign(LEFT);
@@ -83,23 +169,19 @@ public class Chess2 extends PApplet {
         textSize(18);
         newLine();
         newLine();
-        text("Openings left in database: " + Chessboard.openings.size(), xText, yText);
+        text("Openings left in database: " + openingsLeft, xText, yText);
         newLine();
         newLine();
         text("Moves:", xText, yText);
         newLine();
         int yTextInitialValue = yText;
-        List<Move> playedMoves = chessboard.board.playedMoves;
-        for (int i = 0; i < playedMoves.size(); i += 2) {
+        updateMoveLines();
+        for (String line : moveLines) {
             if (yText > BOARD_SIZE - 110) {
                 yText = yTextInitialValue;
                 newColumn();
             }
-            if (i + 1 == playedMoves.size()) {
-                text(playedMoves.get(i).toString(), xText, yText);
-                break;
-            }
-            text(playedMoves.get(i).toString() + " " + playedMoves.get(i + 1).toString() + ",", xText, yText);
+            text(line, xText, yText);
             newLine();
         }
 
@@ -107,6 +189,27 @@ public class Chess2 extends PApplet {
         drawPgnButton();
     }
 
+    /**
+     * Adds the moves played since the last draw to the move list, one line per move pair.
+     */
+    private void updateMoveLines() {
+        List<Move> playedMoves = chessboard.board.playedMoves;
+        int size = playedMoves.size();
+        if (size < movesInLines) {
+            moveLines.clear();
+            movesInLines = 0;
+        }
+        for (; movesInLines < size; movesInLines++) {
+            String move = playedMoves.get(movesInLines).toString();
+            if (movesInLines % 2 == 0) {
+                moveLines.add(move);
+            } else {
+                int last = moveLines.size() - 1;
+                moveLines.set(last, moveLines.get(last) + " " + move + ",");
+            }
+        }
+    }
+
     /**
      * Draws the "Copy FEN" button in the bottom-right of the sidebar.
      */
@@ -160,7 +263,7 @@ public class Chess2 extends PApplet {
         // Append board configuration
         for (int i = 0; i < 8; i++) {
             for (int j = 0; j < 8; j++) {
-                sb.append(board.state[i][j] == '\0' ? '.' : board.state[i][j]);
+                sb.append(board.pieceAt(i, j) == '\0' ? '.' : board.pieceAt(i, j));
             }
         }
         // Append current turn
@@ -189,7 +292,7 @@ public class Chess2 extends PApplet {
         for (int i = 0; i < 8; i++) {
             int emptyCount = 0;
             for (int j = 0; j < 8; j++) {
-                char piece = board.state[i][j];
+                char piece = board.pieceAt(i, j);
                 if (piece == '\0') {
                     emptyCount++;
                 } else {
@@ -221,8 +324,8 @@ public class Chess2 extends PApplet {
 
         fen.append(" ");
         if (board.enPassantTarget != null) {
-            int col = board.enPassantTarget[0];
-            int row = board.enPassantTarget[1];
+            int row = board.enPassantTarget[0];
+            int col = board.enPassantTarget[1];
             char file = (char) ('a' + col);
             int rank = 8 - row;
             fen.append(file).append(rank);
@@ -336,10 +439,7 @@ public class Chess2 extends PApplet {
                 if (chessboard.isLegalMove(row, col)) {
                     outcome = chessboard.movePieceForPlayer(row, col);
                     if (outcome.equals(GameOutcome.ONGOING)) {
-                        new Thread(() -> {
-                            outcome = chessboard.movePieceForEngine(engine);
-                            chessboard.computeAllLegalMoves(); // Precompute legal moves for the player's next turn
-                        }).start();
+                        moveForEngine();
                     }
                 } else {
                     chessboard.selectPiece(row, col);
@@ -348,6 +448,32 @@ public class Chess2 extends PApplet {
                 chessboard.resetSelection();
             }
         }
+        redraw();
+    }
+
+    /**
+     * Redraws when the mouse enters or leaves a button, to update its hover color.
+     */
+    @Override
+    public void mouseMoved() {
+        int button = -1;
+        if (mouseX >= BOARD_SIZE + 20 && mouseX <= BOARD_SIZE + 280) {
+            if (mouseY >= BOARD_SIZE - 95 && mouseY <= BOARD_SIZE - 60) button = 0;
+            else if (mouseY >= BOARD_SIZE - 45 && mouseY <= BOARD_SIZE - 10) button = 1;
+        }
+        if (button != hoveredButton) {
+            hoveredButton = button;
+            redraw();
+        }
+    }
+
+    /**
+     * Cancels a running search when the window is closed.
+     */
+    @Override
+    public void exit() {
+        engineService.close();
+        super.exit();
     }
 
     private void drawWrappedText(String str, int x, int y, int maxWidth) {
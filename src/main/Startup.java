@@ -0,0 +1,186 @@
+package main;
+
+import main.chessboard.BoardEnv;
+import main.engine.Engine;
+import main.engine.OpeningBook;
+import main.engine.OpeningBookBuilder;
+import main.engine.nnue.NnueNetwork;
+import main.engine.tablebase.Tablebase;
+import main.engine.tablebase.TablebaseGenerator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Loads the engine assets concurrently and warms up the JIT before the first engine move.
+ *
+ * <p>Started before the sketch, so the opening book, the endgame tables and the network load while
+ * Processing opens its window. At the same time, a throwaway engine searches a few built-in positions,
+ * so move generation, evaluation and search are compiled before the first real search. The time from JVM
+ * start to the first engine move is printed with the load times.
+ *
+ * <p>The JVM startup itself can be shortened with an AppCDS archive. Running this class records one (AppCDS
+ * requires the classes to be packaged in jars):
+ * <pre>
+ *   java -XX:ArchiveClassesAtExit=chess2.jsa -cp chess2.jar:core.jar:sound.jar main.Startup
+ *   java -XX:SharedArchiveFile=chess2.jsa -cp chess2.jar:core.jar:sound.jar main.Chess2
+ * </pre>
+ */
+public class Startup {
+
+    /** Positions searched during the warm-up: opening, middlegame with castling and en passant, endgame. */
+    static final String[] WARM_UP_FENS = {
+            Engine.STARTING_FEN,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 8",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1"
+    };
+    /** Search time per warm-up position in milliseconds. */
+    static final long WARM_UP_TIME = 250;
+
+    private final long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory("startup"));
+    private final StringBuilder report = new StringBuilder();
+    private final AtomicBoolean firstMoveReported = new AtomicBoolean();
+
+    private final CompletableFuture<OpeningBook> openingBook;
+    private final CompletableFuture<Tablebase> tablebase;
+    private final CompletableFuture<NnueNetwork> network;
+    private final CompletableFuture<Void> warmUp;
+
+    private Startup() {
+        openingBook = load("book", () -> {
+            if (!Files.exists(Paths.get(OpeningBookBuilder.DEFAULT_PATH))) {
+                return OpeningBook.load(Engine.OPENINGS_PATH);
+            }
+            try {
+                return OpeningBook.open(Paths.get(OpeningBookBuilder.DEFAULT_PATH));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        tablebase = load("tablebases", () -> {
+            try {
+                return Tablebase.open(Paths.get(TablebaseGenerator.DEFAULT_DIRECTORY));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        network = load("network", () -> {
+            if (!Files.exists(Paths.get(NnueNetwork.DEFAULT_PATH))) return null;
+            try {
+                return NnueNetwork.load(Paths.get(NnueNetwork.DEFAULT_PATH));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        // The warm-up waits for the network, so its inference is compiled as well
+        warmUp = network.handle((net, e) -> net).thenAcceptAsync(this::warmUp, executor);
+    }
+
+    /**
+     * Starts loading the assets and the warm-up in the background.
+     *
+     * @return the startup
+     */
+    public static Startup begin() {
+        return new Startup();
+    }
+
+    private <T> CompletableFuture<T> load(String name, Supplier<T> loader) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            T result = loader.get();
+            log(name, start);
+            return result;
+        }, executor).whenComplete((result, e) -> {
+            if (e != null) e.printStackTrace();
+        });
+    }
+
+    /**
+     * Runs a task in the background, e.g. loading the sounds of the sketch.
+     *
+     * @param name the name in the report
+     * @param task the task
+     * @return a future completing with the task
+     */
+    public CompletableFuture<Void> runAsync(String name, Runnable task) {
+        return load(name, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private void warmUp(NnueNetwork network) {
+        long start = System.nanoTime();
+        Engine engine = new Engine(true);
+        engine.setDebugOutput(false);
+        engine.setNetwork(network);
+        for (String fen : WARM_UP_FENS) {
+            engine.calculateBestMove(new BoardEnv(fen), WARM_UP_TIME);
+        }
+        log("warm-up", start);
+    }
+
+    private synchronized void log(String name, long start) {
+        report.append(report.length() == 0 ? "" : ", ")
+                .append(name).append(' ').append((System.nanoTime() - start) / 1_000_000).append(" ms");
+    }
+
+    /**
+     * Waits for the assets and hands them to an engine. Failed assets are left out.
+     *
+     * @param engine the engine
+     */
+    public void configure(Engine engine) {
+        OpeningBook book = openingBook.exceptionally(e -> null).join();
+        engine.setOpeningBook(book != null ? book : OpeningBook.empty());
+        engine.setTablebase(tablebase.exceptionally(e -> null).join());
+        engine.setNetwork(network.exceptionally(e -> null).join());
+    }
+
+    /**
+     * Waits until the warm-up is finished, so the first search runs compiled code.
+     *
+     * @throws java.util.concurrent.CompletionException if the warm-up failed, with the failure as its cause
+     */
+    public void awaitWarmUp() {
+        warmUp.join();
+    }
+
+    /**
+     * Reports the time from JVM start to the first engine move, once.
+     *
+     * @param searchMillis the duration of the search of the move
+     */
+    public void engineMoved(long searchMillis) {
+        if (firstMoveReported.compareAndSet(false, true)) {
+            synchronized (this) {
+                System.out.printf("Startup: %s; first engine move %d ms after JVM start (search %d ms)%n",
+                        report, System.currentTimeMillis() - jvmStart, searchMillis);
+            }
+        }
+    }
+
+    /**
+     * Loads everything and warms up without a window, e.g. to record an AppCDS archive.
+     */
+    public static void main(String[] args) {
+        Startup startup = begin();
+        startup.configure(new Engine(true));
+        startup.awaitWarmUp();
+        synchronized (startup) {
+            System.out.printf("Startup: %s; ready %d ms after JVM start%n",
+                    startup.report, System.currentTimeMillis() - startup.jvmStart);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package main.bench;
+
+import main.chessboard.BoardEnv;
+import main.engine.Engine;
+import main.engine.SearchLimits;
+
+/**
+ * Searches a fixed set of positions to a fixed depth and prints the total number of nodes, the time and the
+ * nodes per second.
+ *
+ * <p>Every position is searched single-threaded by a fresh engine, so the caches start empty, without
+ * opening book, endgame tables, network or analysis cache, and with the built-in piece values. The node
+ * count is therefore a signature of the search: a change that is not meant to change the search, like a
+ * speed optimization, must leave it identical. The speed is the nodes per second over all positions.
+ *
+ * <p>Usage: {@code Bench [-depth=N]}
+ */
+public class Bench {
+
+    public static final int DEFAULT_DEPTH = 3;
+
+    /** Openings, middlegames with castling, en passant and tactics, and endgames. */
+    static final String[] FENS = {
+            Engine.STARTING_FEN,
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 11",
+            "rq3rk1/ppp2ppp/1bnpb3/3N2B1/3NP3/7P/PPPQ1PP1/2KR3R w - - 7 14",
+            "r1bq1r1k/1pp1n1pp/1p1p4/4p2Q/4Pp2/1BNP4/PPP2PPP/3R1RK1 w - - 2 14",
+            "r3r1k1/2p2ppp/p1p1bn2/8/1q2P3/2NPQN2/PPP3PP/R4RK1 b - - 2 15",
+            "r1bbk1nr/pp3p1p/2n5/1N4p1/2Np1B2/8/PPP2PPP/2KR1B1R w kq - 0 13",
+            "r1bq1rk1/ppp1nppp/4n3/3p3Q/3P4/1BP1B3/PP1N2PP/R4RK1 w - - 1 16",
+            "2rqkb1r/ppp2p2/2npb1p1/1N1Nn2p/2P1PP2/8/PP2B1PP/R1BQK2R b KQ - 0 11",
+            "r1bq1b1r/ppp3kp/2np4/4p1p1/2BPPn2/2N2N2/PPP2PPP/R2Q1RK1 w - - 0 10",
+            "6k1/6p1/6Pp/ppp5/3pn2P/1P3K2/1PP2P2/8 b - - 3 54",
+            "8/8/8/8/5kp1/P7/8/1K1N4 w - - 0 1",
+            "8/3k4/8/8/8/4B3/4KB2/2B5 w - - 0 1"
+    };
+
+    public static void main(String[] args) {
+        int depth = DEFAULT_DEPTH;
+        for (String arg : args) {
+            if (arg.startsWith("-depth=")) {
+                depth = Integer.parseInt(arg.substring(7));
+            } else {
+                System.out.println("Usage: Bench [-depth=N]");
+                return;
+            }
+        }
+        long nodes = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < FENS.length; i++) {
+            Engine engine = new Engine(true);
+            engine.setDebugOutput(false);
+            long positionStart = System.nanoTime();
+            Engine.BestMove bestMove = engine.calculateBestMove(new BoardEnv(FENS[i]),
+                    new SearchLimits(Long.MAX_VALUE, depth, Long.MAX_VALUE), null);
+            long positionNodes = engine.getSearch()._debug_positionsAnalyzed;
+            nodes += positionNodes;
+            System.out.printf("Position %2d/%d: %-7s %9d nodes %6d ms%n", i + 1, FENS.length,
+                    bestMove.move, positionNodes, (System.nanoTime() - positionStart) / 1_000_000);
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        System.out.println("===========================");
+        System.out.printf("Total time (ms) : %d%n", millis);
+        System.out.printf("Nodes searched  : %d%n", nodes);
+        System.out.printf("Nodes/second    : %d%n", nodes * 1000 / millis);
+    }
+}
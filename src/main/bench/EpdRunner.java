@@ -0,0 +1,269 @@
+package main.bench;
+
+import main.DaemonThreadFactory;
+import main.chessboard.BoardEnv;
+import main.chessboard.Move;
+import main.engine.Engine;
+import main.engine.EngineOptions;
+import main.engine.SearchLimits;
+import main.engine.nnue.NnueNetwork;
+import main.engine.tablebase.Tablebase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a test suite of EPD positions with best move (bm) or avoid move (am) operations, e.g. Win at Chess.
+ *
+ * <p>The positions are solved in parallel, each with a fresh engine, under the same time, node or depth
+ * budget. A position counts as solved if the engine plays a best move, or none of the moves to avoid. The
+ * time to solution is the time of the search iteration from which on the engine kept choosing a correct
+ * move. The report lists every position and the solved count with the nodes per second of one thread and
+ * of all threads together.
+ *
+ * <p>Usage: {@code EpdRunner <suite .epd> [-movetime=ms] [-nodes=N] [-depth=N] [-threads=N] [-hash=MB] [-nnue] [-tb]}
+ */
+public class EpdRunner {
+
+    /** Search time per position in milliseconds if no limit is given. */
+    static final long DEFAULT_MOVE_TIME = 1000;
+
+    private final SearchLimits limits;
+    private final int hashSize;
+    private final NnueNetwork network;
+    private final Tablebase tablebase;
+
+    /**
+     * @param limits    the budget of every position
+     * @param hashSize  the evaluation cache of every engine in megabytes, or 0 for the default
+     * @param network   the network shared by all engines, or null
+     * @param tablebase the endgame tables shared by all engines, or null
+     */
+    public EpdRunner(SearchLimits limits, int hashSize, NnueNetwork network, Tablebase tablebase) {
+        this.limits = limits;
+        this.hashSize = hashSize;
+        this.network = network;
+        this.tablebase = tablebase;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (args.length < 1) {
+            System.out.println("Usage: EpdRunner <suite .epd> [-movetime=ms] [-nodes=N] [-depth=N] [-threads=N] [-hash=MB] [-nnue] [-tb]");
+            return;
+        }
+        EngineOptions options = new EngineOptions();
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("-threads=")) threads = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+            else if (!arg.startsWith("-") || !options.parse(arg.substring(1))) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        List<EpdPosition> suite = EpdPosition.readAll(Paths.get(args[0]));
+        new EpdRunner(options.limits(DEFAULT_MOVE_TIME), options.hashSize, options.loadNetwork(),
+                options.openTablebase()).run(suite, threads);
+    }
+
+    /**
+     * Solves the positions in parallel and prints the report.
+     *
+     * @param suite   the positions
+     * @param threads the number of positions solved at the same time
+     */
+    public void run(List<EpdPosition> suite, int threads) throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("epd-worker"));
+        long start = System.currentTimeMillis();
+        List<Future<Result>> futures = new ArrayList<>();
+        for (EpdPosition position : suite) {
+            futures.add(executor.submit(() -> solve(position)));
+        }
+        int solved = 0;
+        long nodes = 0;
+        long searchMillis = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            Result result = futures.get(i).get();
+            EpdPosition position = suite.get(i);
+            if (result.solved) solved++;
+            nodes += result.nodes;
+            searchMillis += result.millis;
+            System.out.printf("%4d %-12s %-8s %s %-16s found %-8s %s %10d nodes%n", i + 1, position.id,
+                    result.solved ? "solved" : "failed", position.bestMoves.isEmpty() ? "am" : "bm",
+                    String.join(" ", position.bestMoves.isEmpty() ? position.avoidMoves : position.bestMoves),
+                    result.move, result.solved ? String.format("%7.2f s", result.timeToSolution / 1000.0) : "      -  ",
+                    result.nodes);
+        }
+        executor.shutdown();
+        long wallMillis = Math.max(1, System.currentTimeMillis() - start);
+        System.out.printf("Solved %d/%d in %.1f s; %d nodes, %d nodes/s per thread, %d nodes/s total%n",
+                solved, suite.size(), wallMillis / 1000.0, nodes, nodes * 1000 / Math.max(1, searchMillis),
+                nodes * 1000 / wallMillis);
+    }
+
+    /**
+     * Solves a position with a fresh engine.
+     *
+     * @param position the position
+     * @return the result
+     */
+    Result solve(EpdPosition position) {
+        Engine engine = new Engine(true);
+        engine.setDebugOutput(false);
+        engine.setNetwork(network);
+        engine.setTablebase(tablebase);
+        if (hashSize > 0) engine.setHashSize(hashSize);
+        BoardEnv board = new BoardEnv(position.fen);
+        List<Move> legalMoves = Engine.generateAllLegalMoves(board);
+        // Time of the first iteration of the current run of correct moves, or -1
+        long[] solvedSince = {-1};
+        long start = System.currentTimeMillis();
+        Engine.BestMove bestMove = engine.calculateBestMove(board, limits, (depth, evaluation, nodes, millis, line) -> {
+            boolean correct = !line.isEmpty() && position.isCorrect(line.get(0), legalMoves);
+            if (!correct) solvedSince[0] = -1;
+            else if (solvedSince[0] < 0) solvedSince[0] = millis;
+        });
+        long millis = System.currentTimeMillis() - start;
+        String move = bestMove == null || bestMove.move == null ? "-" : bestMove.move.toString();
+        boolean solved = bestMove != null && bestMove.move != null && position.isCorrect(move, legalMoves);
+        // A book or tablebase move is found without search iterations
+        long timeToSolution = solvedSince[0] >= 0 ? solvedSince[0] : millis;
+        return new Result(move, solved, timeToSolution, engine.getSearch()._debug_positionsAnalyzed, millis);
+    }
+
+    static class Result {
+        final String move;
+        final boolean solved;
+        final long timeToSolution;
+        final long nodes;
+        final long millis;
+
+        Result(String move, boolean solved, long timeToSolution, long nodes, long millis) {
+            this.move = move;
+            this.solved = solved;
+            this.timeToSolution = timeToSolution;
+            this.nodes = nodes;
+            this.millis = millis;
+        }
+    }
+
+    /**
+     * A position of an EPD test suite.
+     */
+    public static class EpdPosition {
+
+        public final String fen;
+        public final String id;
+        /** The best moves in SAN, or empty. */
+        public final List<String> bestMoves;
+        /** The moves to avoid in SAN, or empty. */
+        public final List<String> avoidMoves;
+
+        EpdPosition(String fen, String id, List<String> bestMoves, List<String> avoidMoves) {
+            this.fen = fen;
+            this.id = id;
+            this.bestMoves = bestMoves;
+            this.avoidMoves = avoidMoves;
+        }
+
+        /**
+         * Reads the positions of an EPD file that have a bm or am operation.
+         *
+         * @param file the file
+         * @return the positions
+         * @throws IOException if the file cannot be read
+         */
+        public static List<EpdPosition> readAll(Path file) throws IOException {
+            List<EpdPosition> positions = new ArrayList<>();
+            for (String line : Files.readAllLines(file)) {
+                EpdPosition position = parse(line);
+                if (position != null) positions.add(position);
+            }
+            return positions;
+        }
+
+        /**
+         * Parses an EPD line: four FEN fields followed by operations like {@code bm Qg6; id "WAC.001";}.
+         *
+         * @param line the line
+         * @return the position, or null if the line has no bm or am operation
+         */
+        public static EpdPosition parse(String line) {
+            String[] fields = line.trim().split("\\s+", 5);
+            if (fields.length < 5) return null;
+            String halfMoveClock = "0";
+            String fullMoveNumber = "1";
+            String id = "";
+            List<String> bestMoves = new ArrayList<>();
+            List<String> avoidMoves = new ArrayList<>();
+            for (String operation : fields[4].split(";")) {
+                String[] tokens = operation.trim().split("\\s+");
+                if (tokens.length < 2) continue;
+                switch (tokens[0]) {
+                    case "bm" -> bestMoves.addAll(List.of(tokens).subList(1, tokens.length));
+                    case "am" -> avoidMoves.addAll(List.of(tokens).subList(1, tokens.length));
+                    case "id" -> id = operation.trim().substring(2).trim().replace("\"", "");
+                    case "hmvc" -> halfMoveClock = tokens[1];
+                    case "fmvn" -> fullMoveNumber = tokens[1];
+                    default -> {
+                    }
+                }
+            }
+            if (bestMoves.isEmpty() && avoidMoves.isEmpty()) return null;
+            String fen = String.join(" ", fields[0], fields[1], fields[2], fields[3], halfMoveClock, fullMoveNumber);
+            return new EpdPosition(fen, id, bestMoves, avoidMoves);
+        }
+
+        /**
+         * @param san        the move chosen by the engine in SAN
+         * @param legalMoves the legal moves of the position, to resolve the moves of the operations
+         * @return true if the move is one of the best moves, or none of the moves to avoid
+         */
+        boolean isCorrect(String san, List<Move> legalMoves) {
+            if (!bestMoves.isEmpty()) {
+                for (String bestMove : bestMoves) {
+                    if (sameMove(san, bestMove, legalMoves)) return true;
+                }
+                return false;
+            }
+            for (String avoidMove : avoidMoves) {
+                if (sameMove(san, avoidMove, legalMoves)) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Compares a move of the engine with a move of the suite, which may be in SAN with a superfluous or
+         * missing disambiguation, or in coordinate notation.
+         */
+        private static boolean sameMove(String san, String expected, List<Move> legalMoves) {
+            Move engineMove = null;
+            for (Move move : legalMoves) {
+                if (move.toString().equals(san)) engineMove = move;
+            }
+            if (engineMove == null) return false;
+            String wanted = strip(expected);
+            if (strip(engineMove.toString()).equals(wanted)) return true;
+            String coordinates = "" + (char) ('a' + engineMove.fromCol) + (8 - engineMove.fromRow)
+                    + (char) ('a' + engineMove.toCol) + (8 - engineMove.toRow);
+            if (wanted.equalsIgnoreCase(coordinates)) return true;
+            // SAN without the disambiguation of the engine, e.g. Nd2 for Nbd2
+            int disambiguation = (engineMove.disambiguationFile != '\0' ? 1 : 0) + (engineMove.disambiguationRank != '\0' ? 1 : 0);
+            String found = strip(engineMove.toString());
+            return disambiguation > 0 && (found.charAt(0) + found.substring(1 + disambiguation)).equals(wanted);
+        }
+
+        private static String strip(String san) {
+            int end = san.length();
+            while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) end--;
+            return san.substring(0, end).replace("0-0", "O-O");
+        }
+    }
+}
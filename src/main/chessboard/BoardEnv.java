@@ -1,13 +1,15 @@
 package main.chessboard;
 
 import main.engine.Engine;
+import main.engine.nnue.NnueAccumulator;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 public class BoardEnv {
-    public final char[][] state = new char[8][8];
+    public final byte[] state = new byte[64]; // Piece code of every square row * 8 + col, see Piece
+    public final long[] pieces = new long[2]; // Squares of the white and of the black pieces, bit row * 8 + col
     public boolean whiteToMove;
     public boolean whiteKingSideCastling;
     public boolean whiteQueenSideCastling;
@@ -18,13 +20,17 @@ public class BoardEnv {
     public int totalHalfMoveCount = 0;
     public List<Move> playedMoves = new ArrayList<>();
     public long zobristHash = 0L;
+    public long pawnHash = 0L; // Zobrist keys of the pawns only
+    public long materialKey = 0L; // Number of pieces of every type, see ZobristTable.pieceCount
     public final Map<Long, Integer> transpositionTable = new java.util.HashMap<>();
     public Integer evaluation;
-    public int pieceValueSum;
+    public int psqtScore; // Packed (midgame, endgame) sum of all piece values and piece-square values, see PieceValues
+    public int phase; // Game phase, PieceValues.TOTAL_PHASE with all pieces on the board
+    public NnueAccumulator accumulator; // Network accumulators, null if not evaluated by a network
     public int[] whiteKingPos;
     public int[] blackKingPos;
 
-    public static int[][] _debug_pieceValues = new int[8][8];
+    public int[][] _debug_pieceValues = new int[8][8];
 
     public BoardEnv() {}
 
@@ -36,7 +42,7 @@ public class BoardEnv {
                 if (Character.isDigit(rows[i].charAt(j))) {
                     offset += Character.getNumericValue(rows[i].charAt(j)) - 1;
                 } else {
-                    state[i][j + offset] = rows[i].charAt(j);
+                    setPiece(i, j + offset, rows[i].charAt(j));
                     if (rows[i].charAt(j) == 'K') {
                         whiteKingPos = new int[]{i, j + offset};
                     } else if (rows[i].charAt(j) == 'k') {
@@ -45,27 +51,39 @@ public class BoardEnv {
                 }
             }
         }
-        whiteToMove = FEN.split(" ")[1].equals("w");
-        whiteKingSideCastling = FEN.split(" ")[2].contains("K");
-        whiteQueenSideCastling = FEN.split(" ")[2].contains("Q");
-        blackKingSideCastling = FEN.split(" ")[2].contains("k");
-        blackQueenSideCastling = FEN.split(" ")[2].contains("q");
-        String epSquare = FEN.split(" ")[3];
+        String[] fields = FEN.trim().split("\\s+");
+        whiteToMove = fields[1].equals("w");
+        whiteKingSideCastling = fields[2].contains("K");
+        whiteQueenSideCastling = fields[2].contains("Q");
+        blackKingSideCastling = fields[2].contains("k");
+        blackQueenSideCastling = fields[2].contains("q");
+        String epSquare = fields[3];
         if (!epSquare.equals("-")) {
-            enPassantTarget = new int[]{epSquare.charAt(0) - 'a', 8 - Integer.parseInt(String.valueOf(epSquare.charAt(1)))};
+            int epRow = 8 - Character.getNumericValue(epSquare.charAt(1));
+            int epCol = epSquare.charAt(0) - 'a';
+            // Like makeMove, only keep the target if an enemy pawn is next to the pawn that moved, so equal positions hash equally
+            int pawnRow = whiteToMove ? epRow + 1 : epRow - 1;
+            char enemyPawn = whiteToMove ? 'P' : 'p';
+            if (epCol < 7 && pieceAt(pawnRow, epCol + 1) == enemyPawn || epCol > 0 && pieceAt(pawnRow, epCol - 1) == enemyPawn) {
+                enPassantTarget = new int[]{epRow, epCol};
+            }
         }
-        halfMoveClock = Integer.parseInt(FEN.split(" ")[4]);
-        int[] evalInfo = Engine.evaluatePosition(this);
-        pieceValueSum = evalInfo[1];
+        // The move counters are optional (EPD)
+        halfMoveClock = fields.length > 4 ? Integer.parseInt(fields[4]) : 0;
+        int fullMoveNumber = fields.length > 5 ? Integer.parseInt(fields[5]) : 1;
+        totalHalfMoveCount = 2 * (fullMoveNumber - 1) + (whiteToMove ? 0 : 1);
+        materialKey = ZobristTable.computeMaterialKey(this);
+        Engine.evaluatePosition(this);
         zobristHash = ZobristTable.computeHash(this);
+        pawnHash = ZobristTable.computePawnHash(this);
     }
 
     public BoardEnv deepCopy() {
         BoardEnv copy = new BoardEnv();
 
-        for (int i = 0; i < 8; i++) {
-            System.arraycopy(this.state[i], 0, copy.state[i], 0, 8);
-        }
+        System.arraycopy(this.state, 0, copy.state, 0, 64);
+        copy.pieces[Piece.WHITE] = this.pieces[Piece.WHITE];
+        copy.pieces[Piece.BLACK] = this.pieces[Piece.BLACK];
         copy.whiteToMove = this.whiteToMove;
         copy.whiteKingSideCastling = this.whiteKingSideCastling;
         copy.whiteQueenSideCastling = this.whiteQueenSideCastling;
@@ -78,12 +96,41 @@ public class BoardEnv {
         copy.totalHalfMoveCount = this.totalHalfMoveCount;
         copy.playedMoves = new ArrayList<>(this.playedMoves);
         copy.zobristHash = this.zobristHash;
+        copy.pawnHash = this.pawnHash;
+        copy.materialKey = this.materialKey;
         copy.transpositionTable.putAll(this.transpositionTable);
         copy.evaluation = this.evaluation;
-        copy.pieceValueSum = this.pieceValueSum;
+        copy.psqtScore = this.psqtScore;
+        copy.phase = this.phase;
+        copy.accumulator = this.accumulator != null ? this.accumulator.copy() : null;
         copy.whiteKingPos = this.whiteKingPos != null ? new int[]{this.whiteKingPos[0], this.whiteKingPos[1]} : null;
         copy.blackKingPos = this.blackKingPos != null ? new int[]{this.blackKingPos[0], this.blackKingPos[1]} : null;
 
         return copy;
     }
+
+    /**
+     * @param row the row of the square
+     * @param col the column of the square
+     * @return the piece character on the square, or '\0' if it is empty
+     */
+    public char pieceAt(int row, int col) {
+        return Piece.toChar(state[row * 8 + col]);
+    }
+
+    /**
+     * Puts a piece on a square or empties it, keeping the piece sets up to date.
+     *
+     * @param row   the row of the square
+     * @param col   the column of the square
+     * @param piece the piece character, or '\0' to empty the square
+     */
+    public void setPiece(int row, int col, char piece) {
+        int sq = row * 8 + col;
+        byte old = state[sq];
+        byte code = Piece.of(piece);
+        if (old != Piece.EMPTY) pieces[Piece.side(old)] &= ~(1L << sq);
+        if (code != Piece.EMPTY) pieces[Piece.side(code)] |= 1L << sq;
+        state[sq] = code;
+    }
 }
@@ -1,9 +1,51 @@
 package main.chessboard;
 
+import main.engine.nnue.NnueAccumulator;
+
 import java.util.*;
 
 public class LegalMoveGenerator {
 
+    /**
+     * Row and column steps of the sliding directions: straight (rook) directions 0 to 3, diagonal (bishop)
+     * directions 4 to 7.
+     */
+    private static final int[][] DIRECTIONS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {-1, -1}, {1, -1}, {-1, 1}};
+    private static final int[][] KNIGHT_STEPS = {{-2, -1}, {-2, 1}, {2, -1}, {2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}};
+    private static final int[][] KING_STEPS = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+
+    /** KNIGHT_TARGETS[sq] are the squares a knight on sq moves to, in the order of KNIGHT_STEPS. */
+    private static final int[][] KNIGHT_TARGETS = new int[64][];
+    /** KING_TARGETS[sq] are the squares a king on sq moves to, in the order of KING_STEPS. */
+    private static final int[][] KING_TARGETS = new int[64][];
+    /** RAYS[sq][direction] are the squares from sq to the edge of the board in one of the DIRECTIONS. */
+    private static final int[][][] RAYS = new int[64][DIRECTIONS.length][];
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            KNIGHT_TARGETS[sq] = targets(sq, KNIGHT_STEPS);
+            KING_TARGETS[sq] = targets(sq, KING_STEPS);
+            for (int d = 0; d < DIRECTIONS.length; d++) {
+                int length = 0;
+                int[] ray = new int[7];
+                int row = sq / 8 + DIRECTIONS[d][0], col = sq % 8 + DIRECTIONS[d][1];
+                while (isNotOutOfBoard(row, col)) {
+                    ray[length++] = row * 8 + col;
+                    row += DIRECTIONS[d][0];
+                    col += DIRECTIONS[d][1];
+                }
+                RAYS[sq][d] = Arrays.copyOf(ray, length);
+            }
+        }
+    }
+
+    private static int[] targets(int sq, int[][] steps) {
+        return Arrays.stream(steps)
+                .filter(step -> isNotOutOfBoard(sq / 8 + step[0], sq % 8 + step[1]))
+                .mapToInt(step -> (sq / 8 + step[0]) * 8 + sq % 8 + step[1])
+                .toArray();
+    }
+
     private LegalMoveGenerator() {}
 
     /**
@@ -16,25 +58,29 @@ public class LegalMoveGenerator {
      */
     public static List<Move> generateLegalMoves(BoardEnv board, int row, int col, boolean skipPostMoveCalculations) {
         List<Move> pseudoMoves = new ArrayList<>();
-        char piece = board.state[row][col];
+        int sq = row * 8 + col;
+        byte piece = board.state[sq];
 
         // Asserts correct player
-        if ((board.whiteToMove && Character.isLowerCase(piece)) || (!board.whiteToMove && Character.isUpperCase(piece))) {
+        if (piece == Piece.EMPTY || Piece.isWhite(piece) != board.whiteToMove) {
             return Collections.emptyList();
         }
 
-        switch (Character.toLowerCase(piece)) {
-            case 'p' -> generatePawnMoves(board, row, col, pseudoMoves);
-            case 'r' -> generateRookMoves(board, row, col, pseudoMoves);
-            case 'n' -> generateKnightMoves(board, row, col, pseudoMoves);
-            case 'b' -> generateBishopMoves(board, row, col, pseudoMoves);
-            case 'q' -> generateQueenMoves(board, row, col, pseudoMoves);
-            case 'k' -> generateKingMoves(board, row, col, pseudoMoves);
+        switch (Piece.type(piece)) {
+            case Piece.PAWN -> generatePawnMoves(board, row, col, pseudoMoves);
+            case Piece.ROOK -> generateSlidingMoves(board, sq, pseudoMoves, 0, 4);
+            case Piece.KNIGHT -> generateSteppingMoves(board, sq, pseudoMoves, KNIGHT_TARGETS[sq]);
+            case Piece.BISHOP -> generateSlidingMoves(board, sq, pseudoMoves, 4, 8);
+            case Piece.QUEEN -> generateSlidingMoves(board, sq, pseudoMoves, 0, 8);
+            case Piece.KING -> generateKingMoves(board, sq, pseudoMoves);
         }
         // Filter out moves that leave the king in check
+        // (these positions are never evaluated, so the network accumulators are not updated)
+        NnueAccumulator accumulator = board.accumulator;
+        board.accumulator = null;
         List<Move> legalMoves = new ArrayList<>();
         for (Move move : pseudoMoves) {
-            MakeMoveResult result = Chessboard.makeMove(board, move, skipPostMoveCalculations);
+            MakeMoveResult result = MoveMaker.makeMove(board, move, skipPostMoveCalculations);
             if (!isKingInCheck(board, !board.whiteToMove)) { // Check if move leaves own king in check
                 if (isKingInCheck(board, board.whiteToMove)) { // Check if move checks the opponent's king
                     move.setCheck();
@@ -44,8 +90,9 @@ public class LegalMoveGenerator {
                 }
                 legalMoves.add(move);
             }
-            Chessboard.unmakeMove(board, move, result.undoInfo);
+            MoveMaker.unmakeMove(board, move, result.undoInfo);
         }
+        board.accumulator = accumulator;
         return legalMoves;
     }
 
@@ -102,52 +149,36 @@ public class LegalMoveGenerator {
             if (newRow == epRow && Math.abs(col - epCol) == 1) {
                 // Check that there is an enemy pawn in the correct position
                 int capturedPawnRow = board.whiteToMove ? newRow + 1 : newRow - 1;
-                if (isNotOutOfBoard(capturedPawnRow, epCol) && Character.toLowerCase(board.state[capturedPawnRow][epCol]) == 'p') {
+                if (isNotOutOfBoard(capturedPawnRow, epCol)
+                        && Piece.type(board.state[capturedPawnRow * 8 + epCol]) == Piece.PAWN) {
                     moves.add(new Move(board.whiteToMove ? 'P' : 'p', row, col, newRow, epCol, true));
                 }
             }
         }
     }
 
-    private static void generateRookMoves(BoardEnv board, int row, int col, List<Move> moves) {
-        generateSlidingMoves(board, row, col, moves, new int[][]{{1, 0}, {-1, 0}, {0, 1}, {0, -1}}, board.whiteToMove ? 'R' : 'r');
-    }
-
-    private static void generateBishopMoves(BoardEnv board, int row, int col, List<Move> moves) {
-        generateSlidingMoves(board, row, col, moves, new int[][]{{1, 1}, {-1, -1}, {1, -1}, {-1, 1}}, board.whiteToMove ? 'B' : 'b');
-    }
-
-    private static void generateQueenMoves(BoardEnv board, int row, int col, List<Move> moves) {
-        generateSlidingMoves(board, row, col, moves, new int[][]{{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {-1, -1}, {1, -1}, {-1, 1}}, board.whiteToMove ? 'Q' : 'q');
-    }
-
-    private static void generateKnightMoves(BoardEnv board, int row, int col, List<Move> moves) {
-        int[][] knightMoves = {{-2, -1}, {-2, 1}, {2, -1}, {2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}};
-        for (int[] move : knightMoves) {
-            int newRow = row + move[0];
-            int newCol = col + move[1];
-            if (isValid(board, row, col, newRow, newCol)) {
-                boolean capture = !isEmpty(board, newRow, newCol);
-                moves.add(new Move(board.whiteToMove ? 'N' : 'n', row, col, newRow, newCol, capture));
+    /**
+     * Generates the moves of a knight or a king (without castling) to its precomputed target squares.
+     */
+    private static void generateSteppingMoves(BoardEnv board, int sq, List<Move> moves, int[] targets) {
+        byte piece = board.state[sq];
+        boolean white = Piece.isWhite(piece);
+        for (int target : targets) {
+            byte occupant = board.state[target];
+            if (occupant == Piece.EMPTY || Piece.isWhite(occupant) != white) {
+                moves.add(new Move(Piece.toChar(piece), sq / 8, sq % 8, target / 8, target % 8, occupant != Piece.EMPTY));
             }
         }
     }
 
-    private static void generateKingMoves(BoardEnv board, int row, int col, List<Move> moves) {
-        int[][] kingMoves = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
-        for (int[] move : kingMoves) {
-            int newRow = row + move[0];
-            int newCol = col + move[1];
-            if (isValid(board, row, col, newRow, newCol)) {
-                boolean capture = !isEmpty(board, newRow, newCol);
-                moves.add(new Move(board.whiteToMove ? 'K' : 'k', row, col, newRow, newCol, capture));
-            }
-        }
+    private static void generateKingMoves(BoardEnv board, int sq, List<Move> moves) {
+        generateSteppingMoves(board, sq, moves, KING_TARGETS[sq]);
+        int row = sq / 8, col = sq % 8;
         // Castling moves
         // Only add castling moves if king is in its original position and not in check
         boolean kingInCheck = isSquareAttacked(board, row, col, !board.whiteToMove);
         if (kingInCheck) return;
-        if (board.state[row][col] == 'K' && row == 7 && col == 4) {
+        if (board.state[sq] == Piece.KING && row == 7 && col == 4) {
             // White kingside castling
             if (board.whiteKingSideCastling &&
                     isEmpty(board, 7, 5) && isEmpty(board, 7, 6) &&
@@ -162,7 +193,7 @@ public class LegalMoveGenerator {
                     !isSquareAttacked(board, 7, 2, false)) {
                 moves.add(new Move('K', row, col, 7, 2, false));
             }
-        } else if (board.state[row][col] == 'k' && row == 0 && col == 4) {
+        } else if (board.state[sq] == Piece.code(Piece.KING, false) && row == 0 && col == 4) {
             // Black kingside castling
             if (board.blackKingSideCastling &&
                     isEmpty(board, 0, 5) && isEmpty(board, 0, 6) &&
@@ -180,35 +211,38 @@ public class LegalMoveGenerator {
         }
     }
 
-    private static void generateSlidingMoves(BoardEnv board, int row, int col, List<Move> moves, int[][] directions, char piece) {
-        for (int[] dir : directions) {
-            int newRow = row + dir[0];
-            int newCol = col + dir[1];
-            while (isNotOutOfBoard(newRow, newCol) && isEmpty(board, newRow, newCol)) {
-                moves.add(new Move(piece, row, col, newRow, newCol, false));
-                newRow += dir[0];
-                newCol += dir[1];
-            }
-            if (isValid(board, row, col, newRow, newCol)) {
-                moves.add(new Move(piece, row, col, newRow, newCol, true));
+    /**
+     * Generates the moves of a sliding piece along the precomputed rays of some of the {@link #DIRECTIONS}.
+     */
+    private static void generateSlidingMoves(BoardEnv board, int sq, List<Move> moves, int firstDirection, int lastDirection) {
+        byte piece = board.state[sq];
+        boolean white = Piece.isWhite(piece);
+        for (int d = firstDirection; d < lastDirection; d++) {
+            for (int target : RAYS[sq][d]) {
+                byte occupant = board.state[target];
+                if (occupant == Piece.EMPTY) {
+                    moves.add(new Move(Piece.toChar(piece), sq / 8, sq % 8, target / 8, target % 8, false));
+                    continue;
+                }
+                if (Piece.isWhite(occupant) != white) {
+                    moves.add(new Move(Piece.toChar(piece), sq / 8, sq % 8, target / 8, target % 8, true));
+                }
+                break;
             }
         }
     }
 
-    private static boolean isValid(BoardEnv board, int row, int col, int newRow, int newCol) {
-        return isNotOutOfBoard(newRow, newCol) && (isEmpty(board, newRow, newCol) || isNotOwnPiece(board, row, col, newRow, newCol));
-    }
-
     private static boolean isNotOutOfBoard(int newRow, int newCol) {
         return newRow >= 0 && newRow < 8 && newCol >= 0 && newCol < 8;
     }
 
     private static boolean isEmpty(BoardEnv board, int newRow, int newCol) {
-        return board.state[newRow][newCol] == '\0';
+        return board.state[newRow * 8 + newCol] == Piece.EMPTY;
     }
 
     public static boolean isNotOwnPiece(BoardEnv board, int row, int col, int newRow, int newCol) {
-        return Character.isLetter(board.state[newRow][newCol]) && Character.isUpperCase(board.state[row][col]) != Character.isUpperCase(board.state[newRow][newCol]);
+        byte target = board.state[newRow * 8 + newCol];
+        return target != Piece.EMPTY && Piece.isWhite(board.state[row * 8 + col]) != Piece.isWhite(target);
     }
 
     /**
@@ -235,70 +269,31 @@ public class LegalMoveGenerator {
      */
     private static boolean isSquareAttacked(BoardEnv board, int targetRow, int targetCol, boolean byWhite) {
         int pawnDir = byWhite ? 1 : -1;
-
-        // Straight rays — check first square for rook/queen/king, then continue for rook/queen
-        for (int[] d : new int[][]{{1, 0}, {-1, 0}, {0, 1}, {0, -1}}) {
-            int rr = targetRow + d[0], cc = targetCol + d[1];
-            if (!isNotOutOfBoard(rr, cc)) continue;
-            char piece = board.state[rr][cc];
-            if (piece != '\0') {
-                if (Character.isUpperCase(piece) == byWhite) {
-                    char p = Character.toLowerCase(piece);
-                    if (p == 'r' || p == 'q' || p == 'k') return true;
-                }
-                continue; // blocked, no need to continue ray
-            }
-            // First square empty — continue ray from second square for rook/queen only
-            rr += d[0]; cc += d[1];
-            while (isNotOutOfBoard(rr, cc)) {
-                piece = board.state[rr][cc];
-                if (piece != '\0') {
-                    if (Character.isUpperCase(piece) == byWhite) {
-                        char p = Character.toLowerCase(piece);
-                        if (p == 'r' || p == 'q') return true;
+        int[][] rays = RAYS[targetRow * 8 + targetCol];
+        byte[] state = board.state;
+
+        // Rays — the first square may hold a king (or a pawn on a diagonal), every square a rook, bishop or queen
+        for (int d = 0; d < DIRECTIONS.length; d++) {
+            boolean diagonal = d >= 4;
+            int[] ray = rays[d];
+            for (int i = 0; i < ray.length; i++) {
+                byte piece = state[ray[i]];
+                if (piece == Piece.EMPTY) continue;
+                if (Piece.isWhite(piece) == byWhite) {
+                    int type = Piece.type(piece);
+                    if (type == Piece.QUEEN || type == (diagonal ? Piece.BISHOP : Piece.ROOK)) return true;
+                    if (i == 0 && (type == Piece.KING || diagonal && type == Piece.PAWN && DIRECTIONS[d][0] == pawnDir)) {
+                        return true;
                     }
-                    break;
                 }
-                rr += d[0]; cc += d[1];
-            }
-        }
-
-        // Diagonal rays — check first square for bishop/queen/king/pawn, then continue for bishop/queen
-        for (int[] d : new int[][]{{1, 1}, {1, -1}, {-1, 1}, {-1, -1}}) {
-            int rr = targetRow + d[0], cc = targetCol + d[1];
-            if (!isNotOutOfBoard(rr, cc)) continue;
-            char piece = board.state[rr][cc];
-            if (piece != '\0') {
-                if (Character.isUpperCase(piece) == byWhite) {
-                    char p = Character.toLowerCase(piece);
-                    if (p == 'b' || p == 'q' || p == 'k') return true;
-                    if (p == 'p' && d[0] == pawnDir) return true;
-                }
-                continue; // blocked
-            }
-            // First square empty — continue ray from second square for bishop/queen only
-            rr += d[0]; cc += d[1];
-            while (isNotOutOfBoard(rr, cc)) {
-                piece = board.state[rr][cc];
-                if (piece != '\0') {
-                    if (Character.isUpperCase(piece) == byWhite) {
-                        char p = Character.toLowerCase(piece);
-                        if (p == 'b' || p == 'q') return true;
-                    }
-                    break;
-                }
-                rr += d[0]; cc += d[1];
+                break; // blocked
             }
         }
 
         // Knights — L-shapes only, no sliding
-        for (int[] d : new int[][]{{-2, -1}, {-2, 1}, {2, -1}, {2, 1}, {-1, -2}, {1, -2}, {-1, 2}, {1, 2}}) {
-            int rr = targetRow + d[0], cc = targetCol + d[1];
-            if (!isNotOutOfBoard(rr, cc)) continue;
-            char piece = board.state[rr][cc];
-            if (piece != '\0' && Character.isUpperCase(piece) == byWhite && Character.toLowerCase(piece) == 'n') {
-                return true;
-            }
+        byte knight = Piece.code(Piece.KNIGHT, byWhite);
+        for (int sq : KNIGHT_TARGETS[targetRow * 8 + targetCol]) {
+            if (state[sq] == knight) return true;
         }
 
         return false;
@@ -311,15 +306,10 @@ public class LegalMoveGenerator {
      * @return the game outcome
      */
     public static GameOutcome determineCheckmateOrStalemate(BoardEnv board) {
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                char piece = board.state[row][col];
-                if (piece == '\0') continue;
-                if (board.whiteToMove == Character.isUpperCase(piece)) {
-                    List<Move> moves = generateLegalMoves(board, row, col, true);
-                    if (!moves.isEmpty()) return GameOutcome.ONGOING; // The player has at least one legal move
-                }
-            }
+        for (long set = board.pieces[board.whiteToMove ? Piece.WHITE : Piece.BLACK]; set != 0; set &= set - 1) {
+            int sq = Long.numberOfTrailingZeros(set);
+            List<Move> moves = generateLegalMoves(board, sq / 8, sq % 8, true);
+            if (!moves.isEmpty()) return GameOutcome.ONGOING; // The player has at least one legal move
         }
         if (isKingInCheck(board, board.whiteToMove)) {
             return board.whiteToMove ? GameOutcome.CHECKMATE_WHITE : GameOutcome.CHECKMATE_BLACK;
@@ -0,0 +1,461 @@
+package main.chessboard;
+
+import main.engine.PieceValues;
+import main.engine.nnue.NnueAccumulator;
+
+/**
+ * Makes and unmakes moves on a {@link BoardEnv}: moves the pieces, updates the castling rights, the en passant
+ * target, the move counters and all incrementally updated state, and detects the end of the game.
+ *
+ * <p>Has no dependency on Processing or Swing, so the engine and the headless tools can run without them;
+ * the sketch's {@link Chessboard} uses it for the moves it plays.
+ */
+public class MoveMaker {
+
+    /** Pieces of which a single one is sufficient material. */
+    private static final char[] MATING_MATERIAL = {'P', 'R', 'Q', 'p', 'r', 'q'};
+
+    private MoveMaker() {}
+
+    /**
+     * Moves a piece for either the player or the engine.
+     *
+     * @param board the board state
+     * @param move the move
+     * @param skipPostMoveCalculations for skipping post move calculations (when determining checkmate or stalemate)
+     *
+     * @return the undo info for undoing the move and the game outcome
+     */
+    public static MakeMoveResult makeMove(BoardEnv board, Move move, boolean skipPostMoveCalculations) {
+        char capturedPiece = '\0';
+        UndoInfo undoInfo = new UndoInfo(board, '\0');
+        undoInfo.didPostMoveCalculations = !skipPostMoveCalculations;
+
+        // Remove old rights from zobrist hash (after the undo info saved the complete hash)
+        updateZobristHashRights(board);
+        // Check for castling move
+        if (Character.toLowerCase(move.piece) == 'k' && Math.abs(move.toCol - move.fromCol) == 2) {
+            board.setPiece(move.toRow, move.toCol, move.piece);
+            board.setPiece(move.fromRow, move.fromCol, '\0');
+            if (move.toCol == 6) { // kingside castling
+                capturedPiece = board.pieceAt(move.toRow, 7); // not really captured, but for rights update
+                board.setPiece(move.toRow, 5, move.piece == 'K' ? 'R' : 'r');
+                board.setPiece(move.toRow, 7, '\0');
+            } else if (move.toCol == 2) { // queenside castling
+                capturedPiece = board.pieceAt(move.toRow, 0); // not really captured, but for rights update
+                board.setPiece(move.toRow, 3, move.piece == 'K' ? 'R' : 'r');
+                board.setPiece(move.toRow, 0, '\0');
+            }
+        } else if (Character.toLowerCase(move.piece) == 'p'
+                && move.fromCol != move.toCol
+                && board.enPassantTarget != null
+                && move.toRow == board.enPassantTarget[0]
+                && move.toCol == board.enPassantTarget[1]) {
+            // En passant capture
+            undoInfo.wasEnPassant = true;
+            board.setPiece(move.toRow, move.toCol, move.piece);
+            board.setPiece(move.fromRow, move.fromCol, '\0');
+
+            int capturedRow = (move.piece == 'P') ? move.toRow + 1 : move.toRow - 1;
+            capturedPiece = board.pieceAt(capturedRow, move.toCol);
+            undoInfo.capturedPawnPos = new int[]{capturedRow, move.toCol};
+            board.setPiece(capturedRow, move.toCol, '\0');
+        } else {
+            capturedPiece = board.pieceAt(move.toRow, move.toCol);
+            board.setPiece(move.toRow, move.toCol, move.piece);
+            board.setPiece(move.fromRow, move.fromCol, '\0');
+        }
+
+        undoInfo.capturedPiece = capturedPiece;
+
+        // Promotion
+        if ((move.piece == 'P' && move.toRow == 0) || (move.piece == 'p' && move.toRow == 7)) {
+            undoInfo.wasPromotion = true;
+            // The player chooses the piece in movePieceForPlayer, a move without one promotes to a queen
+            char promotedPiece = move.promotionPiece != '\0' ? move.promotionPiece : (board.whiteToMove ? 'Q' : 'q');
+            board.setPiece(move.toRow, move.toCol, promotedPiece);
+        }
+
+        // Update king positions
+        if (move.piece == 'K') {
+            board.whiteKingPos = new int[]{move.toRow, move.toCol};
+        } else if (move.piece == 'k') {
+            board.blackKingPos = new int[]{move.toRow, move.toCol};
+        }
+
+        updateZobristHash(board, move, undoInfo);
+        updateEvaluation(board, move, undoInfo);
+        updateMaterialKey(board, move, undoInfo);
+        if (board.accumulator != null) updateAccumulator(board, move, undoInfo, false);
+
+        // Change player
+        board.whiteToMove = !board.whiteToMove;
+
+        if (skipPostMoveCalculations) {
+            // Rights are not updated, so the hash keeps the old ones
+            updateZobristHashRights(board);
+            return new MakeMoveResult(GameOutcome.ONGOING, undoInfo);
+        }
+
+        GameOutcome outcome = postMoveCalculations(board, move, capturedPiece);
+
+        undoInfo.postMoveZobristHash = board.zobristHash;
+
+        return new MakeMoveResult(outcome, undoInfo);
+    }
+
+    /**
+     *  Performs all post-move calculations
+     *
+     * @param move the move that has been played
+     * @param capturedPiece the char of the captured piece or '\0' if no piece was captured
+     * @return the game outcome
+     */
+    private static GameOutcome postMoveCalculations(BoardEnv board, Move move, char capturedPiece) {
+        // Add played move and update half move count
+        board.playedMoves.add(move);
+        board.totalHalfMoveCount++;
+
+        // Update castling rights and en passant target
+        updateRightsAndEnPassant(board, move, capturedPiece);
+
+        // Update half-move clock: reset if a pawn move or capture occurred, otherwise increment.
+        if (Character.toLowerCase(move.piece) == 'p' || capturedPiece != '\0') {
+            board.halfMoveClock = 0;
+        } else {
+            board.halfMoveClock++;
+        }
+
+        // Update position repetition count
+        board.transpositionTable.merge(board.zobristHash, 1, Integer::sum);
+
+        // Check for draw conditions
+        if (board.halfMoveClock >= 100) {
+            return GameOutcome.FIFTY_MOVE_RULE;
+        }
+        if (board.transpositionTable.get(board.zobristHash) >= 3) {
+            return GameOutcome.THREE_FOLD_REPETITION;
+        }
+        if (insufficientMaterial(board)) {
+            return GameOutcome.INSUFFICIENT_MATERIAL;
+        }
+
+        // Check for checkmate or stalemate
+        return LegalMoveGenerator.determineCheckmateOrStalemate(board);
+    }
+
+    /**
+     * Update castling rights and en passant target based on the move performed.
+     *
+     * @param move the move that has been played
+     * @param capturedPiece the char of the captured piece or '\0' if no piece was captured
+     */
+    public static void updateRightsAndEnPassant(BoardEnv board, Move move, char capturedPiece) {
+        char movingPiece = board.pieceAt(move.toRow, move.toCol);
+        // For kings: remove castling rights if moved
+        if (movingPiece == 'K') {
+            board.whiteKingSideCastling = false;
+            board.whiteQueenSideCastling = false;
+        } else if (movingPiece == 'k') {
+            board.blackKingSideCastling = false;
+            board.blackQueenSideCastling = false;
+        }
+        // For rooks: if rook moved, remove corresponding rights
+        if (movingPiece == 'R') {
+            if (move.fromRow == 7 && move.fromCol == 0) {
+                board.whiteQueenSideCastling = false;
+            }
+            if (move.fromRow == 7 && move.fromCol == 7) {
+                board.whiteKingSideCastling = false;
+            }
+        } else if (movingPiece == 'r') {
+            if (move.fromRow == 0 && move.fromCol == 0) {
+                board.blackQueenSideCastling = false;
+            }
+            if (move.fromRow == 0 && move.fromCol == 7) {
+                board.blackKingSideCastling = false;
+            }
+        }
+        // If a rook is captured from its original square, update castling rights
+        if (capturedPiece == 'R') {
+            if (move.toRow == 7 && move.toCol == 0) {
+                board.whiteQueenSideCastling = false;
+            }
+            if (move.toRow == 7 && move.toCol == 7) {
+                board.whiteKingSideCastling = false;
+            }
+        } else if (capturedPiece == 'r') {
+            if (move.toRow == 0 && move.toCol == 0) {
+                board.blackQueenSideCastling = false;
+            }
+            if (move.toRow == 0 && move.toCol == 7) {
+                board.blackKingSideCastling = false;
+            }
+        }
+        // En passant: if pawn moved two squares forward having an adjacent enemy pawn, set en passant target, else clear.
+        if (Character.toLowerCase(movingPiece) == 'p' && Math.abs(move.toRow - move.fromRow) == 2
+            && (move.toCol < 7 && board.pieceAt(move.toRow, move.toCol+1) == (Character.isUpperCase(movingPiece) ? 'p' : 'P')
+                || move.toCol > 0 && board.pieceAt(move.toRow, move.toCol-1) == (Character.isUpperCase(movingPiece) ? 'p' : 'P'))) {
+            int epRow = (move.fromRow + move.toRow) / 2;
+            board.enPassantTarget = new int[]{epRow, move.fromCol};
+        } else {
+            board.enPassantTarget = null;
+        }
+
+        // Insert new rights into zobrist hash
+        updateZobristHashRights(board);
+    }
+
+    /**
+     * Updates the Zobrist hash and the pawn hash incrementally for a given move.
+     * Must be called after castling rights and en passant target have been
+     * removed from the hash, but before the new rights are added.
+     *
+     * <p>Handles all special cases:
+     * <ul>
+     *   <li>Normal moves — removes piece from origin, places it on destination</li>
+     *   <li>Captures — removes the captured piece from the hash</li>
+     *   <li>En passant — removes the captured pawn from its actual square</li>
+     *   <li>Promotion — places the promoted piece instead of the pawn</li>
+     *   <li>Castling — additionally moves the rook</li>
+     *   <li>Side to move — always toggled</li>
+     * </ul>
+     *
+     * @param board      the board state whose {@code zobristHash} and {@code pawnHash} are updated in-place
+     * @param move       the move being made
+     * @param undoInfo   the undo info containing {@code wasEnPassant} and
+     *                   {@code capturedPawnPos} for en passant detection,
+     *                   and {@code capturedPiece} for capture detection
+     */
+    private static void updateZobristHash(BoardEnv board, Move move, UndoInfo undoInfo) {
+        // Remove moving piece from origin square
+        long key = ZobristTable.PIECE_SQUARE[ZobristTable.pieceIndex(move.piece)][move.fromRow * 8 + move.fromCol];
+        board.zobristHash ^= key;
+        if (Character.toLowerCase(move.piece) == 'p') board.pawnHash ^= key;
+
+        boolean castling = Character.toLowerCase(move.piece) == 'k' && Math.abs(move.toCol - move.fromCol) == 2;
+
+        // Remove captured piece (when castling, the rook is only recorded for the rights update)
+        if (undoInfo.capturedPiece != '\0' && !castling) {
+            int capturedSq = undoInfo.wasEnPassant
+                    ? undoInfo.capturedPawnPos[0] * 8 + undoInfo.capturedPawnPos[1]
+                    : move.toRow * 8 + move.toCol;
+            key = ZobristTable.PIECE_SQUARE[ZobristTable.pieceIndex(undoInfo.capturedPiece)][capturedSq];
+            board.zobristHash ^= key;
+            if (Character.toLowerCase(undoInfo.capturedPiece) == 'p') board.pawnHash ^= key;
+        }
+
+        // Place piece on destination (promotion: the promoted piece is already on the board)
+        char placedPiece = board.pieceAt(move.toRow, move.toCol);
+        key = ZobristTable.PIECE_SQUARE[ZobristTable.pieceIndex(placedPiece)][move.toRow * 8 + move.toCol];
+        board.zobristHash ^= key;
+        if (Character.toLowerCase(placedPiece) == 'p') board.pawnHash ^= key;
+
+        // Castling: additionally move the rook
+        if (castling) {
+            boolean kingside = move.toCol == 6;
+            int rookFromCol = kingside ? 7 : 0;
+            int rookToCol   = kingside ? 5 : 3;
+            char rook = Character.isUpperCase(move.piece) ? 'R' : 'r';
+            board.zobristHash ^= ZobristTable.PIECE_SQUARE[ZobristTable.pieceIndex(rook)][move.toRow * 8 + rookFromCol];
+            board.zobristHash ^= ZobristTable.PIECE_SQUARE[ZobristTable.pieceIndex(rook)][move.toRow * 8 + rookToCol];
+        }
+
+        // Toggle side to move
+        board.zobristHash ^= ZobristTable.SIDE_TO_MOVE;
+    }
+
+    /**
+     * Updates the piece-square score and the game phase incrementally for a given move.
+     * Must be called after the pieces have been moved on the board.
+     *
+     * @param board    the board state whose {@code psqtScore} and {@code phase} are updated in-place
+     * @param move     the move being made
+     * @param undoInfo the undo info of the move, see {@link #updateZobristHash}
+     */
+    private static void updateEvaluation(BoardEnv board, Move move, UndoInfo undoInfo) {
+        int[][] pieceSquare = PieceValues.PIECE_SQUARE;
+        boolean castling = Character.toLowerCase(move.piece) == 'k' && Math.abs(move.toCol - move.fromCol) == 2;
+        int moving = ZobristTable.pieceIndex(move.piece);
+        int placed = ZobristTable.pieceIndex(board.pieceAt(move.toRow, move.toCol));
+
+        int score = board.psqtScore - pieceSquare[moving][move.fromRow * 8 + move.fromCol]
+                + pieceSquare[placed][move.toRow * 8 + move.toCol];
+        int phase = board.phase + PieceValues.PHASE[placed] - PieceValues.PHASE[moving];
+
+        if (undoInfo.capturedPiece != '\0' && !castling) {
+            int captured = ZobristTable.pieceIndex(undoInfo.capturedPiece);
+            int capturedSq = undoInfo.wasEnPassant
+                    ? undoInfo.capturedPawnPos[0] * 8 + undoInfo.capturedPawnPos[1]
+                    : move.toRow * 8 + move.toCol;
+            score -= pieceSquare[captured][capturedSq];
+            phase -= PieceValues.PHASE[captured];
+        }
+
+        if (castling) {
+            int rook = ZobristTable.pieceIndex(Character.isUpperCase(move.piece) ? 'R' : 'r');
+            boolean kingside = move.toCol == 6;
+            score += pieceSquare[rook][move.toRow * 8 + (kingside ? 5 : 3)]
+                    - pieceSquare[rook][move.toRow * 8 + (kingside ? 7 : 0)];
+        }
+
+        board.psqtScore = score;
+        board.phase = phase;
+    }
+
+    /**
+     * Updates the material key incrementally for a given move. Only captures and promotions change it.
+     * Must be called after the pieces have been moved on the board.
+     *
+     * @param board    the board state whose {@code materialKey} is updated in-place
+     * @param move     the move being made
+     * @param undoInfo the undo info of the move, see {@link #updateZobristHash}
+     */
+    private static void updateMaterialKey(BoardEnv board, Move move, UndoInfo undoInfo) {
+        boolean castling = Character.toLowerCase(move.piece) == 'k' && Math.abs(move.toCol - move.fromCol) == 2;
+        if (undoInfo.capturedPiece != '\0' && !castling) {
+            // An en passant capture takes a pawn, which is counted independently of its square
+            board.materialKey -= ZobristTable.materialUnit(undoInfo.capturedPiece, move.toRow, move.toCol);
+        }
+        if (undoInfo.wasPromotion) {
+            board.materialKey += ZobristTable.materialUnit(board.pieceAt(move.toRow, move.toCol), move.toRow, move.toCol)
+                    - ZobristTable.materialUnit(move.piece, move.fromRow, move.fromCol);
+        }
+    }
+
+    /**
+     * Updates the network accumulators incrementally for a given move, or reverts the update.
+     * Must be called while the pieces are on their squares after the move.
+     *
+     * @param board    the board state whose {@code accumulator} is updated in-place
+     * @param move     the move being made or unmade
+     * @param undoInfo the undo info of the move, see {@link #updateZobristHash}
+     * @param undo     true to revert the move
+     */
+    private static void updateAccumulator(BoardEnv board, Move move, UndoInfo undoInfo, boolean undo) {
+        NnueAccumulator accumulator = board.accumulator;
+        boolean castling = Character.toLowerCase(move.piece) == 'k' && Math.abs(move.toCol - move.fromCol) == 2;
+
+        accumulator.update(move.piece, move.fromRow * 8 + move.fromCol, undo);
+        accumulator.update(board.pieceAt(move.toRow, move.toCol), move.toRow * 8 + move.toCol, !undo);
+
+        if (undoInfo.capturedPiece != '\0' && !castling) {
+            int capturedSq = undoInfo.wasEnPassant
+                    ? undoInfo.capturedPawnPos[0] * 8 + undoInfo.capturedPawnPos[1]
+                    : move.toRow * 8 + move.toCol;
+            accumulator.update(undoInfo.capturedPiece, capturedSq, undo);
+        }
+
+        if (castling) {
+            char rook = Character.isUpperCase(move.piece) ? 'R' : 'r';
+            boolean kingside = move.toCol == 6;
+            accumulator.update(rook, move.toRow * 8 + (kingside ? 7 : 0), undo);
+            accumulator.update(rook, move.toRow * 8 + (kingside ? 5 : 3), !undo);
+        }
+    }
+
+    private static void updateZobristHashRights(BoardEnv board) {
+        if (board.whiteKingSideCastling)  board.zobristHash ^= ZobristTable.CASTLING[0];
+        if (board.whiteQueenSideCastling) board.zobristHash ^= ZobristTable.CASTLING[1];
+        if (board.blackKingSideCastling)  board.zobristHash ^= ZobristTable.CASTLING[2];
+        if (board.blackQueenSideCastling) board.zobristHash ^= ZobristTable.CASTLING[3];
+        if (board.enPassantTarget != null) {
+            board.zobristHash ^= ZobristTable.EN_PASSANT_FILE[board.enPassantTarget[1]];
+        }
+    }
+
+    public static void unmakeMove(BoardEnv board, Move move, UndoInfo undo) {
+        // Pieces are still on their new squares
+        if (board.accumulator != null) updateAccumulator(board, move, undo, true);
+
+        // Restore simple fields
+        board.whiteToMove            = undo.whiteToMove;
+        board.whiteKingSideCastling  = undo.whiteKingSideCastling;
+        board.whiteQueenSideCastling = undo.whiteQueenSideCastling;
+        board.blackKingSideCastling  = undo.blackKingSideCastling;
+        board.blackQueenSideCastling = undo.blackQueenSideCastling;
+        board.halfMoveClock          = undo.halfMoveClock;
+        board.enPassantTarget        = undo.enPassantTarget;
+        board.whiteKingPos           = undo.whiteKingPos;
+        board.blackKingPos           = undo.blackKingPos;
+        board.zobristHash            = undo.preMoveZobristHash;
+        board.pawnHash               = undo.preMovePawnHash;
+        board.materialKey            = undo.materialKey;
+        board.psqtScore              = undo.psqtScore;
+        board.phase                  = undo.phase;
+        board.totalHalfMoveCount     = undo.totalHalfMoveCount;
+
+        // Restore pieces
+        if (Character.toLowerCase(move.piece) == 'k' && Math.abs(move.toCol - move.fromCol) == 2) {
+            // Undo castling
+            board.setPiece(move.fromRow, move.fromCol, move.piece);
+            board.setPiece(move.toRow, move.toCol, '\0');
+            if (move.toCol == 6) { // kingside
+                board.setPiece(move.toRow, 7, move.piece == 'K' ? 'R' : 'r');
+                board.setPiece(move.toRow, 5, '\0');
+            } else { // queenside
+                board.setPiece(move.toRow, 0, move.piece == 'K' ? 'R' : 'r');
+                board.setPiece(move.toRow, 3, '\0');
+            }
+        } else if (undo.wasEnPassant) {
+            // Undo en passant
+            board.setPiece(move.fromRow, move.fromCol, move.piece);
+            board.setPiece(move.toRow, move.toCol, '\0');
+
+            board.setPiece(undo.capturedPawnPos[0], undo.capturedPawnPos[1], undo.capturedPiece);
+
+        } else {
+            // Undo normal move or promotion
+            if (undo.wasPromotion) {
+                board.setPiece(move.fromRow, move.fromCol, Character.isUpperCase(move.piece) ? 'P' : 'p');
+            } else {
+                board.setPiece(move.fromRow, move.fromCol, move.piece);
+            }
+
+            board.setPiece(move.toRow, move.toCol, undo.capturedPiece); // '\0' if no capture
+        }
+
+        if (undo.didPostMoveCalculations) {
+            // Undo transposition table and move history
+            int count = board.transpositionTable.getOrDefault(undo.postMoveZobristHash, 0) - 1;
+            if (count <= 0) board.transpositionTable.remove(undo.postMoveZobristHash);
+            else board.transpositionTable.put(undo.postMoveZobristHash, count);
+
+            if (!board.playedMoves.isEmpty()) {
+                board.playedMoves.remove(board.playedMoves.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Checks for insufficient material on the board, from the piece counts of the material key.
+     *
+     * @return true if neither side has sufficient material to force checkmate.
+     */
+    private static boolean insufficientMaterial(BoardEnv board) {
+        long key = board.materialKey;
+        for (char piece : MATING_MATERIAL) {
+            if (ZobristTable.pieceCount(key, ZobristTable.pieceIndex(piece)) != 0) return false;
+        }
+        int whiteKnights = ZobristTable.pieceCount(key, ZobristTable.pieceIndex('N'));
+        int whiteBishops = ZobristTable.pieceCount(key, ZobristTable.pieceIndex('B'));
+        int blackKnights = ZobristTable.pieceCount(key, ZobristTable.pieceIndex('n'));
+        int blackBishops = ZobristTable.pieceCount(key, ZobristTable.pieceIndex('b'));
+        // King vs. king
+        if (whiteKnights + whiteBishops == 0 && blackKnights + blackBishops == 0) return true;
+
+        // King with single minor piece vs. king
+        if ((whiteKnights + whiteBishops == 1 && blackKnights + blackBishops == 0) ||
+                (whiteKnights + whiteBishops == 0 && blackKnights + blackBishops == 1)) return true;
+        // King and bishop vs. king and bishop with both bishops on same color
+        if (whiteKnights == 0 && blackKnights == 0 && whiteBishops == 1 && blackBishops == 1) {
+            if (ZobristTable.pieceCount(key, ZobristTable.WHITE_LIGHT_BISHOPS)
+                    == ZobristTable.pieceCount(key, ZobristTable.BLACK_LIGHT_BISHOPS)) {
+                return true;
+            }
+        }
+        // King and two knights vs. king
+        return (whiteKnights == 2 && whiteBishops == 0 && blackKnights + blackBishops == 0) ||
+                (blackKnights == 2 && blackBishops == 0 && whiteKnights + whiteBishops == 0);
+    }
+}
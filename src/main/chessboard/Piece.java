@@ -0,0 +1,86 @@
+package main.chessboard;
+
+/**
+ * Numeric piece codes of the board state. The code of a piece is its Zobrist piece index plus one, so the
+ * empty square is 0: white pieces are 1 to 6 and black pieces 7 to 12, both in the order pawn, knight,
+ * bishop, rook, queen, king.
+ */
+public final class Piece {
+
+    public static final byte EMPTY = 0;
+
+    // Piece types, equal to the codes of the white pieces
+    public static final int PAWN = 1;
+    public static final int KNIGHT = 2;
+    public static final int BISHOP = 3;
+    public static final int ROOK = 4;
+    public static final int QUEEN = 5;
+    public static final int KING = 6;
+
+    /** Offset of the code of a black piece from the code of the white piece of the same type. */
+    public static final int BLACK_OFFSET = 6;
+
+    // Sides, the indices of BoardEnv.pieces
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+
+    private static final char[] CHARS = {'\0', 'P', 'N', 'B', 'R', 'Q', 'K', 'p', 'n', 'b', 'r', 'q', 'k'};
+    private static final byte[] CODES = new byte[128];
+
+    static {
+        for (int code = 1; code < CHARS.length; code++) {
+            CODES[CHARS[code]] = (byte) code;
+        }
+    }
+
+    private Piece() {}
+
+    /**
+     * @param piece the piece character (e.g. 'P', 'n', 'K'), or '\0' for an empty square
+     * @return the code of the piece
+     */
+    public static byte of(char piece) {
+        return CODES[piece];
+    }
+
+    /**
+     * @param code a piece code
+     * @return the piece character, or '\0' for {@link #EMPTY}
+     */
+    public static char toChar(int code) {
+        return CHARS[code];
+    }
+
+    /**
+     * @param code a piece code other than {@link #EMPTY}
+     * @return true for a white piece
+     */
+    public static boolean isWhite(int code) {
+        return code <= BLACK_OFFSET;
+    }
+
+    /**
+     * @param code a piece code other than {@link #EMPTY}
+     * @return {@link #WHITE} or {@link #BLACK}
+     */
+    public static int side(int code) {
+        return code <= BLACK_OFFSET ? WHITE : BLACK;
+    }
+
+    /**
+     * @param code a piece code other than {@link #EMPTY}
+     * @return the piece type, {@link #PAWN} to {@link #KING}
+     */
+    public static int type(int code) {
+        return code <= BLACK_OFFSET ? code : code - BLACK_OFFSET;
+    }
+
+    /**
+     * @param type  the piece type, {@link #PAWN} to {@link #KING}
+     * @param white true for a white piece
+     * @return the piece code
+     */
+    public static byte code(int type, boolean white) {
+        return (byte) (white ? type : type + BLACK_OFFSET);
+    }
+}
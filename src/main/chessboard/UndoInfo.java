@@ -25,7 +25,11 @@ public class UndoInfo {
 
     public long preMoveZobristHash;
     public long postMoveZobristHash;
+    public long preMovePawnHash;
+    public long materialKey;
     public int totalHalfMoveCount;
+    public int psqtScore;
+    public int phase;
 
     public UndoInfo(BoardEnv board, char capturedPiece) {
         this.capturedPiece = capturedPiece;
@@ -43,7 +47,11 @@ public class UndoInfo {
         this.blackKingPos = board.blackKingPos.clone();
 
         this.preMoveZobristHash = board.zobristHash;
+        this.preMovePawnHash = board.pawnHash;
+        this.materialKey = board.materialKey;
         this.totalHalfMoveCount = board.totalHalfMoveCount;
+        this.psqtScore = board.psqtScore;
+        this.phase = board.phase;
 
         this.wasEnPassant = false;
         this.wasPromotion = false;
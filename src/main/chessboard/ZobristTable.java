@@ -11,6 +11,13 @@ public class ZobristTable {
     public static final long[] CASTLING = new long[4]; // WK, WQ, BK, BQ
     public static final long[] EN_PASSANT_FILE = new long[8]; // one per file
 
+    // Material key: the number of pieces of every piece index in 4 bits each, followed by the number of
+    // white and of black bishops on light squares
+    public static final int WHITE_LIGHT_BISHOPS = 12;
+    public static final int BLACK_LIGHT_BISHOPS = 13;
+    /** The bits of the material key that count the pieces, without the bishop colors. */
+    public static final long MATERIAL_PIECES = (1L << 48) - 1;
+
     static {
         Random rng = new Random(12052024L); // fixed seed for reproducibility
         for (int p = 0; p < 12; p++) {
@@ -50,7 +57,7 @@ public class ZobristTable {
         long hash = 0L;
         for (int row = 0; row < 8; row++) {
             for (int col = 0; col < 8; col++) {
-                char piece = board.state[row][col];
+                char piece = board.pieceAt(row, col);
                 if (piece != '\0') {
                     hash ^= PIECE_SQUARE[pieceIndex(piece)][row * 8 + col];
                 }
@@ -66,4 +73,70 @@ public class ZobristTable {
         }
         return hash;
     }
-}
\ No newline at end of file
+
+    /**
+     * Computes the pawn hash for a board state from scratch: the Zobrist keys of all pawns, nothing else.
+     * Used once at initialization; afterward the hash is updated incrementally.
+     *
+     * @param board the board state to hash
+     * @return the 64-bit pawn hash
+     */
+    public static long computePawnHash(BoardEnv board) {
+        long hash = 0L;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                char piece = board.pieceAt(row, col);
+                if (piece == 'P' || piece == 'p') {
+                    hash ^= PIECE_SQUARE[pieceIndex(piece)][row * 8 + col];
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Computes the material key for a board state from scratch.
+     * Used once at initialization; afterward the key is updated incrementally.
+     *
+     * @param board the board state
+     * @return the material key, see {@link #pieceCount}
+     */
+    public static long computeMaterialKey(BoardEnv board) {
+        long key = 0L;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                char piece = board.pieceAt(row, col);
+                if (piece != '\0') {
+                    key += materialUnit(piece, row, col);
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @param piece the piece character
+     * @param row   the row of its square
+     * @param col   the column of its square
+     * @return the amount by which the piece changes the material key
+     */
+    public static long materialUnit(char piece, int row, int col) {
+        long unit = 1L << 4 * pieceIndex(piece);
+        if ((row + col) % 2 == 0) {
+            if (piece == 'B') unit += 1L << 4 * WHITE_LIGHT_BISHOPS;
+            else if (piece == 'b') unit += 1L << 4 * BLACK_LIGHT_BISHOPS;
+        }
+        return unit;
+    }
+
+    /**
+     * Reads a count of a material key.
+     *
+     * @param materialKey the material key
+     * @param index       a piece index, or {@link #WHITE_LIGHT_BISHOPS} or {@link #BLACK_LIGHT_BISHOPS}
+     * @return the number of pieces
+     */
+    public static int pieceCount(long materialKey, int index) {
+        return (int) (materialKey >>> 4 * index) & 0xF;
+    }
+}
@@ -0,0 +1,241 @@
+package main.engine;
+
+import main.chessboard.Move;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Persistent store of search results keyed by the Zobrist hash, so positions analysed in earlier games or
+ * sessions are not searched again.
+ *
+ * <p>The store is a memory-mapped file: a 16 byte header (magic, version, number of buckets) followed by
+ * buckets of {@value #BUCKET_ENTRIES} entries of 16 bytes. An entry holds the hash XOR the data, and the data:
+ * the remaining depth (8 bits), the bound (2 bits), the best move (15 bits) and the white-positive score
+ * (32 bits). Both words are read and written atomically without locks. An entry whose words do not belong
+ * together, because another thread or a crash interrupted its write, fails the hash check and is a miss,
+ * so neither concurrent searches nor a crash can corrupt a lookup. The file is created with its header
+ * written last, and a file with a wrong header or size is reinitialised. Written entries reach the disk
+ * with the dirty pages, also if the process dies; {@link #close()} forces them.
+ *
+ * <p>A new result replaces the entry of the same position if it is at least as deep, else the shallowest
+ * entry of the bucket.
+ */
+public class AnalysisCache implements Closeable {
+
+    /** Results are only stored from this remaining depth on, if not set otherwise. */
+    public static final int DEFAULT_MIN_DEPTH = 3;
+    /** The cache is probed up to this many plies from the root. */
+    public static final int PROBE_PLIES = 2;
+    public static final String DEFAULT_PATH = "analysis/analysis.bin";
+    /** Size of the store in megabytes if not set otherwise. */
+    public static final int DEFAULT_SIZE = 64;
+
+    public static final int EXACT = 1;
+    /** The score is a lower bound, the search failed high. */
+    public static final int LOWER = 2;
+    /** The score is an upper bound, the search failed low. */
+    public static final int UPPER = 3;
+
+    static final int MAGIC = 0x43324143; // "C2AC"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int ENTRY_SIZE = 16;
+    static final int BUCKET_ENTRIES = 4;
+    private static final String PROMOTIONS = "\0NBRQ";
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int bucketMask;
+    private volatile int minDepth = DEFAULT_MIN_DEPTH;
+
+    private AnalysisCache(FileChannel channel, MappedByteBuffer buffer, int buckets) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.bucketMask = buckets - 1;
+    }
+
+    /**
+     * Opens the store of a file, creating it if it does not exist or does not have the requested size.
+     *
+     * @param file      the file
+     * @param megabytes the size of the store, rounded down to a power of two buckets
+     * @return the store
+     * @throws IOException if the file cannot be mapped
+     */
+    public static AnalysisCache open(Path file, int megabytes) throws IOException {
+        long bucketSize = (long) BUCKET_ENTRIES * ENTRY_SIZE;
+        int buckets = (int) Math.min(1 << 24, Long.highestOneBit(Math.max(1, megabytes * (1L << 20) / bucketSize)));
+        long size = HEADER_SIZE + buckets * bucketSize;
+        if (file.getParent() != null) {
+            file.getParent().toFile().mkdirs();
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean valid = channel.size() == size;
+            if (!valid) {
+                channel.truncate(0);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (!valid || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != buckets) {
+                // A truncated file is extended with zeros by the mapping, an invalid one of the right size is cleared
+                if (valid) {
+                    for (long offset = 0; offset < size; offset += Long.BYTES) {
+                        buffer.putLong((int) offset, 0L);
+                    }
+                }
+                buffer.force();
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, buckets);
+                buffer.putInt(0, MAGIC);
+                buffer.force();
+                EngineEvents.HashTable event = new EngineEvents.HashTable();
+                if (event.shouldCommit()) {
+                    event.table = "analysis cache";
+                    event.action = valid ? "clear" : "resize";
+                    event.entries = (long) buckets * BUCKET_ENTRIES;
+                    event.size = size;
+                    event.commit();
+                }
+            }
+            return new AnalysisCache(channel, buffer, buckets);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sets the remaining depth from which on search results are stored.
+     *
+     * @param minDepth the depth in plies
+     */
+    public void setMinDepth(int minDepth) {
+        this.minDepth = minDepth;
+    }
+
+    public int getMinDepth() {
+        return minDepth;
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param hash the Zobrist hash of the position
+     * @return the data of the entry, or 0 on a miss; see {@link #depth}, {@link #bound}, {@link #score}
+     * and {@link #move}
+     */
+    public long probe(long hash) {
+        int bucket = HEADER_SIZE + ((int) hash & bucketMask) * BUCKET_ENTRIES * ENTRY_SIZE;
+        for (int i = 0; i < BUCKET_ENTRIES; i++) {
+            int offset = bucket + i * ENTRY_SIZE;
+            long key = (long) LONGS.getOpaque(buffer, offset);
+            long data = (long) LONGS.getOpaque(buffer, offset + Long.BYTES);
+            if (data != 0 && (key ^ data) == hash) return data;
+        }
+        return 0;
+    }
+
+    /**
+     * Stores a search result.
+     *
+     * @param hash  the Zobrist hash of the position
+     * @param depth the remaining depth of the search
+     * @param score the white-positive score
+     * @param bound {@link #EXACT}, {@link #LOWER} or {@link #UPPER}
+     * @param move  the best move, or null
+     */
+    public void store(long hash, int depth, int score, int bound, Move move) {
+        long data = (long) Math.min(depth, 255) << 56 | (long) bound << 54 | (long) encode(move) << 32 | (score & 0xFFFFFFFFL);
+        int bucket = HEADER_SIZE + ((int) hash & bucketMask) * BUCKET_ENTRIES * ENTRY_SIZE;
+        int replace = -1;
+        int shallowest = Integer.MAX_VALUE;
+        for (int i = 0; i < BUCKET_ENTRIES; i++) {
+            int offset = bucket + i * ENTRY_SIZE;
+            long key = (long) LONGS.getOpaque(buffer, offset);
+            long old = (long) LONGS.getOpaque(buffer, offset + Long.BYTES);
+            if (old != 0 && (key ^ old) == hash) {
+                if (depth(old) > depth) return; // keep the deeper result
+                replace = offset;
+                break;
+            }
+            int oldDepth = old == 0 ? -1 : depth(old);
+            if (oldDepth < shallowest) {
+                shallowest = oldDepth;
+                replace = offset;
+            }
+        }
+        LONGS.setOpaque(buffer, replace, hash ^ data);
+        LONGS.setOpaque(buffer, replace + Long.BYTES, data);
+    }
+
+    /**
+     * @return the remaining depth of the search of an entry
+     */
+    public static int depth(long data) {
+        return (int) (data >>> 56);
+    }
+
+    /**
+     * @return {@link #EXACT}, {@link #LOWER} or {@link #UPPER}
+     */
+    public static int bound(long data) {
+        return (int) (data >>> 54) & 3;
+    }
+
+    /**
+     * @return the white-positive score of an entry
+     */
+    public static int score(long data) {
+        return (int) data;
+    }
+
+    /**
+     * Finds the best move of an entry among the legal moves, which also guards against hash collisions.
+     *
+     * @param data  the entry
+     * @param moves the legal moves of the position
+     * @return the move, or null if the entry has none or it is not legal
+     */
+    public static Move move(long data, List<Move> moves) {
+        int code = (int) (data >>> 32) & 0x7FFF;
+        if (code == 0) return null;
+        for (Move move : moves) {
+            if (encode(move) == code) return move;
+        }
+        return null;
+    }
+
+    /**
+     * @return from square (6 bits), to square (6 bits) and promotion piece (3 bits), or 0 for no move
+     */
+    private static int encode(Move move) {
+        if (move == null) return 0;
+        int promotion = PROMOTIONS.indexOf(Character.toUpperCase(move.promotionPiece));
+        return (move.fromRow * 8 + move.fromCol) << 9 | (move.toRow * 8 + move.toCol) << 3 | Math.max(0, promotion);
+    }
+
+    /**
+     * Writes the stored results to the disk.
+     */
+    public void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
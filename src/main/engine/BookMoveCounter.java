@@ -0,0 +1,125 @@
+package main.engine;
+
+/**
+ * A concurrent hash map from (position hash, move) to a count, without boxing.
+ *
+ * <p>The map is split into stripes, each an open-addressing table of primitive arrays guarded by its own
+ * lock. The stripe is chosen by the top bits of the position hash, so the stripes partition the keys in
+ * unsigned order and threads replaying different lines rarely wait for each other.
+ */
+class BookMoveCounter {
+
+    private static final int STRIPE_BITS = 6;
+    private static final int INITIAL_CAPACITY = 1 << 12;
+
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+
+    BookMoveCounter() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Counts a move.
+     *
+     * @param key  the position hash
+     * @param move the move in Polyglot encoding
+     */
+    void increment(long key, int move) {
+        Stripe stripe = stripes[(int) (key >>> (64 - STRIPE_BITS))];
+        synchronized (stripe) {
+            stripe.increment(key, move);
+        }
+    }
+
+    /**
+     * @return the number of distinct (position, move) pairs
+     */
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Creates a book of the moves counted at least {@code minCount} times. Must not be called while counting.
+     *
+     * @param minCount the minimum count of a move
+     * @return the book
+     */
+    OpeningBook toBook(int minCount) {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            for (int i = 0; i < stripe.counts.length; i++) {
+                if (stripe.counts[i] >= minCount) count++;
+            }
+        }
+        long[] keys = new long[count];
+        int[] moves = new int[count];
+        int[] weights = new int[count];
+        int n = 0;
+        for (Stripe stripe : stripes) {
+            for (int i = 0; i < stripe.counts.length; i++) {
+                if (stripe.counts[i] >= minCount) {
+                    keys[n] = stripe.keys[i];
+                    moves[n] = stripe.moves[i];
+                    weights[n] = stripe.counts[i];
+                    n++;
+                }
+            }
+        }
+        return OpeningBook.fromEntries(keys, moves, weights, count);
+    }
+
+    private static final class Stripe {
+        long[] keys = new long[INITIAL_CAPACITY];
+        int[] moves = new int[INITIAL_CAPACITY];
+        /** 0 marks a free slot. */
+        int[] counts = new int[INITIAL_CAPACITY];
+        int size;
+
+        void increment(long key, int move) {
+            int mask = counts.length - 1;
+            int slot = hash(key, move) & mask;
+            while (counts[slot] != 0) {
+                if (keys[slot] == key && moves[slot] == move) {
+                    if (counts[slot] < Integer.MAX_VALUE) counts[slot]++;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            moves[slot] = move;
+            counts[slot] = 1;
+            if (++size * 2 > counts.length) grow();
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldMoves = moves;
+            int[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            moves = new int[oldMoves.length * 2];
+            counts = new int[oldCounts.length * 2];
+            int mask = counts.length - 1;
+            for (int i = 0; i < oldCounts.length; i++) {
+                if (oldCounts[i] == 0) continue;
+                int slot = hash(oldKeys[i], oldMoves[i]) & mask;
+                while (counts[slot] != 0) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                moves[slot] = oldMoves[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+
+        private static int hash(long key, int move) {
+            long h = (key ^ move * 0x9E3779B97F4A7C15L) * 0xBF58476D1CE4E5B9L;
+            return (int) (h ^ h >>> 32);
+        }
+    }
+}
@@ -2,53 +2,137 @@ package main.engine;
 
 import main.chessboard.*;
 import main.engine.Engine.BestMove;
+import main.engine.tablebase.Tablebase;
 
 import java.util.Collections;
 import java.util.List;
 
 public class DepthFirstSearchStrategy {
-    private DepthFirstSearchStrategy() {}
 
     // Max depth for DFS
     public static final int MAX_DEPTH = 4;
-    public static int _debug_positionsAnalyzed;
+
+    private final Engine engine;
+    /** Set when the deadline of the running search has passed; the unfinished iteration is discarded. */
+    private boolean aborted;
+    private long deadline;
+    private long maxNodes;
+    /** False during the first iteration, which always completes. */
+    private boolean interruptible;
+    /** Set by {@link #stop()}, checked like the deadline. */
+    private volatile boolean stopRequested;
+    /** The depth of the running iteration, to know the distance of a node from the root. */
+    private int rootDepth;
+    /** The depth of the last completed iteration. */
+    private int reachedDepth;
+
+    public int _debug_positionsAnalyzed;
+    public long _debugTime_GenerateAllLegalMoves;
+    public long _debugTime_EvaluatePosition; // in nanoseconds
+    public long _debugTime_ApplyMove;
+
+    /**
+     * Creates the search state of an engine.
+     *
+     * @param engine the engine that owns this search
+     */
+    DepthFirstSearchStrategy(Engine engine) {
+        this.engine = engine;
+    }
 
     /**
      * Performs iterative deepening search up to a maximum depth within the given time limit.
+     * If the time limit is reached, the result of the last completed iteration is returned.
      *
      * @param board the current board state
+     * @param timeLimit the time limit in milliseconds
      * @return the best move found so far
      */
-    public static BestMove iterativeDeepeningSearch(BoardEnv board) {
+    public BestMove iterativeDeepeningSearch(BoardEnv board, long timeLimit) {
+        return iterativeDeepeningSearch(board, SearchLimits.time(timeLimit), null);
+    }
+
+    /**
+     * Performs iterative deepening search until one of the limits is reached or {@link #stop()} is called.
+     * The result of the last completed iteration is returned.
+     *
+     * @param board    the current board state
+     * @param limits   the limits of the search
+     * @param listener receives every completed iteration, or null
+     * @return the best move found so far
+     */
+    public BestMove iterativeDeepeningSearch(BoardEnv board, SearchLimits limits, SearchListener listener) {
         _debug_positionsAnalyzed = 0;
+        _debugTime_GenerateAllLegalMoves = 0;
+        _debugTime_EvaluatePosition = 0;
+        _debugTime_ApplyMove = 0;
         long startTime = System.currentTimeMillis();
+        long searchDeadline = limits.timeLimit >= Long.MAX_VALUE - startTime ? Long.MAX_VALUE : startTime + limits.timeLimit;
+        deadline = searchDeadline;
+        maxNodes = limits.nodes;
+        aborted = false;
+        stopRequested = false;
         BestMove bestMove = null;
-        for (int depth = 4; depth <= MAX_DEPTH; depth++) {
-            bestMove = alphaBetaSearch(board, depth, startTime);
-            /*
-            if (System.currentTimeMillis() - startTime >= Engine.TIME_LIMIT) {
-                System.out.println("Reached depth: " + depth);
+        reachedDepth = 0;
+        for (int depth = 1; depth <= Math.max(1, limits.depth); depth++) {
+            // The first iteration always completes, so there is a move to play
+            interruptible = depth > 1;
+            rootDepth = depth;
+            EngineEvents.SearchIteration event = new EngineEvents.SearchIteration();
+            event.begin();
+            BestMove result = alphaBetaSearch(board, depth);
+            if (event.shouldCommit()) {
+                event.depth = depth;
+                event.completed = !aborted;
+                event.bestMove = result.move != null ? result.move.toString() : null;
+                event.evaluation = result.evaluation != null ? result.evaluation : 0;
+                event.nodes = _debug_positionsAnalyzed;
+                event.commit();
+            }
+            // An aborted iteration only searched part of the moves, so its result is not reliable
+            if (aborted) {
+                break;
+            }
+            bestMove = result;
+            reachedDepth = depth;
+            if (listener != null && result.move != null) {
+                listener.iterationFinished(depth, result.evaluation, _debug_positionsAnalyzed,
+                        System.currentTimeMillis() - startTime, result.moveSequence);
+            }
+            // A forced mate is not changed by searching deeper
+            if (stopRequested || result.move == null
+                    || result.evaluation == Integer.MAX_VALUE || result.evaluation == Integer.MIN_VALUE) {
                 break;
             }
-             */
         }
-        System.out.printf("Calculated for %d milliseconds.\n", System.currentTimeMillis() - startTime);
-        System.out.printf("Bestmoves: %s\n", bestMove.moveSequence);
-        System.out.printf("%d positions analyzed\n", _debug_positionsAnalyzed);
         return bestMove;
     }
 
+    /**
+     * @return the depth of the last completed iteration of the last search
+     */
+    public int getReachedDepth() {
+        return reachedDepth;
+    }
+
+    /**
+     * Stops the running search (from another thread). The search returns the result of the last completed
+     * iteration, but always completes depth 1. A stop before the search has started is ignored.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
     /**
      * Entry point for alpha-beta search with quiescence extension.
      * Delegates to the full implementation with the default quiescence depth.
      *
      * @param board     the current board state
      * @param depth     the remaining search depth
-     * @param startTime the start time of the search in milliseconds
      * @return the best move found at this node
      */
-    private static BestMove alphaBetaSearch(BoardEnv board, int depth, long startTime) {
-        return alphaBetaSearch(board, depth, Integer.MIN_VALUE, Integer.MAX_VALUE, startTime, 4);
+    private BestMove alphaBetaSearch(BoardEnv board, int depth) {
+        return alphaBetaSearch(board, depth, Integer.MIN_VALUE, Integer.MAX_VALUE, 4);
     }
 
     /**
@@ -74,27 +158,30 @@ public class DepthFirstSearchStrategy {
      * @param depth     the remaining search depth; 0 triggers static evaluation
      * @param alpha     the best score the maximizing player (white) can guarantee so far
      * @param beta      the best score the minimizing player (black) can guarantee so far
-     * @param startTime the start time of the search in milliseconds
      * @param qDepth    the remaining quiescence depth; limits capture/check extensions
      *                  to prevent infinite recursion in tactical sequences
      * @return the best move found at this node, or a terminal evaluation if no moves exist
      */
-    private static BestMove alphaBetaSearch(BoardEnv board, int depth, int alpha, int beta, long startTime, int qDepth) {
-        // Terminate search if time limit reached
-        //TODO: engine makes weird moves with time limit
-        /*
-        if (System.currentTimeMillis() - startTime >= Engine.TIME_LIMIT) {
-            return new BestMove(null, evalInfo[0], Collections.emptyList());
+    private BestMove alphaBetaSearch(BoardEnv board, int depth, int alpha, int beta, int qDepth) {
+        // Terminate search if time limit reached; the caller discards the result of the iteration
+        if (aborted || interruptible && (_debug_positionsAnalyzed >= maxNodes || (_debug_positionsAnalyzed & 255) == 0
+                && (stopRequested || System.currentTimeMillis() >= deadline))) {
+            aborted = true;
+            return new BestMove(null, 0, Collections.emptyList());
         }
-        */
 
-        // At depth 0, return board evaluation.
+        // At depth 0, return the static evaluation.
         if (depth == 0) {
             _debug_positionsAnalyzed++;
-            return new BestMove(null, board.evaluation, Collections.emptyList());
+            long startTime = System.nanoTime();
+            int evaluation = engine.evaluate(board);
+            _debugTime_EvaluatePosition += System.nanoTime() - startTime;
+            return new BestMove(null, evaluation, Collections.emptyList());
         }
 
+        long startTime = System.currentTimeMillis();
         List<Move> moves = Engine.generateAllLegalMoves(board);
+        _debugTime_GenerateAllLegalMoves += System.currentTimeMillis() - startTime;
         Engine.orderMoves(board, moves);
 
         // Terminal node — no legal moves means checkmate or stalemate
@@ -107,17 +194,35 @@ public class DepthFirstSearchStrategy {
             }
         }
 
+        // Reuse a result of an earlier search near the root
+        AnalysisCache cache = engine.getAnalysisCache();
+        if (cache != null && rootDepth - depth <= AnalysisCache.PROBE_PLIES) {
+            long entry = cache.probe(board.zobristHash);
+            Move cachedMove = entry == 0 ? null : AnalysisCache.move(entry, moves);
+            if (cachedMove != null) {
+                int score = AnalysisCache.score(entry);
+                int bound = AnalysisCache.bound(entry);
+                if (AnalysisCache.depth(entry) >= depth && (bound == AnalysisCache.EXACT
+                        || bound == AnalysisCache.LOWER && score >= beta || bound == AnalysisCache.UPPER && score <= alpha)) {
+                    _debug_positionsAnalyzed++;
+                    return new BestMove(cachedMove, score, Collections.emptyList());
+                }
+                // Else search the stored best move first
+                moves.remove(cachedMove);
+                moves.add(0, cachedMove);
+            }
+        }
+
+        int originalAlpha = alpha;
+        int originalBeta = beta;
         BestMove bestMoveResponse = null;
-        int originalEvaluation = board.evaluation;
-        int originalPieceValueSum = board.pieceValueSum;
 
         for (Move move : moves) {
-            int[] evalInfo = Engine.evaluateMove(board, move);
-            board.evaluation = evalInfo[0];
-            board.pieceValueSum = evalInfo[1];
-
-            MakeMoveResult result = Chessboard.makeMove(board, move, false);
+            startTime = System.currentTimeMillis();
+            MakeMoveResult result = MoveMaker.makeMove(board, move, false);
+            _debugTime_ApplyMove += System.currentTimeMillis() - startTime;
             BestMove response;
+            int tablebaseValue;
 
             if (!result.outcome.equals(GameOutcome.ONGOING)) {
                 _debug_positionsAnalyzed++;
@@ -128,16 +233,18 @@ public class DepthFirstSearchStrategy {
                 } else {
                     response = new BestMove(null, 0, Collections.emptyList()); // Draw
                 }
+            } else if ((tablebaseValue = engine.probeTablebase(board)) != Tablebase.NOT_FOUND) {
+                // Endgame table hit — exact result, no need to search deeper
+                _debug_positionsAnalyzed++;
+                response = new BestMove(null, Tablebase.score(tablebaseValue, board.whiteToMove), Collections.emptyList());
             } else if (depth == 1 && (move.isCapture || move.isCheck) && qDepth > 0) {
                 // Quiescence extension — avoid horizon effect on tactical sequences
-                response = alphaBetaSearch(board, depth, alpha, beta, startTime, qDepth - 1);
+                response = alphaBetaSearch(board, depth, alpha, beta, qDepth - 1);
             } else {
-                response = alphaBetaSearch(board, depth - 1, alpha, beta, startTime, qDepth);
+                response = alphaBetaSearch(board, depth - 1, alpha, beta, qDepth);
             }
 
-            Chessboard.unmakeMove(board, move, result.undoInfo);
-            board.evaluation = originalEvaluation;
-            board.pieceValueSum = originalPieceValueSum;
+            MoveMaker.unmakeMove(board, move, result.undoInfo);
 
             if (board.whiteToMove) {
                 if (bestMoveResponse == null || response.evaluation > bestMoveResponse.evaluation) {
@@ -153,11 +260,18 @@ public class DepthFirstSearchStrategy {
 
             if (alpha >= beta) break; // Alpha-beta cutoff
 
-            if (depth == MAX_DEPTH) {
+            if (depth == MAX_DEPTH && engine.isDebugOutput()) {
                 System.out.printf("%s %d %s\n", move, response.evaluation, response.moveSequence);
             }
         }
 
+        // Write results deep enough to be worth keeping through to the cache
+        if (cache != null && !aborted && depth >= cache.getMinDepth()) {
+            int bound = bestMoveResponse.evaluation <= originalAlpha ? AnalysisCache.UPPER
+                    : bestMoveResponse.evaluation >= originalBeta ? AnalysisCache.LOWER : AnalysisCache.EXACT;
+            cache.store(board.zobristHash, depth, bestMoveResponse.evaluation, bound, bestMoveResponse.move);
+        }
+
         return bestMoveResponse;
     }
 }
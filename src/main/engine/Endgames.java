@@ -0,0 +1,169 @@
+package main.engine;
+
+import main.chessboard.BoardEnv;
+import main.chessboard.Piece;
+import main.chessboard.ZobristTable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Endgames that the general evaluation misjudges, recognised by the material key of the position.
+ *
+ * <p>A few material combinations have a specialised evaluation that replaces the general one: KBNK, which
+ * is only won by driving the defending king into a corner of the color of the bishop, and KRKP, which is
+ * drawn if the pawn is far advanced and supported by its king. Other endgames keep the general evaluation,
+ * but their endgame score is scaled down if they are drawish: opposite-colored bishops. Both lookups cost a
+ * hash map lookup or a few bit operations on {@link BoardEnv#materialKey}.
+ */
+public class Endgames {
+
+    /** Returned by {@link #evaluate} if the material has no specialised evaluation. */
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+    /** Scale factor of an endgame score that is not scaled. */
+    public static final int NORMAL_SCALE = 64;
+    /** Scale factor of opposite-colored bishops with pawns only. */
+    private static final int OPPOSITE_BISHOPS_SCALE = 24;
+    /** Scale factor of opposite-colored bishops with other pieces, which can still attack the pawns. */
+    private static final int OPPOSITE_BISHOPS_WITH_PIECES_SCALE = 46;
+
+    /** Specialised evaluation of a material combination. */
+    private interface Evaluator {
+        /**
+         * @param board       the board state
+         * @param strongWhite true if white is the stronger side
+         * @return the evaluation from the point of view of the stronger side
+         */
+        int evaluate(BoardEnv board, boolean strongWhite);
+    }
+
+    private record Entry(Evaluator evaluator, boolean strongWhite) {}
+
+    /** Specialised evaluations by the piece counts of the material key. */
+    private static final Map<Long, Entry> EVALUATORS = new HashMap<>();
+
+    static {
+        register("KBNK", Endgames::kbnk);
+        register("KRKP", Endgames::krkp);
+    }
+
+    /**
+     * Registers an evaluator for a material combination and for its mirror with the colors swapped.
+     *
+     * @param material the pieces of the stronger side followed by those of the weaker side, both starting
+     *                 with the king, e.g. "KRKP"
+     * @param evaluator the evaluation
+     */
+    private static void register(String material, Evaluator evaluator) {
+        int weak = material.indexOf('K', 1);
+        String strong = material.substring(0, weak);
+        String weaker = material.substring(weak).toLowerCase();
+        EVALUATORS.put(materialKey(strong + weaker), new Entry(evaluator, true));
+        EVALUATORS.put(materialKey(strong.toLowerCase() + weaker.toUpperCase()), new Entry(evaluator, false));
+    }
+
+    private static long materialKey(String pieces) {
+        long key = 0L;
+        for (char piece : pieces.toCharArray()) {
+            key += 1L << 4 * ZobristTable.pieceIndex(piece);
+        }
+        return key;
+    }
+
+    /**
+     * Evaluates a position with the specialised evaluation of its material.
+     *
+     * @param board the board state
+     * @return the evaluation, positive if white is better, or {@link #NOT_FOUND}
+     */
+    public static int evaluate(BoardEnv board) {
+        Entry entry = EVALUATORS.get(board.materialKey & ZobristTable.MATERIAL_PIECES);
+        if (entry == null) return NOT_FOUND;
+        int score = entry.evaluator.evaluate(board, entry.strongWhite);
+        return entry.strongWhite ? score : -score;
+    }
+
+    /**
+     * Determines by how much the endgame score of a drawish position is scaled down.
+     *
+     * @param board the board state
+     * @return the scale factor, {@link #NORMAL_SCALE} if the score is not scaled
+     */
+    public static int scaleFactor(BoardEnv board) {
+        long key = board.materialKey;
+        if (count(key, 'B') != 1 || count(key, 'b') != 1) return NORMAL_SCALE;
+        // One bishop on a light square and the other one on a dark square
+        int lightBishops = ZobristTable.pieceCount(key, ZobristTable.WHITE_LIGHT_BISHOPS)
+                + ZobristTable.pieceCount(key, ZobristTable.BLACK_LIGHT_BISHOPS);
+        if (lightBishops != 1) return NORMAL_SCALE;
+        boolean bishopsOnly = count(key, 'N') + count(key, 'R') + count(key, 'Q')
+                + count(key, 'n') + count(key, 'r') + count(key, 'q') == 0;
+        return bishopsOnly ? OPPOSITE_BISHOPS_SCALE : OPPOSITE_BISHOPS_WITH_PIECES_SCALE;
+    }
+
+    private static int count(long materialKey, char piece) {
+        return ZobristTable.pieceCount(materialKey, ZobristTable.pieceIndex(piece));
+    }
+
+    /**
+     * King, bishop and knight against king: a win, but only in a corner of the color of the bishop, so the
+     * defending king is driven towards the nearest such corner and the kings are kept close.
+     */
+    private static int kbnk(BoardEnv board, boolean strongWhite) {
+        int[] strongKing = strongWhite ? board.whiteKingPos : board.blackKingPos;
+        int[] weakKing = strongWhite ? board.blackKingPos : board.whiteKingPos;
+        boolean lightBishop = ZobristTable.pieceCount(board.materialKey,
+                strongWhite ? ZobristTable.WHITE_LIGHT_BISHOPS : ZobristTable.BLACK_LIGHT_BISHOPS) == 1;
+        // a8 and h1 are light, a1 and h8 dark
+        int cornerDistance = lightBishop
+                ? Math.min(weakKing[0] + weakKing[1], 14 - weakKing[0] - weakKing[1])
+                : Math.min(7 - weakKing[0] + weakKing[1], 7 + weakKing[0] - weakKing[1]);
+        return PieceValues.KNIGHT + PieceValues.BISHOP + 30 * (14 - cornerDistance)
+                + 10 * (7 - distance(strongKing, weakKing));
+    }
+
+    /**
+     * King and rook against king and pawn: won if the stronger king stops the pawn or the weaker king is
+     * far from it, drawish if the pawn is far advanced with its king beside it and the stronger king away.
+     */
+    private static int krkp(BoardEnv board, boolean strongWhite) {
+        int[] rookPos = null, pawnPos = null;
+        for (long set = board.pieces[Piece.WHITE] | board.pieces[Piece.BLACK]; set != 0; set &= set - 1) {
+            int sq = Long.numberOfTrailingZeros(set);
+            int type = Piece.type(board.state[sq]);
+            if (type == Piece.ROOK) rookPos = new int[]{sq / 8, sq % 8};
+            else if (type == Piece.PAWN) pawnPos = new int[]{sq / 8, sq % 8};
+        }
+        int[] strongKing = strongWhite ? board.whiteKingPos : board.blackKingPos;
+        int[] weakKing = strongWhite ? board.blackKingPos : board.whiteKingPos;
+        int forward = strongWhite ? 1 : -1; // direction in which the pawn of the weaker side moves
+        int queeningRow = strongWhite ? 7 : 0;
+        boolean strongToMove = board.whiteToMove == strongWhite;
+        int[] queeningSquare = {queeningRow, pawnPos[1]};
+        int pawnDistance = distance(strongKing, pawnPos);
+
+        // The stronger king is in front of the pawn
+        if (strongKing[1] == pawnPos[1] && (strongKing[0] - pawnPos[0]) * forward > 0) {
+            return PieceValues.ROOK - pawnDistance;
+        }
+        // The weaker king is too far away to support the pawn
+        if (distance(weakKing, pawnPos) >= 3 + (strongToMove ? 0 : 1) && distance(weakKing, rookPos) >= 3) {
+            return PieceValues.ROOK - pawnDistance;
+        }
+        // The pawn is far advanced and supported, the stronger king is too far away to help the rook
+        if (Math.abs(queeningRow - weakKing[0]) <= 2 && distance(weakKing, pawnPos) == 1
+                && Math.abs(queeningRow - strongKing[0]) >= 3 && pawnDistance > 2 + (strongToMove ? 1 : 0)) {
+            return 80 - 8 * pawnDistance;
+        }
+        int[] pushSquare = {pawnPos[0] + forward, pawnPos[1]};
+        return 200 - 8 * (distance(strongKing, pushSquare) - distance(weakKing, pushSquare)
+                - distance(pawnPos, queeningSquare));
+    }
+
+    /**
+     * @return the number of king moves between two squares
+     */
+    private static int distance(int[] from, int[] to) {
+        return Math.max(Math.abs(from[0] - to[0]), Math.abs(from[1] - to[1]));
+    }
+}
@@ -1,89 +1,296 @@
 package main.engine;
 
-import main.Chess2;
 import main.chessboard.BoardEnv;
-import main.chessboard.Chessboard;
+import main.chessboard.GameOutcome;
 import main.chessboard.LegalMoveGenerator;
+import main.chessboard.MakeMoveResult;
 import main.chessboard.Move;
+import main.chessboard.MoveMaker;
+import main.chessboard.Piece;
+import main.chessboard.ZobristTable;
+import main.engine.nnue.NnueNetwork;
+import main.engine.tablebase.Tablebase;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 public class Engine {
     // Time limit in milliseconds
     protected static final long TIME_LIMIT = 5000;
-    public static long _debugTime_ApplyMove = 0;
-    private static long _debugTime_GenerateAllLegalMoves = 0;
-    private static long _debugTime_EvaluatePosition = 0;
+    public static final String STARTING_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    /** Endgame advantage from which the simple checkmate patterns are rewarded. */
+    private static final int MOP_UP_MIN_ADVANTAGE = 2 * PieceValues.PAWN;
+    /** Number of entries of the pawn hash table of every engine. */
+    private static final int PAWN_TABLE_SIZE = 1 << 14;
+    /** Number of entries of the evaluation cache of every engine. */
+    private static final int EVAL_CACHE_SIZE = 1 << 16;
+    public static final String OPENINGS_PATH = "src/main/resources/openings/openings_db_3624.txt";
+
+    /** True if the engine plays white, false if it plays black. */
+    private final boolean engineWhite;
+    /** The opening book, shared with other engines. */
+    private OpeningBook openingBook = OpeningBook.empty();
+    /** The number of book lines through the position of the last search. */
+    private int openingsLeft;
+    private final Random random = new Random();
+    /** Search state of this engine. Every engine owns its own, so several engines can search concurrently. */
+    private final DepthFirstSearchStrategy search = new DepthFirstSearchStrategy(this);
+    /** Cache of pawn-structure evaluations of this engine. */
+    private final PawnHashTable pawnTable = new PawnHashTable(PAWN_TABLE_SIZE);
+    /** Cache of static evaluations of this engine. */
+    private EvalCache evalCache = new EvalCache(EVAL_CACHE_SIZE);
+    /** Network evaluation replacing the piece-square evaluation, or null. */
+    private NnueNetwork network;
+    /** Prints debug information about each search to the console. */
+    private boolean debugOutput = true;
+    /** Endgame tables probed at the root and during search, or null. */
+    private Tablebase tablebase;
+    /** Persistent search results, shared with other engines and sessions, or null. */
+    private AnalysisCache analysisCache;
+
+    /**
+     * Creates an engine for one game.
+     *
+     * @param engineWhite true if the engine plays white
+     */
+    public Engine(boolean engineWhite) {
+        this.engineWhite = engineWhite;
+    }
+
+    /**
+     * Sets the opening book this engine chooses its first moves from.
+     *
+     * @param openingBook the book, see {@link OpeningBook#load(String)}
+     */
+    public void setOpeningBook(OpeningBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * @return the number of book lines through the position of the last search; read it on the thread that
+     *         ran the search, e.g. with {@link EngineService#submit}
+     */
+    public int getOpeningsLeft() {
+        return openingsLeft;
+    }
+
+    public boolean isEngineWhite() {
+        return engineWhite;
+    }
+
+    public void setDebugOutput(boolean debugOutput) {
+        this.debugOutput = debugOutput;
+    }
+
+    public boolean isDebugOutput() {
+        return debugOutput;
+    }
+
+    /**
+     * Sets the endgame tables used for positions with few pieces.
+     *
+     * @param tablebase the tables, or null to disable probing
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Sets the network used for evaluation instead of the piece-square tables.
+     *
+     * @param network the network, or null to use the piece-square tables
+     */
+    public void setNetwork(NnueNetwork network) {
+        this.network = network;
+        evalCache.clear();
+        hashTableChanged("clear");
+    }
+
+    /**
+     * Sets the persistent store of search results, probed near the root and written through during search.
+     *
+     * @param analysisCache the store, or null to search without it
+     */
+    public void setAnalysisCache(AnalysisCache analysisCache) {
+        this.analysisCache = analysisCache;
+    }
+
+    AnalysisCache getAnalysisCache() {
+        return analysisCache;
+    }
+
+    /**
+     * Probes the endgame tables if the position has few enough pieces.
+     *
+     * @param board the position
+     * @return the result byte for the side to move, or {@link Tablebase#NOT_FOUND}
+     */
+    int probeTablebase(BoardEnv board) {
+        if (tablebase == null || board.phase > Tablebase.MAX_PHASE) {
+            return Tablebase.NOT_FOUND;
+        }
+        return tablebase.probe(board);
+    }
+
+    /**
+     * Resizes the evaluation cache, dropping its entries. Must not be called during a search.
+     *
+     * @param megabytes the memory of the cache, rounded down to a power of two entries
+     */
+    public void setHashSize(int megabytes) {
+        long entries = Math.max(1, megabytes * (1L << 20) / Long.BYTES);
+        evalCache = new EvalCache((int) Math.min(1 << 30, Long.highestOneBit(entries)));
+        hashTableChanged("resize");
+    }
+
+    private void hashTableChanged(String action) {
+        EngineEvents.HashTable event = new EngineEvents.HashTable();
+        if (event.shouldCommit()) {
+            event.table = "eval cache";
+            event.action = action;
+            event.entries = evalCache.size();
+            event.size = evalCache.size() * Long.BYTES;
+            event.commit();
+        }
+    }
+
+    /**
+     * Stops the running search from another thread, see {@link DepthFirstSearchStrategy#stop()}.
+     */
+    public void stop() {
+        search.stop();
+    }
+
+    /**
+     * @return the search state of this engine
+     */
+    public DepthFirstSearchStrategy getSearch() {
+        return search;
+    }
+
+    /**
+     * Calculates the best move for the current board state using iterative deepening.
+     *
+     * @param board the current chess board state
+     * @return the best move found, or null if no move is available
+     */
+    public BestMove calculateBestMove(BoardEnv board) {
+        return calculateBestMove(board, Long.MAX_VALUE);
+    }
 
     /**
      * Calculates the best move for the current board state using iterative deepening within
      * the time limit.
      *
      * @param board the current chess board state
+     * @param timeLimit the time limit for the search in milliseconds
      * @return the best move found, or null if no move is available
      */
-    public BestMove calculateBestMove(BoardEnv board) {
-        _debugTime_ApplyMove = 0;
+    public BestMove calculateBestMove(BoardEnv board, long timeLimit) {
+        return calculateBestMove(board, SearchLimits.time(timeLimit), null);
+    }
+
+    /**
+     * Calculates the best move for the current board state: a book move, a tablebase move, or else the
+     * result of an iterative deepening search within the limits.
+     *
+     * @param board    the current chess board state
+     * @param limits   the limits of the search
+     * @param listener receives every completed search iteration, or null
+     * @return the best move found, or null if no move is available
+     */
+    public BestMove calculateBestMove(BoardEnv board, SearchLimits limits, SearchListener listener) {
+        EngineEvents.MoveDecision event = new EngineEvents.MoveDecision();
+        event.begin();
         BestMove bestMove;
 
-        final String STARTING_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
-        // Find all openings that follow the current position
-        List<List<String>> remaining = new ArrayList<>();
-        if (Chess2.FEN.equals(STARTING_FEN)) {
-            for (List<String> opening : Chessboard.openings) {
-                if (opening.size() > board.playedMoves.size()) {
-                    boolean match = true;
-                    for (int i = 0; i < board.playedMoves.size(); i++) {
-                        if (!opening.get(i).equals(board.playedMoves.get(i).toString())) {
-                            match = false;
-                            break;
-                        }
-                    }
-                    if (match) {
-                        remaining.add(opening);
-                    }
-                }
-            }
+        // If present, play a book move
+        openingsLeft = openingBook.totalWeight(board);
+        Move bookMove = openingBook.chooseMove(board, random);
+        if (bookMove != null) {
+            bestMove = new BestMove(bookMove);
+            commit(event, "book", bestMove);
+            return bestMove;
         }
-        Chessboard.openings = remaining;
-
-        // If present, choose random opening continuation
-        if (!Chessboard.openings.isEmpty()) {
-            // Wähle zufällig eine der möglichen Openings, die noch passen.
-            List<String> selected = Chessboard.openings.get((int) (Math.random() * Chessboard.openings.size()));
-            // Der nächste Zug entspricht dem Zug an der Position playedMoves.size() in der Opening-Zeile.
-            String nextMove = selected.get(board.playedMoves.size());
-            Move move = createMoveFromSAN(board, nextMove);
-            try {
-                Thread.sleep(500); // wait 500ms, so the opening moves are not being played instantaneously
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return null;
-            }
-            return new BestMove(move);
+
+        // Play perfectly if the position is in the endgame tables
+        bestMove = bestTablebaseMove(board);
+        if (bestMove != null) {
+            commit(event, "tablebase", bestMove);
+            return bestMove;
         }
 
         // Else, calculate best move by iterative DFS
-        int[] evalInfo = Engine.evaluatePosition(board);
-        board.evaluation = evalInfo[0];
-        board.pieceValueSum = evalInfo[1];
-        bestMove = DepthFirstSearchStrategy.iterativeDeepeningSearch(board);
-
-        // Debugging
-        System.out.printf("Calculation parts: generate all legal moves: %dms, " +
-                        "evaluate Position: %dms," +
-                        "applyMove: %dms\n",
-                _debugTime_GenerateAllLegalMoves, _debugTime_EvaluatePosition, _debugTime_ApplyMove);
-        _debugTime_GenerateAllLegalMoves = 0;
-        _debugTime_EvaluatePosition = 0;
-        _debugTime_ApplyMove = 0;
+        board.accumulator = network != null ? network.newAccumulator(board) : null;
+        pawnTable.resetStats();
+        evalCache.resetStats();
+        bestMove = search.iterativeDeepeningSearch(board, limits, listener);
+
+        if (event.shouldCommit()) {
+            event.depth = search.getReachedDepth();
+            event.nodes = search._debug_positionsAnalyzed;
+            event.moveGenerationTime = search._debugTime_GenerateAllLegalMoves;
+            event.evaluationTime = search._debugTime_EvaluatePosition;
+            event.makeMoveTime = search._debugTime_ApplyMove;
+            event.evalCacheHits = evalCache.getHits();
+            event.evalCacheProbes = evalCache.getProbes();
+            event.pawnHashHits = pawnTable.getHits();
+            event.pawnHashProbes = pawnTable.getProbes();
+            commit(event, "search", bestMove);
+        }
 
         return bestMove;
     }
 
+    private static void commit(EngineEvents.MoveDecision event, String source, BestMove bestMove) {
+        if (!event.shouldCommit()) return;
+        event.source = source;
+        event.move = bestMove.move != null ? bestMove.move.toString() : null;
+        event.evaluation = bestMove.evaluation != null ? bestMove.evaluation : 0;
+        event.commit();
+    }
+
+    /**
+     * Chooses the move with the best endgame table result: the fastest win, else a draw, else the slowest loss.
+     *
+     * @param board the current board state
+     * @return the best move, or null if the position or one of its successors is not in the tables
+     */
+    private BestMove bestTablebaseMove(BoardEnv board) {
+        if (probeTablebase(board) == Tablebase.NOT_FOUND) {
+            return null;
+        }
+        Move bestMove = null;
+        int bestScore = Integer.MIN_VALUE;
+        for (Move move : generateAllLegalMoves(board)) {
+            MakeMoveResult result = MoveMaker.makeMove(board, move, false);
+            int score; // from the perspective of the side to move before the move
+            if (!result.outcome.equals(GameOutcome.ONGOING) && !result.outcome.isCheckmate()) {
+                score = 0; // Draw by rule
+            } else {
+                int value = tablebase.probe(board);
+                score = value == Tablebase.NOT_FOUND ? Integer.MIN_VALUE : -Tablebase.score(value, true);
+            }
+            MoveMaker.unmakeMove(board, move, result.undoInfo);
+            if (score == Integer.MIN_VALUE) {
+                return null;
+            }
+            if (bestMove == null || score > bestScore) {
+                bestMove = move;
+                bestScore = score;
+            }
+        }
+        if (bestMove == null) {
+            return null;
+        }
+        return new BestMove(bestMove, board.whiteToMove ? bestScore : -bestScore, Collections.emptyList());
+    }
+
     // Helper class to store the best move and its evaluation value.
     public static class BestMove {
         public Move move;
@@ -102,122 +309,117 @@ public class Engine {
             moveSequence.addAll(previousMoveSequence);
             this.evaluation = evaluation;
         }
+
+        /**
+         * Converts a checkmate or tablebase evaluation to the number of moves to mate, counting the
+         * moves of the principal variation.
+         *
+         * @param evaluation the white-positive evaluation of a search
+         * @param plies      the length of the principal variation
+         * @return the moves to mate, positive if white mates, negative if black mates, or 0 if the
+         * evaluation is no mate score
+         */
+        public static int movesToMate(int evaluation, int plies) {
+            int pliesToMate;
+            if (evaluation == Integer.MAX_VALUE || evaluation == Integer.MIN_VALUE) {
+                pliesToMate = plies;
+            } else if (Math.abs(evaluation) > Tablebase.WIN_SCORE - 1000) {
+                pliesToMate = plies - 1 + Tablebase.WIN_SCORE - Math.abs(evaluation);
+            } else {
+                return 0;
+            }
+            return evaluation > 0 ? (pliesToMate + 1) / 2 : -(pliesToMate + 1) / 2;
+        }
     }
 
     /**
-     * Applies on a given board evaluation the eval delta given a certain move.
+     * Evaluates a position using the evaluation cache of this engine. Positions with network accumulators
+     * are evaluated by the network, others with the piece-square tables and the pawn hash table.
      *
      * @param board the board state
-     * @param move the move
+     * @return the evaluation, positive if white is better
      */
-    public static int[] evaluateMove(BoardEnv board, Move move) {
-        long startTime = System.currentTimeMillis();
-        int capturedPieceValue = 0;
-        int newPieceValueSum = board.pieceValueSum;
-
-        if (move.isCapture) {
-            char capturedPiece;
-            // En passant
-            if (Character.toLowerCase(move.piece) == 'p' && move.fromCol != move.toCol && board.state[move.toRow][move.toCol] == '\0') {
-                capturedPiece = (move.piece == 'P' ? board.state[move.toRow + 1][move.toCol] : board.state[move.toRow - 1][move.toCol]);
-            } else {
-                capturedPiece = board.state[move.toRow][move.toCol];
-            }
-            capturedPieceValue = PieceValues.getPieceValue(capturedPiece) + PieceValues.getPieceTableValue(capturedPiece, move.toRow, move.toCol, board.pieceValueSum);
-            newPieceValueSum -= Math.abs(PieceValues.getPieceValue(capturedPiece));
-        }
-
-        int movePieceTableValueBefore = PieceValues.getPieceTableValue(move.piece, move.fromRow, move.fromCol, board.pieceValueSum);
-        int movePieceTableValueAfter = PieceValues.getPieceTableValue(move.piece, move.toRow, move.toCol, newPieceValueSum);
-
-        // Castling
-        int castlingRookTableValueDelta = 0;
-        if (Character.toLowerCase(move.piece) == 'k' && move.toCol - move.fromCol == -2) { // better rook position when O-O-O
-            castlingRookTableValueDelta = Character.isUpperCase(move.piece) ? PieceValues.OOO_ROOK_DELTA : -PieceValues.OOO_ROOK_DELTA;
-        }
-
-        // Promotion
-        int promotionPieceValue = 0;
-        int promotionPieceTableValue = 0;
-        if (move.promotionPiece != '\0') {
-            promotionPieceValue = PieceValues.getPieceValue(move.promotionPiece) - PieceValues.getPieceValue(move.piece);
-            promotionPieceTableValue = PieceValues.getPieceTableValue(move.promotionPiece, move.toRow, move.toCol, board.pieceValueSum);
-            movePieceTableValueAfter = 0;
-            newPieceValueSum += Math.abs(promotionPieceValue);
-        }
-
-        // Parameters for Executing Simple Checkmate Patterns
-        // Forcing opponent king to the corner
-        int opponentKingDstFromCentreDeltaValue = 0;
-        if (Character.toLowerCase(move.piece) == 'k' && Chess2.playWhite == Character.isUpperCase(move.piece)) {
-            int opponentKingDstToCentreRowDelta = Math.max(3 - move.toRow, move.toRow - 4) - Math.max(3 - move.fromRow, move.fromRow - 4);
-            int opponentKingDstToCentreColDelta = Math.max(3 - move.toCol, move.toCol - 4) - Math.max(3 - move.fromCol, move.fromCol - 4);
-            int opponentKingDstToCentreDelta = opponentKingDstToCentreRowDelta + opponentKingDstToCentreColDelta;
-            opponentKingDstFromCentreDeltaValue = (Chess2.playWhite ? -1 : 1) * 20 * opponentKingDstToCentreDelta;
-        }
-        // Incentivize moving own king closer to opponent king
-        int dstBetweenKingsDeltaValue = 0;
-        if (Character.toLowerCase(move.piece) == 'k') {
-            int dstBetweenKingsRowDelta;
-            int dstBetweenKingsColDelta;
-            if (Chess2.playWhite == Character.isUpperCase(move.piece)) {
-                int ownKingRow = Chess2.playWhite ? board.blackKingPos[0] : board.whiteKingPos[0];
-                int ownKingCol = Chess2.playWhite ? board.blackKingPos[1] : board.whiteKingPos[1];
-                dstBetweenKingsRowDelta = Math.abs(ownKingRow - move.toRow) - Math.abs(ownKingRow - move.fromRow);
-                dstBetweenKingsColDelta = Math.abs(ownKingCol - move.toCol) - Math.abs(ownKingCol - move.fromCol);
-            } else {
-                int opponentKingRow = Chess2.playWhite ? board.whiteKingPos[0] : board.blackKingPos[0];
-                int opponentKingCol = Chess2.playWhite ? board.whiteKingPos[1] : board.blackKingPos[1];
-                dstBetweenKingsRowDelta = Math.abs(move.toRow - opponentKingRow) - Math.abs(move.fromRow - opponentKingRow);
-                dstBetweenKingsColDelta = Math.abs(move.toCol - opponentKingCol) - Math.abs(move.fromCol - opponentKingCol);
-            }
-
-            int dstBetweenKingsDelta = - (dstBetweenKingsRowDelta + dstBetweenKingsColDelta);
-            dstBetweenKingsDeltaValue = (Chess2.playWhite ? -1 : 1) * 20 * dstBetweenKingsDelta;
+    public int evaluate(BoardEnv board) {
+        int evaluation = evalCache.probe(board.zobristHash);
+        if (evaluation == EvalCache.NOT_FOUND) {
+            evaluation = board.accumulator != null
+                    ? board.accumulator.getNetwork().evaluate(board.accumulator, board.whiteToMove)
+                    : evaluate(board, pawnTable);
+            evalCache.store(board.zobristHash, evaluation);
         }
+        return evaluation;
+    }
 
-        float endgameWeight = 1 - (float) newPieceValueSum / PieceValues.MAX_PIECE_VALUE_SUM;
-        int evalDelta = -capturedPieceValue + movePieceTableValueAfter - movePieceTableValueBefore
-                        + castlingRookTableValueDelta // if castling
-                        + promotionPieceValue + promotionPieceTableValue // if promotion
-                        + Math.round((opponentKingDstFromCentreDeltaValue + dstBetweenKingsDeltaValue) * endgameWeight); // for simple checkmate patterns
-
-        _debugTime_EvaluatePosition += System.currentTimeMillis() - startTime;
+    /**
+     * Evaluates a position from its incrementally updated piece-square score and its pawn structure,
+     * which is looked up by the pawn hash. Midgame and endgame scores are blended by the game phase
+     * in integer arithmetic. Endgames with a specialised evaluation or a drawish scale factor are
+     * recognised by the material key, see {@link Endgames}.
+     *
+     * @param board     the board state
+     * @param pawnTable the pawn hash table, or null to evaluate the pawn structure from scratch
+     * @return the evaluation, positive if white is better
+     */
+    public static int evaluate(BoardEnv board, PawnHashTable pawnTable) {
+        int specialised = Endgames.evaluate(board);
+        if (specialised != Endgames.NOT_FOUND) return specialised;
+        PawnStructure pawns = pawnTable != null ? pawnTable.probe(board) : PawnStructure.compute(board);
+        int score = board.psqtScore + pawns.score + PawnStructure.evaluateKings(board, pawns.passedPawns);
+        int midgame = PieceValues.midgame(score);
+        int endgame = PieceValues.endgame(score) * Endgames.scaleFactor(board) / Endgames.NORMAL_SCALE;
+        endgame += mopUp(board, endgame);
+        int phase = Math.min(board.phase, PieceValues.TOTAL_PHASE);
+        return (midgame * phase + endgame * (PieceValues.TOTAL_PHASE - phase)) / PieceValues.TOTAL_PHASE;
+    }
 
-        return new int[]{board.evaluation + evalDelta, newPieceValueSum};
+    /**
+     * Parameters for executing simple checkmate patterns: the side that is clearly ahead is rewarded
+     * for driving the other king to the edge and for bringing its own king closer. Only depends on the
+     * position, not on the color the engine plays.
+     *
+     * @param board   the board state
+     * @param endgame the endgame score of the position
+     * @return the endgame bonus, positive if white is the stronger side
+     */
+    private static int mopUp(BoardEnv board, int endgame) {
+        if (Math.abs(endgame) < MOP_UP_MIN_ADVANTAGE) return 0;
+        boolean whiteStronger = endgame > 0;
+        int[] weakKing = whiteStronger ? board.blackKingPos : board.whiteKingPos;
+        int[] strongKing = whiteStronger ? board.whiteKingPos : board.blackKingPos;
+        int weakKingDstToCentre = Math.max(3 - weakKing[0], weakKing[0] - 4) + Math.max(3 - weakKing[1], weakKing[1] - 4);
+        int dstBetweenKings = Math.abs(weakKing[0] - strongKing[0]) + Math.abs(weakKing[1] - strongKing[1]);
+        int bonus = 20 * weakKingDstToCentre + 10 * (14 - dstBetweenKings);
+        return whiteStronger ? bonus : -bonus;
     }
 
     /**
-     * Evaluates a position based on piece value and piece position value.
-     * (currently only used for getting the debug piece values)
+     * Evaluates a position from scratch and initializes its piece-square score and game phase.
+     * Also fills the debug piece values.
      *
      * @param board the current board state
-     * @return the evaluation and the sum of all piece values
+     * @return the evaluation, positive if white is better
      */
-    public static int[] evaluatePosition(BoardEnv board) {
-        int evaluation = 0;
-        int pieceValueSum = 0;
-        int pieceTotalValue;
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                char piece = board.state[row][col];
-                int pieceValue = PieceValues.getPieceValue(piece);
-                int pieceTableValue = Character.toLowerCase(piece) != 'k' ? PieceValues.getPieceTableValue(piece, row, col, 0) : 0;
-                if (Character.toLowerCase(piece) != 'k') {
-                    pieceValueSum += Math.abs(pieceValue);
-                    pieceTotalValue = pieceValue + pieceTableValue;
-                    evaluation += pieceTotalValue;
-                    BoardEnv._debug_pieceValues[row][col] = Math.abs(pieceTotalValue);
-                }
-            }
+    public static int evaluatePosition(BoardEnv board) {
+        int psqtScore = 0;
+        int phase = 0;
+        long occupied = board.pieces[Piece.WHITE] | board.pieces[Piece.BLACK];
+        for (long set = occupied; set != 0; set &= set - 1) {
+            int sq = Long.numberOfTrailingZeros(set);
+            int pieceIndex = board.state[sq] - 1;
+            psqtScore += PieceValues.PIECE_SQUARE[pieceIndex][sq];
+            phase += PieceValues.PHASE[pieceIndex];
+        }
+        board.psqtScore = psqtScore;
+        board.phase = phase;
+        for (int[] row : board._debug_pieceValues) {
+            Arrays.fill(row, 0);
         }
-        pieceTotalValue = PieceValues.KING + PieceValues.getPieceTableValue('K', board.whiteKingPos[0], board.whiteKingPos[1], pieceValueSum);
-        evaluation += pieceTotalValue;
-        BoardEnv._debug_pieceValues[board.whiteKingPos[0]][board.whiteKingPos[1]] = Math.abs(pieceTotalValue);
-        pieceTotalValue = -PieceValues.KING + PieceValues.getPieceTableValue('k', board.blackKingPos[0], board.blackKingPos[1], pieceValueSum);
-        evaluation += pieceTotalValue;
-        BoardEnv._debug_pieceValues[board.blackKingPos[0]][board.blackKingPos[1]] = Math.abs(pieceTotalValue);
-        return new int[]{evaluation, pieceValueSum};
+        for (long set = occupied; set != 0; set &= set - 1) {
+            int sq = Long.numberOfTrailingZeros(set);
+            int value = PieceValues.PIECE_SQUARE[board.state[sq] - 1][sq];
+            board._debug_pieceValues[sq / 8][sq % 8] = Math.abs(PieceValues.taper(value, phase));
+        }
+        return evaluate(board, null);
     }
 
     /**
@@ -227,23 +429,23 @@ public class Engine {
      * @return a list of legal moves
      */
     public static List<Move> generateAllLegalMoves(BoardEnv board) {
-        long startTime = System.currentTimeMillis();
         List<Move> allMoves = new ArrayList<>();
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                char piece = board.state[row][col];
-                if (piece == '\0') continue;
-                if (board.whiteToMove == Character.isUpperCase(piece)) {
-                    allMoves.addAll(LegalMoveGenerator.generateLegalMoves(board, row, col, false));
-                }
-            }
+        // Squares in ascending order, so the moves are ordered by square as on the board
+        for (long set = board.pieces[board.whiteToMove ? Piece.WHITE : Piece.BLACK]; set != 0; set &= set - 1) {
+            int sq = Long.numberOfTrailingZeros(set);
+            allMoves.addAll(LegalMoveGenerator.generateLegalMoves(board, sq / 8, sq % 8, false));
         }
         LegalMoveGenerator.resolveAmbiguousMoves(allMoves);
-        _debugTime_GenerateAllLegalMoves += System.currentTimeMillis() - startTime;
         return allMoves;
     }
 
-    protected static void orderMoves(BoardEnv board, List<Move> moves) {
+    /**
+     * Sorts moves by their guessed score, so alpha-beta search finds cutoffs early.
+     *
+     * @param board the board state before the moves
+     * @param moves the moves, sorted in place
+     */
+    public static void orderMoves(BoardEnv board, List<Move> moves) {
         Map<Move, Integer> evaluationCache = new HashMap<>();
         for (Move move : moves) {
             evaluationCache.put(move, guessMoveScore(board, move));
@@ -254,9 +456,10 @@ public class Engine {
     }
 
     private static int guessMoveScore(BoardEnv board, Move move) {
-        char pieceToMove = board.state[move.fromRow][move.fromCol];
-        int score = PieceValues.getPieceTableValue(pieceToMove, move.toRow, move.toCol, board.pieceValueSum)
-                    - PieceValues.getPieceTableValue(pieceToMove, move.fromRow, move.fromCol, board.pieceValueSum);
+        char pieceToMove = board.pieceAt(move.fromRow, move.fromCol);
+        int[] pieceSquare = PieceValues.PIECE_SQUARE[ZobristTable.pieceIndex(pieceToMove)];
+        int score = PieceValues.taper(pieceSquare[move.toRow * 8 + move.toCol] - pieceSquare[move.fromRow * 8 + move.fromCol], board.phase);
+        if (!Character.isUpperCase(pieceToMove)) score = -score; // scores are white-positive
         int movePieceAbsVal = Math.abs(PieceValues.getPieceValue(pieceToMove));
 
         if (move.isCheck) {
@@ -264,7 +467,7 @@ public class Engine {
         }
 
         if (move.isCapture) {
-            char pieceToCapture = board.state[move.toRow][move.toCol];
+            char pieceToCapture = board.pieceAt(move.toRow, move.toCol);
             int capturePieceAbsVal = Math.abs(PieceValues.getPieceValue(pieceToCapture));
             // TODO: Implement when attacked squares are stored
             // if square is not attacked, dont substract movePieceAbsVal
@@ -273,64 +476,4 @@ public class Engine {
         //System.out.println(move + " scored " + score);
         return score;
     }
-
-    private Move createMoveFromSAN(BoardEnv board, String san) {
-        System.out.println("SAN: " + san);
-        boolean isWhite = board.whiteToMove;
-
-        // Castling move
-        if (san.equals("O-O")) {
-            return new Move(isWhite ? 'K' : 'k', isWhite ? 7 : 0, 4, isWhite ? 7 : 0, 6, false);
-        } else if (san.equals("O-O-O")) {
-            return new Move(isWhite ? 'K' : 'k', isWhite ? 7 : 0, 4, isWhite ? 7 : 0, 2, false);
-        }
-
-        int toCol, toRow;
-        char piece = 'P'; // default: pawn
-        int fromCol = -1;
-        boolean isCapture = san.charAt(1) == 'x';
-
-        // Determine piece if piece is not a pawn
-        if (Character.isUpperCase(san.charAt(0)) && san.charAt(0) != 'O') {
-            piece = san.charAt(0);
-        }
-
-        // For pawns: determine origin column if move is capture
-        if (piece == 'P' && san.length() == 4 && san.charAt(1) == 'x') {
-            fromCol = san.charAt(0) - 'a';
-        }
-
-        // Extract target row and column
-        String targetSquare = san.substring(san.length() - 2);
-        toCol = targetSquare.charAt(0) - 'a';
-        toRow = 8 - Character.getNumericValue(targetSquare.charAt(1));
-
-
-        // Search board for piece
-        for (int row = 0; row < 8; row++) {
-            for (int col = 0; col < 8; col++) {
-                char fig = board.state[row][col];
-                if (fig == '\0') continue;
-                if (isWhite != Character.isUpperCase(fig)) continue;
-                if (Character.toUpperCase(fig) != piece) continue;
-
-                if (piece == 'P' && (fromCol != -1 && col != fromCol || fromCol == -1 && col != toCol)) continue;
-                if (!moveIsForPiece(piece, row, col, toRow, toCol)) continue;
-
-                return new Move(isWhite ? fig : Character.toLowerCase(fig), row, col, toRow, toCol, isCapture);
-            }
-        }
-
-        return null;
-    }
-
-    private boolean moveIsForPiece(char piece, int fromRow, int fromCol, int toRow, int toCol) {
-        return switch (piece) {
-            case 'R' -> fromRow == toRow || fromCol == toCol;
-            case 'B' -> Math.abs(fromRow - toRow) == Math.abs(fromCol - toCol);
-            case 'N' -> Math.abs(fromRow - toRow) * Math.abs(fromCol - toCol) == 2;
-            case 'P', 'Q', 'K' -> true; // Pawns are already determined via their column and queen and king are unique
-            default -> false;
-        };
-    }
-}
\ No newline at end of file
+}
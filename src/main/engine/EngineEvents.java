@@ -0,0 +1,136 @@
+package main.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of the engine, so a recording shows engine moves, search iterations and
+ * cache and book changes next to the GC pauses and CPU samples of the JVM.
+ *
+ * <p>The events are recorded by every recording that enables them, e.g. one started with
+ * {@code -XX:StartFlightRecording:filename=engine.jfr}, and can be switched off by their name in the
+ * recording settings, e.g. {@code chess2.SearchIteration#enabled=false}. Without a recording that enables
+ * an event, {@link Event#shouldCommit()} is false, no field is filled and the JIT removes the event object.
+ */
+public final class EngineEvents {
+
+    private EngineEvents() {}
+
+    @Name("chess2.MoveDecision")
+    @Label("Engine Move")
+    @Category({"Chess2", "Engine"})
+    @Description("The engine chose a move from the book, the endgame tables or a search")
+    @StackTrace(false)
+    static final class MoveDecision extends Event {
+        @Label("Source")
+        @Description("book, tablebase or search")
+        String source;
+
+        @Label("Move")
+        String move;
+
+        @Label("Evaluation")
+        @Description("White-positive evaluation of the move, 0 for a book move")
+        int evaluation;
+
+        @Label("Depth")
+        @Description("Depth of the last completed search iteration")
+        int depth;
+
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Move Generation Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long moveGenerationTime;
+
+        @Label("Evaluation Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long evaluationTime;
+
+        @Label("Make Move Time")
+        @Timespan(Timespan.MILLISECONDS)
+        long makeMoveTime;
+
+        @Label("Eval Cache Hits")
+        long evalCacheHits;
+
+        @Label("Eval Cache Probes")
+        long evalCacheProbes;
+
+        @Label("Pawn Hash Hits")
+        long pawnHashHits;
+
+        @Label("Pawn Hash Probes")
+        long pawnHashProbes;
+    }
+
+    @Name("chess2.SearchIteration")
+    @Label("Search Iteration")
+    @Category({"Chess2", "Engine"})
+    @Description("One iteration of the iterative deepening search")
+    @StackTrace(false)
+    static final class SearchIteration extends Event {
+        @Label("Depth")
+        int depth;
+
+        @Label("Completed")
+        @Description("False if the iteration was aborted by a limit or a stop and its result discarded")
+        boolean completed;
+
+        @Label("Best Move")
+        String bestMove;
+
+        @Label("Evaluation")
+        @Description("White-positive evaluation of the best move")
+        int evaluation;
+
+        @Label("Nodes")
+        @Description("Nodes of the search so far")
+        long nodes;
+    }
+
+    @Name("chess2.HashTable")
+    @Label("Hash Table Change")
+    @Category({"Chess2", "Engine"})
+    @Description("A cache of the engine was resized or cleared")
+    @StackTrace(false)
+    static final class HashTable extends Event {
+        @Label("Table")
+        String table;
+
+        @Label("Action")
+        @Description("resize or clear")
+        String action;
+
+        @Label("Entries")
+        long entries;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    @Name("chess2.BookLoad")
+    @Label("Opening Book Load")
+    @Category({"Chess2", "Engine"})
+    @Description("An opening book was loaded or mapped")
+    @StackTrace(false)
+    static final class BookLoad extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Format")
+        @Description("text or binary")
+        String format;
+
+        @Label("Entries")
+        long entries;
+    }
+}
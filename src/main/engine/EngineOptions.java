@@ -0,0 +1,99 @@
+package main.engine;
+
+import main.engine.nnue.NnueNetwork;
+import main.engine.tablebase.Tablebase;
+import main.engine.tablebase.TablebaseGenerator;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Search limits and engine assets given on the command line: {@code movetime=ms}, {@code nodes=N},
+ * {@code depth=N}, {@code hash=MB}, {@code nnue} and {@code tb}. The tools take them as {@code -option}
+ * arguments, a tournament configuration as a comma-separated list and an analysis request only the limits.
+ */
+public class EngineOptions {
+
+    /** The time limit in milliseconds, or {@code Long.MAX_VALUE}. */
+    public long moveTime = Long.MAX_VALUE;
+    /** The node limit, or {@code Long.MAX_VALUE}. */
+    public long nodes = Long.MAX_VALUE;
+    /** The maximum depth, or -1 if not given. */
+    public int depth = -1;
+    /** The evaluation cache in megabytes, or 0 for the default. */
+    public int hashSize;
+    /** Whether to evaluate with the network at {@link NnueNetwork#DEFAULT_PATH}. */
+    public boolean network;
+    /** Whether to probe the endgame tables in {@link TablebaseGenerator#DEFAULT_DIRECTORY}. */
+    public boolean tablebase;
+
+    /**
+     * Sets a search limit.
+     *
+     * @param option an option like {@code depth=6}, without the leading dash
+     * @return whether the option is a search limit
+     * @throws NumberFormatException if the value is not a number
+     */
+    public boolean parseLimit(String option) {
+        String value = option.substring(option.indexOf('=') + 1);
+        if (option.startsWith("movetime=")) moveTime = Long.parseLong(value);
+        else if (option.startsWith("nodes=")) nodes = Long.parseLong(value);
+        else if (option.startsWith("depth=")) depth = Integer.parseInt(value);
+        else return false;
+        return true;
+    }
+
+    /**
+     * Sets a search limit or an engine option.
+     *
+     * @param option an option like {@code hash=4} or {@code nnue}, without the leading dash
+     * @return whether the option is known
+     * @throws NumberFormatException if the value is not a number
+     */
+    public boolean parse(String option) {
+        if (parseLimit(option)) return true;
+        if (option.startsWith("hash=")) hashSize = Integer.parseInt(option.substring(5));
+        else if (option.equals("nnue")) network = true;
+        else if (option.equals("tb")) tablebase = true;
+        else return false;
+        return true;
+    }
+
+    /**
+     * Without a node or time budget, the search stops at the default depth, so the analysis of a position
+     * always ends.
+     *
+     * @return the limits of an analysis
+     */
+    public SearchLimits limits() {
+        int maxDepth = depth >= 0 ? depth : moveTime == Long.MAX_VALUE && nodes == Long.MAX_VALUE
+                ? DepthFirstSearchStrategy.MAX_DEPTH : SearchLimits.INFINITE_DEPTH;
+        return new SearchLimits(moveTime, maxDepth, nodes);
+    }
+
+    /**
+     * @param defaultMoveTime the time limit in milliseconds if no limit is given
+     * @return the limits of a search to move
+     */
+    public SearchLimits limits(long defaultMoveTime) {
+        if (depth >= 0) return new SearchLimits(moveTime, depth, nodes);
+        long timeLimit = moveTime == Long.MAX_VALUE && nodes == Long.MAX_VALUE ? defaultMoveTime : moveTime;
+        return new SearchLimits(timeLimit, SearchLimits.INFINITE_DEPTH, nodes);
+    }
+
+    /**
+     * @return the network, or null if not requested
+     * @throws IOException if the network cannot be read
+     */
+    public NnueNetwork loadNetwork() throws IOException {
+        return network ? NnueNetwork.load(Paths.get(NnueNetwork.DEFAULT_PATH)) : null;
+    }
+
+    /**
+     * @return the endgame tables, or null if not requested
+     * @throws IOException if the tables cannot be read
+     */
+    public Tablebase openTablebase() throws IOException {
+        return tablebase ? Tablebase.open(Paths.get(TablebaseGenerator.DEFAULT_DIRECTORY)) : null;
+    }
+}
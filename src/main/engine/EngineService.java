@@ -0,0 +1,148 @@
+package main.engine;
+
+import main.DaemonThreadFactory;
+import main.chessboard.BoardEnv;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Runs the searches of one engine asynchronously on a single long-lived thread.
+ *
+ * <p>Searches and other engine tasks are queued and run one after another, so the engine is never used by
+ * two threads at once, and its evaluation cache and pawn hash table stay warm from one search to the next.
+ * Every search works on a copy of the position taken when it is submitted, so the caller may go on
+ * changing its board.
+ *
+ * <p>The future of a search can be cancelled, or limited with {@link CompletableFuture#orTimeout} or
+ * {@link CompletableFuture#completeOnTimeout}: once it is completed by anyone but the search itself, a
+ * queued search is skipped and a running one is stopped after its current iteration. Closing the service
+ * cancels the futures of the running search and of every queued search and task.
+ */
+public class EngineService implements AutoCloseable {
+
+    private final Engine engine;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("engine"));
+    /** The future of the running search, or null. */
+    private volatile CompletableFuture<Engine.BestMove> running;
+    /** The future of the search {@link #stop()} was called for, or null. */
+    private volatile CompletableFuture<Engine.BestMove> stopped;
+
+    /**
+     * @param engine the engine, which must not be used directly while the service runs
+     */
+    public EngineService(Engine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Searches a position.
+     *
+     * @param board    the position, copied before this method returns
+     * @param limits   the limits of the search
+     * @param progress receives every completed search iteration on the engine thread, or null
+     * @return the future of the best move
+     */
+    public CompletableFuture<Engine.BestMove> search(BoardEnv board, SearchLimits limits, SearchListener progress) {
+        BoardEnv position = board.deepCopy();
+        CompletableFuture<Engine.BestMove> future = new CompletableFuture<>();
+        future.whenComplete((bestMove, e) -> {
+            // Cancelled or timed out while searching
+            if (running == future) engine.stop();
+        });
+        execute(future, () -> {
+            if (future.isDone()) return;
+            running = future;
+            try {
+                Engine.BestMove bestMove = engine.calculateBestMove(position, limits, (depth, evaluation, nodes, millis, line) -> {
+                    // A stop requested before the search started was reset by it
+                    if (future.isDone() || stopped == future) engine.stop();
+                    else if (progress != null) progress.iterationFinished(depth, evaluation, nodes, millis, line);
+                });
+                running = null;
+                future.complete(bestMove);
+            } catch (Throwable e) {
+                running = null;
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Runs a task with the engine after the searches submitted before, e.g. to configure it.
+     *
+     * @param task the task
+     * @return the future of the result of the task
+     */
+    public <T> CompletableFuture<T> submit(Function<Engine, T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        execute(future, () -> {
+            if (future.isDone()) return;
+            try {
+                future.complete(task.apply(engine));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private void execute(CompletableFuture<?> future, Runnable body) {
+        try {
+            executor.execute(new Task(future, body));
+        } catch (RejectedExecutionException e) {
+            future.cancel(false); // closed
+        }
+    }
+
+    /**
+     * Stops the running search, which completes with the result of its last completed iteration.
+     */
+    public void stop() {
+        CompletableFuture<Engine.BestMove> search = running;
+        if (search != null) {
+            stopped = search;
+            engine.stop();
+        }
+    }
+
+    /**
+     * Cancels the running search and the queued tasks and shuts the engine thread down.
+     */
+    @Override
+    public void close() {
+        CompletableFuture<Engine.BestMove> search = running;
+        if (search != null) search.cancel(false);
+        for (Runnable task : executor.shutdownNow()) {
+            ((Task) task).future.cancel(false);
+        }
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A queued search or task with its future, which is cancelled if the task is dropped.
+     */
+    private static class Task implements Runnable {
+        final CompletableFuture<?> future;
+        final Runnable body;
+
+        Task(CompletableFuture<?> future, Runnable body) {
+            this.future = future;
+            this.body = body;
+        }
+
+        @Override
+        public void run() {
+            body.run();
+        }
+    }
+}
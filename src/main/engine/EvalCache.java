@@ -0,0 +1,92 @@
+package main.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Direct-mapped cache of static evaluations keyed by the Zobrist hash, so a position reached through a
+ * different move order is not evaluated again.
+ *
+ * <p>Every entry is a single {@code long}: the upper 32 bits of the hash (the lower bits select the slot)
+ * and the 32 bit score. Entries are read and written atomically without locks, so a torn entry can never
+ * pair a key with the score of another position, even if several threads share the cache. Colliding
+ * positions simply overwrite each other.
+ */
+public class EvalCache {
+
+    /** Returned by {@link #probe(long)} on a miss. Static evaluations never reach this value. */
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    private static final VarHandle ENTRIES = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] entries;
+    private final int mask;
+    // Statistics, not synchronized
+    private long probes;
+    private long hits;
+
+    /**
+     * Creates a cache.
+     *
+     * @param size the number of entries, a power of two
+     */
+    public EvalCache(int size) {
+        if (size <= 0 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Size must be a power of two: " + size);
+        }
+        entries = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Looks up the evaluation of a position.
+     *
+     * @param hash the Zobrist hash of the position
+     * @return the evaluation, or {@link #NOT_FOUND}
+     */
+    public int probe(long hash) {
+        probes++;
+        long entry = (long) ENTRIES.getOpaque(entries, (int) hash & mask);
+        if ((entry ^ hash) >>> 32 != 0) return NOT_FOUND;
+        hits++;
+        return (int) entry;
+    }
+
+    /**
+     * Stores the evaluation of a position, replacing the entry in its slot.
+     *
+     * @param hash  the Zobrist hash of the position
+     * @param score the evaluation
+     */
+    public void store(long hash, int score) {
+        ENTRIES.setOpaque(entries, (int) hash & mask, (hash & 0xFFFFFFFF00000000L) | (score & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Removes all entries, e.g. after the evaluation function changed.
+     */
+    public void clear() {
+        Arrays.fill(entries, 0L);
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        return entries.length;
+    }
+
+    public long getProbes() {
+        return probes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public void resetStats() {
+        probes = 0;
+        hits = 0;
+    }
+}
@@ -0,0 +1,444 @@
+package main.engine;
+
+import main.chessboard.BoardEnv;
+import main.chessboard.MakeMoveResult;
+import main.chessboard.Move;
+import main.chessboard.MoveMaker;
+import main.pgn.SanResolver;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * An opening book mapping positions (by Zobrist hash) to weighted candidate moves.
+ *
+ * <p>The book is a sorted array of 16 byte entries in the layout of Polyglot books (all big-endian):
+ * <pre>
+ *   long  key     Zobrist hash of the position, see {@link main.chessboard.ZobristTable}
+ *   short move    bits 0-2 to file, 3-5 to rank, 6-8 from file, 9-11 from rank (rank 0 is the 1st rank),
+ *                 12-14 promotion piece (0 none, 1 knight, 2 bishop, 3 rook, 4 queen);
+ *                 castling is encoded as the king capturing its own rook
+ *   short weight  relative frequency of the move in the position
+ *   int   learn   unused, 0
+ * </pre>
+ * Entries are sorted by unsigned key, and by descending weight within a key, so a probe is a binary search.
+ * The keys are this engine's Zobrist hashes, not the Polyglot ones, so only the file layout is compatible.
+ *
+ * <p>Binary books ({@code .bin}) are memory-mapped with {@link #open(Path)}: opening is instant and costs no
+ * heap, independent of the size of the book. Text books (one line of SAN moves from the starting position per
+ * opening) are replayed once with the move generator by {@link #load(String)}; the weight of a move is then the
+ * number of lines that play it, so choosing by weight picks every line with the same probability. Since
+ * positions are looked up by hash, transpositions into a book position are found, and the book works from any
+ * starting position.
+ *
+ * <p>The book is read-only and can be shared by all engines.
+ */
+public class OpeningBook {
+
+    public static final int ENTRY_SIZE = 16;
+    public static final int MAX_WEIGHT = 0xFFFF;
+    /** Size of a mapped segment, a multiple of the entry size, since a single buffer is limited to 2 GB. */
+    private static final long SEGMENT_SIZE = 1L << 30;
+    private static final char[] PROMOTION_PIECES = {'\0', 'n', 'b', 'r', 'q'};
+
+    /** The entries, split into segments of {@link #SEGMENT_SIZE} bytes. */
+    private final ByteBuffer[] segments;
+    private final long entryCount;
+
+    private OpeningBook(ByteBuffer[] segments, long entryCount) {
+        this.segments = segments;
+        this.entryCount = entryCount;
+    }
+
+    /**
+     * A candidate move of a book position.
+     */
+    public static final class BookMove {
+        /** The move in Polyglot encoding. */
+        public final int move;
+        public final int weight;
+        public final int learn;
+
+        BookMove(int move, int weight, int learn) {
+            this.move = move;
+            this.weight = weight;
+            this.learn = learn;
+        }
+
+        /**
+         * @param move a legal move of the position
+         * @return true if it is this book move
+         */
+        public boolean matches(Move move) {
+            return encode(move) == this.move;
+        }
+    }
+
+    /**
+     * @return an empty book
+     */
+    public static OpeningBook empty() {
+        return new OpeningBook(new ByteBuffer[0], 0);
+    }
+
+    /**
+     * Memory-maps a binary book.
+     *
+     * @param path the book file
+     * @return the book
+     * @throws IOException if the file cannot be read or is not a book
+     */
+    public static OpeningBook open(Path path) throws IOException {
+        EngineEvents.BookLoad event = new EngineEvents.BookLoad();
+        event.begin();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size % ENTRY_SIZE != 0) throw new IOException("Not a book file: " + path);
+            ByteBuffer[] segments = new ByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                long offset = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_SIZE, size - offset));
+            }
+            OpeningBook book = new OpeningBook(segments, size / ENTRY_SIZE);
+            loaded(event, path.toString(), "binary", book);
+            return book;
+        }
+    }
+
+    /**
+     * Loads a text book. Every line contains one opening from the standard starting position as a space
+     * separated list of moves in SAN.
+     *
+     * @param path the path of the opening database
+     * @return the book, empty if the file cannot be read
+     */
+    public static OpeningBook load(String path) {
+        EngineEvents.BookLoad event = new EngineEvents.BookLoad();
+        event.begin();
+        List<List<String>> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // Lines are expected to contain no frequency information
+                String trimmed = line.trim();
+                if (!trimmed.isEmpty()) {
+                    lines.add(List.of(trimmed.split("\\s+")));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        OpeningBook book = build(lines, Engine.STARTING_FEN);
+        loaded(event, path, "text", book);
+        return book;
+    }
+
+    private static void loaded(EngineEvents.BookLoad event, String path, String format, OpeningBook book) {
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.format = format;
+            event.entries = book.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Builds a book from opening lines, see {@link #replay(List, String, int, MoveConsumer)}.
+     *
+     * @param lines       the lines, each a list of moves in SAN
+     * @param startingFEN the position all lines start from
+     * @return the book
+     */
+    public static OpeningBook build(List<List<String>> lines, String startingFEN) {
+        // hash -> encoded move -> weight
+        Map<Long, Map<Integer, Integer>> weights = new HashMap<>();
+        replay(lines, startingFEN, Integer.MAX_VALUE,
+                (key, move) -> weights.computeIfAbsent(key, k -> new HashMap<>()).merge(move, 1, Integer::sum));
+
+        int count = 0;
+        for (Map<Integer, Integer> moves : weights.values()) count += moves.size();
+        long[] keys = new long[count];
+        int[] moves = new int[count];
+        int[] moveWeights = new int[count];
+        int i = 0;
+        for (Map.Entry<Long, Map<Integer, Integer>> position : weights.entrySet()) {
+            for (Map.Entry<Integer, Integer> move : position.getValue().entrySet()) {
+                keys[i] = position.getKey();
+                moves[i] = move.getKey();
+                moveWeights[i] = move.getValue();
+                i++;
+            }
+        }
+        return fromEntries(keys, moves, moveWeights, count);
+    }
+
+    /**
+     * Receives the moves of replayed lines.
+     */
+    @FunctionalInterface
+    interface MoveConsumer {
+        /**
+         * @param key  the hash of the position
+         * @param move the move played in it, in Polyglot encoding
+         */
+        void accept(long key, int move);
+    }
+
+    /**
+     * Replays opening lines and reports every move with the position it is played in. The lines are sorted, so
+     * lines with a common beginning only replay it once. A line with a move that is illegal or cannot be resolved
+     * is used up to that move.
+     *
+     * @param lines       the lines, each a list of moves in SAN
+     * @param startingFEN the position all lines start from
+     * @param maxPly      the number of moves used of every line
+     * @param consumer    receives the moves
+     * @return the number of lines with a move that could not be played
+     */
+    static int replay(List<List<String>> lines, String startingFEN, int maxPly, MoveConsumer consumer) {
+        List<List<String>> sorted = new ArrayList<>(lines);
+        sorted.sort((a, b) -> {
+            for (int i = 0; i < Math.min(a.size(), b.size()); i++) {
+                int c = a.get(i).compareTo(b.get(i));
+                if (c != 0) return c;
+            }
+            return Integer.compare(a.size(), b.size());
+        });
+
+        int errors = 0;
+        BoardEnv board = new BoardEnv(startingFEN);
+        List<String> played = new ArrayList<>(); // the line currently on the board
+        List<Move> playedMoves = new ArrayList<>();
+        List<MakeMoveResult> results = new ArrayList<>();
+        List<Long> hashes = new ArrayList<>(); // hashes[ply] is the position before played[ply]
+        for (List<String> line : sorted) {
+            int common = 0;
+            while (common < Math.min(played.size(), line.size()) && played.get(common).equals(line.get(common))) {
+                common++;
+            }
+            while (played.size() > common) {
+                int last = played.size() - 1;
+                MoveMaker.unmakeMove(board, playedMoves.remove(last), results.remove(last).undoInfo);
+                played.remove(last);
+                hashes.remove(last);
+            }
+            for (int ply = 0; ply < Math.min(line.size(), maxPly); ply++) {
+                if (ply == played.size()) {
+                    Move move = SanResolver.resolve(board, line.get(ply));
+                    if (move == null) {
+                        System.err.println("Opening book: cannot play " + line.get(ply) + " in " + String.join(" ", line));
+                        errors++;
+                        break;
+                    }
+                    hashes.add(board.zobristHash);
+                    results.add(MoveMaker.makeMove(board, move, false));
+                    playedMoves.add(move);
+                    played.add(line.get(ply));
+                }
+                consumer.accept(hashes.get(ply), encode(playedMoves.get(ply)));
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Creates an in-memory book from unsorted entries. Weights are scaled down per position if they do not fit
+     * into 16 bits, moves with weight 0 are left out. The arrays are sorted and the weights scaled in place.
+     * Like a mapped book, the entries are split into segments, so the book can exceed 2 GB.
+     *
+     * @param keys    the position hashes
+     * @param moves   the moves in Polyglot encoding, see {@link #encode(Move)}
+     * @param weights the weights
+     * @param count   the number of entries
+     * @return the book
+     */
+    public static OpeningBook fromEntries(long[] keys, int[] moves, int[] weights, int count) {
+        sort(keys, moves, weights, 0, count - 1);
+        long entryCount = 0;
+        for (int start = 0, end; start < count; start = end) {
+            end = start;
+            while (end < count && keys[end] == keys[start]) end++;
+            int maxWeight = weights[start];
+            for (int i = start; i < end; i++) {
+                if (maxWeight > MAX_WEIGHT) weights[i] = (int) ((long) weights[i] * MAX_WEIGHT / maxWeight);
+                if (weights[i] != 0) entryCount++;
+            }
+        }
+        long size = entryCount * ENTRY_SIZE;
+        ByteBuffer[] segments = new ByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = ByteBuffer.allocate((int) Math.min(SEGMENT_SIZE, size - i * SEGMENT_SIZE));
+        }
+        int segment = 0;
+        for (int i = 0; i < count; i++) {
+            if (weights[i] == 0) continue;
+            if (!segments[segment].hasRemaining()) segment++;
+            segments[segment].putLong(keys[i]).putShort((short) moves[i]).putShort((short) weights[i]).putInt(0);
+        }
+        return new OpeningBook(segments, entryCount);
+    }
+
+    /**
+     * Sorts entries by unsigned key and descending weight (quicksort on the parallel arrays, avoiding boxing).
+     */
+    private static void sort(long[] keys, int[] moves, int[] weights, int low, int high) {
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            long pivotKey = keys[middle];
+            int pivotWeight = weights[middle];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (compare(keys[i], weights[i], pivotKey, pivotWeight) < 0) i++;
+                while (compare(keys[j], weights[j], pivotKey, pivotWeight) > 0) j--;
+                if (i <= j) {
+                    long key = keys[i]; keys[i] = keys[j]; keys[j] = key;
+                    int move = moves[i]; moves[i] = moves[j]; moves[j] = move;
+                    int weight = weights[i]; weights[i] = weights[j]; weights[j] = weight;
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller part, loop on the larger one
+            if (j - low < high - i) {
+                sort(keys, moves, weights, low, j);
+                low = i;
+            } else {
+                sort(keys, moves, weights, i, high);
+                high = j;
+            }
+        }
+    }
+
+    private static int compare(long key1, int weight1, long key2, int weight2) {
+        int c = Long.compareUnsigned(key1, key2);
+        return c != 0 ? c : Integer.compare(weight2, weight1);
+    }
+
+    /**
+     * Writes the book in the binary format.
+     *
+     * @param path the book file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            byte[] chunk = new byte[1 << 16];
+            for (ByteBuffer segment : segments) {
+                ByteBuffer view = segment.duplicate();
+                view.clear();
+                while (view.hasRemaining()) {
+                    int length = Math.min(chunk.length, view.remaining());
+                    view.get(chunk, 0, length);
+                    out.write(chunk, 0, length);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param move the move
+     * @return the move in Polyglot encoding
+     */
+    public static int encode(Move move) {
+        int toCol = move.toCol;
+        if (Character.toLowerCase(move.piece) == 'k' && Math.abs(move.toCol - move.fromCol) == 2) {
+            toCol = move.toCol > move.fromCol ? 7 : 0; // castling: king takes own rook
+        }
+        int promotion = 0;
+        char promotionPiece = Character.toLowerCase(move.promotionPiece);
+        for (int i = 1; i < PROMOTION_PIECES.length; i++) {
+            if (PROMOTION_PIECES[i] == promotionPiece) promotion = i;
+        }
+        return toCol | (7 - move.toRow) << 3 | move.fromCol << 6 | (7 - move.fromRow) << 9 | promotion << 12;
+    }
+
+    /**
+     * @return the number of entries of the book
+     */
+    public long size() {
+        return entryCount;
+    }
+
+    private long key(long entry) {
+        long offset = entry * ENTRY_SIZE;
+        return segments[(int) (offset / SEGMENT_SIZE)].getLong((int) (offset % SEGMENT_SIZE));
+    }
+
+    /**
+     * @param board the board state
+     * @return the candidate moves of the position by descending weight, empty if it is not in the book
+     */
+    public List<BookMove> probe(BoardEnv board) {
+        long key = board.zobristHash;
+        // Binary search for the first entry with the key
+        long low = 0;
+        long high = entryCount;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(key(middle), key) < 0) low = middle + 1;
+            else high = middle;
+        }
+        List<BookMove> moves = Collections.emptyList();
+        for (long entry = low; entry < entryCount && key(entry) == key; entry++) {
+            long offset = entry * ENTRY_SIZE;
+            ByteBuffer segment = segments[(int) (offset / SEGMENT_SIZE)];
+            int position = (int) (offset % SEGMENT_SIZE);
+            if (moves.isEmpty()) moves = new ArrayList<>();
+            moves.add(new BookMove(segment.getShort(position + 8) & 0xFFFF, segment.getShort(position + 10) & 0xFFFF,
+                    segment.getInt(position + 12)));
+        }
+        return moves;
+    }
+
+    /**
+     * @param board the board state
+     * @return the sum of the weights of the position's moves; for text books the number of lines through it
+     */
+    public int totalWeight(BoardEnv board) {
+        int total = 0;
+        for (BookMove move : probe(board)) {
+            total += move.weight;
+        }
+        return total;
+    }
+
+    /**
+     * Chooses a book move with a probability proportional to its weight.
+     *
+     * @param board  the board state
+     * @param random the random source
+     * @return the legal move, or null if the position is not in the book
+     */
+    public Move chooseMove(BoardEnv board, Random random) {
+        List<BookMove> bookMoves = probe(board);
+        int total = 0;
+        for (BookMove bookMove : bookMoves) total += bookMove.weight;
+        if (total == 0) return null;
+        int pick = random.nextInt(total);
+        for (BookMove bookMove : bookMoves) {
+            pick -= bookMove.weight;
+            if (pick < 0) {
+                // Resolve the move with the move generator, which also guards against hash collisions
+                for (Move move : Engine.generateAllLegalMoves(board)) {
+                    if (bookMove.matches(move)) return move;
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+}
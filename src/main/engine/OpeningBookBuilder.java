@@ -0,0 +1,139 @@
+package main.engine;
+
+import main.DaemonThreadFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Builds a binary {@link OpeningBook} from text books, e.g. the lichess opening dumps.
+ *
+ * <p>The files are streamed in batches of lines. Every batch is replayed with the move generator on one of
+ * the worker threads, and the moves of all positions are counted in a shared {@link BookMoveCounter}. While
+ * the queue of batches is full, the reading thread replays a batch itself, so memory use does not depend on
+ * the size of the input. Moves played fewer than {@code -min} times are pruned, the counts of the others
+ * become the book weights. If replaying a batch fails, reading stops and the failure is rethrown.
+ *
+ * <p>Usage: {@code OpeningBookBuilder <output .bin> <input .txt files...> [-min=N] [-maxPly=N] [-threads=N]}
+ */
+public class OpeningBookBuilder {
+
+    public static final String DEFAULT_PATH = "src/main/resources/openings/book.bin";
+
+    private static final int BATCH_SIZE = 2048;
+    private static final int DEFAULT_MIN_COUNT = 2;
+    private static final int DEFAULT_MAX_PLY = 30;
+
+    private final BookMoveCounter counter = new BookMoveCounter();
+    private final ExecutorService executor;
+    private final int maxPly;
+    private final AtomicLong lines = new AtomicLong();
+    private final AtomicInteger errors = new AtomicInteger();
+    /** The first exception thrown by a replay, or null. */
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * @param threads the number of worker threads
+     * @param maxPly  the number of moves used of every line
+     */
+    public OpeningBookBuilder(int threads, int maxPly) {
+        this.maxPly = maxPly;
+        // A full queue makes the reading thread replay the batch itself, which throttles reading
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(2 * threads), new DaemonThreadFactory("book-worker"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: OpeningBookBuilder <output .bin> <input .txt files...> [-min=N] [-maxPly=N] [-threads=N]");
+            return;
+        }
+        int minCount = DEFAULT_MIN_COUNT;
+        int maxPly = DEFAULT_MAX_PLY;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("-min=")) minCount = Integer.parseInt(args[i].substring(5));
+            else if (args[i].startsWith("-maxPly=")) maxPly = Integer.parseInt(args[i].substring(8));
+            else if (args[i].startsWith("-threads=")) threads = Integer.parseInt(args[i].substring(9));
+            else inputs.add(Paths.get(args[i]));
+        }
+        long start = System.currentTimeMillis();
+        OpeningBookBuilder builder = new OpeningBookBuilder(threads, maxPly);
+        for (Path input : inputs) {
+            builder.add(input);
+        }
+        OpeningBook book = builder.build(minCount);
+        book.save(Paths.get(args[0]));
+        System.out.printf("%d lines (%d with illegal moves), %d moves counted, %d book entries in %d ms%n",
+                builder.lines.get(), builder.errors.get(), builder.counter.size(), book.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Reads a text book and replays its lines in parallel. Returns when all batches are submitted.
+     *
+     * @param file the text book, one line of SAN moves from the starting position per opening
+     * @throws IOException if the file cannot be read or replaying an earlier batch failed
+     */
+    public void add(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            List<List<String>> batch = new ArrayList<>(BATCH_SIZE);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty()) continue;
+                batch.add(List.of(trimmed.split("\\s+")));
+                if (batch.size() == BATCH_SIZE) {
+                    submit(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            submit(batch);
+        }
+    }
+
+    private void submit(List<List<String>> batch) throws IOException {
+        checkFailure();
+        lines.addAndGet(batch.size());
+        executor.execute(() -> {
+            try {
+                errors.addAndGet(OpeningBook.replay(batch, Engine.STARTING_FEN, maxPly, counter::increment));
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable e = failure.get();
+        if (e != null) throw new IOException("Replaying the lines failed", e);
+    }
+
+    /**
+     * Waits for all lines to be replayed and creates the book.
+     *
+     * @param minCount the minimum number of times a move has to be played to be kept
+     * @return the book
+     * @throws IOException if replaying a batch failed
+     */
+    public OpeningBook build(int minCount) throws IOException, InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        checkFailure();
+        return counter.toBook(minCount);
+    }
+}
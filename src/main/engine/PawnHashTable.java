@@ -0,0 +1,66 @@
+package main.engine;
+
+import main.chessboard.BoardEnv;
+
+/**
+ * Fixed-size, direct-mapped cache of {@link PawnStructure} evaluations keyed by {@link BoardEnv#pawnHash}.
+ * Pawn structures repeat heavily across a search tree, so most probes are hits.
+ *
+ * <p>Not thread-safe: every engine owns its own table.
+ */
+public class PawnHashTable {
+
+    private final PawnStructure[] entries;
+    private final int mask;
+    private long probes;
+    private long hits;
+
+    /**
+     * Creates a table.
+     *
+     * @param size the number of entries, a power of two
+     */
+    public PawnHashTable(int size) {
+        if (size <= 0 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Size must be a power of two: " + size);
+        }
+        entries = new PawnStructure[size];
+        for (int i = 0; i < size; i++) {
+            entries[i] = new PawnStructure();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Looks up the pawn structure of a position, evaluating and storing it on a miss. The returned entry
+     * may be overwritten by the next probe.
+     *
+     * <p>A fresh entry has key 0 and score 0, which is also the correct entry for a position without pawns.
+     *
+     * @param board the board state
+     * @return the pawn structure of the position
+     */
+    public PawnStructure probe(BoardEnv board) {
+        probes++;
+        PawnStructure entry = entries[(int) board.pawnHash & mask];
+        if (entry.key == board.pawnHash) {
+            hits++;
+        } else {
+            entry.evaluate(board);
+        }
+        return entry;
+    }
+
+    public long getProbes() {
+        return probes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public void resetStats() {
+        probes = 0;
+        hits = 0;
+    }
+}
@@ -0,0 +1,184 @@
+package main.engine;
+
+import main.chessboard.BoardEnv;
+import main.chessboard.Piece;
+
+/**
+ * Pawn-structure evaluation: passed, isolated, doubled and backward pawns. The result only depends on
+ * the pawns, so it is cached in a {@link PawnHashTable} under {@link BoardEnv#pawnHash}. Terms that also
+ * depend on the kings (pawn shield, king distance to passed pawns) are added per leaf from the cached
+ * passed-pawn mask.
+ *
+ * <p>Pawn sets are bitboards with bit {@code row * 8 + col}, so row 0 is the 8th rank and white pawns
+ * move towards lower bits.
+ */
+public class PawnStructure {
+
+    // Packed (midgame, endgame) scores for one pawn, see PieceValues.pack
+    private static final int[] PASSED_PAWN = {
+            0,
+            PieceValues.pack(0, 5),
+            PieceValues.pack(5, 10),
+            PieceValues.pack(10, 20),
+            PieceValues.pack(20, 35),
+            PieceValues.pack(35, 60),
+            PieceValues.pack(60, 100),
+            0
+    }; // by ranks advanced
+    private static final int ISOLATED_PAWN = PieceValues.pack(-10, -15);
+    private static final int DOUBLED_PAWN = PieceValues.pack(-10, -20);
+    private static final int BACKWARD_PAWN = PieceValues.pack(-8, -10);
+    private static final int PAWN_SHIELD_NEAR = PieceValues.pack(10, 0);
+    private static final int PAWN_SHIELD_FAR = PieceValues.pack(5, 0);
+    private static final int PASSED_PAWN_KING_DISTANCE = PieceValues.pack(0, 5);
+
+    private static final int WHITE = 0;
+    private static final int BLACK = 1;
+
+    private static final long[] ADJACENT_FILES = new long[8];
+    /** Squares in front of a pawn on its own and the adjacent files; no enemy pawn there means passed. */
+    private static final long[][] PASSED_MASK = new long[2][64];
+    /** Squares in front of a pawn on its own file. */
+    private static final long[][] FORWARD_FILE = new long[2][64];
+    /** Squares beside and behind a pawn on the adjacent files, where a defending pawn can be. */
+    private static final long[][] SUPPORT_MASK = new long[2][64];
+    /** Squares from which a pawn of the given color attacks a square. */
+    private static final long[][] PAWN_ATTACKERS = new long[2][64];
+
+    static {
+        for (int col = 0; col < 8; col++) {
+            for (int row = 0; row < 8; row++) {
+                if (col > 0) ADJACENT_FILES[col] |= 1L << (row * 8 + col - 1);
+                if (col < 7) ADJACENT_FILES[col] |= 1L << (row * 8 + col + 1);
+            }
+        }
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq / 8, col = sq % 8;
+            for (int r = 0; r < 8; r++) {
+                long rank = 0xFFL << (r * 8);
+                long file = rank & (0x0101010101010101L << col);
+                long adjacent = rank & ADJACENT_FILES[col];
+                if (r < row) {
+                    FORWARD_FILE[WHITE][sq] |= file;
+                    PASSED_MASK[WHITE][sq] |= file | adjacent;
+                    SUPPORT_MASK[BLACK][sq] |= adjacent;
+                } else if (r > row) {
+                    FORWARD_FILE[BLACK][sq] |= file;
+                    PASSED_MASK[BLACK][sq] |= file | adjacent;
+                    SUPPORT_MASK[WHITE][sq] |= adjacent;
+                } else {
+                    SUPPORT_MASK[WHITE][sq] |= adjacent;
+                    SUPPORT_MASK[BLACK][sq] |= adjacent;
+                }
+            }
+            // White pawns attack towards row 0, so they attack a square from the row below it
+            if (row < 7) PAWN_ATTACKERS[WHITE][sq] = ADJACENT_FILES[col] & (0xFFL << ((row + 1) * 8));
+            if (row > 0) PAWN_ATTACKERS[BLACK][sq] = ADJACENT_FILES[col] & (0xFFL << ((row - 1) * 8));
+        }
+    }
+
+    /** The pawn hash this entry was computed for. */
+    public long key;
+    /** The packed (midgame, endgame) pawn-structure score, positive for white. */
+    public int score;
+    /** The passed pawns of both colors. */
+    public long passedPawns;
+
+    /**
+     * Evaluates the pawn structure of a position from scratch.
+     *
+     * @param board the board state
+     * @return the evaluated structure
+     */
+    public static PawnStructure compute(BoardEnv board) {
+        PawnStructure structure = new PawnStructure();
+        structure.evaluate(board);
+        return structure;
+    }
+
+    /**
+     * Evaluates the pawn structure of a position into this entry.
+     *
+     * @param board the board state
+     */
+    void evaluate(BoardEnv board) {
+        long whitePawns = 0L;
+        long blackPawns = 0L;
+        byte blackPawn = Piece.code(Piece.PAWN, false);
+        for (long set = board.pieces[Piece.WHITE]; set != 0; set &= set - 1) {
+            int sq = Long.numberOfTrailingZeros(set);
+            if (board.state[sq] == Piece.PAWN) whitePawns |= 1L << sq;
+        }
+        for (long set = board.pieces[Piece.BLACK]; set != 0; set &= set - 1) {
+            int sq = Long.numberOfTrailingZeros(set);
+            if (board.state[sq] == blackPawn) blackPawns |= 1L << sq;
+        }
+        key = board.pawnHash;
+        passedPawns = 0L;
+        score = evaluateSide(whitePawns, blackPawns, WHITE) - evaluateSide(blackPawns, whitePawns, BLACK);
+    }
+
+    private int evaluateSide(long own, long enemy, int color) {
+        int score = 0;
+        for (long pawns = own; pawns != 0; pawns &= pawns - 1) {
+            int sq = Long.numberOfTrailingZeros(pawns);
+            int row = sq / 8, col = sq % 8;
+            boolean doubled = (own & FORWARD_FILE[color][sq]) != 0;
+            // Only the front pawn of a doubled pair can be passed
+            if ((enemy & PASSED_MASK[color][sq]) == 0 && !doubled) {
+                score += PASSED_PAWN[color == WHITE ? 7 - row : row];
+                passedPawns |= 1L << sq;
+            }
+            if (doubled) {
+                score += DOUBLED_PAWN;
+            }
+            if ((own & ADJACENT_FILES[col]) == 0) {
+                score += ISOLATED_PAWN;
+            } else if ((own & SUPPORT_MASK[color][sq]) == 0) {
+                // No pawn can defend it and the enemy controls the square in front of it
+                int stop = color == WHITE ? sq - 8 : sq + 8;
+                if ((enemy & PAWN_ATTACKERS[1 - color][stop]) != 0) score += BACKWARD_PAWN;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Evaluates the terms that depend on the pawns and the kings: the pawn shield in front of a king on
+     * its first two ranks, and the distance of both kings to the square in front of each passed pawn.
+     *
+     * @param board       the board state
+     * @param passedPawns the passed pawns of the position
+     * @return the packed (midgame, endgame) score, positive for white
+     */
+    public static int evaluateKings(BoardEnv board, long passedPawns) {
+        int score = pawnShield(board, true) - pawnShield(board, false);
+        for (long pawns = passedPawns; pawns != 0; pawns &= pawns - 1) {
+            int sq = Long.numberOfTrailingZeros(pawns);
+            boolean white = board.pieceAt(sq / 8, sq % 8) == 'P';
+            int stopRow = white ? sq / 8 - 1 : sq / 8 + 1;
+            int[] ownKing = white ? board.whiteKingPos : board.blackKingPos;
+            int[] enemyKing = white ? board.blackKingPos : board.whiteKingPos;
+            int distanceDelta = kingDistance(enemyKing, stopRow, sq % 8) - kingDistance(ownKing, stopRow, sq % 8);
+            score += (white ? 1 : -1) * distanceDelta * PASSED_PAWN_KING_DISTANCE;
+        }
+        return score;
+    }
+
+    private static int pawnShield(BoardEnv board, boolean white) {
+        int[] king = white ? board.whiteKingPos : board.blackKingPos;
+        int direction = white ? -1 : 1;
+        if (white ? king[0] < 6 : king[0] > 1) return 0;
+        char pawn = white ? 'P' : 'p';
+        int score = 0;
+        for (int col = Math.max(0, king[1] - 1); col <= Math.min(7, king[1] + 1); col++) {
+            if (board.pieceAt(king[0] + direction, col) == pawn) score += PAWN_SHIELD_NEAR;
+            else if (board.pieceAt(king[0] + 2 * direction, col) == pawn) score += PAWN_SHIELD_FAR;
+        }
+        return score;
+    }
+
+    private static int kingDistance(int[] king, int row, int col) {
+        return Math.max(Math.abs(king[0] - row), Math.abs(king[1] - col));
+    }
+}
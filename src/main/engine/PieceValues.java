@@ -1,7 +1,16 @@
 package main.engine;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
 public class PieceValues {
 
+    /** Parameter file written by {@link main.engine.tuning.TexelTuner}, loaded at startup if present. */
+    public static final String DEFAULT_PATH = "tuning/piece_values.txt";
+
     public static final int PAWN = 100;
     public static final int KNIGHT = 320;
     public static final int BISHOP = 330;
@@ -9,9 +18,12 @@ public class PieceValues {
     public static final int QUEEN = 900;
     public static final int KING = 20000;
 
-    public static final int OOO_ROOK_DELTA = 5; // better rook position when O-O-O
-
-    public static final int MAX_PIECE_VALUE_SUM = 2 * QUEEN + 4 * BISHOP + 4 * KNIGHT + 4 * ROOK + 16 * PAWN;
+    // Game phase weights; the phase falls from TOTAL_PHASE (all pieces) to 0 (pawns and kings only)
+    public static final int KNIGHT_PHASE = 1;
+    public static final int BISHOP_PHASE = 1;
+    public static final int ROOK_PHASE = 2;
+    public static final int QUEEN_PHASE = 4;
+    public static final int TOTAL_PHASE = 4 * KNIGHT_PHASE + 4 * BISHOP_PHASE + 4 * ROOK_PHASE + 2 * QUEEN_PHASE;
 
     public static final int[] PAWN_TABLE = {
              0,  0,  0,  0,  0,  0,  0,  0,
@@ -102,29 +114,147 @@ public class PieceValues {
         };
     }
 
-    public static int getPieceTableValue(char piece, int row, int col, int pieceValueSum) {
-        int whiteIdx = 8 * row + col;
-        int blackIdx = 56 - 8 * row + col;
-        return switch (piece) {
-            case 'P' -> PAWN_TABLE[whiteIdx];
-            case 'N' -> KNIGHT_TABLE[whiteIdx];
-            case 'B' -> BISHOP_TABLE[whiteIdx];
-            case 'R' -> ROOK_TABLE[whiteIdx];
-            case 'Q' -> QUEEN_TABLE[whiteIdx];
-            case 'K' -> {
-                float frac = (float) pieceValueSum / MAX_PIECE_VALUE_SUM;
-                yield Math.round(frac * KING_MIDGAME_TABLE[whiteIdx] + (1 - frac) * KING_ENDGAME_TABLE[whiteIdx]);
+    /**
+     * PIECE_SQUARE[pieceIndex][row * 8 + col] is the piece value plus its piece-square value as a packed
+     * (midgame, endgame) pair, positive for white. Piece indices are the ones of {@link main.chessboard.ZobristTable}.
+     * Built from the tables above, or loaded from a parameter file with {@link #load(Path)}.
+     */
+    public static final int[][] PIECE_SQUARE = new int[12][64];
+    /** PHASE[pieceIndex] is the game phase weight of a piece. */
+    public static final int[] PHASE = new int[12];
+
+    /** Names of the pieces in piece index order, used in parameter files. */
+    private static final String[] PIECE_NAMES = {"PAWN", "KNIGHT", "BISHOP", "ROOK", "QUEEN", "KING"};
+
+    static {
+        int[] values = {PAWN, KNIGHT, BISHOP, ROOK, QUEEN, KING};
+        int[][] midgameTables = {PAWN_TABLE, KNIGHT_TABLE, BISHOP_TABLE, ROOK_TABLE, QUEEN_TABLE, KING_MIDGAME_TABLE};
+        int[][] endgameTables = {PAWN_TABLE, KNIGHT_TABLE, BISHOP_TABLE, ROOK_TABLE, QUEEN_TABLE, KING_ENDGAME_TABLE};
+        int[] phases = {0, KNIGHT_PHASE, BISHOP_PHASE, ROOK_PHASE, QUEEN_PHASE, 0};
+        int[][] midgame = new int[6][64];
+        int[][] endgame = new int[6][64];
+        for (int piece = 0; piece < 6; piece++) {
+            for (int sq = 0; sq < 64; sq++) {
+                midgame[piece][sq] = values[piece] + midgameTables[piece][sq];
+                endgame[piece][sq] = values[piece] + endgameTables[piece][sq];
             }
-            case 'p' -> -PAWN_TABLE[blackIdx];
-            case 'n' -> -KNIGHT_TABLE[blackIdx];
-            case 'b' -> -BISHOP_TABLE[blackIdx];
-            case 'r' -> -ROOK_TABLE[blackIdx];
-            case 'q' -> -QUEEN_TABLE[blackIdx];
-            case 'k' -> {
-                float frac = (float) pieceValueSum / MAX_PIECE_VALUE_SUM;
-                yield -Math.round(frac * KING_MIDGAME_TABLE[blackIdx] + (1 - frac) * KING_ENDGAME_TABLE[blackIdx]);
+            PHASE[piece] = phases[piece];
+            PHASE[piece + 6] = phases[piece];
+        }
+        setPieceSquare(midgame, endgame);
+    }
+
+    /**
+     * Replaces the piece-square values. Must not be called while an engine is searching, and engines
+     * created before keep stale entries in their evaluation caches.
+     *
+     * @param midgame MIDGAME[piece][sq]: piece value plus piece-square value of the white pieces P, N, B, R, Q, K
+     *                in the midgame, squares from white's view ({@code row * 8 + col}, row 0 is the 8th rank)
+     * @param endgame the same for the endgame
+     */
+    public static void setPieceSquare(int[][] midgame, int[][] endgame) {
+        for (int piece = 0; piece < 6; piece++) {
+            for (int sq = 0; sq < 64; sq++) {
+                int mirrored = 56 - (sq / 8) * 8 + sq % 8; // same square seen from black
+                PIECE_SQUARE[piece][sq] = pack(midgame[piece][sq], endgame[piece][sq]);
+                PIECE_SQUARE[piece + 6][sq] = -pack(midgame[piece][mirrored], endgame[piece][mirrored]);
             }
-            default -> 0;
-        };
+        }
+    }
+
+    /**
+     * Loads piece-square values written by {@link #save(Path, int[][], int[][])}, e.g. by the Texel tuner.
+     *
+     * @param path the parameter file
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static void load(Path path) throws IOException {
+        int[][] midgame = new int[6][64];
+        int[][] endgame = new int[6][64];
+        List<String> lines = Files.readAllLines(path).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .collect(Collectors.toList());
+        if (lines.size() != 12 * 9) throw new IOException("Malformed parameter file: " + path);
+        for (int table = 0; table < 12; table++) {
+            String name = PIECE_NAMES[table / 2] + (table % 2 == 0 ? "_MIDGAME" : "_ENDGAME");
+            if (!lines.get(table * 9).equals(name)) throw new IOException("Expected " + name + " in " + path);
+            int[] values = (table % 2 == 0 ? midgame : endgame)[table / 2];
+            for (int row = 0; row < 8; row++) {
+                String[] fields = lines.get(table * 9 + 1 + row).split("\\s+");
+                if (fields.length != 8) throw new IOException("Expected 8 values in " + name + " of " + path);
+                for (int col = 0; col < 8; col++) {
+                    try {
+                        values[row * 8 + col] = Integer.parseInt(fields[col]);
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Malformed value in " + name + " of " + path, e);
+                    }
+                }
+            }
+        }
+        setPieceSquare(midgame, endgame);
+    }
+
+    /**
+     * Writes piece-square values as 12 tables of 8 x 8 values (midgame and endgame for P, N, B, R, Q, K),
+     * each including the piece value and seen from white with the 8th rank first.
+     *
+     * @param path    the parameter file
+     * @param midgame the midgame values, see {@link #setPieceSquare(int[][], int[][])}
+     * @param endgame the endgame values
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(Path path, int[][] midgame, int[][] endgame) throws IOException {
+        StringBuilder sb = new StringBuilder("# Piece value plus piece-square value, white's view, 8th rank first\n");
+        for (int table = 0; table < 12; table++) {
+            sb.append(PIECE_NAMES[table / 2]).append(table % 2 == 0 ? "_MIDGAME" : "_ENDGAME").append('\n');
+            int[] values = (table % 2 == 0 ? midgame : endgame)[table / 2];
+            for (int row = 0; row < 8; row++) {
+                for (int col = 0; col < 8; col++) {
+                    sb.append(String.format("%6d", values[row * 8 + col]));
+                }
+                sb.append('\n');
+            }
+        }
+        Files.writeString(path, sb.toString());
+    }
+
+    /**
+     * Packs a midgame and an endgame score into one int, so both are updated with a single addition.
+     *
+     * @param midgame the midgame score
+     * @param endgame the endgame score
+     * @return the packed pair
+     */
+    public static int pack(int midgame, int endgame) {
+        return (endgame << 16) + midgame;
+    }
+
+    /**
+     * @param score a packed pair, see {@link #pack(int, int)}
+     * @return the midgame score
+     */
+    public static int midgame(int score) {
+        return (short) score;
+    }
+
+    /**
+     * @param score a packed pair, see {@link #pack(int, int)}
+     * @return the endgame score
+     */
+    public static int endgame(int score) {
+        return (short) ((score + 0x8000) >> 16);
+    }
+
+    /**
+     * Blends a packed pair according to the game phase.
+     *
+     * @param score a packed pair, see {@link #pack(int, int)}
+     * @param phase the game phase, {@link #TOTAL_PHASE} in the opening and 0 in a pawn endgame
+     * @return the tapered score
+     */
+    public static int taper(int score, int phase) {
+        phase = Math.min(phase, TOTAL_PHASE);
+        return (midgame(score) * phase + endgame(score) * (TOTAL_PHASE - phase)) / TOTAL_PHASE;
     }
 }
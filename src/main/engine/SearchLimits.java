@@ -0,0 +1,32 @@
+package main.engine;
+
+/**
+ * Limits of a search. The search stops at the first limit reached, but always completes depth 1,
+ * so there is a move to play.
+ */
+public class SearchLimits {
+
+    /** Depth of an unlimited search, which is in practice only ended by time or {@link Engine#stop()}. */
+    public static final int INFINITE_DEPTH = 64;
+
+    /** The time limit in milliseconds. */
+    public final long timeLimit;
+    /** The maximum depth in plies. */
+    public final int depth;
+    /** The maximum number of positions analyzed. */
+    public final long nodes;
+
+    public SearchLimits(long timeLimit, int depth, long nodes) {
+        this.timeLimit = timeLimit;
+        this.depth = depth;
+        this.nodes = nodes;
+    }
+
+    /**
+     * @param timeLimit the time limit in milliseconds
+     * @return the limits of a search to the default depth within the time limit
+     */
+    public static SearchLimits time(long timeLimit) {
+        return new SearchLimits(timeLimit, DepthFirstSearchStrategy.MAX_DEPTH, Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,21 @@
+package main.engine;
+
+import java.util.List;
+
+/**
+ * Receives the progress of a search.
+ */
+@FunctionalInterface
+public interface SearchListener {
+
+    /**
+     * Called after every completed iteration of the iterative deepening.
+     *
+     * @param depth      the depth of the iteration
+     * @param evaluation the evaluation, positive if white is better
+     * @param nodes      the number of positions analyzed so far
+     * @param millis     the time since the start of the search
+     * @param line       the principal variation in SAN
+     */
+    void iterationFinished(int depth, int evaluation, long nodes, long millis, List<String> line);
+}
@@ -0,0 +1,72 @@
+package main.engine.nnue;
+
+import main.chessboard.ZobristTable;
+
+import java.util.Arrays;
+
+/**
+ * The int16 accumulators of both perspectives for one position. A piece appearing or disappearing adds or
+ * subtracts one weight row per perspective. The arithmetic wraps like int16 hardware, so undoing a move
+ * by the inverse updates restores the accumulators exactly.
+ */
+public class NnueAccumulator {
+
+    private final NnueNetwork network;
+    final short[] white;
+    final short[] black;
+
+    NnueAccumulator(NnueNetwork network) {
+        this.network = network;
+        this.white = network.featureBias.clone();
+        this.black = network.featureBias.clone();
+    }
+
+    private NnueAccumulator(NnueAccumulator other) {
+        this.network = other.network;
+        this.white = other.white.clone();
+        this.black = other.black.clone();
+    }
+
+    /**
+     * Adds or removes a piece.
+     *
+     * @param piece  the piece, uppercase for white
+     * @param square the square ({@code row * 8 + col})
+     * @param add    true if the piece appears, false if it disappears
+     */
+    public void update(char piece, int square, boolean add) {
+        int pieceIndex = ZobristTable.pieceIndex(piece);
+        int hidden = network.hiddenSize;
+        int whiteRow = NnueNetwork.whiteFeature(pieceIndex, square) * hidden;
+        int blackRow = NnueNetwork.blackFeature(pieceIndex, square) * hidden;
+        if (add) {
+            network.kernels.add(white, network.featureWeights, whiteRow);
+            network.kernels.add(black, network.featureWeights, blackRow);
+        } else {
+            network.kernels.subtract(white, network.featureWeights, whiteRow);
+            network.kernels.subtract(black, network.featureWeights, blackRow);
+        }
+    }
+
+    /**
+     * @return the network the accumulators belong to
+     */
+    public NnueNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * @return an independent copy
+     */
+    public NnueAccumulator copy() {
+        return new NnueAccumulator(this);
+    }
+
+    /**
+     * @param other accumulators of the same network
+     * @return true if both hold the same values
+     */
+    public boolean matches(NnueAccumulator other) {
+        return Arrays.equals(white, other.white) && Arrays.equals(black, other.black);
+    }
+}
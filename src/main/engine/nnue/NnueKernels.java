@@ -0,0 +1,49 @@
+package main.engine.nnue;
+
+/**
+ * The arithmetic of the network: accumulator updates and the output layer. Implemented with the
+ * Vector API where available and with plain loops otherwise; both give identical results.
+ */
+interface NnueKernels {
+
+    /**
+     * Adds a weight row to an accumulator, wrapping on overflow like int16 hardware does.
+     *
+     * @param accumulator the accumulator
+     * @param weights     the weights
+     * @param offset      the start of the row in the weights
+     */
+    void add(short[] accumulator, short[] weights, int offset);
+
+    /**
+     * Subtracts a weight row from an accumulator.
+     *
+     * @param accumulator the accumulator
+     * @param weights     the weights
+     * @param offset      the start of the row in the weights
+     */
+    void subtract(short[] accumulator, short[] weights, int offset);
+
+    /**
+     * Computes the dot product of the clipped accumulator ({@code clamp(x, 0, max)}) with a weight row.
+     *
+     * @param accumulator the accumulator
+     * @param weights     the weights
+     * @param offset      the start of the row in the weights
+     * @param max         the upper bound of the clipped ReLU
+     * @return the dot product
+     */
+    int clippedDot(short[] accumulator, short[] weights, int offset, short max);
+
+    /**
+     * @return the Vector API kernels if the {@code jdk.incubator.vector} module is present, else the scalar ones
+     */
+    static NnueKernels best() {
+        try {
+            return new VectorKernels();
+        } catch (LinkageError e) {
+            // Started without --add-modules jdk.incubator.vector
+            return new ScalarKernels();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package main.engine.nnue;
+
+import main.chessboard.BoardEnv;
+import main.chessboard.Piece;
+import main.chessboard.ZobristTable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * An efficiently updatable neural network evaluation (768 → 2×N → 1).
+ *
+ * <p>The input features are the 12 piece types on the 64 squares, seen from both sides: the white
+ * perspective uses the board as is, the black perspective swaps the colors and mirrors the ranks. Each
+ * perspective has an int16 accumulator of N neurons, which is the feature bias plus the weight rows of all
+ * active features. Since a move only changes a few features, the accumulators are updated incrementally
+ * in {@link main.chessboard.MoveMaker#makeMove} and {@link main.chessboard.MoveMaker#unmakeMove}, see
+ * {@link NnueAccumulator}.
+ *
+ * <p>The output is the clipped ReLU ({@code clamp(x, 0, QA)}) of the accumulator of the side to move,
+ * followed by the one of the other side, times the output weights, plus the output bias, scaled by
+ * {@code SCALE / (QA * QB)} to centipawns.
+ *
+ * <p>Weight file, all values little-endian:
+ * <pre>
+ *   int     magic "C2NN"
+ *   int     version
+ *   int     N (hidden size)
+ *   short[] feature weights, 768 rows of N, row = piece index * 64 + square (white perspective)
+ *   short[] feature bias, N
+ *   short[] output weights, 2 * N (side to move first)
+ *   int     output bias
+ * </pre>
+ * Piece indices are the ones of {@link ZobristTable}, squares are {@code row * 8 + col}.
+ *
+ * <p>Inference uses the {@code jdk.incubator.vector} Vector API if the JVM was started with
+ * {@code --add-modules jdk.incubator.vector}, and plain loops otherwise.
+ */
+public class NnueNetwork {
+
+    public static final String DEFAULT_PATH = "nnue/chess2.nnue";
+
+    public static final int MAGIC = 0x43324E4E; // "C2NN"
+    public static final int VERSION = 1;
+    public static final int FEATURES = 768;
+    public static final int QA = 255;
+    public static final int QB = 64;
+    public static final int SCALE = 400;
+
+    final int hiddenSize;
+    final short[] featureWeights;
+    final short[] featureBias;
+    final short[] outputWeights;
+    final int outputBias;
+    final NnueKernels kernels;
+
+    private NnueNetwork(int hiddenSize, short[] featureWeights, short[] featureBias, short[] outputWeights,
+                        int outputBias, NnueKernels kernels) {
+        this.hiddenSize = hiddenSize;
+        this.featureWeights = featureWeights;
+        this.featureBias = featureBias;
+        this.outputWeights = outputWeights;
+        this.outputBias = outputBias;
+        this.kernels = kernels;
+    }
+
+    /**
+     * Loads a network, using the Vector API if available.
+     *
+     * @param path the weight file
+     * @return the network
+     * @throws IOException if the file cannot be read or is corrupt
+     */
+    public static NnueNetwork load(Path path) throws IOException {
+        return load(path, true);
+    }
+
+    /**
+     * Loads a network.
+     *
+     * @param path         the weight file
+     * @param useVectorApi false to always use the scalar implementation
+     * @return the network
+     * @throws IOException if the file cannot be read or is corrupt
+     */
+    public static NnueNetwork load(Path path, boolean useVectorApi) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a network file: " + path);
+        }
+        int hiddenSize = buffer.getInt();
+        long expected = 12 + 2L * (FEATURES * (long) hiddenSize + hiddenSize + 2L * hiddenSize) + 4;
+        if (hiddenSize <= 0 || buffer.capacity() != expected) {
+            throw new IOException("Corrupt network file: " + path);
+        }
+        short[] featureWeights = new short[FEATURES * hiddenSize];
+        short[] featureBias = new short[hiddenSize];
+        short[] outputWeights = new short[2 * hiddenSize];
+        buffer.asShortBuffer().get(featureWeights).get(featureBias).get(outputWeights);
+        buffer.position(buffer.position() + 2 * (featureWeights.length + featureBias.length + outputWeights.length));
+        int outputBias = buffer.getInt();
+        NnueKernels kernels = useVectorApi ? NnueKernels.best() : new ScalarKernels();
+        return new NnueNetwork(hiddenSize, featureWeights, featureBias, outputWeights, outputBias, kernels);
+    }
+
+    /**
+     * @return true if inference uses the Vector API
+     */
+    public boolean isVectorized() {
+        return !(kernels instanceof ScalarKernels);
+    }
+
+    public int getHiddenSize() {
+        return hiddenSize;
+    }
+
+    /**
+     * Creates accumulators for a position from scratch.
+     *
+     * @param board the board state
+     * @return the accumulators
+     */
+    public NnueAccumulator newAccumulator(BoardEnv board) {
+        NnueAccumulator accumulator = new NnueAccumulator(this);
+        for (long set = board.pieces[Piece.WHITE] | board.pieces[Piece.BLACK]; set != 0; set &= set - 1) {
+            int sq = Long.numberOfTrailingZeros(set);
+            accumulator.update(Piece.toChar(board.state[sq]), sq, true);
+        }
+        return accumulator;
+    }
+
+    /**
+     * Evaluates a position from its accumulators.
+     *
+     * @param accumulator the accumulators of the position
+     * @param whiteToMove the side to move
+     * @return the evaluation in centipawns, positive if white is better
+     */
+    public int evaluate(NnueAccumulator accumulator, boolean whiteToMove) {
+        short[] us = whiteToMove ? accumulator.white : accumulator.black;
+        short[] them = whiteToMove ? accumulator.black : accumulator.white;
+        long output = (long) kernels.clippedDot(us, outputWeights, 0, (short) QA)
+                + kernels.clippedDot(them, outputWeights, hiddenSize, (short) QA)
+                + outputBias;
+        int evaluation = (int) (output * SCALE / (QA * QB));
+        return whiteToMove ? evaluation : -evaluation;
+    }
+
+    /**
+     * @param pieceIndex the Zobrist piece index
+     * @param square     the square
+     * @return the feature of the white perspective
+     */
+    static int whiteFeature(int pieceIndex, int square) {
+        return pieceIndex * 64 + square;
+    }
+
+    /**
+     * @param pieceIndex the Zobrist piece index
+     * @param square     the square
+     * @return the feature of the black perspective: colors swapped and ranks mirrored
+     */
+    static int blackFeature(int pieceIndex, int square) {
+        return ((pieceIndex + 6) % 12) * 64 + (square ^ 56);
+    }
+}
@@ -0,0 +1,31 @@
+package main.engine.nnue;
+
+/**
+ * Plain loop implementation of the network arithmetic, used when the Vector API is not available.
+ */
+final class ScalarKernels implements NnueKernels {
+
+    @Override
+    public void add(short[] accumulator, short[] weights, int offset) {
+        for (int i = 0; i < accumulator.length; i++) {
+            accumulator[i] += weights[offset + i];
+        }
+    }
+
+    @Override
+    public void subtract(short[] accumulator, short[] weights, int offset) {
+        for (int i = 0; i < accumulator.length; i++) {
+            accumulator[i] -= weights[offset + i];
+        }
+    }
+
+    @Override
+    public int clippedDot(short[] accumulator, short[] weights, int offset, short max) {
+        int sum = 0;
+        for (int i = 0; i < accumulator.length; i++) {
+            int activation = Math.min(Math.max(accumulator[i], 0), max);
+            sum += activation * weights[offset + i];
+        }
+        return sum;
+    }
+}
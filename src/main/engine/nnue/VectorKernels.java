@@ -0,0 +1,70 @@
+package main.engine.nnue;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API implementation of the network arithmetic. Loading this class fails with a
+ * {@link LinkageError} if the JVM was started without {@code --add-modules jdk.incubator.vector}.
+ */
+final class VectorKernels implements NnueKernels {
+
+    private static final VectorSpecies<Short> SHORTS = ShortVector.SPECIES_PREFERRED;
+    /** Same vector size as {@link #SHORTS}, so every short vector widens into two int vectors. */
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, SHORTS.vectorShape());
+
+    @Override
+    public void add(short[] accumulator, short[] weights, int offset) {
+        int bound = SHORTS.loopBound(accumulator.length);
+        int i = 0;
+        for (; i < bound; i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, accumulator, i)
+                    .add(ShortVector.fromArray(SHORTS, weights, offset + i))
+                    .intoArray(accumulator, i);
+        }
+        for (; i < accumulator.length; i++) {
+            accumulator[i] += weights[offset + i];
+        }
+    }
+
+    @Override
+    public void subtract(short[] accumulator, short[] weights, int offset) {
+        int bound = SHORTS.loopBound(accumulator.length);
+        int i = 0;
+        for (; i < bound; i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, accumulator, i)
+                    .sub(ShortVector.fromArray(SHORTS, weights, offset + i))
+                    .intoArray(accumulator, i);
+        }
+        for (; i < accumulator.length; i++) {
+            accumulator[i] -= weights[offset + i];
+        }
+    }
+
+    @Override
+    public int clippedDot(short[] accumulator, short[] weights, int offset, short max) {
+        int bound = SHORTS.loopBound(accumulator.length);
+        int parts = SHORTS.length() / INTS.length();
+        IntVector sum = IntVector.zero(INTS);
+        int i = 0;
+        for (; i < bound; i += SHORTS.length()) {
+            ShortVector activation = ShortVector.fromArray(SHORTS, accumulator, i)
+                    .lanewise(VectorOperators.MAX, (short) 0)
+                    .lanewise(VectorOperators.MIN, max);
+            ShortVector weight = ShortVector.fromArray(SHORTS, weights, offset + i);
+            for (int part = 0; part < parts; part++) {
+                IntVector a = (IntVector) activation.convertShape(VectorOperators.S2I, INTS, part);
+                IntVector w = (IntVector) weight.convertShape(VectorOperators.S2I, INTS, part);
+                sum = sum.add(a.mul(w));
+            }
+        }
+        int result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < accumulator.length; i++) {
+            int activation = Math.min(Math.max(accumulator[i], 0), max);
+            result += activation * weights[offset + i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,316 @@
+package main.engine.tablebase;
+
+import main.chessboard.BoardEnv;
+import main.chessboard.Piece;
+import main.engine.PieceValues;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Probes endgame tables with up to 4 pieces, generated by {@link TablebaseGenerator}.
+ *
+ * <p>Every table is a file {@code <name>.c2tb} (e.g. {@code KRvK.c2tb}) with a 16 byte header
+ * (magic, version, number of positions per side to move) followed by one byte per position, first
+ * for white to move, then for black to move. The files are memory-mapped, so a lookup is a single
+ * read and the tables cost no heap.
+ *
+ * <p>A byte holds the result for the side to move together with the distance to mate:
+ * <ul>
+ *   <li>{@code 0}: draw</li>
+ *   <li>{@code 1..127}: win, mate in that many moves</li>
+ *   <li>{@code 128..254}: loss, mated in (value - 128) moves</li>
+ *   <li>{@code 255}: illegal or unused index</li>
+ * </ul>
+ * Tables assume no castling rights and no en passant, positions with either are not probed.
+ *
+ * <p>Probing is thread-safe.
+ */
+public class Tablebase {
+
+    public static final int MAX_PIECES = 4;
+    /** Score of a won table position (white-positive, minus the plies to mate). Lower than a mate found by search. */
+    public static final int WIN_SCORE = 1_000_000;
+    /** Upper bound of the game phase of any position in the tables (two queens). */
+    public static final int MAX_PHASE = 2 * PieceValues.QUEEN_PHASE;
+
+    public static final int DRAW = 0;
+    public static final int ILLEGAL = 255;
+    /** Returned by the probe methods if the position is not covered by the loaded tables. */
+    public static final int NOT_FOUND = -1;
+
+    static final String FILE_SUFFIX = ".c2tb";
+    static final int MAGIC = 0x43325442; // "C2TB"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+
+    private final Map<String, ByteBuffer> tables = new ConcurrentHashMap<>();
+    private final Map<String, TablebaseMaterial> materials = new ConcurrentHashMap<>();
+    /** The tables by the piece codes of the non-king pieces of a position, see {@link #materialIndex}. */
+    private final Table[] byMaterial = new Table[MATERIAL_INDICES];
+
+    /** Number of material indices: two piece codes, each {@link Piece#EMPTY} or a piece. */
+    private static final int MATERIAL_INDICES = 13 * 13;
+
+    /**
+     * A table as seen from a position.
+     *
+     * @param flip true if the colors of the position are flipped in the table
+     */
+    private record Table(ByteBuffer table, TablebaseMaterial material, boolean flip) {}
+
+    Tablebase() {}
+
+    /**
+     * Memory-maps all tables of a directory. A missing directory results in an empty tablebase.
+     *
+     * @param directory the directory of the {@code .c2tb} files
+     * @return the tablebase
+     * @throws IOException if a table cannot be read or is corrupt
+     */
+    public static Tablebase open(Path directory) throws IOException {
+        Tablebase tablebase = new Tablebase();
+        if (!Files.isDirectory(directory)) return tablebase;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - FILE_SUFFIX.length());
+                tablebase.add(name, map(file));
+            }
+        }
+        return tablebase;
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Adds a table.
+     *
+     * @param name  the canonical name of the table
+     * @param table the table including its header
+     * @throws IOException if the header does not match the material
+     */
+    void add(String name, ByteBuffer table) throws IOException {
+        TablebaseMaterial material = TablebaseMaterial.of(name);
+        if (table.capacity() < HEADER_SIZE || table.getInt(0) != MAGIC || table.getInt(4) != VERSION
+                || table.getInt(8) != material.size || table.capacity() != HEADER_SIZE + 2L * material.size) {
+            throw new IOException("Corrupt tablebase file: " + name);
+        }
+        materials.put(name, material);
+        tables.put(name, table);
+        // A table with the same material on both sides is only probed unflipped
+        byMaterial[materialIndex(material, true)] = new Table(table, material, true);
+        byMaterial[materialIndex(material, false)] = new Table(table, material, false);
+    }
+
+    /**
+     * @param material the material of a table
+     * @param flip     true for the position with the colors of the table flipped
+     * @return the material index of the positions of the table
+     */
+    private static int materialIndex(TablebaseMaterial material, boolean flip) {
+        int first = Piece.EMPTY, second = Piece.EMPTY;
+        for (int slot = 2; slot < material.slots.length; slot++) {
+            char piece = flip ? swapColor(material.slots[slot]) : material.slots[slot];
+            if (slot == 2) first = Piece.of(piece);
+            else second = Piece.of(piece);
+        }
+        return materialIndex(first, second);
+    }
+
+    /**
+     * @param first  the code of one non-king piece, or {@link Piece#EMPTY}
+     * @param second the code of the other non-king piece, or {@link Piece#EMPTY}
+     * @return an index of the material, independent of the order of the pieces
+     */
+    private static int materialIndex(int first, int second) {
+        return Math.min(first, second) * 13 + Math.max(first, second);
+    }
+
+    /**
+     * @return the number of loaded tables
+     */
+    public int getTableCount() {
+        return tables.size();
+    }
+
+    /**
+     * @param name the canonical name of a table, e.g. "KQvKR"
+     * @return true if the table is loaded
+     */
+    public boolean hasTable(String name) {
+        return tables.containsKey(name);
+    }
+
+    /**
+     * Probes a position of the game. The search probes every node of a late endgame, so positions with
+     * too many pieces are rejected by their piece count and the table is found by the piece codes, without
+     * a scan of the board or an allocation.
+     *
+     * @param board the position
+     * @return the result byte for the side to move, or {@link #NOT_FOUND}
+     */
+    public int probe(BoardEnv board) {
+        long occupied = board.pieces[Piece.WHITE] | board.pieces[Piece.BLACK];
+        int count = Long.bitCount(occupied);
+        if (count > MAX_PIECES) return NOT_FOUND;
+        if (board.whiteKingSideCastling || board.whiteQueenSideCastling
+                || board.blackKingSideCastling || board.blackQueenSideCastling
+                || board.enPassantTarget != null) {
+            return NOT_FOUND;
+        }
+        if (count == 2) return DRAW;
+        int whiteKing = 0, blackKing = 0;
+        int first = Piece.EMPTY, second = Piece.EMPTY, firstSquare = 0, secondSquare = 0;
+        for (long set = occupied; set != 0; set &= set - 1) {
+            int square = Long.numberOfTrailingZeros(set);
+            int code = board.state[square];
+            if (code == Piece.KING) whiteKing = square;
+            else if (code == Piece.code(Piece.KING, false)) blackKing = square;
+            else if (first == Piece.EMPTY) {
+                first = code;
+                firstSquare = square;
+            } else {
+                second = code;
+                secondSquare = square;
+            }
+        }
+        Table entry = byMaterial[materialIndex(first, second)];
+        if (entry == null) return NOT_FOUND;
+        TablebaseMaterial material = entry.material;
+        boolean flip = entry.flip;
+
+        // Assign the pieces to the slots of the table, flipping colors if needed
+        int[] slotSquares = new int[count];
+        slotSquares[0] = flip ? TablebaseMaterial.SYMMETRY[2][blackKing] : whiteKing;
+        slotSquares[1] = flip ? TablebaseMaterial.SYMMETRY[2][whiteKing] : blackKing;
+        char firstPiece = flip ? swapColor(Piece.toChar(first)) : Piece.toChar(first);
+        boolean firstInSlot2 = material.slots[2] == firstPiece;
+        slotSquares[firstInSlot2 ? 2 : 3] = flip ? TablebaseMaterial.SYMMETRY[2][firstSquare] : firstSquare;
+        if (count == MAX_PIECES) {
+            slotSquares[firstInSlot2 ? 3 : 2] = flip ? TablebaseMaterial.SYMMETRY[2][secondSquare] : secondSquare;
+        }
+        return probe(entry.table, material, slotSquares, board.whiteToMove != flip);
+    }
+
+    /**
+     * Probes a position given by its pieces.
+     *
+     * @param pieces       the pieces, uppercase for white, including both kings
+     * @param squares      the square ({@code row * 8 + col}) of each piece
+     * @param count        the number of pieces
+     * @param whiteToMove  the side to move
+     * @return the result byte for the side to move, or {@link #NOT_FOUND}
+     */
+    public int probe(char[] pieces, int[] squares, int count, boolean whiteToMove) {
+        if (count == 2) return DRAW;
+        if (count > MAX_PIECES) return NOT_FOUND;
+        StringBuilder white = new StringBuilder();
+        StringBuilder black = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            char piece = pieces[i];
+            if (piece == 'K' || piece == 'k') continue;
+            (Character.isUpperCase(piece) ? white : black).append(piece);
+        }
+        String whiteSide = TablebaseMaterial.side(white);
+        String blackSide = TablebaseMaterial.side(black);
+        boolean flip = TablebaseMaterial.isFlipped(whiteSide, blackSide);
+        String name = flip ? blackSide + "v" + whiteSide : whiteSide + "v" + blackSide;
+        ByteBuffer table = tables.get(name);
+        if (table == null) return NOT_FOUND;
+        TablebaseMaterial material = materials.get(name);
+
+        // Assign the pieces to the slots of the table, flipping colors if needed
+        int[] slotSquares = new int[count];
+        boolean[] used = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            char piece = flip ? swapColor(pieces[i]) : pieces[i];
+            int square = flip ? TablebaseMaterial.SYMMETRY[2][squares[i]] : squares[i];
+            for (int slot = 0; slot < count; slot++) {
+                if (!used[slot] && material.slots[slot] == piece) {
+                    used[slot] = true;
+                    slotSquares[slot] = square;
+                    break;
+                }
+            }
+        }
+        return probe(table, material, slotSquares, whiteToMove != flip);
+    }
+
+    /**
+     * @param table            the table including its header
+     * @param material         the material of the table
+     * @param slotSquares      the square of each slot of the table
+     * @param tableWhiteToMove the side to move in the table
+     * @return the result byte for the side to move, or {@link #NOT_FOUND}
+     */
+    private static int probe(ByteBuffer table, TablebaseMaterial material, int[] slotSquares, boolean tableWhiteToMove) {
+        int index = material.index(slotSquares);
+        if (index < 0) return NOT_FOUND;
+        int value = table.get(HEADER_SIZE + (tableWhiteToMove ? 0 : material.size) + index) & 0xFF;
+        return value == ILLEGAL ? NOT_FOUND : value;
+    }
+
+    static char swapColor(char piece) {
+        return Character.isUpperCase(piece) ? Character.toLowerCase(piece) : Character.toUpperCase(piece);
+    }
+
+    /**
+     * @param plies the odd number of plies until the side to move mates
+     * @return the result byte
+     */
+    static int encodeWin(int plies) {
+        return Math.min(127, (plies + 1) / 2);
+    }
+
+    /**
+     * @param plies the even number of plies until the side to move is mated
+     * @return the result byte
+     */
+    static int encodeLoss(int plies) {
+        return 128 + Math.min(126, plies / 2);
+    }
+
+    public static boolean isWin(int value) {
+        return value >= 1 && value <= 127;
+    }
+
+    public static boolean isLoss(int value) {
+        return value >= 128 && value < ILLEGAL;
+    }
+
+    /**
+     * @param value a result byte
+     * @return the number of plies until mate, or 0 for a draw
+     */
+    public static int pliesToMate(int value) {
+        if (isWin(value)) return 2 * value - 1;
+        if (isLoss(value)) return 2 * (value - 128);
+        return 0;
+    }
+
+    /**
+     * Converts a result byte into an evaluation in the convention of the engine (positive favours white).
+     *
+     * @param value       a result byte
+     * @param whiteToMove the side to move the result belongs to
+     * @return the evaluation
+     */
+    public static int score(int value, boolean whiteToMove) {
+        int score = 0;
+        if (isWin(value)) score = WIN_SCORE - pliesToMate(value);
+        else if (isLoss(value)) score = -(WIN_SCORE - pliesToMate(value));
+        return whiteToMove ? score : -score;
+    }
+}
@@ -0,0 +1,558 @@
+package main.engine.tablebase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generates the endgame tables read by {@link Tablebase} by retrograde analysis.
+ *
+ * <p>For every table, all positions are first checked for legality and their moves are generated once:
+ * <ul>
+ *   <li>Captures and promotions leave the table and are looked up in the smaller, already generated tables.</li>
+ *   <li>All other moves stay in the table and are counted per position.</li>
+ * </ul>
+ * Positions are then resolved in order of increasing distance to mate, starting at the checkmates. When a
+ * position is lost, every position that can move into it (found by un-moving the pieces) is won one ply later.
+ * When a position is won, the move counter of each predecessor is decreased; a predecessor whose moves all lead
+ * into won positions is lost. Positions that are never resolved are draws.
+ *
+ * <p>Run with {@code java main.engine.tablebase.TablebaseGenerator [directory] [table...]} to generate all
+ * 3 and 4 piece tables (or the given ones) into the directory. Existing tables are kept.
+ */
+public class TablebaseGenerator {
+
+    public static final String DEFAULT_DIRECTORY = "tablebases";
+
+    private static final byte UNKNOWN = 0;
+    private static final byte ILLEGAL = 1;
+    private static final byte WIN = 2;
+    private static final byte LOSS = 3;
+    private static final byte DRAW = 4;
+    private static final byte STATUS_MASK = 7;
+    /** Flag: a move leaves the table into a draw, so the position cannot be lost. */
+    private static final byte DRAW_ESCAPE = 8;
+    /** Flag: a move leaves the table into a win, so the position cannot be lost. */
+    private static final byte OUT_WIN = 16;
+
+    private static final char[] PROMOTIONS = {'Q', 'R', 'B', 'N'};
+
+    private static final int[][] KING_TARGETS = new int[64][];
+    private static final int[][] KNIGHT_TARGETS = new int[64][];
+    /** RAYS[dir][sq]: the squares from sq in a direction; directions 0-3 are straight, 4-7 diagonal. */
+    private static final int[][][] RAYS = new int[8][64][];
+    private static final long[] KING_ATTACKS = new long[64];
+    private static final long[] KNIGHT_ATTACKS = new long[64];
+    /** PAWN_ATTACKS[0][sq] for white pawns, [1][sq] for black pawns. */
+    private static final long[][] PAWN_ATTACKS = new long[2][64];
+    private static final long[][] BETWEEN = new long[64][64];
+    /** 1 if two squares share a row or column, 2 if they share a diagonal, else 0. */
+    private static final byte[][] LINE = new byte[64][64];
+
+    static {
+        int[][] kingDeltas = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+        int[][] knightDeltas = {{-2, -1}, {-2, 1}, {2, -1}, {2, 1}, {-1, -2}, {-1, 2}, {1, -2}, {1, 2}};
+        int[][] directions = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq / 8, col = sq % 8;
+            KING_TARGETS[sq] = targets(row, col, kingDeltas);
+            KNIGHT_TARGETS[sq] = targets(row, col, knightDeltas);
+            for (int target : KING_TARGETS[sq]) KING_ATTACKS[sq] |= 1L << target;
+            for (int target : KNIGHT_TARGETS[sq]) KNIGHT_ATTACKS[sq] |= 1L << target;
+            if (row > 0 && col > 0) PAWN_ATTACKS[0][sq] |= 1L << (sq - 9);
+            if (row > 0 && col < 7) PAWN_ATTACKS[0][sq] |= 1L << (sq - 7);
+            if (row < 7 && col > 0) PAWN_ATTACKS[1][sq] |= 1L << (sq + 7);
+            if (row < 7 && col < 7) PAWN_ATTACKS[1][sq] |= 1L << (sq + 9);
+            for (int dir = 0; dir < 8; dir++) {
+                List<Integer> ray = new ArrayList<>();
+                long between = 0L;
+                int r = row + directions[dir][0], c = col + directions[dir][1];
+                while (r >= 0 && r < 8 && c >= 0 && c < 8) {
+                    int target = r * 8 + c;
+                    ray.add(target);
+                    BETWEEN[sq][target] = between;
+                    LINE[sq][target] = (byte) (dir < 4 ? 1 : 2);
+                    between |= 1L << target;
+                    r += directions[dir][0];
+                    c += directions[dir][1];
+                }
+                RAYS[dir][sq] = ray.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+    }
+
+    private final Tablebase solved;
+
+    // State of the table being generated
+    private TablebaseMaterial material;
+    private int pieceCount;
+    private char[] slots;
+    private boolean[] slotWhite;
+    private final int[] squares = new int[Tablebase.MAX_PIECES];
+    private final int[] occupant = new int[64];
+    private long occupied;
+    private byte[][] status;
+    private short[][] plies;
+    private byte[][] counts;
+    private short[][] lossFloor;
+    private final List<IntList> buckets = new ArrayList<>();
+    private final IntList distinct = new IntList();
+
+    // Scratch arrays for probing smaller tables
+    private final char[] childPieces = new char[Tablebase.MAX_PIECES];
+    private final int[] childSquares = new int[Tablebase.MAX_PIECES];
+
+    /**
+     * @param solved the tables that moves leaving the generated table are looked up in
+     */
+    public TablebaseGenerator(Tablebase solved) {
+        this.solved = solved;
+    }
+
+    /**
+     * Generates all missing tables into a directory.
+     *
+     * @param args the directory (default {@value #DEFAULT_DIRECTORY}), optionally followed by table names
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args.length > 0 ? args[0] : DEFAULT_DIRECTORY);
+        List<String> wanted = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : null;
+        Files.createDirectories(directory);
+        Tablebase tablebase = Tablebase.open(directory);
+        TablebaseGenerator generator = new TablebaseGenerator(tablebase);
+        long totalStart = System.currentTimeMillis();
+        for (String name : TablebaseMaterial.allNames()) {
+            if (tablebase.hasTable(name)) continue;
+            if (wanted != null && !wanted.contains(name) && !isNeededBy(name, wanted)) continue;
+            long start = System.currentTimeMillis();
+            byte[] table = generator.generate(name);
+            Files.write(directory.resolve(name + Tablebase.FILE_SUFFIX), table);
+            tablebase.add(name, ByteBuffer.wrap(table));
+            System.out.printf("%s: %d positions, %s in %d ms%n", name, table.length - Tablebase.HEADER_SIZE,
+                    summary(table), System.currentTimeMillis() - start);
+        }
+        System.out.printf("Finished in %d ms%n", System.currentTimeMillis() - totalStart);
+    }
+
+    /**
+     * @return true if a table has to exist before one of the wanted tables can be generated
+     */
+    private static boolean isNeededBy(String name, List<String> wanted) {
+        List<String> all = TablebaseMaterial.allNames();
+        int position = all.indexOf(name);
+        for (String table : wanted) {
+            if (all.indexOf(table) > position && name.length() <= table.length()) return true;
+        }
+        return false;
+    }
+
+    private static String summary(byte[] table) {
+        long wins = 0, losses = 0, draws = 0;
+        int longest = 0;
+        for (int i = Tablebase.HEADER_SIZE; i < table.length; i++) {
+            int value = table[i] & 0xFF;
+            if (Tablebase.isWin(value)) {
+                wins++;
+                longest = Math.max(longest, value);
+            } else if (Tablebase.isLoss(value)) {
+                losses++;
+            } else if (value == Tablebase.DRAW) {
+                draws++;
+            }
+        }
+        return String.format("%d wins, %d losses, %d draws, longest mate %d moves", wins, losses, draws, longest);
+    }
+
+    /**
+     * Generates one table. All tables reachable by a capture or promotion must be available.
+     *
+     * @param name the canonical name of the table, e.g. "KRvK"
+     * @return the table including its header, see {@link Tablebase}
+     */
+    public byte[] generate(String name) {
+        setUp(TablebaseMaterial.of(name));
+        int size = material.size;
+        for (int stm = 0; stm < 2; stm++) {
+            for (int index = 0; index < size; index++) {
+                markLegality(stm, index);
+            }
+        }
+        for (int stm = 0; stm < 2; stm++) {
+            for (int index = 0; index < size; index++) {
+                if (status[stm][index] != ILLEGAL) initialize(stm, index);
+            }
+        }
+        for (int ply = 0; ply < buckets.size(); ply++) {
+            IntList bucket = buckets.get(ply);
+            for (int i = 0; i < bucket.size; i++) {
+                int entry = bucket.values[i];
+                resolve(entry >>> 30, entry & 0x3FFFFFFF, ply);
+            }
+            buckets.set(ply, null);
+        }
+        return encode();
+    }
+
+    private void setUp(TablebaseMaterial material) {
+        this.material = material;
+        this.slots = material.slots;
+        this.pieceCount = slots.length;
+        this.slotWhite = new boolean[pieceCount];
+        for (int slot = 0; slot < pieceCount; slot++) slotWhite[slot] = Character.isUpperCase(slots[slot]);
+        int size = material.size;
+        status = new byte[2][size];
+        plies = new short[2][size];
+        counts = new byte[2][size];
+        lossFloor = new short[2][size];
+        buckets.clear();
+    }
+
+    /**
+     * Places the pieces of a position on the board.
+     *
+     * @return false if two pieces share a square or the index is not canonical
+     */
+    private boolean place(int index) {
+        material.decode(index, squares);
+        Arrays.fill(occupant, -1);
+        occupied = 0L;
+        for (int slot = 0; slot < pieceCount; slot++) {
+            if (occupant[squares[slot]] >= 0) return false;
+            occupant[squares[slot]] = slot;
+            occupied |= 1L << squares[slot];
+        }
+        return material.index(squares) == index;
+    }
+
+    private void markLegality(int stm, int index) {
+        if (!place(index) || TablebaseMaterial.kingDistance(squares[0], squares[1]) <= 1
+                || isAttacked(squares[stm == 0 ? 1 : 0], stm == 0, -1)) {
+            // The side that is not to move must not be in check
+            status[stm][index] = ILLEGAL;
+        }
+    }
+
+    /**
+     * Generates the moves of a legal position: counts the moves staying in the table and looks up the
+     * moves leaving it.
+     */
+    private void initialize(int stm, int index) {
+        place(index);
+        boolean white = stm == 0;
+        int bestWin = Integer.MAX_VALUE;
+        int worstLoss = 0;
+        boolean drawEscape = false;
+        boolean hasMoves = false;
+        distinct.size = 0;
+
+        for (int slot = 0; slot < pieceCount; slot++) {
+            if (slotWhite[slot] != white) continue;
+            int from = squares[slot];
+            char type = Character.toLowerCase(slots[slot]);
+            if (type == 'p') {
+                int forward = white ? -8 : 8;
+                int lastRow = white ? 0 : 7;
+                int to = from + forward;
+                boolean promotion = to / 8 == lastRow;
+                if (occupant[to] < 0) {
+                    if (promotion) {
+                        for (char piece : PROMOTIONS) {
+                            int value = probeChild(slot, to, -1, white ? piece : Character.toLowerCase(piece), white);
+                            if (value == Integer.MIN_VALUE) continue;
+                            hasMoves = true;
+                            if (Tablebase.isLoss(value)) bestWin = Math.min(bestWin, Tablebase.pliesToMate(value) + 1);
+                            else if (Tablebase.isWin(value)) worstLoss = Math.max(worstLoss, Tablebase.pliesToMate(value) + 1);
+                            else drawEscape = true;
+                        }
+                    } else {
+                        hasMoves |= countChild(slot, to, white);
+                        int startRow = white ? 6 : 1;
+                        if (from / 8 == startRow && occupant[to + forward] < 0) {
+                            hasMoves |= countChild(slot, to + forward, white);
+                        }
+                    }
+                }
+                long captures = PAWN_ATTACKS[stm][from];
+                while (captures != 0) {
+                    int target = Long.numberOfTrailingZeros(captures);
+                    captures &= captures - 1;
+                    int victim = occupant[target];
+                    if (victim < 0 || slotWhite[victim] == white) continue;
+                    char[] pieces = promotion ? PROMOTIONS : new char[]{slots[slot]};
+                    for (char piece : pieces) {
+                        int value = probeChild(slot, target, victim, white ? Character.toUpperCase(piece) : Character.toLowerCase(piece), white);
+                        if (value == Integer.MIN_VALUE) continue;
+                        hasMoves = true;
+                        if (Tablebase.isLoss(value)) bestWin = Math.min(bestWin, Tablebase.pliesToMate(value) + 1);
+                        else if (Tablebase.isWin(value)) worstLoss = Math.max(worstLoss, Tablebase.pliesToMate(value) + 1);
+                        else drawEscape = true;
+                    }
+                }
+                continue;
+            }
+            for (int to : targets(type, from)) {
+                int victim = occupant[to];
+                if (victim >= 0) {
+                    if (slotWhite[victim] == white) continue;
+                    int value = probeChild(slot, to, victim, slots[slot], white);
+                    if (value == Integer.MIN_VALUE) continue;
+                    hasMoves = true;
+                    if (Tablebase.isLoss(value)) bestWin = Math.min(bestWin, Tablebase.pliesToMate(value) + 1);
+                    else if (Tablebase.isWin(value)) worstLoss = Math.max(worstLoss, Tablebase.pliesToMate(value) + 1);
+                    else drawEscape = true;
+                } else {
+                    hasMoves |= countChild(slot, to, white);
+                }
+            }
+        }
+
+        if (!hasMoves) {
+            boolean inCheck = isAttacked(squares[white ? 0 : 1], !white, -1);
+            if (inCheck) schedule(stm, index, 0);
+            else status[stm][index] = DRAW;
+            return;
+        }
+        counts[stm][index] = (byte) distinct.size;
+        lossFloor[stm][index] = (short) worstLoss;
+        if (drawEscape) status[stm][index] |= DRAW_ESCAPE;
+        if (bestWin != Integer.MAX_VALUE) {
+            status[stm][index] |= OUT_WIN;
+            schedule(stm, index, bestWin);
+        } else if (distinct.size == 0 && !drawEscape) {
+            schedule(stm, index, worstLoss);
+        }
+    }
+
+    /**
+     * Tries a move that stays in the table and remembers the distinct resulting positions.
+     *
+     * @return true if the move is legal
+     */
+    private boolean countChild(int slot, int to, boolean white) {
+        int from = squares[slot];
+        move(slot, from, to);
+        boolean legal = !isAttacked(squares[white ? 0 : 1], !white, -1);
+        if (legal) {
+            int child = material.index(squares);
+            if (!distinct.contains(child)) distinct.add(child);
+        }
+        move(slot, to, from);
+        return legal;
+    }
+
+    /**
+     * Tries a capture or promotion and looks the resulting position up in the smaller tables.
+     *
+     * @return the result byte for the opponent, or {@link Integer#MIN_VALUE} if the move is illegal
+     */
+    private int probeChild(int slot, int to, int victim, char piece, boolean white) {
+        int from = squares[slot];
+        int victimSquare = victim >= 0 ? squares[victim] : -1;
+        if (victim >= 0) {
+            occupied &= ~(1L << victimSquare);
+            occupant[victimSquare] = -1;
+        }
+        move(slot, from, to);
+        boolean legal = !isAttacked(squares[white ? 0 : 1], !white, victim);
+        int value = Integer.MIN_VALUE;
+        if (legal) {
+            int count = 0;
+            for (int s = 0; s < pieceCount; s++) {
+                if (s == victim) continue;
+                childPieces[count] = s == slot ? piece : slots[s];
+                childSquares[count++] = squares[s];
+            }
+            value = solved.probe(childPieces, childSquares, count, !white);
+            if (value == Tablebase.NOT_FOUND) {
+                throw new IllegalStateException("Missing table for a capture or promotion from " + material.name);
+            }
+        }
+        move(slot, to, from);
+        if (victim >= 0) {
+            occupant[victimSquare] = victim;
+            occupied |= 1L << victimSquare;
+            squares[victim] = victimSquare;
+        }
+        return value;
+    }
+
+    private void move(int slot, int from, int to) {
+        occupant[from] = -1;
+        occupant[to] = slot;
+        occupied = (occupied & ~(1L << from)) | (1L << to);
+        squares[slot] = to;
+    }
+
+    private void schedule(int stm, int index, int ply) {
+        while (buckets.size() <= ply) buckets.add(new IntList());
+        buckets.get(ply).add(stm << 30 | index);
+    }
+
+    /**
+     * Resolves a position at a ply: even plies are losses, odd plies wins for the side to move.
+     */
+    private void resolve(int stm, int index, int ply) {
+        if ((status[stm][index] & STATUS_MASK) != UNKNOWN) return;
+        boolean won = (ply & 1) == 1;
+        status[stm][index] = (byte) ((status[stm][index] & ~STATUS_MASK) | (won ? WIN : LOSS));
+        plies[stm][index] = (short) ply;
+
+        place(index);
+        collectPredecessors(stm);
+        int previous = 1 - stm;
+        for (int i = 0; i < distinct.size; i++) {
+            int predecessor = distinct.values[i];
+            byte predecessorStatus = status[previous][predecessor];
+            if ((predecessorStatus & STATUS_MASK) != UNKNOWN) continue;
+            if (!won) {
+                schedule(previous, predecessor, ply + 1);
+            } else if (--counts[previous][predecessor] == 0 && (predecessorStatus & (DRAW_ESCAPE | OUT_WIN)) == 0) {
+                schedule(previous, predecessor, Math.max(ply + 1, lossFloor[previous][predecessor]));
+            }
+        }
+    }
+
+    /**
+     * Un-moves the pieces of the side that moved last and collects the distinct legal predecessors.
+     *
+     * @param stm the side to move in the current position
+     */
+    private void collectPredecessors(int stm) {
+        distinct.size = 0;
+        boolean moverWhite = stm == 1;
+        int previous = 1 - stm;
+        for (int slot = 0; slot < pieceCount; slot++) {
+            if (slotWhite[slot] != moverWhite) continue;
+            int to = squares[slot];
+            char type = Character.toLowerCase(slots[slot]);
+            if (type == 'p') {
+                int backward = moverWhite ? 8 : -8;
+                int from = to + backward;
+                int fromRow = from / 8;
+                if (fromRow >= 1 && fromRow <= 6 && occupant[from] < 0) {
+                    addPredecessor(previous, slot, to, from);
+                    int doubleRow = moverWhite ? 4 : 3;
+                    if (to / 8 == doubleRow && occupant[from + backward] < 0) {
+                        addPredecessor(previous, slot, to, from + backward);
+                    }
+                }
+                continue;
+            }
+            for (int from : targets(type, to)) {
+                if (occupant[from] < 0) addPredecessor(previous, slot, to, from);
+            }
+        }
+    }
+
+    private void addPredecessor(int previous, int slot, int to, int from) {
+        move(slot, to, from);
+        int predecessor = material.index(squares);
+        move(slot, from, to);
+        if (predecessor >= 0 && status[previous][predecessor] != ILLEGAL && !distinct.contains(predecessor)) {
+            distinct.add(predecessor);
+        }
+    }
+
+    /**
+     * @return the squares a non-pawn piece can move to from a square on the current board, including
+     *         squares of pieces it captures
+     */
+    private int[] targets(char type, int from) {
+        switch (type) {
+            case 'k': return KING_TARGETS[from];
+            case 'n': return KNIGHT_TARGETS[from];
+            default: break;
+        }
+        int first = type == 'b' ? 4 : 0;
+        int last = type == 'r' ? 4 : 8;
+        IntList result = new IntList();
+        for (int dir = first; dir < last; dir++) {
+            for (int target : RAYS[dir][from]) {
+                result.add(target);
+                if (occupant[target] >= 0) break;
+            }
+        }
+        return Arrays.copyOf(result.values, result.size);
+    }
+
+    /**
+     * Checks if a square is attacked by the pieces of one side.
+     *
+     * @param skipSlot a captured piece that does not attack anymore, or -1
+     */
+    private boolean isAttacked(int target, boolean byWhite, int skipSlot) {
+        for (int slot = 0; slot < pieceCount; slot++) {
+            if (slotWhite[slot] != byWhite || slot == skipSlot) continue;
+            int from = squares[slot];
+            boolean attacks = switch (Character.toLowerCase(slots[slot])) {
+                case 'k' -> (KING_ATTACKS[from] >>> target & 1L) != 0;
+                case 'n' -> (KNIGHT_ATTACKS[from] >>> target & 1L) != 0;
+                case 'p' -> (PAWN_ATTACKS[byWhite ? 0 : 1][from] >>> target & 1L) != 0;
+                case 'r' -> LINE[from][target] == 1 && (BETWEEN[from][target] & occupied) == 0;
+                case 'b' -> LINE[from][target] == 2 && (BETWEEN[from][target] & occupied) == 0;
+                case 'q' -> LINE[from][target] != 0 && (BETWEEN[from][target] & occupied) == 0;
+                default -> false;
+            };
+            if (attacks) return true;
+        }
+        return false;
+    }
+
+    private byte[] encode() {
+        int size = material.size;
+        byte[] table = new byte[Tablebase.HEADER_SIZE + 2 * size];
+        ByteBuffer header = ByteBuffer.wrap(table);
+        header.putInt(Tablebase.MAGIC).putInt(Tablebase.VERSION).putInt(size).putInt(0);
+        for (int stm = 0; stm < 2; stm++) {
+            int offset = Tablebase.HEADER_SIZE + stm * size;
+            for (int index = 0; index < size; index++) {
+                int value = switch (status[stm][index] & STATUS_MASK) {
+                    case ILLEGAL -> Tablebase.ILLEGAL;
+                    case WIN -> Tablebase.encodeWin(plies[stm][index]);
+                    case LOSS -> Tablebase.encodeLoss(plies[stm][index]);
+                    default -> Tablebase.DRAW;
+                };
+                table[offset + index] = (byte) value;
+            }
+        }
+        status = null;
+        plies = null;
+        counts = null;
+        lossFloor = null;
+        return table;
+    }
+
+    private static int[] targets(int row, int col, int[][] deltas) {
+        List<Integer> targets = new ArrayList<>();
+        for (int[] delta : deltas) {
+            int r = row + delta[0], c = col + delta[1];
+            if (r >= 0 && r < 8 && c >= 0 && c < 8) targets.add(r * 8 + c);
+        }
+        return targets.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * A growable list of primitive ints.
+     */
+    private static final class IntList {
+        int[] values = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        boolean contains(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package main.engine.tablebase;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Describes the material of one endgame table and maps its positions to a perfect index.
+ *
+ * <p>A position is stored as the squares of its pieces in a fixed slot order: slot 0 is the white king,
+ * slot 1 the black king, followed by the other white pieces and the other black pieces, each sorted
+ * by {@link #PIECE_ORDER}. Squares are numbered {@code row * 8 + col} like the board, so row 0 is
+ * the 8th rank.
+ *
+ * <p>Symmetry reduction:
+ * <ul>
+ *   <li>Without pawns, all 8 symmetries of the board are used. The white king is mapped into the
+ *       triangle a1-d1-d4, which leaves 462 legal king pairs.</li>
+ *   <li>With pawns, only the left-right mirror is used. The white king is mapped to the files a-d
+ *       and pawns are indexed on the 48 squares of the ranks 2-7.</li>
+ *   <li>Identical pieces are sorted by square, so swapping them does not create a second entry.</li>
+ * </ul>
+ * Some indices remain unused (e.g. the second ordering of identical pieces); they decode to a position
+ * whose canonical index differs from the index itself.
+ */
+final class TablebaseMaterial {
+
+    /** The order of non-king pieces within a side, strongest first. */
+    static final String PIECE_ORDER = "QRBNP";
+
+    /** Number of canonical king pairs without pawns. */
+    static final int PAWNLESS_KING_PAIRS = 462;
+    /** Number of king pairs with pawns: the white king on the files a-d, the black king anywhere. */
+    static final int PAWN_KING_PAIRS = 32 * 64;
+
+    /** SYMMETRY[s][sq] is the square sq is mapped to by symmetry s. Symmetry 1 is the left-right mirror. */
+    static final int[][] SYMMETRY = new int[8][64];
+    /** Symmetries that map a king pair (wk * 64 + bk) to its canonical form, without pawns. */
+    private static final int[][] KING_PAIR_SYMMETRIES = new int[64 * 64][];
+    /** Index of a canonical king pair (wk * 64 + bk) without pawns, or -1. */
+    private static final int[] KING_PAIR_INDEX = new int[64 * 64];
+    /** The canonical king pair (wk * 64 + bk) of an index without pawns. */
+    private static final int[] KING_PAIRS = new int[PAWNLESS_KING_PAIRS];
+
+    private static final int[] IDENTITY = {0};
+    private static final int[] MIRROR = {1};
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            int row = sq / 8, col = sq % 8;
+            SYMMETRY[0][sq] = sq;
+            SYMMETRY[1][sq] = row * 8 + (7 - col);
+            SYMMETRY[2][sq] = (7 - row) * 8 + col;
+            SYMMETRY[3][sq] = (7 - row) * 8 + (7 - col);
+            SYMMETRY[4][sq] = col * 8 + row;
+            SYMMETRY[5][sq] = col * 8 + (7 - row);
+            SYMMETRY[6][sq] = (7 - col) * 8 + row;
+            SYMMETRY[7][sq] = (7 - col) * 8 + (7 - row);
+        }
+        java.util.Arrays.fill(KING_PAIR_INDEX, -1);
+        int pairs = 0;
+        for (int wk = 0; wk < 64; wk++) {
+            for (int bk = 0; bk < 64; bk++) {
+                if (isCanonicalKingPair(wk, bk)) {
+                    KING_PAIRS[pairs] = wk * 64 + bk;
+                    KING_PAIR_INDEX[wk * 64 + bk] = pairs++;
+                }
+            }
+        }
+        if (pairs != PAWNLESS_KING_PAIRS) {
+            throw new IllegalStateException("Unexpected number of king pairs: " + pairs);
+        }
+        for (int wk = 0; wk < 64; wk++) {
+            for (int bk = 0; bk < 64; bk++) {
+                List<Integer> symmetries = new ArrayList<>();
+                for (int s = 0; s < 8; s++) {
+                    if (isCanonicalKingPair(SYMMETRY[s][wk], SYMMETRY[s][bk])) symmetries.add(s);
+                }
+                KING_PAIR_SYMMETRIES[wk * 64 + bk] = symmetries.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+    }
+
+    /** The name of the table, e.g. "KQvKR". */
+    final String name;
+    /** The piece of each slot, uppercase for white and lowercase for black. */
+    final char[] slots;
+    /** The number of squares each non-king slot is indexed on: 64, or 48 for pawns. */
+    private final int[] ranges;
+    final boolean hasPawns;
+    /** The number of positions per side to move. */
+    final int size;
+
+    private TablebaseMaterial(String white, String black) {
+        this.name = white + "v" + black;
+        String pieces = white + black.toLowerCase();
+        this.slots = new char[pieces.length()];
+        slots[0] = 'K';
+        slots[1] = 'k';
+        int slot = 2;
+        for (int i = 1; i < white.length(); i++) slots[slot++] = white.charAt(i);
+        for (int i = 1; i < black.length(); i++) slots[slot++] = Character.toLowerCase(black.charAt(i));
+        this.hasPawns = pieces.indexOf('P') >= 0 || pieces.indexOf('p') >= 0;
+        this.ranges = new int[slots.length];
+        long size = hasPawns ? PAWN_KING_PAIRS : PAWNLESS_KING_PAIRS;
+        for (int i = 2; i < slots.length; i++) {
+            ranges[i] = Character.toLowerCase(slots[i]) == 'p' ? 48 : 64;
+            size *= ranges[i];
+        }
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Table too large: " + name);
+        this.size = (int) size;
+    }
+
+    /**
+     * Creates the material of a table from its canonical name.
+     *
+     * @param name the name, e.g. "KQvKR"
+     * @return the material
+     */
+    static TablebaseMaterial of(String name) {
+        String[] sides = name.split("v");
+        return new TablebaseMaterial(sides[0], sides[1]);
+    }
+
+    /**
+     * Builds the name of the pieces of one side, e.g. "KRP".
+     *
+     * @param pieces the non-king pieces of the side in any order and case
+     * @return the sorted side, starting with the king
+     */
+    static String side(CharSequence pieces) {
+        String upper = pieces.toString().toUpperCase();
+        StringBuilder sb = new StringBuilder("K");
+        for (char piece : PIECE_ORDER.toCharArray()) {
+            for (int i = 0; i < upper.length(); i++) {
+                if (upper.charAt(i) == piece) sb.append(piece);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decides whether the material of white is stored as is or with colors flipped. The stronger side
+     * (more pieces, then stronger pieces) is always stored as white.
+     *
+     * @param white the side of white, see {@link #side(CharSequence)}
+     * @param black the side of black
+     * @return true if the colors have to be flipped
+     */
+    static boolean isFlipped(String white, String black) {
+        if (white.length() != black.length()) return white.length() < black.length();
+        for (int i = 1; i < white.length(); i++) {
+            int w = PIECE_ORDER.indexOf(white.charAt(i));
+            int b = PIECE_ORDER.indexOf(black.charAt(i));
+            if (w != b) return w > b;
+        }
+        return false;
+    }
+
+    /**
+     * @return the names of all tables with 3 and 4 pieces, in an order where every table only
+     *         depends on tables earlier in the list
+     */
+    static List<String> allNames() {
+        List<String> sides = new ArrayList<>();
+        sides.add("K");
+        for (char a : PIECE_ORDER.toCharArray()) {
+            sides.add("K" + a);
+            for (char b : PIECE_ORDER.substring(PIECE_ORDER.indexOf(a)).toCharArray()) {
+                sides.add("K" + a + b);
+            }
+        }
+        List<String> names = new ArrayList<>();
+        for (String white : sides) {
+            for (String black : sides) {
+                int pieces = white.length() + black.length();
+                if (pieces >= 3 && pieces <= 4 && !isFlipped(white, black)) {
+                    names.add(white + "v" + black);
+                }
+            }
+        }
+        names.sort(Comparator.<String>comparingLong(n -> n.chars().filter(c -> c == 'P').count())
+                .thenComparingInt(String::length));
+        return names;
+    }
+
+    /**
+     * Computes the canonical index of a position.
+     *
+     * @param squares the square of each slot
+     * @return the index, or -1 if the kings are adjacent or a pawn is on the first or last rank
+     */
+    int index(int[] squares) {
+        int[] symmetries;
+        if (hasPawns) {
+            symmetries = squares[0] % 8 < 4 ? IDENTITY : MIRROR;
+        } else {
+            symmetries = KING_PAIR_SYMMETRIES[squares[0] * 64 + squares[1]];
+        }
+        int best = -1;
+        for (int s : symmetries) {
+            int index = index(squares, SYMMETRY[s]);
+            if (index < 0) return -1;
+            if (best < 0 || index < best) best = index;
+        }
+        return best;
+    }
+
+    private int index(int[] squares, int[] symmetry) {
+        int wk = symmetry[squares[0]];
+        int bk = symmetry[squares[1]];
+        int index;
+        if (hasPawns) {
+            index = ((wk / 8) * 4 + wk % 8) * 64 + bk;
+        } else {
+            index = KING_PAIR_INDEX[wk * 64 + bk];
+            if (index < 0) return -1;
+        }
+        int n = slots.length;
+        int third = n > 2 ? symmetry[squares[2]] : 0;
+        int fourth = n > 3 ? symmetry[squares[3]] : 0;
+        // Identical pieces are ordered by square
+        if (n > 3 && slots[2] == slots[3] && third > fourth) {
+            int tmp = third;
+            third = fourth;
+            fourth = tmp;
+        }
+        if (n > 2) {
+            int code = squareCode(2, third);
+            if (code < 0) return -1;
+            index = index * ranges[2] + code;
+        }
+        if (n > 3) {
+            int code = squareCode(3, fourth);
+            if (code < 0) return -1;
+            index = index * ranges[3] + code;
+        }
+        return index;
+    }
+
+    private int squareCode(int slot, int square) {
+        if (ranges[slot] == 64) return square;
+        return square >= 8 && square < 56 ? square - 8 : -1;
+    }
+
+    /**
+     * Decodes an index into the squares of the slots. The squares may overlap or form an unused index.
+     *
+     * @param index   the index
+     * @param squares receives the square of each slot
+     */
+    void decode(int index, int[] squares) {
+        for (int slot = slots.length - 1; slot >= 2; slot--) {
+            int code = index % ranges[slot];
+            index /= ranges[slot];
+            squares[slot] = ranges[slot] == 64 ? code : code + 8;
+        }
+        if (hasPawns) {
+            int wk = index / 64;
+            squares[0] = (wk / 4) * 8 + wk % 4;
+            squares[1] = index % 64;
+        } else {
+            squares[0] = KING_PAIRS[index] / 64;
+            squares[1] = KING_PAIRS[index] % 64;
+        }
+    }
+
+    private static boolean isCanonicalKingPair(int wk, int bk) {
+        if (wk == bk || kingDistance(wk, bk) <= 1) return false;
+        int file = wk % 8, rank = 7 - wk / 8;
+        if (file > 3 || rank > file) return false;
+        if (rank == file) {
+            int bkFile = bk % 8, bkRank = 7 - bk / 8;
+            return bkRank <= bkFile;
+        }
+        return true;
+    }
+
+    static int kingDistance(int a, int b) {
+        return Math.max(Math.abs(a / 8 - b / 8), Math.abs(a % 8 - b % 8));
+    }
+}
@@ -0,0 +1,360 @@
+package main.engine.tuning;
+
+import main.DaemonThreadFactory;
+import main.chessboard.BoardEnv;
+import main.chessboard.Move;
+import main.chessboard.MoveMaker;
+import main.engine.PieceValues;
+import main.pgn.PgnGame;
+import main.pgn.PgnReader;
+import main.pgn.SanResolver;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fits the piece-square values of {@link PieceValues} to game results (Texel's tuning method).
+ *
+ * <p>Positions are read from EPD files (a FEN followed by the result, e.g. {@code c9 "1-0";} or {@code [1.0]})
+ * and PGN files (every position of a game from {@link #MIN_PLY} on, labelled with the game result).
+ * Captures are resolved by a quiescence search, so only quiet positions are used. Then the mean squared
+ * error between the results and {@code sigmoid(K * eval)} is minimised with Adam, computing the gradient
+ * in parallel batches on all cores. The result is a parameter file for {@link PieceValues#load(Path)}.
+ *
+ * <p>Usage: {@code TexelTuner <output file> <input .epd/.pgn files...> [-epochs=N] [-threads=N]}
+ *
+ * <p>Reference link: https://www.chessprogramming.org/Texel%27s_Tuning_Method
+ */
+public class TexelTuner {
+
+    /** Positions of a PGN game before this ply are skipped (opening book moves). */
+    public static final int MIN_PLY = 8;
+    public static final int DEFAULT_EPOCHS = 1000;
+
+    private static final int EPD_BATCH_SIZE = 1024;
+    private static final int PGN_BATCH_SIZE = 32;
+    /** Number of positions whose gradient is computed in one task. */
+    private static final int GRADIENT_BATCH_SIZE = 16 * 1024;
+    private static final double LEARNING_RATE = 1.0;
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+    private static final double EPSILON = 1e-8;
+
+    private final ExecutorService executor;
+    private final int threads;
+    private final TuningSet positions = new TuningSet();
+    private final double[] parameters = new double[TuningSet.PARAMETERS];
+    private double k = 1.0;
+
+    /**
+     * Creates a tuner starting from the current piece-square values.
+     *
+     * @param threads the number of worker threads
+     */
+    public TexelTuner(int threads) {
+        this.threads = threads;
+        this.executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("tuning-worker"));
+        for (int piece = 0; piece < 6; piece++) {
+            for (int sq = 0; sq < 64; sq++) {
+                int packed = PieceValues.PIECE_SQUARE[piece][sq];
+                parameters[2 * (piece * 64 + sq)] = PieceValues.midgame(packed);
+                parameters[2 * (piece * 64 + sq) + 1] = PieceValues.endgame(packed);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: TexelTuner <output file> <input .epd/.pgn files...> [-epochs=N] [-threads=N]");
+            return;
+        }
+        int epochs = DEFAULT_EPOCHS;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("-epochs=")) epochs = Integer.parseInt(args[i].substring(8));
+            else if (args[i].startsWith("-threads=")) threads = Integer.parseInt(args[i].substring(9));
+            else inputs.add(Paths.get(args[i]));
+        }
+        TexelTuner tuner = new TexelTuner(threads);
+        long start = System.currentTimeMillis();
+        for (Path input : inputs) {
+            tuner.load(input);
+        }
+        System.out.printf("Loaded %d quiet positions in %ds\n", tuner.getPositionCount(), (System.currentTimeMillis() - start) / 1000);
+        tuner.fitK();
+        System.out.printf("K = %.4f, error = %.6f\n", tuner.k, tuner.error());
+        tuner.tune(epochs);
+        tuner.save(Paths.get(args[0]));
+        System.out.printf("Wrote %s after %ds\n", args[0], (System.currentTimeMillis() - start) / 1000);
+        tuner.executor.shutdown();
+    }
+
+    public int getPositionCount() {
+        return positions.size;
+    }
+
+    /**
+     * @return the parameters being tuned, changed in place by {@link #tune(int)}: parameter
+     *         {@code 2 * (piece * 64 + sq)} is the midgame value of a white piece (P, N, B, R, Q, K) on a square
+     *         from white's view, the next one is its endgame value
+     */
+    public double[] getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Loads the positions of an EPD or PGN file (by extension). Batches of lines or games are converted
+     * to quiet positions in parallel.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be read or contains an illegal move
+     */
+    public void load(Path file) throws IOException, InterruptedException {
+        boolean pgn = file.getFileName().toString().toLowerCase().endsWith(".pgn");
+        List<Future<TuningSet>> batches = new ArrayList<>();
+        if (pgn) {
+            try (PgnReader reader = PgnReader.open(file)) {
+                List<PgnGame> games = new ArrayList<>();
+                while (reader.hasNext()) {
+                    games.add(reader.next());
+                    if (games.size() == PGN_BATCH_SIZE) {
+                        batches.add(submitPgn(games));
+                        games = new ArrayList<>();
+                    }
+                }
+                batches.add(submitPgn(games));
+            }
+        } else {
+            try (BufferedReader reader = Files.newBufferedReader(file)) {
+                List<String> lines = new ArrayList<>();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) continue;
+                    lines.add(line);
+                    if (lines.size() == EPD_BATCH_SIZE) {
+                        batches.add(submitEpd(lines));
+                        lines = new ArrayList<>();
+                    }
+                }
+                batches.add(submitEpd(lines));
+            }
+        }
+        for (Future<TuningSet> batch : batches) {
+            try {
+                positions.addAll(batch.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) throw io;
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    private Future<TuningSet> submitEpd(List<String> lines) {
+        return executor.submit(() -> {
+            TuningSet set = new TuningSet();
+            for (String line : lines) {
+                double result = parseResult(line);
+                if (Double.isNaN(result)) continue;
+                set.addQuiet(new BoardEnv(epdToFen(line)), result);
+            }
+            return set;
+        });
+    }
+
+    private Future<TuningSet> submitPgn(List<PgnGame> games) {
+        return executor.submit(() -> {
+            TuningSet set = new TuningSet();
+            for (PgnGame game : games) {
+                double result = parseResult(game.getResult());
+                if (Double.isNaN(result)) continue;
+                BoardEnv board = game.startingPosition();
+                int ply = 0;
+                for (String san : game.getMoves()) {
+                    Move move = SanResolver.resolve(board, san);
+                    if (move == null) throw new IOException("Illegal move " + san + " in game: " + game.getMoves());
+                    MoveMaker.makeMove(board, move, false);
+                    if (++ply >= MIN_PLY) set.addQuiet(board, result);
+                }
+            }
+            return set;
+        });
+    }
+
+    /**
+     * @param text an EPD line or a Result tag
+     * @return the result from white's view, or NaN if there is none
+     */
+    public static double parseResult(String text) {
+        if (text.contains("1/2-1/2") || text.contains("[0.5]")) return 0.5;
+        if (text.contains("1-0") || text.contains("[1.0]") || text.contains("[1]")) return 1;
+        if (text.contains("0-1") || text.contains("[0.0]") || text.contains("[0]")) return 0;
+        return Double.NaN;
+    }
+
+    /**
+     * @param line an EPD line, starting with the four FEN fields
+     * @return the FEN, with move counters added if missing
+     */
+    public static String epdToFen(String line) {
+        String[] fields = line.trim().split("\\s+");
+        StringBuilder fen = new StringBuilder(fields[0] + " " + fields[1] + " " + fields[2] + " " + fields[3]);
+        if (fields.length > 5 && fields[4].matches("\\d+") && fields[5].matches("\\d+")) {
+            fen.append(' ').append(fields[4]).append(' ').append(fields[5]);
+        } else {
+            fen.append(" 0 1");
+        }
+        return fen.toString();
+    }
+
+    /**
+     * Finds the scaling constant K that minimises the error of the current parameters (golden section search).
+     */
+    public void fitK() throws InterruptedException {
+        double lo = 0.05;
+        double hi = 3.0;
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        for (int i = 0; i < 40; i++) {
+            double a = hi - ratio * (hi - lo);
+            double b = lo + ratio * (hi - lo);
+            k = a;
+            double errorA = error();
+            k = b;
+            double errorB = error();
+            if (errorA < errorB) hi = b;
+            else lo = a;
+        }
+        k = (lo + hi) / 2;
+    }
+
+    /**
+     * @return the mean squared error of the current parameters
+     */
+    public double error() throws InterruptedException {
+        return computeGradient(null);
+    }
+
+    /**
+     * @return the gradient of {@link #error()} with respect to the parameters
+     */
+    public double[] gradient() throws InterruptedException {
+        double[] gradient = new double[TuningSet.PARAMETERS];
+        computeGradient(gradient);
+        return gradient;
+    }
+
+    /**
+     * Runs gradient descent with the Adam optimizer on the full set.
+     *
+     * @param epochs the number of epochs
+     */
+    public void tune(int epochs) throws InterruptedException {
+        double[] m = new double[TuningSet.PARAMETERS];
+        double[] v = new double[TuningSet.PARAMETERS];
+        double[] gradient = new double[TuningSet.PARAMETERS];
+        for (int epoch = 1; epoch <= epochs; epoch++) {
+            double error = computeGradient(gradient);
+            for (int i = 0; i < TuningSet.PARAMETERS; i++) {
+                m[i] = BETA1 * m[i] + (1 - BETA1) * gradient[i];
+                v[i] = BETA2 * v[i] + (1 - BETA2) * gradient[i] * gradient[i];
+                double mHat = m[i] / (1 - Math.pow(BETA1, epoch));
+                double vHat = v[i] / (1 - Math.pow(BETA2, epoch));
+                parameters[i] -= LEARNING_RATE * mHat / (Math.sqrt(vHat) + EPSILON);
+            }
+            if (epoch % 50 == 0 || epoch == epochs) {
+                System.out.printf("Epoch %d: error = %.6f\n", epoch, error);
+            }
+        }
+    }
+
+    /**
+     * Computes the error and, if requested, its gradient, in parallel batches.
+     *
+     * @param gradient receives the gradient, or null to only compute the error
+     * @return the mean squared error
+     */
+    private double computeGradient(double[] gradient) throws InterruptedException {
+        List<Callable<double[]>> tasks = new ArrayList<>();
+        for (int from = 0; from < positions.size; from += GRADIENT_BATCH_SIZE) {
+            int batchStart = from;
+            int batchEnd = Math.min(positions.size, from + GRADIENT_BATCH_SIZE);
+            tasks.add(() -> batchGradient(batchStart, batchEnd, gradient != null));
+        }
+        double error = 0;
+        if (gradient != null) Arrays.fill(gradient, 0);
+        for (Future<double[]> future : executor.invokeAll(tasks)) {
+            double[] batch = get(future);
+            error += batch[TuningSet.PARAMETERS];
+            if (gradient != null) {
+                for (int i = 0; i < TuningSet.PARAMETERS; i++) gradient[i] += batch[i];
+            }
+        }
+        int n = Math.max(1, positions.size);
+        if (gradient != null) {
+            for (int i = 0; i < TuningSet.PARAMETERS; i++) gradient[i] /= n;
+        }
+        return error / n;
+    }
+
+    /**
+     * @return the summed gradient of the batch, followed by its summed squared error
+     */
+    private double[] batchGradient(int from, int to, boolean withGradient) {
+        double[] result = new double[TuningSet.PARAMETERS + 1];
+        double scale = k * Math.log(10) / 400;
+        for (int i = from; i < to; i++) {
+            double sigmoid = 1 / (1 + Math.pow(10, -k * positions.evaluate(i, parameters) / 400));
+            double difference = sigmoid - positions.result[i];
+            result[TuningSet.PARAMETERS] += difference * difference;
+            if (!withGradient) continue;
+            // d(error)/d(eval), then distributed to the midgame and endgame parameters by phase
+            double derivative = 2 * difference * sigmoid * (1 - sigmoid) * scale;
+            double midgameWeight = derivative * positions.phase[i] / PieceValues.TOTAL_PHASE;
+            double endgameWeight = derivative - midgameWeight;
+            for (int f = positions.start[i]; f < positions.start[i + 1]; f++) {
+                int feature = positions.features[f];
+                int index = 2 * (Math.abs(feature) - 1);
+                int sign = feature > 0 ? 1 : -1;
+                result[index] += sign * midgameWeight;
+                result[index + 1] += sign * endgameWeight;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the tuned parameters, rounded to integers.
+     *
+     * @param path the parameter file
+     */
+    public void save(Path path) throws IOException {
+        int[][] midgame = new int[6][64];
+        int[][] endgame = new int[6][64];
+        for (int piece = 0; piece < 6; piece++) {
+            for (int sq = 0; sq < 64; sq++) {
+                midgame[piece][sq] = (int) Math.round(parameters[2 * (piece * 64 + sq)]);
+                endgame[piece][sq] = (int) Math.round(parameters[2 * (piece * 64 + sq) + 1]);
+            }
+        }
+        PieceValues.save(path, midgame, endgame);
+    }
+
+    private static <T> T get(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package main.engine.tuning;
+
+import main.chessboard.BoardEnv;
+import main.chessboard.GameOutcome;
+import main.chessboard.LegalMoveGenerator;
+import main.chessboard.MakeMoveResult;
+import main.chessboard.Move;
+import main.chessboard.MoveMaker;
+import main.chessboard.Piece;
+import main.engine.Endgames;
+import main.engine.Engine;
+import main.engine.PieceValues;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Quiet training positions in a compact, array-based form, so millions of them fit in memory.
+ *
+ * <p>The evaluation is linear in the piece-square parameters: every piece contributes its midgame value
+ * weighted by {@code phase / TOTAL_PHASE} and its endgame value weighted by the rest. A position therefore
+ * only stores which parameters it uses (with the sign of their color), its phase and the part of the
+ * evaluation that is not tuned (pawn structure, mop-up). Positions whose evaluation is not linear in the
+ * parameters are left out: those with a specialised evaluation or a scaled endgame score, see {@link Endgames}.
+ *
+ * <p>Parameter {@code 2 * (piece * 64 + sq)} is the midgame value of a white piece (P, N, B, R, Q, K) on a
+ * square from white's view, the next one is its endgame value.
+ */
+final class TuningSet {
+
+    static final int PARAMETERS = 2 * 6 * 64;
+    /** Maximum number of captures resolved by the quiescence search. */
+    private static final int MAX_QUIESCENCE_DEPTH = 8;
+
+    int size;
+    /** Features of position i are {@code features[start[i]..start[i + 1])}. */
+    int[] start = new int[1025];
+    /** Piece-square index + 1, negative for black pieces. */
+    short[] features = new short[16 * 1024];
+    byte[] phase = new byte[1024];
+    float[] offset = new float[1024];
+    float[] result = new float[1024];
+
+    /**
+     * Adds a position after resolving its captures, unless the side to move is in check.
+     *
+     * @param board  the position, left unchanged
+     * @param result the game result from white's view (1, 0.5 or 0)
+     */
+    void addQuiet(BoardEnv board, double result) {
+        if (LegalMoveGenerator.isKingInCheck(board, board.whiteToMove)) return;
+        List<Move> line = new ArrayList<>();
+        quiesce(board, -Integer.MAX_VALUE, Integer.MAX_VALUE, MAX_QUIESCENCE_DEPTH, line);
+        List<MakeMoveResult> made = new ArrayList<>();
+        for (Move move : line) {
+            made.add(MoveMaker.makeMove(board, move, false));
+        }
+        add(board, result);
+        for (int i = line.size() - 1; i >= 0; i--) {
+            MoveMaker.unmakeMove(board, line.get(i), made.get(i).undoInfo);
+        }
+    }
+
+    /**
+     * Capture-only search with stand pat, in negamax form.
+     *
+     * @param line receives the principal variation
+     * @return the score for the side to move
+     */
+    private static int quiesce(BoardEnv board, int alpha, int beta, int depth, List<Move> line) {
+        int standPat = Engine.evaluate(board, null) * (board.whiteToMove ? 1 : -1);
+        if (standPat >= beta || depth == 0) return standPat;
+        alpha = Math.max(alpha, standPat);
+        for (Move move : Engine.generateAllLegalMoves(board)) {
+            if (!move.isCapture) continue;
+            MakeMoveResult result = MoveMaker.makeMove(board, move, false);
+            List<Move> childLine = new ArrayList<>();
+            int score = result.outcome == GameOutcome.ONGOING
+                    ? -quiesce(board, -beta, -alpha, depth - 1, childLine)
+                    : standPat; // the line ends the game, keep the position before it
+            MoveMaker.unmakeMove(board, move, result.undoInfo);
+            if (score > alpha) {
+                alpha = score;
+                line.clear();
+                line.add(move);
+                line.addAll(childLine);
+                if (alpha >= beta) break;
+            }
+        }
+        return alpha;
+    }
+
+    /**
+     * Adds a quiet position, unless its evaluation is not linear in the parameters.
+     *
+     * @param board  the position
+     * @param result the game result from white's view
+     */
+    void add(BoardEnv board, double result) {
+        if (Endgames.evaluate(board) != Endgames.NOT_FOUND || Endgames.scaleFactor(board) != Endgames.NORMAL_SCALE) {
+            return;
+        }
+        ensureCapacity(size + 1, start[size] + 32);
+        int end = start[size];
+        for (long set = board.pieces[Piece.WHITE] | board.pieces[Piece.BLACK]; set != 0; set &= set - 1) {
+            int sq = Long.numberOfTrailingZeros(set);
+            int pieceIndex = board.state[sq] - 1; // the Zobrist piece index
+            if (pieceIndex < 6) {
+                features[end++] = (short) (pieceIndex * 64 + sq + 1);
+            } else {
+                int mirrored = (7 - sq / 8) * 8 + sq % 8;
+                features[end++] = (short) -((pieceIndex - 6) * 64 + mirrored + 1);
+            }
+        }
+        int phase = Math.min(board.phase, PieceValues.TOTAL_PHASE);
+        this.phase[size] = (byte) phase;
+        this.offset[size] = Engine.evaluate(board, null) - (float) (PieceValues.midgame(board.psqtScore) * phase
+                + PieceValues.endgame(board.psqtScore) * (PieceValues.TOTAL_PHASE - phase)) / PieceValues.TOTAL_PHASE;
+        this.result[size] = (float) result;
+        start[++size] = end;
+    }
+
+    /**
+     * Appends all positions of another set.
+     *
+     * @param other the other set
+     */
+    void addAll(TuningSet other) {
+        ensureCapacity(size + other.size, start[size] + other.start[other.size]);
+        int base = start[size];
+        System.arraycopy(other.features, 0, features, base, other.start[other.size]);
+        for (int i = 0; i < other.size; i++) {
+            phase[size + i] = other.phase[i];
+            offset[size + i] = other.offset[i];
+            result[size + i] = other.result[i];
+            start[size + i + 1] = base + other.start[i + 1];
+        }
+        size += other.size;
+    }
+
+    private void ensureCapacity(int positions, int featureCount) {
+        if (positions >= phase.length) {
+            int capacity = Math.max(positions + 1, 2 * phase.length);
+            start = Arrays.copyOf(start, capacity + 1);
+            phase = Arrays.copyOf(phase, capacity);
+            offset = Arrays.copyOf(offset, capacity);
+            result = Arrays.copyOf(result, capacity);
+        }
+        if (featureCount > features.length) {
+            features = Arrays.copyOf(features, Math.max(featureCount, 2 * features.length));
+        }
+    }
+
+    /**
+     * Evaluates a position with the given parameters.
+     *
+     * @param i          the position
+     * @param parameters the parameters
+     * @return the evaluation, positive if white is better
+     */
+    double evaluate(int i, double[] parameters) {
+        int phase = this.phase[i];
+        double midgame = 0;
+        double endgame = 0;
+        for (int f = start[i]; f < start[i + 1]; f++) {
+            int feature = features[f];
+            int index = 2 * (Math.abs(feature) - 1);
+            if (feature > 0) {
+                midgame += parameters[index];
+                endgame += parameters[index + 1];
+            } else {
+                midgame -= parameters[index];
+                endgame -= parameters[index + 1];
+            }
+        }
+        return offset[i] + (midgame * phase + endgame * (PieceValues.TOTAL_PHASE - phase)) / PieceValues.TOTAL_PHASE;
+    }
+}
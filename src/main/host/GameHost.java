@@ -0,0 +1,210 @@
+package main.host;
+
+import main.DaemonThreadFactory;
+import main.engine.Engine;
+import main.engine.OpeningBook;
+import main.engine.nnue.NnueNetwork;
+import main.engine.tablebase.Tablebase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts many concurrent games in one process.
+ *
+ * <p>Every game owns its own {@link Engine}, so book cursor and search state are never shared.
+ * Engine moves are searched on a fixed number of worker threads. Their queue has no capacity limit, but
+ * holds at most one search per game. Scheduling is fair:
+ * <ul>
+ *   <li>Each game can have at most one search waiting or running, and waiting searches are
+ *       served in FIFO order, so no game waits for more than one round of the others.</li>
+ *   <li>The search time of a move is the configured move time scaled down by the number of
+ *       searches competing for the workers, so a busy host gives every game the same share of
+ *       CPU instead of letting the queue grow.</li>
+ * </ul>
+ */
+public class GameHost implements AutoCloseable {
+
+    /** The minimum search time of an engine move in milliseconds, no matter how busy the host is. */
+    public static final long MIN_TIME_SLICE = 50;
+
+    private final int threads;
+    private final long moveTime;
+    private final OpeningBook openingBook;
+    private final ThreadPoolExecutor executor;
+    private final Map<Integer, GameSession> games = new ConcurrentHashMap<>();
+    private final AtomicInteger nextGameId = new AtomicInteger(1);
+    /** Number of engine searches that are waiting for or running on a worker. */
+    private final AtomicInteger pendingSearches = new AtomicInteger();
+    /** Endgame tables shared by all engines, or null. */
+    private volatile Tablebase tablebase;
+    /** Network shared by all engines, or null. */
+    private volatile NnueNetwork network;
+
+    /**
+     * Creates a game host.
+     *
+     * @param threads  the number of worker threads searching engine moves
+     * @param moveTime the search time of an engine move in milliseconds when the host is idle
+     * @param openingBook the opening book shared by all engines
+     */
+    public GameHost(int threads, long moveTime, OpeningBook openingBook) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be positive: " + threads);
+        this.threads = threads;
+        this.moveTime = moveTime;
+        this.openingBook = openingBook;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), new DaemonThreadFactory("engine-worker"));
+    }
+
+    /**
+     * Starts a new game.
+     *
+     * @param FEN         the starting position
+     * @param engineWhite true if the engine plays white
+     * @return the new game
+     */
+    public GameSession newGame(String FEN, boolean engineWhite) {
+        Engine engine = new Engine(engineWhite);
+        engine.setOpeningBook(openingBook);
+        engine.setDebugOutput(false);
+        engine.setTablebase(tablebase);
+        engine.setNetwork(network);
+        GameSession session = new GameSession(nextGameId.getAndIncrement(), this, FEN, engine);
+        games.put(session.getId(), session);
+        return session;
+    }
+
+    /**
+     * Sets the endgame tables used by the engines of games started afterwards. Probing is thread-safe,
+     * so all engines share the same memory-mapped tables.
+     *
+     * @param tablebase the tables, or null
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Sets the network used by the engines of games started afterwards. The weights are read-only,
+     * every position owns its accumulators, so all engines share the same network.
+     *
+     * @param network the network, or null
+     */
+    public void setNetwork(NnueNetwork network) {
+        this.network = network;
+    }
+
+    /**
+     * @param id the id of the game
+     * @return the game, or null if there is no such game
+     */
+    public GameSession getGame(int id) {
+        return games.get(id);
+    }
+
+    /**
+     * @return all running games
+     */
+    public Collection<GameSession> getGames() {
+        return Collections.unmodifiableCollection(games.values());
+    }
+
+    /**
+     * Removes a game from the host. A search that is still running for it completes normally.
+     *
+     * @param id the id of the game
+     */
+    public void endGame(int id) {
+        games.remove(id);
+    }
+
+    /**
+     * @return the number of engine searches waiting for or running on a worker
+     */
+    public int getPendingSearches() {
+        return pendingSearches.get();
+    }
+
+    /**
+     * Queues a search of the engine of a game.
+     *
+     * @param session the game
+     * @return the best move of the engine
+     */
+    CompletableFuture<Engine.BestMove> schedule(GameSession session) {
+        Search search = new Search(session, new CompletableFuture<>());
+        pendingSearches.incrementAndGet();
+        try {
+            executor.execute(search);
+        } catch (RejectedExecutionException e) {
+            pendingSearches.decrementAndGet();
+            search.future.completeExceptionally(e);
+        }
+        return search.future;
+    }
+
+    /**
+     * A queued search, which keeps its future so {@link #close()} can cancel it.
+     */
+    private final class Search implements Runnable {
+        final GameSession session;
+        final CompletableFuture<Engine.BestMove> future;
+
+        Search(GameSession session, CompletableFuture<Engine.BestMove> future) {
+            this.session = session;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            Engine.BestMove bestMove;
+            try {
+                bestMove = session.search(timeSlice());
+            } catch (Throwable e) {
+                pendingSearches.decrementAndGet();
+                future.completeExceptionally(e);
+                return;
+            }
+            pendingSearches.decrementAndGet();
+            future.complete(bestMove);
+        }
+    }
+
+    /**
+     * Computes the search time of the next engine move: the move time is shared between all
+     * searches that are competing for the workers.
+     *
+     * @return the search time in milliseconds
+     */
+    long timeSlice() {
+        int competing = Math.max(threads, pendingSearches.get());
+        return Math.max(MIN_TIME_SLICE, moveTime * threads / competing);
+    }
+
+    /**
+     * Stops the workers. The futures of searches that have not started yet are cancelled, running
+     * searches complete normally.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        List<Runnable> dropped = new ArrayList<>();
+        executor.getQueue().drainTo(dropped);
+        for (Runnable task : dropped) {
+            pendingSearches.decrementAndGet();
+            ((Search) task).future.cancel(false);
+        }
+        games.clear();
+    }
+}
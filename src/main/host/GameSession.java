@@ -0,0 +1,117 @@
+package main.host;
+
+import main.chessboard.BoardEnv;
+import main.chessboard.GameOutcome;
+import main.chessboard.MakeMoveResult;
+import main.chessboard.Move;
+import main.chessboard.MoveMaker;
+import main.engine.Engine;
+import main.pgn.SanResolver;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A game hosted by a {@link GameHost}, played between a client and the engine of the game.
+ */
+public class GameSession {
+
+    private final int id;
+    private final GameHost host;
+    private final Engine engine;
+    private final BoardEnv board;
+    private GameOutcome outcome = GameOutcome.ONGOING;
+    /** True while a search of the engine is waiting for or running on a worker. */
+    private boolean searching;
+
+    GameSession(int id, GameHost host, String FEN, Engine engine) {
+        this.id = id;
+        this.host = host;
+        this.engine = engine;
+        this.board = new BoardEnv(FEN);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public synchronized GameOutcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * @return a copy of the current position
+     */
+    public synchronized BoardEnv getBoard() {
+        return board.deepCopy();
+    }
+
+    /**
+     * @return true if the engine has to move in the current position
+     */
+    public synchronized boolean isEngineToMove() {
+        return outcome == GameOutcome.ONGOING && board.whiteToMove == engine.isEngineWhite();
+    }
+
+    /**
+     * Plays a move of the client.
+     *
+     * @param san the move in SAN, check and checkmate suffixes are optional
+     * @return the game outcome after the move
+     * @throws IllegalStateException if it is not the client's turn
+     * @throws IllegalArgumentException if the move is not legal
+     */
+    public synchronized GameOutcome playMove(String san) {
+        if (outcome != GameOutcome.ONGOING || searching || board.whiteToMove == engine.isEngineWhite()) {
+            throw new IllegalStateException("It is not the player's turn in game " + id);
+        }
+        // SanResolver trusts a lone candidate to be legal, which a client move has to be checked for
+        Move move = SanResolver.resolve(board, san);
+        if (move != null && Engine.generateAllLegalMoves(board).stream().anyMatch(legal -> legal.fromRow == move.fromRow
+                && legal.fromCol == move.fromCol && legal.toRow == move.toRow && legal.toCol == move.toCol
+                && legal.promotionPiece == move.promotionPiece)) {
+            MakeMoveResult result = MoveMaker.makeMove(board, move, false);
+            outcome = result.outcome;
+            return outcome;
+        }
+        throw new IllegalArgumentException("Illegal move in game " + id + ": " + san);
+    }
+
+    /**
+     * Lets the engine calculate and play its move. The search is queued on the workers of the host.
+     *
+     * @return the move played by the engine
+     * @throws IllegalStateException if it is not the engine's turn
+     */
+    public synchronized CompletableFuture<Move> requestEngineMove() {
+        if (outcome != GameOutcome.ONGOING || searching || board.whiteToMove != engine.isEngineWhite()) {
+            throw new IllegalStateException("It is not the engine's turn in game " + id);
+        }
+        searching = true;
+        return host.schedule(this).handle((bestMove, error) -> {
+            synchronized (this) {
+                searching = false;
+                if (error != null) {
+                    throw new IllegalStateException("Search failed in game " + id, error);
+                }
+                MakeMoveResult result = MoveMaker.makeMove(board, bestMove.move, false);
+                board.evaluation = bestMove.evaluation;
+                outcome = result.outcome;
+                return bestMove.move;
+            }
+        });
+    }
+
+    /**
+     * Searches the engine move on a copy of the board. Called by a worker of the host.
+     *
+     * @param timeLimit the search time in milliseconds
+     * @return the best move
+     */
+    Engine.BestMove search(long timeLimit) {
+        BoardEnv copy;
+        synchronized (this) {
+            copy = board.deepCopy();
+        }
+        return engine.calculateBestMove(copy, timeLimit);
+    }
+}
@@ -0,0 +1,101 @@
+package main.host;
+
+/**
+ * Elo estimate and sequential probability ratio test of a match result.
+ *
+ * <p>The log-likelihood ratio uses the normal approximation of the trinomial (win, draw, loss) model: with the
+ * mean score {@code s} and its per-game variance {@code v}, the test of H0: elo = elo0 against H1: elo = elo1
+ * has {@code LLR = n (s1 - s0) (2s - s0 - s1) / (2v)}, where {@code s0} and {@code s1} are the expected scores
+ * of the two hypotheses. The match stops when the LLR leaves {@code [ln(beta / (1 - alpha)), ln((1 - beta) / alpha)]}.
+ */
+public class Sprt {
+
+    public enum Decision { CONTINUE, ACCEPT_H0, ACCEPT_H1 }
+
+    private final double elo0;
+    private final double elo1;
+    private final double lowerBound;
+    private final double upperBound;
+
+    /**
+     * @param elo0  the Elo difference of the null hypothesis
+     * @param elo1  the Elo difference of the alternative hypothesis
+     * @param alpha the probability of accepting H1 if H0 holds
+     * @param beta  the probability of accepting H0 if H1 holds
+     */
+    public Sprt(double elo0, double elo1, double alpha, double beta) {
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.lowerBound = Math.log(beta / (1 - alpha));
+        this.upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    public double lowerBound() {
+        return lowerBound;
+    }
+
+    public double upperBound() {
+        return upperBound;
+    }
+
+    /**
+     * @return the log-likelihood ratio of the result
+     */
+    public double llr(int wins, int draws, int losses) {
+        int games = wins + draws + losses;
+        if (games == 0) return 0;
+        // Half a game of every result keeps the variance positive if all games ended alike
+        double w = wins + 0.5, d = draws + 0.5, l = losses + 0.5;
+        double score = (w + 0.5 * d) / (w + d + l);
+        double variance = (w * (1 - score) * (1 - score) + d * (0.5 - score) * (0.5 - score) + l * score * score)
+                / (w + d + l);
+        double s0 = expectedScore(elo0);
+        double s1 = expectedScore(elo1);
+        return games * (s1 - s0) * (2 * score - s0 - s1) / (2 * variance);
+    }
+
+    public Decision decide(int wins, int draws, int losses) {
+        double llr = llr(wins, draws, losses);
+        if (llr >= upperBound) return Decision.ACCEPT_H1;
+        if (llr <= lowerBound) return Decision.ACCEPT_H0;
+        return Decision.CONTINUE;
+    }
+
+    public static double score(int wins, int draws, int losses) {
+        return (wins + 0.5 * draws) / (wins + draws + losses);
+    }
+
+    /**
+     * @return the variance of the score of one game
+     */
+    public static double variance(int wins, int draws, int losses) {
+        int games = wins + draws + losses;
+        double score = score(wins, draws, losses);
+        return (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score)
+                + losses * score * score) / games;
+    }
+
+    public static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * @param score the mean score, exclusive 0 and 1
+     * @return the Elo difference of the score
+     */
+    public static double elo(double score) {
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /**
+     * @return half the width of the 95% confidence interval of the Elo difference
+     */
+    public static double eloError(int wins, int draws, int losses) {
+        int games = wins + draws + losses;
+        double score = score(wins, draws, losses);
+        double deviation = Math.sqrt(variance(wins, draws, losses) / games);
+        double upper = Math.min(0.999, score + 1.96 * deviation);
+        double lower = Math.max(0.001, score - 1.96 * deviation);
+        return (elo(upper) - elo(lower)) / 2;
+    }
+}
@@ -0,0 +1,295 @@
+package main.host;
+
+import main.DaemonThreadFactory;
+import main.chessboard.BoardEnv;
+import main.chessboard.GameOutcome;
+import main.chessboard.MakeMoveResult;
+import main.chessboard.Move;
+import main.chessboard.MoveMaker;
+import main.engine.Engine;
+import main.engine.EngineOptions;
+import main.engine.SearchLimits;
+import main.engine.nnue.NnueNetwork;
+import main.engine.tablebase.Tablebase;
+import main.pgn.SanResolver;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays engine-vs-engine games between two configurations to measure whether a change makes the engine
+ * stronger.
+ *
+ * <p>The openings are the first plies of the lines of a text book. Every opening is played twice with
+ * swapped colors, so an unbalanced opening favors neither side. The games run concurrently on a fixed pool
+ * of threads, one game per thread at a time, and every game creates its own two engines. Only the read-only
+ * network and endgame tables are shared. A game ends with the {@link GameOutcome} of the last move. After
+ * every game, the result is tested with an {@link Sprt}, and the tournament stops as soon as it is decided.
+ *
+ * <p>The configurations can differ in their search limits, network, endgame tables and cache size. Piece
+ * values are global, so changes to {@code PieceValues} are measured by running the same tournament against
+ * a fixed baseline before and after the change.
+ *
+ * <p>Usage: {@code Tournament <config 1> <config 2> [-games=N] [-threads=N] [-openings=file] [-plies=N]
+ * [-elo0=E] [-elo1=E] [-alpha=P] [-beta=P] [-seed=N]}, where a configuration is a comma-separated list such as
+ * {@code nodes=20000,nnue,tb} or {@code movetime=50,depth=6,hash=4}.
+ */
+public class Tournament {
+
+    private static final int DEFAULT_GAMES = 1000;
+    private static final int DEFAULT_PLIES = 8;
+    /** Number of games between two progress reports. */
+    private static final int REPORT_INTERVAL = 20;
+
+    private final Config first;
+    private final Config second;
+    private final List<List<String>> openings;
+    private final Sprt sprt;
+    private final int threads;
+    private final int maxGames;
+
+    private final AtomicInteger nextGame = new AtomicInteger();
+    /** Results from the view of the first configuration. */
+    private int wins, draws, losses;
+    private Sprt.Decision decision = Sprt.Decision.CONTINUE;
+    private final long start = System.currentTimeMillis();
+
+    /**
+     * @param first    the first configuration
+     * @param second   the second configuration, the baseline of the Elo difference
+     * @param openings the openings as lists of SAN moves from the starting position
+     * @param sprt     the stop rule
+     * @param threads  the number of games played concurrently
+     * @param maxGames the maximum number of games
+     */
+    public Tournament(Config first, Config second, List<List<String>> openings, Sprt sprt, int threads, int maxGames) {
+        if (openings.isEmpty()) throw new IllegalArgumentException("No openings");
+        this.first = first;
+        this.second = second;
+        this.openings = openings;
+        this.sprt = sprt;
+        this.threads = threads;
+        this.maxGames = maxGames;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: Tournament <config 1> <config 2> [-games=N] [-threads=N] [-openings=file] [-plies=N]"
+                    + " [-elo0=E] [-elo1=E] [-alpha=P] [-beta=P] [-seed=N]");
+            return;
+        }
+        int games = DEFAULT_GAMES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int plies = DEFAULT_PLIES;
+        Path openingsPath = Paths.get(Engine.OPENINGS_PATH);
+        double elo0 = 0, elo1 = 10, alpha = 0.05, beta = 0.05;
+        long seed = 1;
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i];
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("-games=")) games = Integer.parseInt(value);
+            else if (arg.startsWith("-threads=")) threads = Integer.parseInt(value);
+            else if (arg.startsWith("-openings=")) openingsPath = Paths.get(value);
+            else if (arg.startsWith("-plies=")) plies = Integer.parseInt(value);
+            else if (arg.startsWith("-elo0=")) elo0 = Double.parseDouble(value);
+            else if (arg.startsWith("-elo1=")) elo1 = Double.parseDouble(value);
+            else if (arg.startsWith("-alpha=")) alpha = Double.parseDouble(value);
+            else if (arg.startsWith("-beta=")) beta = Double.parseDouble(value);
+            else if (arg.startsWith("-seed=")) seed = Long.parseLong(value);
+            else throw new IllegalArgumentException("Unknown option " + arg);
+        }
+        Config first = Config.parse(args[0]);
+        Config second = Config.parse(args[1]);
+        EngineOptions assets = new EngineOptions();
+        assets.network = first.network || second.network;
+        assets.tablebase = first.tablebase || second.tablebase;
+        Config.sharedNetwork = assets.loadNetwork();
+        Config.sharedTablebase = assets.openTablebase();
+
+        List<List<String>> openings = loadOpenings(openingsPath, plies, new Random(seed));
+        Sprt sprt = new Sprt(elo0, elo1, alpha, beta);
+        System.out.printf("%s vs %s: %d openings, %d threads, SPRT elo0=%.1f elo1=%.1f alpha=%.2f beta=%.2f%n",
+                args[0], args[1], openings.size(), threads, elo0, elo1, alpha, beta);
+        new Tournament(first, second, openings, sprt, threads, games).run();
+    }
+
+    /**
+     * Reads the openings of a text book: the first plies of every line, without duplicates, shuffled.
+     *
+     * @param path   the text book, one line of SAN moves per opening
+     * @param plies  the length of the openings
+     * @param random shuffles the openings
+     * @return the openings
+     * @throws IOException if the file cannot be read
+     */
+    public static List<List<String>> loadOpenings(Path path, int plies, Random random) throws IOException {
+        Set<List<String>> openings = new LinkedHashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] moves = line.trim().split("\\s+");
+                if (moves.length >= plies) openings.add(List.of(moves).subList(0, plies));
+            }
+        }
+        List<List<String>> shuffled = new ArrayList<>(openings);
+        Collections.shuffle(shuffled, random);
+        return shuffled;
+    }
+
+    /**
+     * Plays the games until the SPRT is decided or the maximum number of games is reached.
+     */
+    public void run() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("tournament"));
+        for (int i = 0; i < threads; i++) {
+            executor.execute(this::playGames);
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        report(true);
+    }
+
+    private void playGames() {
+        int game;
+        while (!isDecided() && (game = nextGame.getAndIncrement()) < maxGames) {
+            // Game pairs: both configurations play both colors of every opening
+            List<String> opening = openings.get(game / 2 % openings.size());
+            boolean firstWhite = game % 2 == 0;
+            GameOutcome outcome;
+            try {
+                outcome = playGame(opening, firstWhite ? first : second, firstWhite ? second : first);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                continue;
+            }
+            record(outcome, firstWhite);
+        }
+    }
+
+    /**
+     * Plays one game.
+     *
+     * @param opening the SAN moves played before the engines take over
+     * @param white   the configuration playing white
+     * @param black   the configuration playing black
+     * @return the outcome, or {@link GameOutcome#ONGOING} if the opening is illegal
+     */
+    static GameOutcome playGame(List<String> opening, Config white, Config black) {
+        BoardEnv board = new BoardEnv(Engine.STARTING_FEN);
+        GameOutcome outcome = GameOutcome.ONGOING;
+        for (String san : opening) {
+            Move move = SanResolver.resolve(board, san);
+            if (move == null) return GameOutcome.ONGOING;
+            outcome = MoveMaker.makeMove(board, move, false).outcome;
+            if (outcome != GameOutcome.ONGOING) return outcome;
+        }
+        Engine whiteEngine = white.createEngine(true);
+        Engine blackEngine = black.createEngine(false);
+        while (outcome == GameOutcome.ONGOING) {
+            Config config = board.whiteToMove ? white : black;
+            Engine engine = board.whiteToMove ? whiteEngine : blackEngine;
+            Engine.BestMove bestMove = engine.calculateBestMove(board.deepCopy(), config.limits, null);
+            MakeMoveResult result = MoveMaker.makeMove(board, bestMove.move, false);
+            outcome = result.outcome;
+        }
+        return outcome;
+    }
+
+    private synchronized boolean isDecided() {
+        return decision != Sprt.Decision.CONTINUE;
+    }
+
+    private synchronized void record(GameOutcome outcome, boolean firstWhite) {
+        if (outcome == GameOutcome.ONGOING) return; // illegal opening
+        if (!outcome.isCheckmate()) draws++;
+        else if ((outcome == GameOutcome.CHECKMATE_BLACK) == firstWhite) wins++; // CHECKMATE_BLACK: white wins
+        else losses++;
+        if (decision == Sprt.Decision.CONTINUE) decision = sprt.decide(wins, draws, losses);
+        int games = wins + draws + losses;
+        // The last report is printed by run
+        if (games % REPORT_INTERVAL == 0 && games < maxGames && decision == Sprt.Decision.CONTINUE) report(false);
+    }
+
+    private synchronized void report(boolean last) {
+        int games = wins + draws + losses;
+        if (games == 0) return;
+        double minutes = (System.currentTimeMillis() - start) / 60_000.0;
+        double score = Sprt.score(wins, draws, losses);
+        String elo = score > 0 && score < 1
+                ? String.format("%.1f +/- %.1f", Sprt.elo(score), Sprt.eloError(wins, draws, losses))
+                : score == 0 ? "-inf" : "+inf";
+        System.out.printf("Games %d: +%d -%d =%d, score %.1f%%, Elo %s, LLR %.2f [%.2f, %.2f], %.1f games/min%n",
+                games, wins, losses, draws, 100 * score, elo, sprt.llr(wins, draws, losses),
+                sprt.lowerBound(), sprt.upperBound(), games / minutes);
+        if (last) {
+            System.out.println(switch (decision) {
+                case ACCEPT_H1 -> "SPRT: H1 accepted, the first configuration is stronger";
+                case ACCEPT_H0 -> "SPRT: H0 accepted, the first configuration is not stronger";
+                case CONTINUE -> "SPRT: undecided";
+            });
+        }
+    }
+
+    /**
+     * An engine configuration of a tournament.
+     */
+    public static class Config {
+
+        /** Search time per move in milliseconds if no limit is given. */
+        static final long DEFAULT_MOVE_TIME = 100;
+        /** Loaded once and shared by all engines that use them. */
+        static volatile NnueNetwork sharedNetwork;
+        static volatile Tablebase sharedTablebase;
+
+        final SearchLimits limits;
+        final boolean network;
+        final boolean tablebase;
+        final int hashSize;
+
+        public Config(SearchLimits limits, boolean network, boolean tablebase, int hashSize) {
+            this.limits = limits;
+            this.network = network;
+            this.tablebase = tablebase;
+            this.hashSize = hashSize;
+        }
+
+        /**
+         * Parses a configuration like {@code movetime=50,depth=6,nodes=20000,hash=4,nnue,tb}. Without any limit,
+         * the engine searches {@value #DEFAULT_MOVE_TIME} ms per move.
+         *
+         * @param spec the comma-separated options
+         * @return the configuration
+         */
+        public static Config parse(String spec) {
+            EngineOptions options = new EngineOptions();
+            for (String option : spec.split(",")) {
+                if (!option.isEmpty() && !options.parse(option)) {
+                    throw new IllegalArgumentException("Unknown engine option " + option);
+                }
+            }
+            return new Config(options.limits(DEFAULT_MOVE_TIME), options.network, options.tablebase, options.hashSize);
+        }
+
+        Engine createEngine(boolean white) {
+            Engine engine = new Engine(white);
+            engine.setDebugOutput(false);
+            if (network) engine.setNetwork(sharedNetwork);
+            if (tablebase) engine.setTablebase(sharedTablebase);
+            if (hashSize > 0) engine.setHashSize(hashSize);
+            return engine;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package main.pgn;
+
+import main.DaemonThreadFactory;
+import main.chessboard.BoardEnv;
+import main.chessboard.GameOutcome;
+import main.chessboard.LegalMoveGenerator;
+import main.chessboard.Move;
+import main.chessboard.MoveMaker;
+import main.engine.Engine;
+import main.engine.EngineOptions;
+import main.engine.SearchLimits;
+import main.engine.nnue.NnueNetwork;
+import main.engine.tablebase.Tablebase;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Annotates the games of a PGN file with the evaluations and best moves of the engine.
+ *
+ * <p>The games are streamed: a game is read, analysed by one of the worker threads and written in input
+ * order. At most two games per worker are in flight, so memory use does not depend on the size of the file.
+ * Every worker owns an engine, whose caches stay warm across the consecutive positions of its games.
+ *
+ * <p>Every move gets the evaluation after it as a {@code [%eval]} comment. If the engine prefers another move,
+ * its line is added as a variation, and the move is marked as a mistake ($2) or a blunder ($4) if it loses
+ * at least {@value #MISTAKE} or {@value #BLUNDER} centipawns.
+ *
+ * <p>Usage: {@code PgnAnalyzer <input .pgn> <output .pgn> [-depth=N] [-nodes=N] [-movetime=ms] [-threads=N]
+ * [-hash=MB] [-nnue] [-tb]}
+ */
+public class PgnAnalyzer {
+
+    /** Centipawns lost by a mistake. */
+    static final int MISTAKE = 100;
+    /** Centipawns lost by a blunder. */
+    static final int BLUNDER = 300;
+    private static final int LINE_WIDTH = 80;
+
+    private final SearchLimits limits;
+    private final int threads;
+    private final ExecutorService executor;
+    private final ThreadLocal<Engine> engines;
+
+    /**
+     * @param limits  the limits of the search of every position
+     * @param threads the number of worker threads
+     * @param hashSize the evaluation cache of every worker in megabytes, or 0 for the default
+     * @param network the network shared by all workers, or null
+     * @param tablebase the endgame tables shared by all workers, or null
+     */
+    public PgnAnalyzer(SearchLimits limits, int threads, int hashSize, NnueNetwork network, Tablebase tablebase) {
+        this.limits = limits;
+        this.threads = threads;
+        this.executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("pgn-worker"));
+        this.engines = ThreadLocal.withInitial(() -> {
+            Engine engine = new Engine(true);
+            engine.setDebugOutput(false);
+            engine.setNetwork(network);
+            engine.setTablebase(tablebase);
+            if (hashSize > 0) engine.setHashSize(hashSize);
+            return engine;
+        });
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: PgnAnalyzer <input .pgn> <output .pgn> [-depth=N] [-nodes=N] [-movetime=ms]"
+                    + " [-threads=N] [-hash=MB] [-nnue] [-tb]");
+            return;
+        }
+        EngineOptions options = new EngineOptions();
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("-threads=")) threads = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+            else if (!arg.startsWith("-") || !options.parse(arg.substring(1))) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        long start = System.currentTimeMillis();
+        PgnAnalyzer analyzer = new PgnAnalyzer(options.limits(), threads, options.hashSize, options.loadNetwork(),
+                options.openTablebase());
+        int games;
+        try (PgnReader reader = PgnReader.open(Paths.get(args[0]));
+             BufferedWriter writer = Files.newBufferedWriter(Paths.get(args[1]))) {
+            games = analyzer.analyze(reader, writer);
+        } finally {
+            analyzer.executor.shutdown();
+        }
+        System.out.printf("Analysed %d games in %d ms\n", games, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Analyses games in parallel and writes them in input order.
+     *
+     * @param games the games
+     * @param out   receives the annotated games
+     * @return the number of games
+     * @throws IOException if the output cannot be written
+     */
+    public int analyze(Iterator<PgnGame> games, Writer out) throws IOException, InterruptedException {
+        Queue<Future<String>> pending = new ArrayDeque<>();
+        int count = 0;
+        while (games.hasNext()) {
+            PgnGame game = games.next();
+            pending.add(executor.submit(() -> annotate(game)));
+            count++;
+            if (pending.size() >= 2 * threads) {
+                write(pending.remove(), out);
+            }
+        }
+        while (!pending.isEmpty()) {
+            write(pending.remove(), out);
+        }
+        out.flush();
+        return count;
+    }
+
+    private static void write(Future<String> game, Writer out) throws IOException, InterruptedException {
+        try {
+            out.write(game.get());
+        } catch (ExecutionException e) {
+            throw new IOException("Analysis failed", e.getCause());
+        }
+    }
+
+    /**
+     * Analyses a game with the engine of the current thread.
+     *
+     * @param game the game
+     * @return the annotated game in PGN
+     */
+    String annotate(PgnGame game) {
+        Engine engine = engines.get();
+        StringBuilder pgn = new StringBuilder();
+        for (Map.Entry<String, String> tag : game.getTags().entrySet()) {
+            if (tag.getKey().equals("Annotator")) continue;
+            pgn.append('[').append(tag.getKey()).append(" \"").append(tag.getValue()).append("\"]\n");
+        }
+        pgn.append("[Annotator \"Chess2\"]\n\n");
+
+        StringBuilder moveText = new StringBuilder();
+        BoardEnv board = game.startingPosition();
+        Engine.BestMove before = engine.calculateBestMove(board.deepCopy(), limits, null);
+        boolean forceNumber = true;
+        List<String> moves = game.getMoves();
+        for (int i = 0; i < moves.size(); i++) {
+            Move move = SanResolver.resolve(board, moves.get(i));
+            if (move == null) {
+                moveText.append("{Illegal move ").append(moves.get(i)).append("} ");
+                break;
+            }
+            int ply = board.totalHalfMoveCount;
+            boolean whiteMoved = board.whiteToMove;
+            GameOutcome outcome = MoveMaker.makeMove(board, move, false).outcome;
+            if (outcome.isCheckmate()) move.setCheckmate();
+            else if (LegalMoveGenerator.isKingInCheck(board, board.whiteToMove)) move.setCheck();
+            Engine.BestMove after = outcome == GameOutcome.ONGOING
+                    ? engine.calculateBestMove(board.deepCopy(), limits, null) : null;
+            appendMove(moveText, ply, move.toString(), forceNumber);
+            forceNumber = false;
+
+            boolean best = before.move == null || sameMove(before.move, move);
+            int loss = after == null || best ? 0 : centipawnLoss(before, after, whiteMoved);
+            if (loss >= BLUNDER) moveText.append("$4 ");
+            else if (loss >= MISTAKE) moveText.append("$2 ");
+            if (after != null) {
+                moveText.append("{[%eval ").append(formatEval(after)).append("]} ");
+            }
+            if (!best) {
+                moveText.append('(');
+                List<String> line = before.moveSequence;
+                for (int j = 0; j < line.size(); j++) {
+                    appendMove(moveText, ply + j, line.get(j), j == 0);
+                }
+                moveText.append("{[%eval ").append(formatEval(before)).append("]}) ");
+                forceNumber = true;
+            }
+            if (after == null) break;
+            before = after;
+        }
+        moveText.append(game.getResult());
+        wrap(moveText, pgn);
+        return pgn.append("\n\n").toString();
+    }
+
+    private static boolean sameMove(Move a, Move b) {
+        return a.fromRow == b.fromRow && a.fromCol == b.fromCol && a.toRow == b.toRow && a.toCol == b.toCol
+                && a.promotionPiece == b.promotionPiece;
+    }
+
+    /**
+     * @param ply         the number of half moves before the move, even for white
+     * @param forceNumber true to write the move number before a black move, e.g. after a comment
+     */
+    private static void appendMove(StringBuilder moveText, int ply, String san, boolean forceNumber) {
+        if (ply % 2 == 0) moveText.append(ply / 2 + 1).append(". ");
+        else if (forceNumber) moveText.append(ply / 2 + 1).append("... ");
+        moveText.append(san).append(' ');
+    }
+
+    /**
+     * @return the centipawns the side that moved lost compared to the best move, or 0 if a mate is involved
+     */
+    private static int centipawnLoss(Engine.BestMove before, Engine.BestMove after, boolean whiteMoved) {
+        if (Engine.BestMove.movesToMate(before.evaluation, before.moveSequence.size()) != 0
+                || Engine.BestMove.movesToMate(after.evaluation, after.moveSequence.size()) != 0) {
+            return 0;
+        }
+        return whiteMoved ? before.evaluation - after.evaluation : after.evaluation - before.evaluation;
+    }
+
+    /**
+     * @return the evaluation in pawns from white's view, or #N for a mate in N moves
+     */
+    static String formatEval(Engine.BestMove bestMove) {
+        int movesToMate = Engine.BestMove.movesToMate(bestMove.evaluation, bestMove.moveSequence.size());
+        if (movesToMate != 0) {
+            return "#" + movesToMate;
+        }
+        return String.format(Locale.ROOT, "%.2f", bestMove.evaluation / 100.0);
+    }
+
+    /**
+     * Appends the movetext, broken into lines at spaces.
+     */
+    private static void wrap(CharSequence moveText, StringBuilder pgn) {
+        int lineStart = pgn.length();
+        int tokenStart = 0;
+        for (int i = 0; i <= moveText.length(); i++) {
+            if (i < moveText.length() && moveText.charAt(i) != ' ') continue;
+            if (i == tokenStart) {
+                tokenStart++;
+                continue;
+            }
+            if (pgn.length() > lineStart) {
+                if (pgn.length() - lineStart + 1 + i - tokenStart > LINE_WIDTH) {
+                    pgn.append('\n');
+                    lineStart = pgn.length();
+                } else {
+                    pgn.append(' ');
+                }
+            }
+            pgn.append(moveText, tokenStart, i);
+            tokenStart = i + 1;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package main.pgn;
+
+import main.chessboard.BoardEnv;
+import main.engine.Engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A game of a PGN file: its tags in file order, the SAN moves of the main line and the result.
+ * Comments, variations and NAGs of the file are dropped.
+ */
+public class PgnGame {
+
+    private final Map<String, String> tags;
+    private final List<String> moves;
+    private final String result;
+
+    public PgnGame(Map<String, String> tags, List<String> moves, String result) {
+        this.tags = Collections.unmodifiableMap(new LinkedHashMap<>(tags));
+        this.moves = Collections.unmodifiableList(new ArrayList<>(moves));
+        this.result = result;
+    }
+
+    /**
+     * @return the tags in the order of the file
+     */
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    /**
+     * @param name the tag name
+     * @return the value of the tag, or null
+     */
+    public String getTag(String name) {
+        return tags.get(name);
+    }
+
+    /**
+     * @return the moves of the main line in SAN, as written in the file
+     */
+    public List<String> getMoves() {
+        return moves;
+    }
+
+    /**
+     * @return the result, one of 1-0, 0-1, 1/2-1/2 and *
+     */
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * @return the starting position, from the FEN tag if there is one
+     */
+    public BoardEnv startingPosition() {
+        String fen = tags.get("FEN");
+        return new BoardEnv(fen != null ? fen : Engine.STARTING_FEN);
+    }
+}
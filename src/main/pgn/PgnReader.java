@@ -0,0 +1,235 @@
+package main.pgn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams the games of a PGN file, one game at a time when the iterator asks for it.
+ *
+ * <p>The file is read through a channel into a reused buffer and tokenised byte by byte, without regular
+ * expressions or line splitting: tag pairs, brace and rest-of-line comments, variations (skipped with their
+ * nesting), NAGs, move numbers, moves and game termination markers. A game ends with its termination
+ * marker, with the tags of the next game, or with the end of the file. The moves are kept in SAN and can be
+ * resolved with {@link SanResolver}.
+ */
+public class PgnReader implements Iterator<PgnGame>, Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int EOF = -1;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] bytes = buffer.array();
+    /** Bytes of the current token or tag value. */
+    private byte[] token = new byte[64];
+    /** A byte read ahead and given back, or {@link #EOF} if there is none. */
+    private int pushedBack = EOF;
+    private boolean lineStart = true;
+    private PgnGame next;
+
+    public PgnReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer.limit(0);
+    }
+
+    public static PgnReader open(Path file) throws IOException {
+        return new PgnReader(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = readGame();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public PgnGame next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        PgnGame game = next;
+        next = null;
+        return game;
+    }
+
+    private int read() throws IOException {
+        if (pushedBack != EOF) {
+            int c = pushedBack;
+            pushedBack = EOF;
+            return c;
+        }
+        if (!buffer.hasRemaining()) {
+            buffer.clear();
+            int n;
+            do {
+                n = channel.read(buffer);
+            } while (n == 0);
+            buffer.flip();
+            if (n < 0) return EOF;
+        }
+        int position = buffer.position();
+        buffer.position(position + 1);
+        int c = bytes[position] & 0xFF;
+        boolean atLineStart = lineStart;
+        lineStart = c == '\n';
+        // An escape line starting with % is ignored
+        if (c == '%' && atLineStart) {
+            skipLine();
+            return '\n';
+        }
+        return c;
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != '\n' && c != EOF);
+    }
+
+    private PgnGame readGame() throws IOException {
+        Map<String, String> tags = new LinkedHashMap<>();
+        List<String> moves = new ArrayList<>();
+        String result = null;
+        boolean moveText = false;
+        int variationDepth = 0;
+        int c;
+        while ((c = read()) != EOF) {
+            switch (c) {
+                case ' ', '\t', '\r', '\n', '.' -> {
+                }
+                case '[' -> {
+                    if (moveText) {
+                        pushedBack = c; // the tag belongs to the next game
+                        return new PgnGame(tags, moves, result != null ? result : tags.getOrDefault("Result", "*"));
+                    }
+                    readTag(tags);
+                }
+                case '{' -> {
+                    while ((c = read()) != '}' && c != EOF) {
+                    }
+                }
+                case ';' -> skipLine();
+                case '(' -> {
+                    variationDepth++;
+                    moveText = true;
+                }
+                case ')' -> variationDepth = Math.max(0, variationDepth - 1);
+                default -> {
+                    int length = readToken(c);
+                    moveText = true;
+                    if (variationDepth > 0 || c == '$') continue;
+                    if (isResult(length)) {
+                        result = new String(token, 0, length, StandardCharsets.US_ASCII);
+                        return new PgnGame(tags, moves, result);
+                    }
+                    String move = move(length);
+                    if (move != null) moves.add(move);
+                }
+            }
+        }
+        if (tags.isEmpty() && !moveText) {
+            return null;
+        }
+        return new PgnGame(tags, moves, result != null ? result : tags.getOrDefault("Result", "*"));
+    }
+
+    /**
+     * Reads a token up to the next delimiter, which is given back.
+     *
+     * @param c the first byte of the token
+     * @return the length of the token
+     */
+    private int readToken(int c) throws IOException {
+        int length = 0;
+        while (true) {
+            if (length == token.length) token = Arrays.copyOf(token, 2 * length);
+            token[length++] = (byte) c;
+            c = read();
+            switch (c) {
+                case EOF, ' ', '\t', '\r', '\n', '{', '}', '(', ')', '[', ';' -> {
+                    pushedBack = c;
+                    return length;
+                }
+                case '.' -> {
+                    // A move number ends with its dots, e.g. 12.e4 or 12...Nf6
+                    if (token[0] >= '0' && token[0] <= '9') return length;
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    private boolean isResult(int length) {
+        return length == 1 && token[0] == '*'
+                || length == 3 && token[1] == '-' && (token[0] == '1' && token[2] == '0' || token[0] == '0' && token[2] == '1')
+                || length == 7 && token[0] == '1' && token[1] == '/' && token[2] == '2';
+    }
+
+    /**
+     * @return the move of the token without annotation suffixes, or null for a move number
+     */
+    private String move(int length) {
+        while (length > 0 && (token[length - 1] == '!' || token[length - 1] == '?')) length--;
+        if (length == 0) return null;
+        if (token[0] >= '0' && token[0] <= '9') {
+            if (token[0] != '0' || length < 3 || token[1] != '-') return null; // move number
+            for (int i = 0; i < length; i++) {
+                if (token[i] == '0') token[i] = 'O'; // castling written with zeros
+            }
+        }
+        return new String(token, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Reads a tag pair after its opening bracket.
+     */
+    private void readTag(Map<String, String> tags) throws IOException {
+        int c = read();
+        while (c == ' ') c = read();
+        int length = 0;
+        while (c != ' ' && c != '"' && c != ']' && c != '\n' && c != EOF) {
+            if (length == token.length) token = Arrays.copyOf(token, 2 * length);
+            token[length++] = (byte) c;
+            c = read();
+        }
+        String name = new String(token, 0, length, StandardCharsets.US_ASCII);
+        while (c != '"' && c != ']' && c != '\n' && c != EOF) c = read();
+        length = 0;
+        if (c == '"') {
+            while ((c = read()) != '"' && c != '\n' && c != EOF) {
+                if (c == '\\') c = read();
+                if (length == token.length) token = Arrays.copyOf(token, 2 * length);
+                token[length++] = (byte) c;
+            }
+            while (c != ']' && c != '\n' && c != EOF) c = read();
+        }
+        if (!name.isEmpty()) {
+            tags.put(name, new String(token, 0, length, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
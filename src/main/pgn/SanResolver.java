@@ -0,0 +1,219 @@
+package main.pgn;
+
+import main.chessboard.BoardEnv;
+import main.chessboard.LegalMoveGenerator;
+import main.chessboard.MakeMoveResult;
+import main.chessboard.Move;
+import main.chessboard.MoveMaker;
+import main.engine.nnue.NnueAccumulator;
+
+/**
+ * Resolves moves in SAN without generating all legal moves.
+ *
+ * <p>The pieces that can reach the destination square are found by looking backwards from it: along the
+ * knight jumps, the king steps or the rays of the moving piece, or one or two squares behind a pawn. Every
+ * candidate is made on the board to drop those leaving the king in check, so only legal moves are resolved.
+ * Castling is taken from the legal moves of the king.
+ *
+ * <p>All of SAN is accepted: disambiguation by file, rank or both, promotions with or without {@code =},
+ * castling with {@code O} or {@code 0}, and check, checkmate and annotation suffixes.
+ */
+public class SanResolver {
+
+    private static final int[][] KNIGHT_JUMPS = {{-2, -1}, {-2, 1}, {2, -1}, {2, 1}, {-1, -2}, {1, -2}, {-1, 2}, {1, 2}};
+    private static final int[][] KING_STEPS = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+    private static final int[][] ROOK_RAYS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+    private static final int[][] BISHOP_RAYS = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+
+    /**
+     * Resolves a move. The move has its capture flag, promotion piece and disambiguation set, but no check
+     * flags, which would require making it.
+     *
+     * @param board the position
+     * @param san   the move in SAN
+     * @return the move, or null if the SAN is malformed or no piece can legally make the move
+     */
+    public static Move resolve(BoardEnv board, String san) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) end--;
+        if (end < 2) return null;
+        boolean white = board.whiteToMove;
+
+        char first = san.charAt(0);
+        if (first == 'O' || first == '0') {
+            return castle(board, white, end >= 5); // O-O-O
+        }
+
+        char promotion = '\0';
+        char last = Character.toUpperCase(san.charAt(end - 1));
+        if ("QRBN".indexOf(last) >= 0) {
+            promotion = white ? last : Character.toLowerCase(last);
+            end--;
+            if (san.charAt(end - 1) == '=') end--;
+        }
+        if (end < 2) return null;
+        int toCol = san.charAt(end - 2) - 'a';
+        int toRow = '8' - san.charAt(end - 1);
+        if (toCol < 0 || toCol > 7 || toRow < 0 || toRow > 7) return null;
+
+        int start = 0;
+        char type = 'P';
+        if ("KQRBN".indexOf(first) >= 0) {
+            type = first;
+            start = 1;
+        }
+        // Disambiguation and capture between the piece letter and the destination
+        int fromCol = -1, fromRow = -1;
+        for (int i = start; i < end - 2; i++) {
+            char c = san.charAt(i);
+            if (c == 'x' || c == ':') continue;
+            if (c >= 'a' && c <= 'h') fromCol = c - 'a';
+            else if (c >= '1' && c <= '8') fromRow = '8' - c;
+            else return null;
+        }
+
+        char target = board.pieceAt(toRow, toCol);
+        if (target != '\0' && Character.isUpperCase(target) == white) return null;
+        char piece = white ? type : Character.toLowerCase(type);
+        if (type == 'P') {
+            return pawnMove(board, piece, fromCol, toRow, toCol, promotion);
+        }
+
+        // Reverse lookup of the pieces of the type that reach the destination
+        int[] candidates = new int[10];
+        int count = switch (type) {
+            case 'N' -> jumps(board, piece, toRow, toCol, KNIGHT_JUMPS, candidates, 0);
+            case 'K' -> jumps(board, piece, toRow, toCol, KING_STEPS, candidates, 0);
+            case 'R' -> rays(board, piece, toRow, toCol, ROOK_RAYS, candidates, 0);
+            case 'B' -> rays(board, piece, toRow, toCol, BISHOP_RAYS, candidates, 0);
+            default -> rays(board, piece, toRow, toCol, BISHOP_RAYS, candidates,
+                    rays(board, piece, toRow, toCol, ROOK_RAYS, candidates, 0));
+        };
+        Move found = null;
+        int alternatives = 0;
+        for (int i = 0; i < count; i++) {
+            int row = candidates[i] >> 3, col = candidates[i] & 7;
+            Move move = new Move(piece, row, col, toRow, toCol, target != '\0');
+            if (!isLegal(board, move)) {
+                candidates[i] = -1;
+            } else if (found == null && (fromCol < 0 || fromCol == col) && (fromRow < 0 || fromRow == row)) {
+                found = move;
+            } else {
+                alternatives++;
+            }
+        }
+        if (found != null && alternatives > 0) disambiguate(found, candidates, count);
+        return found;
+    }
+
+    private static Move castle(BoardEnv board, boolean white, boolean queenSide) {
+        int row = white ? 7 : 0;
+        char king = white ? 'K' : 'k';
+        if (board.pieceAt(row, 4) != king) return null;
+        int toCol = queenSide ? 2 : 6;
+        // The generator checks the rights, the empty path and the squares the king passes
+        for (Move move : LegalMoveGenerator.generateLegalMoves(board, row, 4, true)) {
+            if (move.toCol == toCol) return new Move(king, row, 4, row, toCol, false);
+        }
+        return null;
+    }
+
+    private static Move pawnMove(BoardEnv board, char pawn, int fromCol, int toRow, int toCol, char promotion) {
+        boolean white = Character.isUpperCase(pawn);
+        int fromRow = white ? toRow + 1 : toRow - 1;
+        if (fromRow < 0 || fromRow > 7) return null;
+        Move move;
+        if (fromCol >= 0 && fromCol != toCol) {
+            // Capture, also en passant
+            if (Math.abs(fromCol - toCol) != 1 || board.pieceAt(fromRow, fromCol) != pawn) return null;
+            boolean enPassant = board.enPassantTarget != null
+                    && board.enPassantTarget[0] == toRow && board.enPassantTarget[1] == toCol;
+            if (board.pieceAt(toRow, toCol) == '\0' && !enPassant) return null;
+            move = new Move(pawn, fromRow, fromCol, toRow, toCol, true);
+        } else {
+            if (board.pieceAt(toRow, toCol) != '\0') return null;
+            if (board.pieceAt(fromRow, toCol) == '\0' && toRow == (white ? 4 : 3)) {
+                fromRow = white ? 6 : 1; // double step
+            }
+            if (board.pieceAt(fromRow, toCol) != pawn) return null;
+            move = new Move(pawn, fromRow, toCol, toRow, toCol, false);
+        }
+        if ((toRow == 0 || toRow == 7) != (promotion != '\0')) return null;
+        move.setPromotionPiece(promotion);
+        return isLegal(board, move) ? move : null;
+    }
+
+    /**
+     * Collects the squares of the piece one jump away from the destination.
+     *
+     * @return the number of candidates
+     */
+    private static int jumps(BoardEnv board, char piece, int toRow, int toCol, int[][] jumps, int[] candidates, int count) {
+        for (int[] jump : jumps) {
+            int row = toRow + jump[0], col = toCol + jump[1];
+            if (row >= 0 && row < 8 && col >= 0 && col < 8 && board.pieceAt(row, col) == piece) {
+                candidates[count++] = row * 8 + col;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Collects the squares of the piece that are the first piece on a ray from the destination.
+     *
+     * @return the number of candidates
+     */
+    private static int rays(BoardEnv board, char piece, int toRow, int toCol, int[][] rays, int[] candidates, int count) {
+        for (int[] ray : rays) {
+            int row = toRow + ray[0], col = toCol + ray[1];
+            while (row >= 0 && row < 8 && col >= 0 && col < 8) {
+                char occupant = board.pieceAt(row, col);
+                if (occupant != '\0') {
+                    if (occupant == piece) candidates[count++] = row * 8 + col;
+                    break;
+                }
+                row += ray[0];
+                col += ray[1];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return true if the move does not leave the own king in check
+     */
+    private static boolean isLegal(BoardEnv board, Move move) {
+        NnueAccumulator accumulator = board.accumulator;
+        board.accumulator = null;
+        MakeMoveResult result = MoveMaker.makeMove(board, move, true);
+        boolean legal = !LegalMoveGenerator.isKingInCheck(board, !board.whiteToMove);
+        MoveMaker.unmakeMove(board, move, result.undoInfo);
+        board.accumulator = accumulator;
+        return legal;
+    }
+
+    /**
+     * Sets the disambiguation of a move like {@link LegalMoveGenerator#resolveAmbiguousMoves}: the file if it
+     * is unique among the legal alternatives, else the rank if it is unique, else both.
+     *
+     * @param candidates the squares of the pieces reaching the destination, -1 for illegal moves
+     */
+    private static void disambiguate(Move move, int[] candidates, int count) {
+        boolean fileUnique = true, rankUnique = true;
+        for (int i = 0; i < count; i++) {
+            if (candidates[i] < 0) continue;
+            int row = candidates[i] >> 3, col = candidates[i] & 7;
+            if (row == move.fromRow && col == move.fromCol) continue;
+            if (col == move.fromCol) fileUnique = false;
+            if (row == move.fromRow) rankUnique = false;
+        }
+        if (fileUnique) {
+            move.disambiguationFile = (char) ('a' + move.fromCol);
+        } else if (rankUnique) {
+            move.disambiguationRank = (char) ('8' - move.fromRow);
+        } else {
+            move.disambiguationFile = (char) ('a' + move.fromCol);
+            move.disambiguationRank = (char) ('8' - move.fromRow);
+        }
+    }
+}
@@ -0,0 +1,530 @@
+package main.server;
+
+import main.DaemonThreadFactory;
+import main.chessboard.BoardEnv;
+import main.chessboard.Move;
+import main.engine.AnalysisCache;
+import main.engine.Engine;
+import main.engine.EngineOptions;
+import main.engine.SearchLimits;
+import main.engine.nnue.NnueNetwork;
+import main.engine.tablebase.Tablebase;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local server evaluating positions for other tools over TCP, so they need not embed the engine.
+ *
+ * <p>A client sends one request per line and may send further requests before the answers arrive:
+ * {@code [id=TAG] <FEN> [depth=N] [nodes=N] [movetime=ms]}. Every request is answered with one line of
+ * JSON, in the order the searches finish, e.g.
+ * {@code {"id":"a","bestmove":"Nf3","cp":23,"pv":["Nf3","Nc6"],"depth":4,"nodes":51234,"time":180,
+ * "nps":284633,"wait":3,"source":"search"}}. Scores are from white's view, {@code "mate"} replaces
+ * {@code "cp"} for a forced mate. {@code stats} answers with the request counts and the latency
+ * percentiles of the server, malformed requests with an {@code "error"}.
+ *
+ * <p>Requests are queued for a fixed pool of workers, each with its own engine. When the queue is longer
+ * than the pool, a worker takes a batch of requests at once, but never more than its share, so no request
+ * waits behind another worker's batch while a worker is idle. Identical positions with identical limits
+ * that are queued or searched at the same time are searched once and answered together. All engines write
+ * through to one {@link AnalysisCache}, which is persistent and lock-free. A depth-limited request whose
+ * position is in the cache at least as deep is answered from the cache without being queued.
+ *
+ * <p>Usage: {@code AnalysisServer [-port=N] [-threads=N] [-hash=MB] [-cache=file] [-cachesize=MB] [-nnue] [-tb]}
+ */
+public class AnalysisServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 7420;
+    /** The most requests a worker takes from the queue at once. */
+    static final int MAX_BATCH = 8;
+    /** Number of recent request latencies the percentiles are computed from. */
+    static final int LATENCY_WINDOW = 1 << 14;
+
+    private final int threads;
+    private final AnalysisCache cache;
+    private final BlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+    /** Requests that are queued or being searched, by position and limits. */
+    private final ConcurrentHashMap<String, Job> inFlight = new ConcurrentHashMap<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final ExecutorService connections;
+    private final ServerSocket serverSocket;
+    private volatile boolean closed;
+    /** Holds the workers before they take their share of the queue while not null, see {@link #pause()}. */
+    private volatile CountDownLatch paused;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong cacheAnswers = new AtomicLong();
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private long latencyCount;
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * Starts the workers and listens on the loopback interface.
+     *
+     * @param port      the port, or 0 for any free port
+     * @param threads   the number of workers
+     * @param hashSize  the evaluation cache of every worker in megabytes, or 0 for the default
+     * @param cache     the store shared by all workers, or null
+     * @param network   the network shared by all workers, or null
+     * @param tablebase the endgame tables shared by all workers, or null
+     * @throws IOException if the port cannot be bound
+     */
+    public AnalysisServer(int port, int threads, int hashSize, AnalysisCache cache, NnueNetwork network,
+                          Tablebase tablebase) throws IOException {
+        this.threads = threads;
+        this.cache = cache;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        ThreadFactory workerThreads = new DaemonThreadFactory("analysis-worker");
+        for (int i = 0; i < threads; i++) {
+            Engine engine = new Engine(true);
+            engine.setDebugOutput(false);
+            engine.setNetwork(network);
+            engine.setTablebase(tablebase);
+            engine.setAnalysisCache(cache);
+            if (hashSize > 0) engine.setHashSize(hashSize);
+            Thread worker = workerThreads.newThread(() -> work(engine));
+            worker.start();
+            workers.add(worker);
+        }
+        connections = Executors.newCachedThreadPool(new DaemonThreadFactory("analysis-connection"));
+        new DaemonThreadFactory("analysis-acceptor").newThread(this::accept).start();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        EngineOptions options = new EngineOptions();
+        String cacheFile = AnalysisCache.DEFAULT_PATH;
+        int cacheSize = AnalysisCache.DEFAULT_SIZE;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("-port=")) port = Integer.parseInt(value);
+            else if (arg.startsWith("-threads=")) threads = Integer.parseInt(value);
+            else if (arg.startsWith("-cache=")) cacheFile = value;
+            else if (arg.startsWith("-cachesize=")) cacheSize = Integer.parseInt(value);
+            // Search limits are given per request
+            else if (arg.startsWith("-hash=") || arg.equals("-nnue") || arg.equals("-tb")) options.parse(arg.substring(1));
+            else {
+                System.out.println("Usage: AnalysisServer [-port=N] [-threads=N] [-hash=MB] [-cache=file] [-cachesize=MB] [-nnue] [-tb]");
+                return;
+            }
+        }
+        AnalysisCache cache = cacheFile.isEmpty() ? null : AnalysisCache.open(Paths.get(cacheFile), cacheSize);
+        AnalysisServer server = new AnalysisServer(port, threads, options.hashSize, cache, options.loadNetwork(),
+                options.openTablebase());
+        System.out.printf("Analysis server listening on port %d with %d workers\n", server.getPort(), threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            try {
+                if (cache != null) cache.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }));
+        Thread.currentThread().join();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Reads the requests of a client. The answers are written by the threads completing them, and the
+     * connection is closed once all requests are answered.
+     */
+    private void serve(Socket socket) {
+        Set<CompletableFuture<Void>> pending = ConcurrentHashMap.newKeySet();
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty()) continue;
+                    if (line.equals("stats")) {
+                        send(out, stats());
+                    } else if (line.equals("quit")) {
+                        break;
+                    } else {
+                        CompletableFuture<Void> answered = submit(line).thenAccept(answer -> send(out, answer));
+                        pending.add(answered);
+                        answered.whenComplete((v, e) -> pending.remove(answered));
+                    }
+                }
+            } finally {
+                // A client that half-closes or quits still gets the answers of its earlier requests
+                CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).handle((v, e) -> null).join();
+            }
+        } catch (IOException e) {
+            // The client disconnected
+        }
+    }
+
+    private static void send(Writer out, String answer) {
+        synchronized (out) {
+            try {
+                out.write(answer);
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                // The client disconnected, its answers are dropped
+            }
+        }
+    }
+
+    /**
+     * Answers a request line.
+     *
+     * @param line the request
+     * @return the future of the answer in JSON, failed if the server is closed
+     */
+    public CompletableFuture<String> submit(String line) {
+        if (closed) return CompletableFuture.failedFuture(new IllegalStateException("server closed"));
+        long received = System.nanoTime();
+        requests.incrementAndGet();
+        Request request;
+        try {
+            request = Request.parse(line);
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture("{" + field("id", Request.id(line)) + ","
+                    + field("error", e.getMessage() != null ? e.getMessage() : e.toString()) + "}");
+        }
+
+        String cached = answerFromCache(request);
+        if (cached != null) {
+            cacheAnswers.incrementAndGet();
+            recordLatency(System.nanoTime() - received);
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        // Join an identical request in flight, else queue a new one
+        Job job = inFlight.computeIfAbsent(request.key(), key -> {
+            Job created = new Job(request, key);
+            queue.add(created);
+            return created;
+        });
+        // A job queued while the server closes is failed with the rest of the queue
+        if (closed) failQueued();
+        if (job.request != request) deduplicated.incrementAndGet();
+        return job.result.thenApply(result -> {
+            long latency = System.nanoTime() - received;
+            recordLatency(latency);
+            return result.toJson(request.id, latency / 1_000_000);
+        }).exceptionally(e -> "{" + field("id", request.id) + "," + field("error", String.valueOf(e.getCause())) + "}");
+    }
+
+    /**
+     * @return the answer if the cache holds an exact result at least as deep as a depth-limited request
+     */
+    private String answerFromCache(Request request) {
+        if (cache == null || request.limits.nodes != Long.MAX_VALUE || request.limits.timeLimit != Long.MAX_VALUE) {
+            return null;
+        }
+        long entry = cache.probe(request.board.zobristHash);
+        if (entry == 0 || AnalysisCache.depth(entry) < request.limits.depth || AnalysisCache.bound(entry) != AnalysisCache.EXACT) {
+            return null;
+        }
+        Move move = AnalysisCache.move(entry, Engine.generateAllLegalMoves(request.board));
+        if (move == null) return null;
+        Result result = new Result(move.toString(), AnalysisCache.score(entry), List.of(move.toString()),
+                AnalysisCache.depth(entry), 0, 0, 0, "cache");
+        return result.toJson(request.id, 0);
+    }
+
+    private void work(Engine engine) {
+        List<Job> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+                CountDownLatch latch = paused;
+                if (latch != null) latch.await();
+            } catch (InterruptedException e) {
+                batch.forEach(this::fail);
+                return;
+            }
+            // With a backlog, take a fair share of it at once
+            int share = Math.min(MAX_BATCH, queue.size() / threads);
+            if (share > 0 && queue.drainTo(batch, share) > 0) batches.incrementAndGet();
+            for (Job job : batch) {
+                if (closed) fail(job);
+                else search(engine, job);
+            }
+            batch.clear();
+        }
+    }
+
+    private void search(Engine engine, Job job) {
+        long started = System.nanoTime();
+        try {
+            int[] depth = {0};
+            Engine.BestMove bestMove = engine.calculateBestMove(job.request.board.deepCopy(), job.request.limits,
+                    (iteration, evaluation, nodes, millis, line) -> depth[0] = iteration);
+            long nodes = engine.getSearch()._debug_positionsAnalyzed;
+            long millis = (System.nanoTime() - started) / 1_000_000;
+            searches.incrementAndGet();
+            Result result = bestMove == null || bestMove.move == null
+                    ? new Result(null, 0, List.of(), 0, 0, millis, waitMillis(job, started), "none")
+                    : new Result(bestMove.move.toString(), bestMove.evaluation != null ? bestMove.evaluation : 0,
+                    bestMove.moveSequence, depth[0], nodes, millis, waitMillis(job, started),
+                    depth[0] == 0 ? "tablebase" : "search");
+            inFlight.remove(job.key, job);
+            job.result.complete(result);
+        } catch (Throwable e) {
+            // Also an Error, so the requests are answered and the worker goes on
+            inFlight.remove(job.key, job);
+            job.result.completeExceptionally(e);
+        }
+    }
+
+    private static long waitMillis(Job job, long started) {
+        return (started - job.queued) / 1_000_000;
+    }
+
+    private void recordLatency(long nanos) {
+        synchronized (latencies) {
+            latencies[(int) (latencyCount++ % LATENCY_WINDOW)] = nanos;
+        }
+    }
+
+    /**
+     * @return the request counts, the number of batches of more than one request and the latency
+     *         percentiles of the recent requests in JSON
+     */
+    public String stats() {
+        long[] window;
+        synchronized (latencies) {
+            window = Arrays.copyOf(latencies, (int) Math.min(latencyCount, LATENCY_WINDOW));
+        }
+        Arrays.sort(window);
+        long seconds = Math.max(1, (System.currentTimeMillis() - startTime) / 1000);
+        return String.format(Locale.ROOT, "{\"requests\":%d,\"searches\":%d,\"deduplicated\":%d,\"cached\":%d,"
+                        + "\"batches\":%d,\"queued\":%d,\"throughput\":%.1f,\"p50\":%.1f,\"p95\":%.1f,\"p99\":%.1f,\"max\":%.1f}",
+                requests.get(), searches.get(), deduplicated.get(), cacheAnswers.get(), batches.get(), queue.size(),
+                (double) requests.get() / seconds, percentile(window, 50), percentile(window, 95),
+                percentile(window, 99), percentile(window, 100));
+    }
+
+    /**
+     * @return the percentile of the sorted latencies in milliseconds
+     */
+    private static double percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) return 0;
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * percent / 100.0) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static String field(String name, String value) {
+        StringBuilder json = new StringBuilder("\"").append(name).append("\":\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') json.append('\\').append(c);
+            else if (c < ' ') json.append(String.format("\\u%04x", (int) c));
+            else json.append(c);
+        }
+        return json.append('"').toString();
+    }
+
+    /**
+     * Holds the workers after they have taken their next request, until {@link #resume()}. The requests
+     * submitted in the meantime are queued, so the workers then take them as a backlog.
+     */
+    public synchronized void pause() {
+        if (paused == null) paused = new CountDownLatch(1);
+    }
+
+    /**
+     * Lets the workers go on after {@link #pause()}.
+     */
+    public synchronized void resume() {
+        if (paused != null) {
+            paused.countDown();
+            paused = null;
+        }
+    }
+
+    private void fail(Job job) {
+        inFlight.remove(job.key, job);
+        job.result.completeExceptionally(new IllegalStateException("server closed"));
+    }
+
+    private void failQueued() {
+        List<Job> dropped = new ArrayList<>();
+        queue.drainTo(dropped);
+        dropped.forEach(this::fail);
+    }
+
+    /**
+     * Stops listening and stops the workers after their current search. The queued requests are answered
+     * with an error.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        failQueued();
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        connections.shutdownNow();
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * A parsed request line.
+     */
+    static class Request {
+        final String id;
+        final BoardEnv board;
+        final SearchLimits limits;
+
+        private Request(String id, BoardEnv board, SearchLimits limits) {
+            this.id = id;
+            this.board = board;
+            this.limits = limits;
+        }
+
+        static Request parse(String line) {
+            List<String> fen = new ArrayList<>();
+            EngineOptions options = new EngineOptions();
+            for (String token : line.split("\\s+")) {
+                if (token.startsWith("id=") || options.parseLimit(token)) continue;
+                if (token.contains("=")) throw new IllegalArgumentException("unknown option " + token);
+                fen.add(token);
+            }
+            if (fen.size() < 4) throw new IllegalArgumentException("missing FEN");
+            if (fen.size() == 4) {
+                fen.add("0");
+                fen.add("1");
+            }
+            return new Request(id(line), new BoardEnv(String.join(" ", fen)), options.limits());
+        }
+
+        /**
+         * @return the id of a request line, or an empty string
+         */
+        static String id(String line) {
+            for (String token : line.split("\\s+")) {
+                if (token.startsWith("id=")) return token.substring(3);
+            }
+            return "";
+        }
+
+        /**
+         * @return the position without the move counters, and the limits
+         */
+        String key() {
+            return board.zobristHash + "/" + limits.depth + "/" + limits.nodes + "/" + limits.timeLimit;
+        }
+    }
+
+    /**
+     * A search waiting for or running on a worker, with the requests it answers.
+     */
+    private static class Job {
+        final Request request;
+        final String key;
+        final long queued = System.nanoTime();
+        final CompletableFuture<Result> result = new CompletableFuture<>();
+
+        Job(Request request, String key) {
+            this.request = request;
+            this.key = key;
+        }
+    }
+
+    /**
+     * The outcome of a search, shared by all requests of the position.
+     */
+    static class Result {
+        final String bestMove;
+        final int evaluation;
+        final List<String> line;
+        final int depth;
+        final long nodes;
+        final long millis;
+        final long waitMillis;
+        final String source;
+
+        Result(String bestMove, int evaluation, List<String> line, int depth, long nodes, long millis,
+               long waitMillis, String source) {
+            this.bestMove = bestMove;
+            this.evaluation = evaluation;
+            this.line = line;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.millis = millis;
+            this.waitMillis = waitMillis;
+            this.source = source;
+        }
+
+        String toJson(String id, long latencyMillis) {
+            StringBuilder json = new StringBuilder("{").append(field("id", id));
+            if (bestMove == null) {
+                return json.append(",").append(field("error", "no legal move")).append("}").toString();
+            }
+            json.append(',').append(field("bestmove", bestMove));
+            int movesToMate = Engine.BestMove.movesToMate(evaluation, line.size());
+            if (movesToMate != 0) json.append(",\"mate\":").append(movesToMate);
+            else json.append(",\"cp\":").append(evaluation);
+            json.append(",\"pv\":[");
+            for (int i = 0; i < line.size(); i++) {
+                if (i > 0) json.append(',');
+                json.append('"').append(line.get(i)).append('"');
+            }
+            json.append("],\"depth\":").append(depth)
+                    .append(",\"nodes\":").append(nodes)
+                    .append(",\"time\":").append(millis)
+                    .append(",\"nps\":").append(nodes * 1000 / Math.max(1, millis))
+                    .append(",\"wait\":").append(waitMillis)
+                    .append(",\"latency\":").append(latencyMillis)
+                    .append(',').append(field("source", source));
+            return json.append('}').toString();
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package main.uci;
+
+import main.DaemonThreadFactory;
+import main.Startup;
+import main.chessboard.BoardEnv;
+import main.chessboard.Move;
+import main.chessboard.MoveMaker;
+import main.engine.AnalysisCache;
+import main.engine.Engine;
+import main.engine.OpeningBook;
+import main.engine.SearchLimits;
+import main.pgn.SanResolver;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A headless front end speaking the Universal Chess Interface on standard input and output, so the engine
+ * can play under match tools such as cutechess-cli. It uses no Processing or AWT classes.
+ *
+ * <p>Supported commands: {@code uci}, {@code isready}, {@code setoption} (Hash, Threads, OwnBook, AnalysisFile,
+ * AnalysisDepth),
+ * {@code ucinewgame}, {@code position [startpos | fen ...] [moves ...]},
+ * {@code go [wtime btime winc binc movestogo movetime depth nodes infinite]}, {@code stop} and {@code quit}.
+ * The search runs on its own thread, reporting every completed iteration with an {@code info} line.
+ *
+ * <p>Run with {@code java main.uci.UciEngine}.
+ */
+public class UciEngine {
+
+    public static final String NAME = "Chess2";
+    /** Time kept in reserve per move for communication with the match tool, in milliseconds. */
+    static final long MOVE_OVERHEAD = 30;
+    /** Number of moves the remaining time is divided into if the time control does not say. */
+    static final int DEFAULT_MOVES_TO_GO = 30;
+    static final int DEFAULT_HASH = 1;
+    static final int MAX_HASH = 1024;
+
+    private final PrintStream out;
+    private final Startup startup = Startup.begin();
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor(new DaemonThreadFactory("uci-search"));
+    private Engine engine;
+    private BoardEnv board = new BoardEnv(Engine.STARTING_FEN);
+    private int hashSize = DEFAULT_HASH;
+    private boolean ownBook = false;
+    /** The persistent store of search results, or null. */
+    private AnalysisCache analysisCache;
+    private Future<?> search;
+    /** Released by {@code stop}; an infinite search waits for it before sending its best move. */
+    private CountDownLatch stopped = new CountDownLatch(0);
+
+    UciEngine(PrintStream out) {
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException {
+        UciEngine uci = new UciEngine(System.out);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!uci.execute(line.trim())) break;
+        }
+        uci.stopSearch();
+        if (uci.analysisCache != null) uci.analysisCache.close();
+    }
+
+    private synchronized void send(String message) {
+        out.println(message);
+        out.flush();
+    }
+
+    /**
+     * Executes a command.
+     *
+     * @param command the command line
+     * @return false if the engine should quit
+     */
+    boolean execute(String command) {
+        String[] tokens = command.split("\\s+");
+        switch (tokens[0]) {
+            case "uci" -> {
+                send("id name " + NAME);
+                send("id author Simon von Roenn");
+                send("option name Hash type spin default " + DEFAULT_HASH + " min 1 max " + MAX_HASH);
+                send("option name Threads type spin default 1 min 1 max 1");
+                send("option name OwnBook type check default false");
+                send("option name AnalysisFile type string default <empty>");
+                send("option name AnalysisDepth type spin default " + AnalysisCache.DEFAULT_MIN_DEPTH + " min 1 max " + SearchLimits.INFINITE_DEPTH);
+                send("uciok");
+            }
+            case "isready" -> {
+                try {
+                    engine();
+                    send("readyok");
+                } catch (CompletionException e) {
+                    send("info string engine startup failed: " + e.getCause());
+                }
+            }
+            case "setoption" -> setOption(command);
+            case "ucinewgame" -> {
+                stopSearch();
+                engine = null; // fresh caches
+                board = new BoardEnv(Engine.STARTING_FEN);
+            }
+            case "position" -> {
+                stopSearch();
+                position(tokens);
+            }
+            case "go" -> {
+                stopSearch();
+                go(tokens);
+            }
+            case "stop" -> stopSearch();
+            case "quit" -> {
+                return false;
+            }
+            default -> {
+                if (!tokens[0].isEmpty()) send("info string unknown command " + tokens[0]);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the engine, created on first use after the assets are loaded and the JIT is warmed up
+     */
+    private Engine engine() {
+        if (engine == null) {
+            Engine created = new Engine(true);
+            created.setDebugOutput(false);
+            startup.configure(created);
+            if (!ownBook) created.setOpeningBook(OpeningBook.empty());
+            created.setHashSize(hashSize);
+            created.setAnalysisCache(analysisCache);
+            startup.awaitWarmUp();
+            engine = created;
+        }
+        return engine;
+    }
+
+    private void setOption(String command) {
+        int nameIndex = command.indexOf(" name ");
+        int valueIndex = command.indexOf(" value ");
+        if (nameIndex < 0) return;
+        String name = (valueIndex < 0 ? command.substring(nameIndex + 6) : command.substring(nameIndex + 6, valueIndex)).trim();
+        String value = valueIndex < 0 ? "" : command.substring(valueIndex + 7).trim();
+        stopSearch();
+        try {
+            switch (name.toLowerCase()) {
+                case "hash" -> {
+                    hashSize = Math.max(1, Math.min(MAX_HASH, Integer.parseInt(value)));
+                    if (engine != null) engine.setHashSize(hashSize);
+                }
+                case "threads" -> {
+                    if (Integer.parseInt(value) != 1) send("info string the search is single-threaded");
+                }
+                case "ownbook" -> {
+                    ownBook = Boolean.parseBoolean(value);
+                    engine = null; // reconfigured on next use
+                }
+                case "analysisfile" -> {
+                    int minDepth = analysisCache != null ? analysisCache.getMinDepth() : AnalysisCache.DEFAULT_MIN_DEPTH;
+                    if (analysisCache != null) analysisCache.close();
+                    analysisCache = null;
+                    if (!value.isEmpty() && !value.equals("<empty>")) {
+                        analysisCache = AnalysisCache.open(Paths.get(value), AnalysisCache.DEFAULT_SIZE);
+                        analysisCache.setMinDepth(minDepth);
+                    }
+                    if (engine != null) engine.setAnalysisCache(analysisCache);
+                }
+                case "analysisdepth" -> {
+                    if (analysisCache != null) analysisCache.setMinDepth(Math.max(1, Integer.parseInt(value)));
+                }
+                default -> send("info string unknown option " + name);
+            }
+        } catch (NumberFormatException e) {
+            send("info string invalid value " + value + " for option " + name);
+        } catch (IOException e) {
+            send("info string cannot open " + value + ": " + e.getMessage());
+        }
+    }
+
+    private void position(String[] tokens) {
+        int movesIndex = tokens.length;
+        for (int i = 1; i < tokens.length; i++) {
+            if (tokens[i].equals("moves")) {
+                movesIndex = i;
+                break;
+            }
+        }
+        BoardEnv position;
+        if (tokens.length > 1 && tokens[1].equals("fen")) {
+            position = new BoardEnv(String.join(" ", List.of(tokens).subList(2, movesIndex)));
+        } else {
+            position = new BoardEnv(Engine.STARTING_FEN);
+        }
+        for (int i = movesIndex + 1; i < tokens.length; i++) {
+            Move move = parseMove(position, tokens[i]);
+            if (move == null) {
+                send("info string illegal move " + tokens[i]);
+                break;
+            }
+            MoveMaker.makeMove(position, move, false);
+        }
+        board = position;
+    }
+
+    private void go(String[] tokens) {
+        long whiteTime = -1, blackTime = -1, whiteIncrement = 0, blackIncrement = 0, moveTime = -1;
+        long nodes = Long.MAX_VALUE;
+        int movesToGo = 0;
+        int depth = SearchLimits.INFINITE_DEPTH;
+        boolean infinite = false;
+        for (int i = 1; i < tokens.length; i++) {
+            String value = i + 1 < tokens.length ? tokens[i + 1] : "0";
+            switch (tokens[i]) {
+                case "wtime" -> whiteTime = Long.parseLong(value);
+                case "btime" -> blackTime = Long.parseLong(value);
+                case "winc" -> whiteIncrement = Long.parseLong(value);
+                case "binc" -> blackIncrement = Long.parseLong(value);
+                case "movestogo" -> movesToGo = Integer.parseInt(value);
+                case "movetime" -> moveTime = Long.parseLong(value);
+                case "depth" -> depth = Integer.parseInt(value);
+                case "nodes" -> nodes = Long.parseLong(value);
+                case "infinite" -> infinite = true;
+                default -> {
+                    continue;
+                }
+            }
+            if (!tokens[i].equals("infinite")) i++;
+        }
+        long remaining = board.whiteToMove ? whiteTime : blackTime;
+        long increment = board.whiteToMove ? whiteIncrement : blackIncrement;
+        long timeLimit = Long.MAX_VALUE;
+        if (infinite) {
+            timeLimit = Long.MAX_VALUE;
+        } else if (moveTime >= 0) {
+            timeLimit = Math.max(1, moveTime - MOVE_OVERHEAD);
+        } else if (remaining >= 0) {
+            timeLimit = remaining / (movesToGo > 0 ? movesToGo : DEFAULT_MOVES_TO_GO) + increment * 3 / 4;
+            timeLimit = Math.max(1, Math.min(timeLimit, remaining / 2 - MOVE_OVERHEAD));
+        }
+        SearchLimits limits = new SearchLimits(timeLimit, depth, nodes);
+
+        Engine engine;
+        try {
+            engine = engine();
+        } catch (CompletionException e) {
+            send("info string engine startup failed: " + e.getCause());
+            send("bestmove 0000");
+            return;
+        }
+        BoardEnv root = board.deepCopy();
+        boolean whiteToMove = root.whiteToMove;
+        CountDownLatch stop = new CountDownLatch(infinite ? 1 : 0);
+        stopped = stop;
+        search = searchThread.submit(() -> {
+            Engine.BestMove bestMove = engine.calculateBestMove(root.deepCopy(), limits,
+                    (d, evaluation, n, millis, line) -> send(String.format("info depth %d score %s nodes %d nps %d time %d pv %s",
+                            d, score(evaluation, whiteToMove, line.size()), n, millis > 0 ? n * 1000 / millis : n, millis,
+                            toUci(root, line))));
+            if (bestMove != null && bestMove.move != null && bestMove.evaluation == null) {
+                send("info string book move");
+            }
+            try {
+                stop.await(); // an infinite search must not end before stop
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            send("bestmove " + (bestMove == null || bestMove.move == null ? "0000" : toUci(bestMove.move)));
+        });
+    }
+
+    /**
+     * Stops the running search, if any, and waits for its best move.
+     */
+    private void stopSearch() {
+        stopped.countDown();
+        if (search == null) return;
+        while (!search.isDone()) {
+            // Repeated, since a stop before the search has started is ignored
+            engine.stop();
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        search = null;
+    }
+
+    /**
+     * @param evaluation  the white-positive evaluation
+     * @param whiteToMove the side to move at the root
+     * @param plies       the length of the principal variation
+     * @return the UCI score from the view of the side to move
+     */
+    static String score(int evaluation, boolean whiteToMove, int plies) {
+        int movesToMate = Engine.BestMove.movesToMate(evaluation, plies);
+        if (movesToMate != 0) {
+            return "mate " + (whiteToMove ? movesToMate : -movesToMate);
+        }
+        return "cp " + (whiteToMove ? evaluation : -evaluation);
+    }
+
+    /**
+     * @param move a move
+     * @return the move in UCI notation, e.g. e2e4 or e7e8q
+     */
+    static String toUci(Move move) {
+        String uci = "" + (char) ('a' + move.fromCol) + (8 - move.fromRow) + (char) ('a' + move.toCol) + (8 - move.toRow);
+        return move.promotionPiece != '\0' ? uci + Character.toLowerCase(move.promotionPiece) : uci;
+    }
+
+    /**
+     * Converts a line of moves in SAN to UCI notation by replaying it.
+     */
+    private static String toUci(BoardEnv root, List<String> line) {
+        BoardEnv board = root.deepCopy();
+        List<String> moves = new ArrayList<>();
+        for (String san : line) {
+            Move found = SanResolver.resolve(board, san);
+            if (found == null) break;
+            moves.add(toUci(found));
+            MoveMaker.makeMove(board, found, false);
+        }
+        return String.join(" ", moves);
+    }
+
+    /**
+     * @param board the position
+     * @param uci   a move in UCI notation
+     * @return the legal move, or null
+     */
+    static Move parseMove(BoardEnv board, String uci) {
+        for (Move move : Engine.generateAllLegalMoves(board)) {
+            if (toUci(move).equals(uci)) return move;
+        }
+        return null;
+    }
+}
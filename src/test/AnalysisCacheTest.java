@@ -0,0 +1,97 @@
+package test;
+
+import main.chessboard.BoardEnv;
+import main.chessboard.Move;
+import main.engine.AnalysisCache;
+import main.engine.Engine;
+import main.engine.SearchLimits;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Checks that the analysis cache survives a reopen, rejects torn entries and is reused by the search.
+ */
+public class AnalysisCacheTest {
+
+    private static final String FEN = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+    private static Path tempFile() throws IOException {
+        Path file = Files.createTempFile("analysis", ".bin");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testPersistence() throws IOException {
+        Path file = tempFile();
+        BoardEnv board = new BoardEnv(FEN);
+        List<Move> moves = Engine.generateAllLegalMoves(board);
+        Move move = moves.get(moves.size() - 1);
+        try (AnalysisCache cache = AnalysisCache.open(file, 1)) {
+            cache.store(board.zobristHash, 5, -42, AnalysisCache.LOWER, move);
+            cache.store(board.zobristHash, 4, 100, AnalysisCache.EXACT, moves.get(0)); // shallower, ignored
+        }
+        try (AnalysisCache cache = AnalysisCache.open(file, 1)) {
+            long entry = cache.probe(board.zobristHash);
+            Assertions.assertEquals(5, AnalysisCache.depth(entry));
+            Assertions.assertEquals(-42, AnalysisCache.score(entry));
+            Assertions.assertEquals(AnalysisCache.LOWER, AnalysisCache.bound(entry));
+            Assertions.assertEquals(move.toString(), AnalysisCache.move(entry, moves).toString());
+            Assertions.assertEquals(0, cache.probe(board.zobristHash + 1));
+        }
+        // Another size reinitialises the store
+        try (AnalysisCache cache = AnalysisCache.open(file, 2)) {
+            Assertions.assertEquals(0, cache.probe(board.zobristHash));
+        }
+    }
+
+    @Test
+    public void testTornEntryIsMiss() throws IOException {
+        Path file = tempFile();
+        long hash = new BoardEnv(FEN).zobristHash;
+        try (AnalysisCache cache = AnalysisCache.open(file, 1)) {
+            cache.store(hash, 3, 7, AnalysisCache.EXACT, null);
+        }
+        // Overwrite the data word of the entry as an interrupted write would
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            channel.read(buffer, 0);
+            for (int offset = 16; offset < buffer.capacity(); offset += 16) {
+                if (buffer.getLong(offset + 8) != 0) {
+                    channel.write(ByteBuffer.allocate(8).putLong(0, buffer.getLong(offset + 8) + 1), offset + 8);
+                }
+            }
+        }
+        try (AnalysisCache cache = AnalysisCache.open(file, 1)) {
+            Assertions.assertEquals(0, cache.probe(hash));
+        }
+    }
+
+    @Test
+    public void testSearchReusesResults() throws IOException {
+        SearchLimits limits = new SearchLimits(Long.MAX_VALUE, 3, Long.MAX_VALUE);
+        try (AnalysisCache cache = AnalysisCache.open(tempFile(), 1)) {
+            Engine first = new Engine(true);
+            first.setDebugOutput(false);
+            first.setAnalysisCache(cache);
+            Engine.BestMove expected = first.calculateBestMove(new BoardEnv(FEN), limits, null);
+            long searched = first.getSearch()._debug_positionsAnalyzed;
+
+            Engine second = new Engine(true);
+            second.setDebugOutput(false);
+            second.setAnalysisCache(cache);
+            Engine.BestMove reused = second.calculateBestMove(new BoardEnv(FEN), limits, null);
+            Assertions.assertEquals(expected.move.toString(), reused.move.toString());
+            Assertions.assertEquals(expected.evaluation, reused.evaluation);
+            Assertions.assertTrue(second.getSearch()._debug_positionsAnalyzed < searched / 10);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package test;
+
+import main.engine.AnalysisCache;
+import main.server.AnalysisServer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that the analysis server searches identical requests once, takes a backlog in batches, answers
+ * from its cache and answers every request when it or a client closes.
+ */
+public class AnalysisServerTest {
+
+    private static final String FEN = "r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 8";
+
+    private static String answer(CompletableFuture<String> future) throws Exception {
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return the value of a numeric field of a JSON object
+     */
+    private static long number(String json, String name) {
+        int start = json.indexOf("\"" + name + "\":") + name.length() + 3;
+        int end = start;
+        while (end < json.length() && Character.isDigit(json.charAt(end))) end++;
+        return Long.parseLong(json.substring(start, end));
+    }
+
+    @Test
+    public void testDeduplication() throws Exception {
+        try (AnalysisServer server = new AnalysisServer(0, 1, 0, null, null, null)) {
+            server.pause();
+            CompletableFuture<String> first = server.submit("id=a " + FEN + " depth=3");
+            CompletableFuture<String> second = server.submit("id=b " + FEN + " depth=3");
+            server.resume();
+            String a = answer(first), b = answer(second);
+            Assertions.assertTrue(a.startsWith("{\"id\":\"a\""), a);
+            Assertions.assertTrue(b.startsWith("{\"id\":\"b\""), b);
+            Assertions.assertEquals(a.substring(a.indexOf("\"bestmove\""), a.indexOf(",\"time\"")),
+                    b.substring(b.indexOf("\"bestmove\""), b.indexOf(",\"time\"")));
+            String stats = server.stats();
+            Assertions.assertEquals(2, number(stats, "requests"));
+            Assertions.assertEquals(1, number(stats, "searches"));
+            Assertions.assertEquals(1, number(stats, "deduplicated"));
+        }
+    }
+
+    @Test
+    public void testBacklogIsBatched() throws Exception {
+        try (AnalysisServer server = new AnalysisServer(0, 1, 0, null, null, null)) {
+            server.pause();
+            List<CompletableFuture<String>> answers = new ArrayList<>();
+            for (int i = 1; i <= 5; i++) {
+                // Distinct node limits, so the requests are not deduplicated
+                answers.add(server.submit("id=" + i + " " + FEN + " depth=2 nodes=" + (100000 + i)));
+            }
+            server.resume();
+            for (int i = 0; i < answers.size(); i++) {
+                Assertions.assertTrue(answer(answers.get(i)).startsWith("{\"id\":\"" + (i + 1) + "\""));
+            }
+            // The single worker takes the whole backlog behind its first request at once
+            String stats = server.stats();
+            Assertions.assertEquals(5, number(stats, "searches"));
+            Assertions.assertEquals(1, number(stats, "batches"));
+        }
+    }
+
+    @Test
+    public void testCloseAnswersQueuedRequests() throws Exception {
+        AnalysisServer server = new AnalysisServer(0, 1, 0, null, null, null);
+        server.pause();
+        CompletableFuture<String> taken = server.submit("id=a " + FEN + " depth=3");
+        CompletableFuture<String> queued = server.submit("id=b " + FEN + " depth=4");
+        server.close();
+        Assertions.assertTrue(answer(taken).contains("server closed"), taken.get());
+        Assertions.assertTrue(answer(queued).contains("server closed"), queued.get());
+        Assertions.assertThrows(ExecutionException.class, () -> answer(server.submit("id=c " + FEN)));
+    }
+
+    @Test
+    public void testAnswersAfterHalfClose() throws Exception {
+        try (AnalysisServer server = new AnalysisServer(0, 1, 0, null, null, null);
+             Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            socket.setSoTimeout(10000);
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            out.write("id=a " + FEN + " depth=4\n");
+            out.flush();
+            // The client sends no more requests, but still reads the answer
+            socket.shutdownOutput();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String answer = in.readLine();
+            Assertions.assertNotNull(answer);
+            Assertions.assertTrue(answer.startsWith("{\"id\":\"a\",\"bestmove\""), answer);
+            Assertions.assertNull(in.readLine());
+        }
+    }
+
+    @Test
+    public void testCacheAnswer() throws Exception {
+        Path file = Files.createTempFile("analysis", ".bin");
+        file.toFile().deleteOnExit();
+        try (AnalysisCache cache = AnalysisCache.open(file, 1);
+             AnalysisServer server = new AnalysisServer(0, 1, 0, cache, null, null)) {
+            String searched = answer(server.submit("id=a " + FEN + " depth=3"));
+            Assertions.assertTrue(searched.contains("\"source\":\"search\""), searched);
+            // As deep or shallower is answered from the cache, deeper is searched
+            String cached = answer(server.submit("id=b " + FEN + " depth=2"));
+            Assertions.assertTrue(cached.contains("\"source\":\"cache\""), cached);
+            Assertions.assertEquals(3, number(cached, "depth"));
+            Assertions.assertTrue(answer(server.submit("id=c " + FEN + " depth=4")).contains("\"source\":\"search\""));
+            Assertions.assertEquals(1, number(server.stats(), "cached"));
+        }
+    }
+
+    @Test
+    public void testMalformedRequest() throws Exception {
+        try (AnalysisServer server = new AnalysisServer(0, 1, 0, null, null, null)) {
+            Assertions.assertTrue(answer(server.submit("id=x depth=3")).contains("\"error\":\"missing FEN\""));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package test;
+
+import main.chessboard.BoardEnv;
+import main.chessboard.GameOutcome;
+import main.chessboard.MakeMoveResult;
+import main.chessboard.Move;
+import main.chessboard.MoveMaker;
+import main.chessboard.ZobristTable;
+import main.engine.Endgames;
+import main.engine.Engine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the incremental material key, the draws by insufficient material and the endgame evaluations
+ * selected by it.
+ */
+public class EndgameTest {
+
+    @Test
+    public void testIncrementalMaterialKey() {
+        // Castling, en passant, captures and promotions to every piece
+        checkMaterialKey(new BoardEnv("r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1"), 3);
+        checkMaterialKey(new BoardEnv("rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8"), 3);
+    }
+
+    private void checkMaterialKey(BoardEnv board, int depth) {
+        if (depth == 0) return;
+        long key = board.materialKey;
+        for (Move move : Engine.generateAllLegalMoves(board)) {
+            MakeMoveResult result = MoveMaker.makeMove(board, move, false);
+            Assertions.assertEquals(ZobristTable.computeMaterialKey(board), board.materialKey, move.toString());
+            checkMaterialKey(board, depth - 1);
+            MoveMaker.unmakeMove(board, move, result.undoInfo);
+            Assertions.assertEquals(key, board.materialKey);
+        }
+    }
+
+    @Test
+    public void testInsufficientMaterial() {
+        Assertions.assertEquals(GameOutcome.INSUFFICIENT_MATERIAL, outcomeOfCapture("8/8/3k4/8/8/3r4/4K3/8 w - - 0 1"));
+        Assertions.assertEquals(GameOutcome.INSUFFICIENT_MATERIAL, outcomeOfCapture("8/8/3k4/8/8/3r4/4K3/2B5 w - - 0 1"));
+        // Bishops on squares of the same color
+        Assertions.assertEquals(GameOutcome.INSUFFICIENT_MATERIAL, outcomeOfCapture("8/8/3k4/4b3/8/3r4/4K3/2B5 w - - 0 1"));
+        Assertions.assertEquals(GameOutcome.ONGOING, outcomeOfCapture("6b1/8/3k4/8/8/3r4/4K3/2B5 w - - 0 1"));
+        Assertions.assertEquals(GameOutcome.ONGOING, outcomeOfCapture("8/8/3k4/8/8/3r4/4K3/1NB5 w - - 0 1"));
+        Assertions.assertEquals(GameOutcome.ONGOING, outcomeOfCapture("8/8/3k4/8/8/3r4/4K2P/8 w - - 0 1"));
+    }
+
+    /**
+     * @return the outcome of the king capturing the rook on d3
+     */
+    private GameOutcome outcomeOfCapture(String fen) {
+        BoardEnv board = new BoardEnv(fen);
+        Move capture = Engine.generateAllLegalMoves(board).stream()
+                .filter(move -> move.toString().equals("Kxd3")).findFirst().orElseThrow();
+        return MoveMaker.makeMove(board, capture, false).outcome;
+    }
+
+    @Test
+    public void testKbnkDrivesKingToBishopCorner() {
+        // Light-squared bishop: a8 and h1 are the mating corners
+        int lightCorner = Engine.evaluate(new BoardEnv("k7/8/2K5/8/8/8/8/4NB2 w - - 0 1"), null);
+        int darkCorner = Engine.evaluate(new BoardEnv("7k/8/5K2/8/8/8/8/4NB2 w - - 0 1"), null);
+        Assertions.assertTrue(lightCorner > darkCorner);
+        // The same with colors swapped
+        Assertions.assertEquals(-lightCorner, Engine.evaluate(new BoardEnv("4nb2/8/8/8/8/2k5/8/K7 b - - 0 1"), null));
+    }
+
+    @Test
+    public void testKrkp() {
+        // The rook wins against a pawn without its king, but not against an advanced supported one
+        int won = Engine.evaluate(new BoardEnv("8/8/8/8/2k5/8/6p1/1K3R2 w - - 0 1"), null);
+        int drawish = Engine.evaluate(new BoardEnv("K7/8/8/8/8/8/5kp1/7R w - - 0 1"), null);
+        Assertions.assertTrue(won > 400);
+        Assertions.assertTrue(drawish < 150);
+    }
+
+    @Test
+    public void testOppositeBishopsScale() {
+        BoardEnv opposite = new BoardEnv("4k3/5b2/8/1p6/1P1P4/2P5/8/2B1K3 w - - 0 1");
+        BoardEnv same = new BoardEnv("4k3/4b3/8/1p6/1P1P4/2P5/8/2B1K3 w - - 0 1");
+        Assertions.assertTrue(Endgames.scaleFactor(opposite) < Endgames.NORMAL_SCALE);
+        Assertions.assertEquals(Endgames.NORMAL_SCALE, Endgames.scaleFactor(same));
+        Assertions.assertTrue(Engine.evaluate(opposite, null) < Engine.evaluate(same, null));
+    }
+}
@@ -0,0 +1,135 @@
+package test;
+
+import main.chessboard.BoardEnv;
+import main.engine.Engine;
+import main.engine.EngineService;
+import main.engine.OpeningBook;
+import main.engine.SearchLimits;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that searches of the engine service can be cancelled and limited by a timeout, both while queued
+ * and while running.
+ */
+public class EngineServiceTest {
+
+    private static final String FEN = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+    /** Time in seconds after which a search that should have stopped counts as still running. */
+    private static final long STOP_TIMEOUT = 10;
+
+    private static EngineService service() {
+        Engine engine = new Engine(true);
+        engine.setDebugOutput(false);
+        engine.setOpeningBook(OpeningBook.empty());
+        return new EngineService(engine);
+    }
+
+    private static SearchLimits unlimited() {
+        return SearchLimits.time(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        try (EngineService service = service()) {
+            Engine.BestMove bestMove = service.search(new BoardEnv(FEN), new SearchLimits(Long.MAX_VALUE, 2, Long.MAX_VALUE), null)
+                    .get(STOP_TIMEOUT, TimeUnit.SECONDS);
+            Assertions.assertNotNull(bestMove.move);
+        }
+    }
+
+    @Test
+    public void testCancelQueuedSearch() throws Exception {
+        try (EngineService service = service()) {
+            CountDownLatch release = new CountDownLatch(1);
+            service.submit(engine -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            });
+            AtomicInteger iterations = new AtomicInteger();
+            CompletableFuture<Engine.BestMove> search = service.search(new BoardEnv(FEN), unlimited(),
+                    (depth, evaluation, nodes, millis, line) -> iterations.incrementAndGet());
+            search.cancel(false);
+            release.countDown();
+            // The skipped search lets the next task run at once
+            service.submit(engine -> null).get(STOP_TIMEOUT, TimeUnit.SECONDS);
+            Assertions.assertTrue(search.isCancelled());
+            Assertions.assertEquals(0, iterations.get());
+        }
+    }
+
+    @Test
+    public void testCancelRunningSearch() throws Exception {
+        try (EngineService service = service()) {
+            CountDownLatch started = new CountDownLatch(1);
+            CompletableFuture<Engine.BestMove> search = service.search(new BoardEnv(FEN), unlimited(),
+                    (depth, evaluation, nodes, millis, line) -> started.countDown());
+            Assertions.assertTrue(started.await(STOP_TIMEOUT, TimeUnit.SECONDS));
+            search.cancel(false);
+            service.submit(engine -> null).get(STOP_TIMEOUT, TimeUnit.SECONDS);
+            Assertions.assertTrue(search.isCancelled());
+        }
+    }
+
+    @Test
+    public void testTimeoutStopsRunningSearch() throws Exception {
+        try (EngineService service = service()) {
+            CompletableFuture<Engine.BestMove> search = service.search(new BoardEnv(FEN), unlimited(), null)
+                    .orTimeout(200, TimeUnit.MILLISECONDS);
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                    () -> search.get(STOP_TIMEOUT, TimeUnit.SECONDS));
+            Assertions.assertTrue(e.getCause() instanceof TimeoutException);
+            service.submit(engine -> null).get(STOP_TIMEOUT, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testCompleteOnTimeout() throws Exception {
+        try (EngineService service = service()) {
+            CompletableFuture<Engine.BestMove> search = service.search(new BoardEnv(FEN), unlimited(), null)
+                    .completeOnTimeout(null, 200, TimeUnit.MILLISECONDS);
+            Assertions.assertNull(search.get(STOP_TIMEOUT, TimeUnit.SECONDS));
+            service.submit(engine -> null).get(STOP_TIMEOUT, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testStopRunningSearch() throws Exception {
+        try (EngineService service = service()) {
+            CountDownLatch started = new CountDownLatch(1);
+            CompletableFuture<Engine.BestMove> search = service.search(new BoardEnv(FEN), unlimited(),
+                    (depth, evaluation, nodes, millis, line) -> started.countDown());
+            Assertions.assertTrue(started.await(STOP_TIMEOUT, TimeUnit.SECONDS));
+            service.stop();
+            // Stopped, not cancelled: the result of the last completed iteration
+            Assertions.assertNotNull(search.get(STOP_TIMEOUT, TimeUnit.SECONDS).move);
+        }
+    }
+
+    @Test
+    public void testCloseCancelsQueuedTasks() throws Exception {
+        EngineService service = service();
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Engine.BestMove> running = service.search(new BoardEnv(FEN), unlimited(),
+                (depth, evaluation, nodes, millis, line) -> started.countDown());
+        CompletableFuture<Engine.BestMove> queuedSearch = service.search(new BoardEnv(FEN), unlimited(), null);
+        CompletableFuture<Object> queuedTask = service.submit(engine -> null);
+        Assertions.assertTrue(started.await(STOP_TIMEOUT, TimeUnit.SECONDS));
+        service.close();
+        Assertions.assertTrue(running.isCancelled());
+        Assertions.assertTrue(queuedSearch.isCancelled());
+        Assertions.assertTrue(queuedTask.isCancelled());
+        Assertions.assertTrue(service.submit(engine -> null).isCancelled());
+    }
+}
@@ -0,0 +1,83 @@
+package test;
+
+import main.chessboard.GameOutcome;
+import main.chessboard.Move;
+import main.engine.OpeningBook;
+import main.host.GameHost;
+import main.host.GameSession;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the games of the game host, the fair scheduling of their engine moves and the shutdown.
+ */
+public class GameHostTest {
+
+    /** A middlegame position with white to move, out of any opening book. */
+    private static final String FEN = "r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 8";
+
+    @Test
+    public void testPlayMoves() throws Exception {
+        try (GameHost host = new GameHost(1, 100, OpeningBook.empty())) {
+            GameSession game = host.newGame(FEN, false);
+            Assertions.assertFalse(game.isEngineToMove());
+            Assertions.assertThrows(IllegalStateException.class, game::requestEngineMove);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> game.playMove("Ke3"));
+            Assertions.assertEquals(GameOutcome.ONGOING, game.playMove("a3"));
+            Assertions.assertTrue(game.isEngineToMove());
+            Assertions.assertThrows(IllegalStateException.class, () -> game.playMove("h3"));
+            Move move = game.requestEngineMove().get(10, TimeUnit.SECONDS);
+            Assertions.assertNotNull(move);
+            Assertions.assertFalse(game.isEngineToMove());
+            Assertions.assertEquals(0, host.getPendingSearches());
+            Assertions.assertSame(game, host.getGame(game.getId()));
+            host.endGame(game.getId());
+            Assertions.assertNull(host.getGame(game.getId()));
+        }
+    }
+
+    @Test
+    public void testFairScheduling() throws Exception {
+        long moveTime = 1000;
+        int games = 3;
+        try (GameHost host = new GameHost(1, moveTime, OpeningBook.empty())) {
+            List<Integer> finished = Collections.synchronizedList(new ArrayList<>());
+            List<CompletableFuture<Move>> moves = new ArrayList<>();
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < games; i++) {
+                GameSession game = host.newGame(FEN, true);
+                moves.add(game.requestEngineMove().whenComplete((move, e) -> finished.add(game.getId())));
+            }
+            Assertions.assertEquals(games, host.getPendingSearches());
+            for (CompletableFuture<Move> move : moves) {
+                Assertions.assertNotNull(move.get(10, TimeUnit.SECONDS));
+            }
+            long elapsed = System.currentTimeMillis() - start;
+            // Served in FIFO order, with the move time shared between the waiting searches
+            Assertions.assertEquals(List.of(1, 2, 3), finished);
+            Assertions.assertTrue(elapsed < games * moveTime * 9 / 10, "took " + elapsed + " ms");
+            Assertions.assertEquals(0, host.getPendingSearches());
+        }
+    }
+
+    @Test
+    public void testCloseCancelsQueuedSearches() throws Exception {
+        GameHost host = new GameHost(1, 500, OpeningBook.empty());
+        CompletableFuture<Move> running = host.newGame(FEN, true).requestEngineMove();
+        Thread.sleep(100); // the worker takes the first search
+        CompletableFuture<Move> queued = host.newGame(FEN, true).requestEngineMove();
+        host.close();
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> queued.get(1, TimeUnit.SECONDS));
+        Assertions.assertTrue(e.getCause().getCause() instanceof CancellationException);
+        Assertions.assertNotNull(running.get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, host.getPendingSearches());
+    }
+}
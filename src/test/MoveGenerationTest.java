@@ -1,9 +1,9 @@
 package test;
 
 import main.chessboard.BoardEnv;
-import main.chessboard.Chessboard;
 import main.chessboard.MakeMoveResult;
 import main.chessboard.Move;
+import main.chessboard.MoveMaker;
 import main.engine.Engine;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -73,9 +73,9 @@ public class MoveGenerationTest {
         int numPositions = 0;
 
         for (Move move : moves) {
-            MakeMoveResult result = Chessboard.makeMove(board, move, false);
+            MakeMoveResult result = MoveMaker.makeMove(board, move, false);
             numPositions += testMoveGenerationForDepth(board, depth - 1);
-            Chessboard.unmakeMove(board, move, result.undoInfo);
+            MoveMaker.unmakeMove(board, move, result.undoInfo);
         }
 
         return numPositions;
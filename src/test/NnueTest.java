@@ -0,0 +1,100 @@
+package test;
+
+import main.chessboard.BoardEnv;
+import main.chessboard.MakeMoveResult;
+import main.chessboard.Move;
+import main.chessboard.MoveMaker;
+import main.engine.Engine;
+import main.engine.nnue.NnueAccumulator;
+import main.engine.nnue.NnueNetwork;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the incremental accumulator updates and the Vector API inference against a random network.
+ */
+public class NnueTest {
+
+    private static final int HIDDEN_SIZE = 72; // not a multiple of every vector length, so the tail loops run
+    private static final String[] FENS = {
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1"
+    };
+
+    private static Path network;
+
+    private static synchronized Path network() throws IOException {
+        if (network == null) {
+            Random random = new Random(42);
+            int size = 12 + 2 * (NnueNetwork.FEATURES * HIDDEN_SIZE + 3 * HIDDEN_SIZE) + 4;
+            ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(NnueNetwork.MAGIC).putInt(NnueNetwork.VERSION).putInt(HIDDEN_SIZE);
+            for (int i = 0; i < NnueNetwork.FEATURES * HIDDEN_SIZE + 3 * HIDDEN_SIZE; i++) {
+                buffer.putShort((short) (random.nextInt(129) - 64));
+            }
+            buffer.putInt(random.nextInt(2001) - 1000);
+            network = Files.createTempFile("network", ".nnue");
+            network.toFile().deleteOnExit();
+            Files.write(network, buffer.array());
+        }
+        return network;
+    }
+
+    @Test
+    public void testIncrementalUpdateMatchesRefresh() throws IOException {
+        NnueNetwork net = NnueNetwork.load(network());
+        Random random = new Random(1);
+        for (String fen : FENS) {
+            BoardEnv board = new BoardEnv(fen);
+            board.accumulator = net.newAccumulator(board);
+            NnueAccumulator initial = board.accumulator.copy();
+            Deque<Move> moves = new ArrayDeque<>();
+            Deque<MakeMoveResult> results = new ArrayDeque<>();
+            for (int ply = 0; ply < 60; ply++) {
+                List<Move> legalMoves = Engine.generateAllLegalMoves(board);
+                if (legalMoves.isEmpty()) break;
+                Move move = legalMoves.get(random.nextInt(legalMoves.size()));
+                moves.push(move);
+                results.push(MoveMaker.makeMove(board, move, false));
+                Assertions.assertTrue(board.accumulator.matches(net.newAccumulator(board)), "after " + move);
+            }
+            while (!moves.isEmpty()) {
+                MoveMaker.unmakeMove(board, moves.pop(), results.pop().undoInfo);
+            }
+            Assertions.assertTrue(board.accumulator.matches(initial));
+        }
+    }
+
+    @Test
+    public void testVectorMatchesScalar() throws IOException {
+        NnueNetwork vector = NnueNetwork.load(network(), true);
+        NnueNetwork scalar = NnueNetwork.load(network(), false);
+        Assertions.assertFalse(scalar.isVectorized());
+        for (String fen : FENS) {
+            BoardEnv board = new BoardEnv(fen);
+            Assertions.assertEquals(scalar.evaluate(scalar.newAccumulator(board), true),
+                    vector.evaluate(vector.newAccumulator(board), true));
+            Assertions.assertTrue(vector.newAccumulator(board).matches(scalar.newAccumulator(board)));
+        }
+    }
+
+    @Test
+    public void testColorSymmetry() throws IOException {
+        NnueNetwork net = NnueNetwork.load(network());
+        BoardEnv board = new BoardEnv("r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1");
+        BoardEnv mirrored = new BoardEnv("r2q1rk1/pP1p2pp/Q4n2/bbp1p3/Np6/1B3NBn/pPPP1PPP/R3K2R b KQ - 0 1");
+        Assertions.assertEquals(net.evaluate(net.newAccumulator(board), true),
+                -net.evaluate(net.newAccumulator(mirrored), false));
+    }
+}
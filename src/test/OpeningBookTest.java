@@ -0,0 +1,124 @@
+package test;
+
+import main.chessboard.BoardEnv;
+import main.chessboard.Move;
+import main.chessboard.MoveMaker;
+import main.engine.Engine;
+import main.engine.OpeningBook;
+import main.engine.OpeningBookBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that book positions are found by hash, also after transpositions and from a FEN.
+ */
+public class OpeningBookTest {
+
+    private static final OpeningBook BOOK = OpeningBook.build(List.of(
+            List.of("Nf3", "Nf6", "c4", "e6"),
+            List.of("Nf3", "Nf6", "c4", "g6"),
+            List.of("e4", "e5", "Nf3", "Nc6"),
+            List.of("e4", "e5", "Nf3", "Nf6"),
+            List.of("e4", "e5", "Bc4")), Engine.STARTING_FEN);
+
+    private static void play(BoardEnv board, String... moves) {
+        for (String san : moves) {
+            Move found = null;
+            for (Move move : Engine.generateAllLegalMoves(board)) {
+                if (move.toString().equals(san)) found = move;
+            }
+            Assertions.assertNotNull(found, san);
+            MoveMaker.makeMove(board, found, false);
+        }
+    }
+
+    @Test
+    public void testWeights() {
+        BoardEnv board = new BoardEnv(Engine.STARTING_FEN);
+        Assertions.assertEquals(5, BOOK.totalWeight(board));
+        Assertions.assertEquals(3, BOOK.probe(board).get(0).weight); // e4 is played by three lines
+        play(board, "e4", "e5");
+        Assertions.assertEquals(3, BOOK.totalWeight(board));
+    }
+
+    @Test
+    public void testTransposition() {
+        BoardEnv board = new BoardEnv(Engine.STARTING_FEN);
+        play(board, "c4", "Nf6", "Nf3");
+        Assertions.assertEquals(2, BOOK.totalWeight(board));
+        Move move = BOOK.chooseMove(board, new Random(1));
+        Assertions.assertNotNull(move);
+        Assertions.assertTrue(List.of("e6", "g6").contains(move.toString()));
+    }
+
+    @Test
+    public void testStartFromFEN() {
+        // The en passant square of the FEN cannot be used, so the position equals the one after 1. e4 e5
+        BoardEnv board = new BoardEnv("rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq e6 0 2");
+        Assertions.assertEquals(3, BOOK.totalWeight(board));
+        Assertions.assertEquals(2, board.totalHalfMoveCount);
+        Assertions.assertNull(BOOK.chooseMove(new BoardEnv("8/8/8/8/8/8/8/K6k w - - 0 1"), new Random()));
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws IOException {
+        Path file = Files.createTempFile("book", ".bin");
+        file.toFile().deleteOnExit();
+        BOOK.save(file);
+        Assertions.assertEquals(BOOK.size() * OpeningBook.ENTRY_SIZE, Files.size(file));
+        OpeningBook mapped = OpeningBook.open(file);
+        BoardEnv board = new BoardEnv(Engine.STARTING_FEN);
+        play(board, "e4", "e5");
+        Assertions.assertEquals(3, mapped.totalWeight(board));
+        play(board, "Nf3");
+        Assertions.assertEquals(2, mapped.probe(board).size());
+        // Castling is stored as the king capturing its rook
+        BoardEnv castling = new BoardEnv("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+        OpeningBook castlingBook = OpeningBook.build(List.of(List.of("O-O", "O-O-O")), "r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+        Assertions.assertEquals(7 | 4 << 6, castlingBook.probe(castling).get(0).move);
+        Assertions.assertEquals("O-O", castlingBook.chooseMove(castling, new Random()).toString());
+    }
+
+    @Test
+    public void testBuilderPrunesRareMoves() throws IOException, InterruptedException {
+        Path file = Files.createTempFile("openings", ".txt");
+        file.toFile().deleteOnExit();
+        Files.write(file, List.of("e4 e5 Nf3", "e4 e5 Nf3", "e4 c5", "d4 d5"));
+        OpeningBookBuilder builder = new OpeningBookBuilder(2, 30);
+        builder.add(file);
+        OpeningBook book = builder.build(2);
+        BoardEnv board = new BoardEnv(Engine.STARTING_FEN);
+        Assertions.assertEquals(1, book.probe(board).size()); // d4 is played once
+        Assertions.assertEquals(3, book.totalWeight(board));
+        play(board, "e4");
+        Assertions.assertEquals(2, book.totalWeight(board)); // c5 is pruned
+        play(board, "e5");
+        Assertions.assertEquals(2, book.totalWeight(board));
+    }
+
+    @Test
+    public void testFromEntriesScalesWeights() throws IOException {
+        long key = new BoardEnv(Engine.STARTING_FEN).zobristHash;
+        long other = key + 1;
+        // The weights of the first position exceed 16 bits, the smallest one scales to 0
+        OpeningBook book = OpeningBook.fromEntries(new long[]{other, key, key, key}, new int[]{4, 1, 2, 3},
+                new int[]{7, 100000, 1, 200000}, 4);
+        Assertions.assertEquals(3, book.size());
+        List<OpeningBook.BookMove> moves = book.probe(new BoardEnv(Engine.STARTING_FEN));
+        Assertions.assertEquals(2, moves.size());
+        Assertions.assertEquals(3, moves.get(0).move);
+        Assertions.assertEquals(OpeningBook.MAX_WEIGHT, moves.get(0).weight);
+        Assertions.assertEquals(OpeningBook.MAX_WEIGHT / 2, moves.get(1).weight);
+
+        Path file = Files.createTempFile("book", ".bin");
+        file.toFile().deleteOnExit();
+        book.save(file);
+        Assertions.assertEquals(3 * OpeningBook.ENTRY_SIZE, Files.size(file));
+    }
+}
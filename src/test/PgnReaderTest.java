@@ -0,0 +1,125 @@
+package test;
+
+import main.chessboard.BoardEnv;
+import main.chessboard.GameOutcome;
+import main.chessboard.Move;
+import main.chessboard.MoveMaker;
+import main.engine.Engine;
+import main.pgn.PgnGame;
+import main.pgn.PgnReader;
+import main.pgn.SanResolver;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the PGN tokeniser and that SAN is resolved to the same moves as the move generator creates.
+ */
+public class PgnReaderTest {
+
+    private static final String PGN = """
+            [Event "Test \\"quoted\\""]
+            [Result "1-0"]
+            % an escaped line
+            1. e4 e5 {a comment (with parentheses)} 2. Nf3!? (2. f4 exf4 (2... d5) 3. Nf3) 2... Nc6 $1
+            3.Bb5 a6 ; rest of line
+            4. 0-0 1-0
+            [Event "No result"]
+
+            1. d4 d5
+            [Event "Last"]
+            1. c4 *
+            """;
+
+    private static List<PgnGame> read(String pgn) throws IOException {
+        try (PgnReader reader = new PgnReader(Channels.newChannel(
+                new ByteArrayInputStream(pgn.getBytes(StandardCharsets.UTF_8))))) {
+            List<PgnGame> games = new ArrayList<>();
+            reader.forEachRemaining(games::add);
+            return games;
+        }
+    }
+
+    @Test
+    public void testTokenizer() throws IOException {
+        List<PgnGame> games = read(PGN);
+        Assertions.assertEquals(3, games.size());
+        Assertions.assertEquals("Test \"quoted\"", games.get(0).getTag("Event"));
+        Assertions.assertEquals(List.of("e4", "e5", "Nf3", "Nc6", "Bb5", "a6", "O-O"), games.get(0).getMoves());
+        Assertions.assertEquals("1-0", games.get(0).getResult());
+        Assertions.assertEquals(List.of("d4", "d5"), games.get(1).getMoves());
+        Assertions.assertEquals("*", games.get(1).getResult());
+        Assertions.assertEquals(List.of("c4"), games.get(2).getMoves());
+    }
+
+    @Test
+    public void testSanMatchesMoveGenerator() {
+        String[] fens = {
+                Engine.STARTING_FEN,
+                "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+                "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+                "4k3/8/8/8/1Q3Q2/8/1Q6/4K3 w - - 0 1" // three queens reaching the same squares
+        };
+        Random random = new Random(7);
+        for (String fen : fens) {
+            for (int game = 0; game < 5; game++) {
+                BoardEnv board = new BoardEnv(fen);
+                for (int ply = 0; ply < 40; ply++) {
+                    List<Move> moves = Engine.generateAllLegalMoves(board);
+                    if (moves.isEmpty()) break;
+                    for (Move move : moves) {
+                        String san = move.toString();
+                        Move resolved = SanResolver.resolve(board, san);
+                        Assertions.assertNotNull(resolved, san + " in " + fen);
+                        Assertions.assertEquals(move.fromRow * 8 + move.fromCol, resolved.fromRow * 8 + resolved.fromCol, san);
+                        Assertions.assertEquals(move.toRow * 8 + move.toCol, resolved.toRow * 8 + resolved.toCol, san);
+                        Assertions.assertEquals(move.promotionPiece, resolved.promotionPiece, san);
+                        Assertions.assertEquals(move.isCapture, resolved.isCapture, san);
+                    }
+                    Move move = moves.get(random.nextInt(moves.size()));
+                    if (MoveMaker.makeMove(board, move, false).outcome != GameOutcome.ONGOING) break;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLenientSan() {
+        BoardEnv board = new BoardEnv("r3k2r/1P6/8/3pP3/8/8/8/R3K1NR w KQkq d6 0 1");
+        Assertions.assertEquals("exd6", SanResolver.resolve(board, "exd6").toString()); // en passant
+        Assertions.assertEquals("bxa8=N", SanResolver.resolve(board, "bxa8N").toString());
+        Assertions.assertEquals("b8=Q", SanResolver.resolve(board, "b8=Q+").toString());
+        Assertions.assertEquals("O-O-O", SanResolver.resolve(board, "0-0-0").toString());
+        Assertions.assertEquals("Ne2", SanResolver.resolve(board, "Nge2!").toString()); // superfluous file
+        Assertions.assertNull(SanResolver.resolve(board, "Nf4"));
+        board = new BoardEnv("4k3/8/8/8/1Q3Q2/8/1Q6/4K3 w - - 0 1");
+        Assertions.assertEquals("Qfd4", SanResolver.resolve(board, "Qf4d4").toString()); // minimal disambiguation
+        Assertions.assertEquals("Qb4d4", SanResolver.resolve(board, "Qb4d4").toString());
+    }
+
+    @Test
+    public void testIllegalSan() {
+        Assertions.assertNull(SanResolver.resolve(new BoardEnv(Engine.STARTING_FEN), "O-O")); // path not empty
+        // The knight c3 covers d1, the only knight and the pawn are pinned
+        BoardEnv board = new BoardEnv("4r2k/8/8/8/7b/2n5/4NP2/4K3 w - - 0 1");
+        Assertions.assertNull(SanResolver.resolve(board, "Kd1"));
+        Assertions.assertNull(SanResolver.resolve(board, "Nxc3"));
+        Assertions.assertNull(SanResolver.resolve(board, "Ng3"));
+        Assertions.assertNull(SanResolver.resolve(board, "f3"));
+        Assertions.assertEquals("Kf1", SanResolver.resolve(board, "Kf1").toString());
+        // Castling out of, through and into check, and with only the rook passing an attacked square
+        Assertions.assertNull(SanResolver.resolve(new BoardEnv("4k3/8/8/8/8/8/8/R3K1r1 w Q - 0 1"), "O-O-O"));
+        Assertions.assertNull(SanResolver.resolve(new BoardEnv("3rk3/8/8/8/8/8/8/R3K3 w Q - 0 1"), "O-O-O"));
+        Assertions.assertNull(SanResolver.resolve(new BoardEnv("2r1k3/8/8/8/8/8/8/R3K3 w Q - 0 1"), "O-O-O"));
+        Assertions.assertEquals("O-O-O", SanResolver.resolve(new BoardEnv("1r2k3/8/8/8/8/8/8/R3K3 w Q - 0 1"), "O-O-O").toString());
+    }
+}
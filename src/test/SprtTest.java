@@ -0,0 +1,49 @@
+package test;
+
+import main.host.Sprt;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the Elo estimate and the SPRT of a match result against values computed by hand.
+ */
+public class SprtTest {
+
+    private static final double DELTA = 1e-6;
+
+    @Test
+    public void testElo() {
+        Assertions.assertEquals(0, Sprt.elo(0.5), DELTA);
+        // 400 * log10(3)
+        Assertions.assertEquals(190.848501, Sprt.elo(0.75), DELTA);
+        Assertions.assertEquals(-190.848501, Sprt.elo(0.25), DELTA);
+        Assertions.assertEquals(0.75, Sprt.expectedScore(Sprt.elo(0.75)), DELTA);
+        Assertions.assertEquals(0.514387, Sprt.expectedScore(10), DELTA);
+    }
+
+    @Test
+    public void testEloError() {
+        // Score 0.5 with variance 0.125: half the interval is elo(0.5 + 1.96 * sqrt(0.125 / 2000))
+        Assertions.assertEquals(10.770589, Sprt.eloError(500, 1000, 500), DELTA);
+        Assertions.assertEquals(16.693216, Sprt.eloError(300, 400, 300), DELTA);
+        Assertions.assertEquals(10.241360, Sprt.eloError(1000, 1000, 900), DELTA);
+        Assertions.assertEquals(11.985289, Sprt.elo(Sprt.score(1000, 1000, 900)), DELTA);
+    }
+
+    @Test
+    public void testLlr() {
+        Sprt sprt = new Sprt(0, 10, 0.05, 0.05);
+        Assertions.assertEquals(Math.log(19), sprt.upperBound(), DELTA);
+        Assertions.assertEquals(-Math.log(19), sprt.lowerBound(), DELTA);
+        Assertions.assertEquals(0, sprt.llr(0, 0, 0), DELTA);
+        // An even score lies below the midpoint of the hypotheses
+        Assertions.assertEquals(-1.655515, sprt.llr(500, 1000, 500), DELTA);
+        Assertions.assertEquals(2.561812, sprt.llr(1000, 1000, 900), DELTA);
+        // The half games keep the variance of a clean sweep positive
+        Assertions.assertEquals(1.228039, sprt.llr(10, 0, 0), DELTA);
+
+        Assertions.assertEquals(Sprt.Decision.CONTINUE, sprt.decide(1000, 1000, 900));
+        Assertions.assertEquals(Sprt.Decision.ACCEPT_H1, sprt.decide(1200, 1000, 900));
+        Assertions.assertEquals(Sprt.Decision.ACCEPT_H0, sprt.decide(900, 1000, 1000));
+    }
+}
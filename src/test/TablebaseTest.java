@@ -0,0 +1,76 @@
+package test;
+
+import main.chessboard.BoardEnv;
+import main.chessboard.GameOutcome;
+import main.chessboard.MoveMaker;
+import main.engine.Engine;
+import main.engine.tablebase.Tablebase;
+import main.engine.tablebase.TablebaseGenerator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generates the KQK table and checks it against positions with a known result.
+ * Reference link: https://www.chessprogramming.org/Endgame_Tablebases
+ */
+public class TablebaseTest {
+
+    private static Tablebase tablebase;
+
+    private static synchronized Tablebase tablebase() throws IOException {
+        if (tablebase == null) {
+            Path directory = Files.createTempDirectory("tablebases");
+            directory.toFile().deleteOnExit();
+            byte[] table = new TablebaseGenerator(Tablebase.open(directory)).generate("KQvK");
+            Path file = Files.write(directory.resolve("KQvK.c2tb"), table);
+            file.toFile().deleteOnExit();
+            tablebase = Tablebase.open(directory);
+        }
+        return tablebase;
+    }
+
+    @Test
+    public void testMateInOne() throws IOException {
+        int value = tablebase().probe(new BoardEnv("7k/8/6K1/8/8/8/8/1Q6 w - - 0 1"));
+        Assertions.assertTrue(Tablebase.isWin(value));
+        Assertions.assertEquals(1, Tablebase.pliesToMate(value));
+    }
+
+    @Test
+    public void testMateInOneWithColorsFlipped() throws IOException {
+        int value = tablebase().probe(new BoardEnv("1q6/8/8/8/8/6k1/8/7K b - - 0 1"));
+        Assertions.assertTrue(Tablebase.isWin(value));
+        Assertions.assertEquals(1, Tablebase.pliesToMate(value));
+    }
+
+    @Test
+    public void testCheckmateAndStalemate() throws IOException {
+        int mated = tablebase().probe(new BoardEnv("Q6k/8/6K1/8/8/8/8/8 b - - 0 1"));
+        Assertions.assertTrue(Tablebase.isLoss(mated));
+        Assertions.assertEquals(0, Tablebase.pliesToMate(mated));
+        int stalemate = tablebase().probe(new BoardEnv("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1"));
+        Assertions.assertEquals(Tablebase.DRAW, stalemate);
+    }
+
+    @Test
+    public void testUncoveredMaterial() throws IOException {
+        Assertions.assertEquals(Tablebase.DRAW, tablebase().probe(new BoardEnv("7k/8/6K1/8/8/8/8/8 w - - 0 1")));
+        Assertions.assertEquals(Tablebase.NOT_FOUND, tablebase().probe(new BoardEnv("7k/8/6K1/8/8/8/8/1R6 w - - 0 1")));
+        Assertions.assertEquals(Tablebase.NOT_FOUND, tablebase().probe(new BoardEnv("7k/8/6K1/8/8/8/8/QQQ5 w - - 0 1")));
+    }
+
+    @Test
+    public void testEngineMatesWithTablebase() throws IOException {
+        BoardEnv board = new BoardEnv("7k/8/6K1/8/8/8/8/1Q6 w - - 0 1");
+        Engine engine = new Engine(true);
+        engine.setDebugOutput(false);
+        engine.setTablebase(tablebase());
+        Engine.BestMove bestMove = engine.calculateBestMove(board.deepCopy());
+        GameOutcome outcome = MoveMaker.makeMove(board, bestMove.move, false).outcome;
+        Assertions.assertEquals(GameOutcome.CHECKMATE_BLACK, outcome);
+    }
+}
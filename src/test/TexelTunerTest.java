@@ -0,0 +1,126 @@
+package test;
+
+import main.engine.PieceValues;
+import main.engine.tuning.TexelTuner;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Checks the EPD parsing of the Texel tuner, its gradient and the parameter files it writes.
+ */
+public class TexelTunerTest {
+
+    private static final List<String> EPD = List.of(
+            "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 c9 \"1/2-1/2\";",
+            "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3 [1.0]",
+            "r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 8 c9 \"0-1\";",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - c9 \"1-0\";",
+            "4k3/8/8/3p4/3P4/8/8/4K3 b - - [0.5]");
+
+    private static TexelTuner tuner(List<String> lines) throws IOException, InterruptedException {
+        Path file = Files.createTempFile("tuning", ".epd");
+        file.toFile().deleteOnExit();
+        Files.write(file, lines);
+        TexelTuner tuner = new TexelTuner(2);
+        tuner.load(file);
+        return tuner;
+    }
+
+    @Test
+    public void testParseResult() {
+        Assertions.assertEquals(1.0, TexelTuner.parseResult(EPD.get(3)));
+        Assertions.assertEquals(0.0, TexelTuner.parseResult(EPD.get(2)));
+        Assertions.assertEquals(0.5, TexelTuner.parseResult(EPD.get(0)));
+        Assertions.assertEquals(1.0, TexelTuner.parseResult(EPD.get(1)));
+        Assertions.assertEquals(0.5, TexelTuner.parseResult(EPD.get(4)));
+        Assertions.assertEquals(0.0, TexelTuner.parseResult("0-1"));
+        Assertions.assertTrue(Double.isNaN(TexelTuner.parseResult("*")));
+    }
+
+    @Test
+    public void testEpdToFen() {
+        Assertions.assertEquals("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1",
+                TexelTuner.epdToFen(EPD.get(0)));
+        Assertions.assertEquals("r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3",
+                TexelTuner.epdToFen(EPD.get(1)));
+    }
+
+    @Test
+    public void testGradientMatchesFiniteDifference() throws IOException, InterruptedException {
+        TexelTuner tuner = tuner(EPD);
+        Assertions.assertEquals(EPD.size(), tuner.getPositionCount());
+        double[] gradient = tuner.gradient();
+        double[] parameters = tuner.getParameters();
+        double step = 1e-3;
+        int checked = 0;
+        for (int i = 0; i < parameters.length; i++) {
+            double value = parameters[i];
+            parameters[i] = value + step;
+            double above = tuner.error();
+            parameters[i] = value - step;
+            double below = tuner.error();
+            parameters[i] = value;
+            double difference = (above - below) / (2 * step);
+            Assertions.assertEquals(difference, gradient[i], 1e-9 + 1e-4 * Math.abs(gradient[i]), "parameter " + i);
+            if (gradient[i] != 0) checked++;
+        }
+        Assertions.assertTrue(checked > 0);
+    }
+
+    @Test
+    public void testNonLinearPositionsExcluded() throws IOException, InterruptedException {
+        // KBNK has a specialised evaluation, opposite-colored bishops a scaled one
+        Assertions.assertEquals(0, tuner(List.of("k7/8/2K5/8/8/8/8/4NB2 w - - [1.0]",
+                "4k3/5b2/8/1p6/1P1P4/2P5/8/2B1K3 w - - [0.5]")).getPositionCount());
+    }
+
+    @Test
+    public void testIllegalMove() throws IOException {
+        Path file = Files.createTempFile("tuning", ".pgn");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, "[Result \"1-0\"]\n\n1. e4 e5 2. Ke3 1-0\n");
+        Assertions.assertThrows(IOException.class, () -> new TexelTuner(1).load(file));
+    }
+
+    @Test
+    public void testParameterFileRoundTrip() throws IOException, InterruptedException {
+        int[][] midgame = new int[6][64];
+        int[][] endgame = new int[6][64];
+        for (int piece = 0; piece < 6; piece++) {
+            for (int sq = 0; sq < 64; sq++) {
+                midgame[piece][sq] = PieceValues.midgame(PieceValues.PIECE_SQUARE[piece][sq]);
+                endgame[piece][sq] = PieceValues.endgame(PieceValues.PIECE_SQUARE[piece][sq]);
+            }
+        }
+        Path file = Files.createTempFile("piece_values", ".txt");
+        file.toFile().deleteOnExit();
+        try {
+            // The tuner starts from the current values, so its file loads back unchanged
+            tuner(List.of()).save(file);
+            PieceValues.load(file);
+            for (int piece = 0; piece < 6; piece++) {
+                for (int sq = 0; sq < 64; sq++) {
+                    Assertions.assertEquals(PieceValues.pack(midgame[piece][sq], endgame[piece][sq]),
+                            PieceValues.PIECE_SQUARE[piece][sq]);
+                }
+            }
+
+            int[][] changed = new int[6][];
+            for (int piece = 0; piece < 6; piece++) changed[piece] = midgame[piece].clone();
+            changed[1][45] = -7; // white knight on f3
+            PieceValues.save(file, changed, endgame);
+            PieceValues.load(file);
+            Assertions.assertEquals(-7, PieceValues.midgame(PieceValues.PIECE_SQUARE[1][45]));
+            Assertions.assertEquals(endgame[1][45], PieceValues.endgame(PieceValues.PIECE_SQUARE[1][45]));
+            // The black knight on f6 mirrors it
+            Assertions.assertEquals(7, PieceValues.midgame(PieceValues.PIECE_SQUARE[7][21]));
+        } finally {
+            PieceValues.setPieceSquare(midgame, endgame);
+        }
+    }
+}